@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.token;
+
+import com.oauth.server.database.dao.TokenKeys;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of minting token values: the random UUIDs of the token services against {@link SecureTokenValueGenerator},
+ * and of the store keys derived from them. Run with several threads ({@code -t}) to compare the contention, see the
+ * benchmarks profile of the pom.
+ *
+ * @author Varij Kapil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenValueGeneratorBenchmark {
+  
+  @Param({"SHA1PRNG"})
+  private String algorithm;
+  
+  @Param({"16", "32"})
+  private int entropyBytes;
+  
+  private TokenValueGenerator generator;
+  
+  private String tokenValue;
+  
+  @Setup
+  public void setUp() {
+    generator = new SecureTokenValueGenerator(algorithm, entropyBytes, "at_", "rt_");
+    tokenValue = generator.generateAccessTokenValue();
+  }
+  
+  @Benchmark
+  public String randomUuid() {
+    return UUID.randomUUID().toString();
+  }
+  
+  @Benchmark
+  public String generator() {
+    return generator.generateAccessTokenValue();
+  }
+  
+  @Benchmark
+  public String tokenKey() {
+    return TokenKeys.extractTokenKey(tokenValue);
+  }
+}
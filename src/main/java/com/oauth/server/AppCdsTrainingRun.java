@@ -0,0 +1,30 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops the application once started, so the appcds Maven profile can record the classes loaded by a startup.
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+@Component
+@ConditionalOnProperty(value = "oauth.appcds.training-run", havingValue = "true")
+public class AppCdsTrainingRun {
+  
+  @EventListener(ApplicationReadyEvent.class)
+  public void applicationReady(ApplicationReadyEvent event) {
+    log.info("AppCDS training run started, exiting");
+    System.exit(SpringApplication.exit(event.getApplicationContext()));
+  }
+}
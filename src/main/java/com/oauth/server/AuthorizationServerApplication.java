@@ -7,9 +7,7 @@ package com.oauth.server;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.event.EventListener;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 
 /**
@@ -20,21 +18,7 @@ import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 @EnableJpaAuditing
 public class AuthorizationServerApplication {
   
-  private final SampleDataLoader sampleDataLoader;
-  
-  public AuthorizationServerApplication(SampleDataLoader sampleDataLoader) {
-    this.sampleDataLoader = sampleDataLoader;
-  }
-  
   public static void main(String[] args) {
     SpringApplication.run(AuthorizationServerApplication.class, args);
   }
-  
-  /**
-   * TODO: Remove the sample data when testing is completed.
-   */
-  @EventListener(ApplicationReadyEvent.class)
-  public void applicationReady() {
-    sampleDataLoader.loadSampleData();
-  }
 }
@@ -11,10 +11,21 @@ import com.oauth.server.database.modal.OAuthPartner;
 import com.oauth.server.database.service.IOAuthClientDetails;
 import com.oauth.server.database.service.IOAuthPartner;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
+/**
+ * Loads the sample clients and partner once the application is ready, unless they already exist.
+ *
+ * <p>
+ * TODO: Remove the sample data when testing is completed, or set oauth.sample-data.enabled to false.
+ * </p>
+ */
 @Component
+@ConditionalOnProperty(value = "oauth.sample-data.enabled", havingValue = "true", matchIfMissing = true)
 public class SampleDataLoader {
   
   @Autowired
@@ -23,6 +34,7 @@ public class SampleDataLoader {
   @Autowired
   private PasswordEncoder passwordEncoder;
   
+  @EventListener(ApplicationReadyEvent.class)
   public void loadSampleData() {
     OAuthClientDetails testAlexaClient =
         OAuthClientDetails.builder()
@@ -58,8 +70,16 @@ public class SampleDataLoader {
             .preEstablishedRedirectUri("")
             .build();
     
-    ioAuthClientDetails.save(testAlexaClient);
-    ioAuthClientDetails.save(adminClient);
-    ioAuthPartner.save(testAlexaPartner);
+    saveClientIfMissing(testAlexaClient);
+    saveClientIfMissing(adminClient);
+    if (!ioAuthPartner.findByPartnerId(testAlexaPartner.getPartnerId()).isPresent()) {
+      ioAuthPartner.save(testAlexaPartner);
+    }
+  }
+  
+  private void saveClientIfMissing(OAuthClientDetails clientDetails) {
+    if (!ioAuthClientDetails.findByClientId(clientDetails.getClientId()).isPresent()) {
+      ioAuthClientDetails.save(clientDetails);
+    }
   }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oauth.server.api.ClientResource;
+import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.dao.KeyedTokenStore;
+import com.oauth.server.database.modal.OAuth2AccessTokenConverter;
+import com.oauth.server.database.modal.OAuth2AuthenticationConverter;
+import com.oauth.server.database.modal.OAuth2RefreshTokenConverter;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Warms up a node once started, before it reports ready: the connection pool is filled, and the token store, the
+ * token converters, the client and partner lookups, the password encoder and the JSON serialization run with
+ * synthetic data until the JIT compiled them, so the first requests after a deploy are not served by a cold node.
+ *
+ * <p>
+ * Until done, the {@code warmUp} health indicator reports {@link #WARMING_UP}, which takes the {@code readiness} group
+ * out of service while {@code /actuator/health} stays up, so a warming node is kept out of the load balancer without
+ * failing a liveness probe. Synthetic tokens are written in transactions rolled back with the JPA token store, and only
+ * looked up with the others, so the warm-up leaves no data behind. The client and partner caches are then filled with
+ * the first clients and partners.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+@Component
+@ConditionalOnProperty(value = "oauth.warm-up.enabled", havingValue = "true", matchIfMissing = true)
+public class WarmUp implements HealthIndicator {
+  
+  private static final String CLIENT_ID = "warm-up-client";
+  
+  private static final String PARTNER_ID = "warm-up-partner";
+  
+  private static final String USER_NAME = "warm-up-user";
+  
+  /**
+   * Reported until done. Only the {@code readiness} group orders it, the overall health leaves it out of its status.
+   */
+  public static final Status WARMING_UP = new Status("WARMING_UP", "The node is warming up");
+  
+  private final DataSource dataSource;
+  
+  private final KeyedTokenStore tokenStore;
+  
+  private final DynamoDBClientDetailsDAO clientDetailsService;
+  
+  private final DynamoDBPartnerDetailsDAO partnerDetailsService;
+  
+  private final PasswordEncoder passwordEncoder;
+  
+  private final ObjectMapper objectMapper;
+  
+  private final TransactionTemplate transactionTemplate;
+  
+  private final boolean rollbackTokenWrites;
+  
+  private final int iterations;
+  
+  private final int passwordIterations;
+  
+  private final int connections;
+  
+  private final int cachePreloadSize;
+  
+  private final long maxDurationMillis;
+  
+  private final OAuth2AccessTokenConverter accessTokenConverter = new OAuth2AccessTokenConverter();
+  
+  private final OAuth2RefreshTokenConverter refreshTokenConverter = new OAuth2RefreshTokenConverter();
+  
+  private final OAuth2AuthenticationConverter authenticationConverter = new OAuth2AuthenticationConverter();
+  
+  private volatile boolean done;
+  
+  private volatile int completedIterations;
+  
+  public WarmUp(DataSource dataSource, KeyedTokenStore tokenStore, DynamoDBClientDetailsDAO clientDetailsService,
+      DynamoDBPartnerDetailsDAO partnerDetailsService, PasswordEncoder passwordEncoder, ObjectMapper objectMapper,
+      PlatformTransactionManager transactionManager,
+      @Value("${oauth.token-store.type:jpa}") String tokenStoreType,
+      @Value("${oauth.warm-up.iterations:2000}") int iterations,
+      @Value("${oauth.warm-up.password-iterations:20}") int passwordIterations,
+      @Value("${oauth.warm-up.connections:${spring.datasource.hikari.maximum-pool-size:10}}") int connections,
+      @Value("${oauth.warm-up.cache-preload-size:100}") int cachePreloadSize,
+      @Value("${oauth.warm-up.max-duration-millis:60000}") long maxDurationMillis) {
+    this.dataSource = dataSource;
+    this.tokenStore = tokenStore;
+    this.clientDetailsService = clientDetailsService;
+    this.partnerDetailsService = partnerDetailsService;
+    this.passwordEncoder = passwordEncoder;
+    this.objectMapper = objectMapper;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.rollbackTokenWrites = "jpa".equals(tokenStoreType);
+    this.iterations = iterations;
+    this.passwordIterations = passwordIterations;
+    this.connections = connections;
+    this.cachePreloadSize = cachePreloadSize;
+    this.maxDurationMillis = maxDurationMillis;
+  }
+  
+  /**
+   * Run the warm-up, after the other listeners such as the sample data. Stops at {@code max-duration-millis}, and a
+   * failure only ends it early: a node is never held out of service for good by its warm-up.
+   */
+  @Order(Ordered.LOWEST_PRECEDENCE)
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxDurationMillis);
+    try {
+      fillConnectionPool();
+    
+      String passwordHash = passwordEncoder.encode(USER_NAME);
+      for (int i = 0; i < passwordIterations && System.nanoTime() < deadline; i++) {
+        passwordEncoder.matches(USER_NAME, passwordHash);
+      }
+    
+      OAuthClientDetails client = syntheticClient();
+      while (completedIterations < iterations && System.nanoTime() < deadline) {
+        warmUpTokens();
+        warmUpLookups(client);
+        completedIterations++;
+      }
+    
+      preloadCaches();
+      log.info("Warmed up in {} ms, {} iterations", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+          completedIterations);
+    } catch (RuntimeException | SQLException | JsonProcessingException e) {
+      log.warn("Warm-up failed after {} iterations, reporting ready", completedIterations, e);
+    } finally {
+      done = true;
+    }
+  }
+  
+  @Override
+  public Health health() {
+    return (done ? Health.up() : Health.status(WARMING_UP))
+        .withDetail("iterations", completedIterations)
+        .build();
+  }
+  
+  /**
+   * Hold {@code connections} connections at once, so the pool opens them now rather than under the first requests.
+   */
+  private void fillConnectionPool() throws SQLException {
+    List<Connection> open = new ArrayList<>(connections);
+    try {
+      for (int i = 0; i < connections; i++) {
+        Connection connection = dataSource.getConnection();
+        open.add(connection);
+        connection.isValid(1);
+      }
+    } finally {
+      for (Connection connection : open) {
+        connection.close();
+      }
+    }
+  }
+  
+  private void warmUpTokens() throws JsonProcessingException {
+    OAuth2Authentication authentication = syntheticAuthentication();
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+    token.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+    token.setScope(authentication.getOAuth2Request().getScope());
+    token.setRefreshToken(new DefaultOAuth2RefreshToken(UUID.randomUUID().toString()));
+    
+    accessTokenConverter.convertToEntityAttribute(accessTokenConverter.convertToDatabaseColumn(token));
+    refreshTokenConverter.convertToEntityAttribute(refreshTokenConverter.convertToDatabaseColumn(
+        token.getRefreshToken()));
+    authenticationConverter.convertToEntityAttribute(authenticationConverter.convertToDatabaseColumn(authentication));
+    objectMapper.writeValueAsString(token);
+    
+    if (rollbackTokenWrites) {
+      transactionTemplate.execute(status -> {
+        status.setRollbackOnly();
+        tokenStore.storeAccessToken(token, authentication);
+        readToken(token, authentication);
+        return null;
+      });
+    } else {
+      readToken(token, authentication);
+    }
+  }
+  
+  private void readToken(DefaultOAuth2AccessToken token, OAuth2Authentication authentication) {
+    tokenStore.readAccessToken(token.getValue());
+    tokenStore.readAuthentication(token.getValue());
+    tokenStore.readAccessTokensByKeys(Collections.singleton(tokenStore.extractTokenKey(token.getValue())));
+    tokenStore.getAccessToken(authentication);
+    tokenStore.readRefreshToken(token.getRefreshToken().getValue());
+  }
+  
+  private void warmUpLookups(OAuthClientDetails client) throws JsonProcessingException {
+    try {
+      clientDetailsService.loadClientByClientId(CLIENT_ID);
+    } catch (NoSuchClientException e) {
+      // Expected, the lookup of a synthetic client.
+    }
+    partnerDetailsService.loadPartnerByPartnerId(PARTNER_ID);
+    
+    client.toClientDetails();
+    objectMapper.writeValueAsString(ClientResource.from(client));
+  }
+  
+  private void preloadCaches() {
+    if (cachePreloadSize <= 0) {
+      return;
+    }
+    clientDetailsService.listClients(PageRequest.of(0, cachePreloadSize))
+        .forEach(client -> clientDetailsService.loadClientByClientId(client.getClientId()));
+    partnerDetailsService.listPartners(PageRequest.of(0, cachePreloadSize))
+        .forEach(partner -> partnerDetailsService.loadPartnerByPartnerId(partner.getPartnerId()));
+  }
+  
+  private static OAuth2Authentication syntheticAuthentication() {
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), CLIENT_ID, Collections.emptyList(), true,
+        Collections.singleton("profile"), Collections.emptySet(), null, Collections.emptySet(),
+        Collections.emptyMap());
+    return new OAuth2Authentication(request,
+        new UsernamePasswordAuthenticationToken(USER_NAME, null, Collections.emptyList()));
+  }
+  
+  private static OAuthClientDetails syntheticClient() {
+    return OAuthClientDetails.builder()
+        .clientId(CLIENT_ID)
+        .scopes("profile")
+        .webServerRedirectUri("https://localhost/redirect")
+        .accessTokenValidity(3600)
+        .refreshTokenValidity(0)
+        .authorizedGrantTypes("authorization_code,refresh_token")
+        .build();
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import com.oauth.server.database.service.IOAuthClientDetails;
+import java.util.Optional;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Rest Controller for OAuth client add/edit/delete and listing, for provisioning tools.
+ *
+ * <p>
+ * Clients and pages of clients are tagged with an {@link ETags entity tag}. Requests with a matching
+ * {@code If-None-Match} are answered with 304 after reading the version alone, not the clients. Updates and deletes
+ * honor {@code If-Match}, and {@code If-None-Match: *} makes a {@code PUT} create only. Preconditions of writes are
+ * evaluated with the client locked, so concurrent writes cannot both succeed against the same entity tag. A client that
+ * does not exist yet cannot be locked: of two concurrent creates, the unique client id lets one succeed and the other
+ * is answered with 412 (409 without preconditions).
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@RestController
+@RequestMapping("/api/clients")
+public class ClientAdminEndpoint {
+  
+  private final DynamoDBClientDetailsDAO clientsDetailsService;
+  
+  private final TransactionTemplate transactionTemplate;
+  
+  public ClientAdminEndpoint(DynamoDBClientDetailsDAO clientsDetailsService,
+      PlatformTransactionManager transactionManager) {
+    this.clientsDetailsService = clientsDetailsService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+  
+  /**
+   * List a page of the clients, by client id. The version is read before the page, so that the entity tag is never
+   * newer than the page it comes with.
+   */
+  @RequestMapping(method = RequestMethod.GET)
+  public ResponseEntity<ResourcePage<ClientResource>> listClients(
+      final @RequestParam(value = "page", defaultValue = "0") int page,
+      final @RequestParam(value = "size", defaultValue = ResourcePage.DEFAULT_SIZE) int size,
+      final @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    
+    IOAuthClientDetails.Version version = clientsDetailsService.findClientsVersion();
+    String eTag = ETags.of(version.getCount(), version.getMaxId(), version.getVersionSum());
+    if (!ETags.ifNoneMatch(ifNoneMatch, eTag)) {
+      return ETags.notModified(eTag);
+    }
+    
+    return ResponseEntity.ok()
+        .eTag(eTag)
+        .body(ResourcePage.of(clientsDetailsService.listClients(ResourcePage.pageable(page, size, "clientId")),
+            ClientResource::from));
+  }
+  
+  @RequestMapping(value = "/{clientId}", method = RequestMethod.GET)
+  public ResponseEntity<ClientResource> getClient(final @PathVariable("clientId") String clientId,
+      final @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    
+    if (ifNoneMatch != null) {
+      Optional<String> eTag = clientsDetailsService.findClientRevision(clientId).map(ClientAdminEndpoint::eTag);
+      if (eTag.isPresent() && !ETags.ifNoneMatch(ifNoneMatch, eTag.get())) {
+        return ETags.notModified(eTag.get());
+      }
+    }
+    
+    return clientsDetailsService.findClient(clientId)
+        .map(client -> ResponseEntity.ok().eTag(ETags.of(client.getId(), client.getVersion()))
+            .body(ClientResource.from(client)))
+        .orElseGet(() -> ResponseEntity.notFound().build());
+  }
+  
+  /**
+   * Create or replace a client. The client secret is only changed when given.
+   */
+  @RequestMapping(value = "/{clientId}", method = RequestMethod.PUT)
+  public ResponseEntity<Void> putClient(final @PathVariable("clientId") String clientId,
+      final @RequestBody ClientResource client,
+      final @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+      final @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    
+    client.setClientId(clientId);
+    try {
+      return inTransaction(status -> {
+        String current = clientsDetailsService.lockClient(clientId)
+            .map(locked -> ETags.of(locked.getId(), locked.getVersion()))
+            .orElse(null);
+        if (!ETags.ifMatch(ifMatch, current) || !ETags.ifNoneMatch(ifNoneMatch, current)) {
+          return ETags.preconditionFailed(current);
+        }
+      
+        clientsDetailsService.addOrUpdateClientDetails(client.toClientDetails());
+        if (!StringUtils.isEmpty(client.getClientSecret())) {
+          clientsDetailsService.updateClientSecret(clientId, client.getClientSecret());
+        }
+      
+        String eTag = eTag(clientsDetailsService.findClientRevision(clientId).get());
+        return current == null
+            ? ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequest().build().toUri())
+                .eTag(eTag).build()
+            : ResponseEntity.noContent().eTag(eTag).build();
+      });
+    } catch (DataIntegrityViolationException e) {
+      return ETags.concurrentlyCreated(e, ifMatch != null || ifNoneMatch != null,
+          clientsDetailsService.findClientRevision(clientId).map(ClientAdminEndpoint::eTag).orElse(null));
+    }
+  }
+  
+  @RequestMapping(value = "/{clientId}", method = RequestMethod.DELETE)
+  public ResponseEntity<Void> deleteClient(final @PathVariable("clientId") String clientId,
+      final @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    
+    return inTransaction(status -> {
+      Optional<OAuthClientDetails> client = clientsDetailsService.lockClient(clientId);
+      if (!client.isPresent()) {
+        return ResponseEntity.notFound().build();
+      }
+      String current = ETags.of(client.get().getId(), client.get().getVersion());
+      if (!ETags.ifMatch(ifMatch, current)) {
+        return ETags.preconditionFailed(current);
+      }
+    
+      clientsDetailsService.removeClientDetails(clientId);
+      return ResponseEntity.noContent().build();
+    });
+  }
+  
+  private static String eTag(IOAuthClientDetails.Revision revision) {
+    return ETags.of(revision.getId(), revision.getVersion());
+  }
+  
+  private ResponseEntity<Void> inTransaction(TransactionCallback<ResponseEntity<Void>> write) {
+    return transactionTemplate.execute(write);
+  }
+}
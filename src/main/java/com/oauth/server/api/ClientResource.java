@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import lombok.Data;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.util.StringUtils;
+
+/**
+ * The JSON representation of an OAuth client in the admin API, with the field names of the bulk import. The client
+ * secret can be written but is never read back.
+ *
+ * @author Varij Kapil
+ */
+@Data
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ClientResource {
+  
+  private String clientId;
+  
+  @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+  private String clientSecret;
+  
+  private Set<String> scopes = Collections.emptySet();
+  
+  private Set<String> authorizedGrantTypes = Collections.emptySet();
+  
+  private Set<String> webServerRedirectUri = Collections.emptySet();
+  
+  private Set<String> authorities = Collections.emptySet();
+  
+  private Integer accessTokenValidity;
+  
+  private Integer refreshTokenValidity;
+  
+  private Set<String> autoapprove = Collections.emptySet();
+  
+  private Double rateLimitPerSecond;
+  
+  private Integer rateLimitBurst;
+  
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  private Date createdAt;
+  
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  private Date updatedAt;
+  
+  public static ClientResource from(OAuthClientDetails client) {
+    ClientResource resource = new ClientResource();
+    resource.setClientId(client.getClientId());
+    resource.setScopes(StringUtils.commaDelimitedListToSet(client.getScopes()));
+    resource.setAuthorizedGrantTypes(StringUtils.commaDelimitedListToSet(client.getAuthorizedGrantTypes()));
+    resource.setWebServerRedirectUri(StringUtils.commaDelimitedListToSet(client.getWebServerRedirectUri()));
+    resource.setAuthorities(StringUtils.commaDelimitedListToSet(client.getAuthorities()));
+    resource.setAccessTokenValidity(client.getAccessTokenValidity());
+    resource.setRefreshTokenValidity(client.getRefreshTokenValidity());
+    resource.setAutoapprove(StringUtils.commaDelimitedListToSet(client.getAutoapprove()));
+    resource.setRateLimitPerSecond(client.getRateLimitPerSecond());
+    resource.setRateLimitBurst(client.getRateLimitBurst());
+    resource.setCreatedAt(client.getCreatedAt());
+    resource.setUpdatedAt(client.getUpdatedAt());
+    return resource;
+  }
+  
+  public ClientDetails toClientDetails() {
+    BaseClientDetails clientDetails = new BaseClientDetails();
+    clientDetails.setClientId(clientId);
+    clientDetails.setScope(orEmpty(scopes));
+    clientDetails.setAuthorizedGrantTypes(orEmpty(authorizedGrantTypes));
+    clientDetails.setRegisteredRedirectUri(orEmpty(webServerRedirectUri));
+    clientDetails.setAuthorities(AuthorityUtils.createAuthorityList(orEmpty(authorities).toArray(new String[0])));
+    clientDetails.setAccessTokenValiditySeconds(accessTokenValidity);
+    clientDetails.setRefreshTokenValiditySeconds(refreshTokenValidity);
+    clientDetails.setAutoApproveScopes(orEmpty(autoapprove));
+    clientDetails.addAdditionalInformation(OAuthClientDetails.RATE_LIMIT_PER_SECOND, rateLimitPerSecond);
+    clientDetails.addAdditionalInformation(OAuthClientDetails.RATE_LIMIT_BURST, rateLimitBurst);
+    return clientDetails;
+  }
+  
+  private static Set<String> orEmpty(Set<String> values) {
+    return values != null ? values : Collections.emptySet();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import java.sql.SQLException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+
+/**
+ * Strong entity tags of clients and partners, derived from their id and their JPA version, and the evaluation of the
+ * {@code If-Match} and {@code If-None-Match} preconditions against them.
+ *
+ * <p>
+ * The version is incremented by every update, so two updates within the same millisecond still get different tags;
+ * the id tells apart a resource removed and created again. A list is tagged with the number of its items, the highest
+ * id and the sum of the versions, which together change on any add, update or remove.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+final class ETags {
+  
+  private static final String ANY = "*";
+  
+  /**
+   * SQL state of a unique constraint violation, on Postgres and H2 alike.
+   */
+  private static final String UNIQUE_VIOLATION = "23505";
+  
+  private ETags() {
+  }
+  
+  static String of(Integer id, long version) {
+    return "\"" + Integer.toHexString(id) + "-" + Long.toHexString(version) + "\"";
+  }
+  
+  static String of(long count, long maxId, long versionSum) {
+    return "\"" + Long.toHexString(count) + "-" + Long.toHexString(maxId) + "-" + Long.toHexString(versionSum) + "\"";
+  }
+  
+  /**
+   * Whether an {@code If-Match} header holds, by strong comparison.
+   *
+   * @param ifMatch the header, or null if absent.
+   * @param current the entity tag of the resource, or null if it does not exist.
+   */
+  static boolean ifMatch(String ifMatch, String current) {
+    if (ifMatch == null) {
+      return true;
+    }
+    if (current == null) {
+      return false;
+    }
+    for (String tag : StringUtils.commaDelimitedListToStringArray(ifMatch)) {
+      String trimmed = tag.trim();
+      if (ANY.equals(trimmed) || current.equals(trimmed)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Whether an {@code If-None-Match} header holds, by weak comparison.
+   *
+   * @param ifNoneMatch the header, or null if absent.
+   * @param current the entity tag of the resource, or null if it does not exist.
+   */
+  static boolean ifNoneMatch(String ifNoneMatch, String current) {
+    if (ifNoneMatch == null || current == null) {
+      return true;
+    }
+    for (String tag : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+      String trimmed = tag.trim();
+      if (ANY.equals(trimmed) || current.equals(trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  static <T> ResponseEntity<T> notModified(String eTag) {
+    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+  }
+  
+  /**
+   * A 412 response, with the entity tag of the resource if it exists.
+   */
+  static <T> ResponseEntity<T> preconditionFailed(String current) {
+    ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.PRECONDITION_FAILED);
+    return current != null ? response.eTag(current).build() : response.build();
+  }
+  
+  /**
+   * The response to a create that lost the race against a concurrent create of the same id, found by the unique
+   * constraint on the id: 412 with the entity tag of the resource created if the request had preconditions, as it was
+   * evaluated before that resource existed, and 409 otherwise. Other integrity violations are thrown again.
+   *
+   * @param current the entity tag of the resource created concurrently, or null if it is already gone.
+   */
+  static <T> ResponseEntity<T> concurrentlyCreated(DataIntegrityViolationException e, boolean preconditions,
+      String current) {
+    if (!isUniqueViolation(e)) {
+      throw e;
+    }
+    if (preconditions) {
+      return preconditionFailed(current);
+    }
+    ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.CONFLICT);
+    return current != null ? response.eTag(current).build() : response.build();
+  }
+  
+  private static boolean isUniqueViolation(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException && UNIQUE_VIOLATION.equals(((SQLException) cause).getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.database.service.IOAuthPartner;
+import java.util.Optional;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Rest Controller for {@link OAuthPartner} add/edit/delete and listing, for provisioning tools.
+ *
+ * <p>
+ * Partners and pages of partners are tagged with an {@link ETags entity tag}. Requests with a matching
+ * {@code If-None-Match} are answered with 304 after reading the version alone, not the partners. Updates and deletes
+ * honor {@code If-Match}, and {@code If-None-Match: *} makes a {@code PUT} create only. Preconditions of writes are
+ * evaluated with the partner locked, so concurrent writes cannot both succeed against the same entity tag. A partner
+ * that does not exist yet cannot be locked: of two concurrent creates, the unique partner id lets one succeed and the
+ * other is answered with 412 (409 without preconditions).
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@RestController
+@RequestMapping("/api/partners")
+public class PartnerAdminEndpoint {
+  
+  private final DynamoDBPartnerDetailsDAO partnerDetailsService;
+  
+  private final TransactionTemplate transactionTemplate;
+  
+  public PartnerAdminEndpoint(DynamoDBPartnerDetailsDAO partnerDetailsService,
+      PlatformTransactionManager transactionManager) {
+    this.partnerDetailsService = partnerDetailsService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+  
+  /**
+   * List a page of the partners, by partner id. The version is read before the page, so that the entity tag is never
+   * newer than the page it comes with.
+   */
+  @RequestMapping(method = RequestMethod.GET)
+  public ResponseEntity<ResourcePage<PartnerResource>> listPartners(
+      final @RequestParam(value = "page", defaultValue = "0") int page,
+      final @RequestParam(value = "size", defaultValue = ResourcePage.DEFAULT_SIZE) int size,
+      final @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    
+    IOAuthPartner.Version version = partnerDetailsService.findPartnersVersion();
+    String eTag = ETags.of(version.getCount(), version.getMaxId(), version.getVersionSum());
+    if (!ETags.ifNoneMatch(ifNoneMatch, eTag)) {
+      return ETags.notModified(eTag);
+    }
+    
+    return ResponseEntity.ok()
+        .eTag(eTag)
+        .body(ResourcePage.of(partnerDetailsService.listPartners(ResourcePage.pageable(page, size, "partnerId")),
+            PartnerResource::from));
+  }
+  
+  @RequestMapping(value = "/{partnerId}", method = RequestMethod.GET)
+  public ResponseEntity<PartnerResource> getPartner(final @PathVariable("partnerId") String partnerId,
+      final @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    
+    if (ifNoneMatch != null) {
+      Optional<String> eTag = partnerDetailsService.findPartnerRevision(partnerId).map(PartnerAdminEndpoint::eTag);
+      if (eTag.isPresent() && !ETags.ifNoneMatch(ifNoneMatch, eTag.get())) {
+        return ETags.notModified(eTag.get());
+      }
+    }
+    
+    return partnerDetailsService.findPartner(partnerId)
+        .map(partner -> ResponseEntity.ok().eTag(ETags.of(partner.getId(), partner.getVersion()))
+            .body(PartnerResource.from(partner)))
+        .orElseGet(() -> ResponseEntity.notFound().build());
+  }
+  
+  /**
+   * Create or replace a partner. The client secret is only changed when given.
+   */
+  @RequestMapping(value = "/{partnerId}", method = RequestMethod.PUT)
+  public ResponseEntity<Void> putPartner(final @PathVariable("partnerId") String partnerId,
+      final @RequestBody PartnerResource partner,
+      final @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+      final @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    
+    partner.setPartnerId(partnerId);
+    try {
+      return inTransaction(status -> {
+        Optional<OAuthPartner> locked = partnerDetailsService.lockPartner(partnerId);
+        String current = locked.map(existing -> ETags.of(existing.getId(), existing.getVersion())).orElse(null);
+        if (!ETags.ifMatch(ifMatch, current) || !ETags.ifNoneMatch(ifNoneMatch, current)) {
+          return ETags.preconditionFailed(current);
+        }
+      
+        partnerDetailsService.savePartner(partner.toPartner(locked.orElse(null)));
+      
+        String eTag = eTag(partnerDetailsService.findPartnerRevision(partnerId).get());
+        return current == null
+            ? ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequest().build().toUri())
+                .eTag(eTag).build()
+            : ResponseEntity.noContent().eTag(eTag).build();
+      });
+    } catch (DataIntegrityViolationException e) {
+      return ETags.concurrentlyCreated(e, ifMatch != null || ifNoneMatch != null,
+          partnerDetailsService.findPartnerRevision(partnerId).map(PartnerAdminEndpoint::eTag).orElse(null));
+    }
+  }
+  
+  @RequestMapping(value = "/{partnerId}", method = RequestMethod.DELETE)
+  public ResponseEntity<Void> deletePartner(final @PathVariable("partnerId") String partnerId,
+      final @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    
+    return inTransaction(status -> {
+      Optional<OAuthPartner> partner = partnerDetailsService.lockPartner(partnerId);
+      if (!partner.isPresent()) {
+        return ResponseEntity.notFound().build();
+      }
+      String current = ETags.of(partner.get().getId(), partner.get().getVersion());
+      if (!ETags.ifMatch(ifMatch, current)) {
+        return ETags.preconditionFailed(current);
+      }
+    
+      partnerDetailsService.deletePartnerByPartnerId(partnerId);
+      return ResponseEntity.noContent().build();
+    });
+  }
+  
+  private static String eTag(IOAuthPartner.Revision revision) {
+    return ETags.of(revision.getId(), revision.getVersion());
+  }
+  
+  private ResponseEntity<Void> inTransaction(TransactionCallback<ResponseEntity<Void>> write) {
+    return transactionTemplate.execute(write);
+  }
+}
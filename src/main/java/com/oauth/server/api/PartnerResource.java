@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.oauth.server.database.modal.OAuthPartner;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import lombok.Data;
+import org.springframework.util.StringUtils;
+
+/**
+ * The JSON representation of a partner in the admin API. The client secret issued by the partner can be written but is
+ * never read back, and is kept as is when left out of an update.
+ *
+ * @author Varij Kapil
+ */
+@Data
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PartnerResource {
+  
+  private String partnerId;
+  
+  private String clientId;
+  
+  @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+  private String clientSecret;
+  
+  private String accessTokenUri;
+  
+  private String userAuthorizationUri;
+  
+  private String preEstablishedRedirectUri;
+  
+  private Set<String> scopes = Collections.emptySet();
+  
+  private Double rateLimitPerSecond;
+  
+  private Integer rateLimitBurst;
+  
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  private Date createdAt;
+  
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  private Date updatedAt;
+  
+  public static PartnerResource from(OAuthPartner partner) {
+    PartnerResource resource = new PartnerResource();
+    resource.setPartnerId(partner.getPartnerId());
+    resource.setClientId(partner.getClientId());
+    resource.setAccessTokenUri(partner.getAccessTokenUri());
+    resource.setUserAuthorizationUri(partner.getUserAuthorizationUri());
+    resource.setPreEstablishedRedirectUri(partner.getPreEstablishedRedirectUri());
+    resource.setScopes(StringUtils.commaDelimitedListToSet(partner.getScopes()));
+    resource.setRateLimitPerSecond(partner.getRateLimitPerSecond());
+    resource.setRateLimitBurst(partner.getRateLimitBurst());
+    resource.setCreatedAt(partner.getCreatedAt());
+    resource.setUpdatedAt(partner.getUpdatedAt());
+    return resource;
+  }
+  
+  /**
+   * The partner to save, replacing {@code current} if not null.
+   */
+  public OAuthPartner toPartner(OAuthPartner current) {
+    return (current != null ? current.toBuilder() : OAuthPartner.builder())
+        .partnerId(partnerId)
+        .clientId(clientId)
+        .clientSecret(clientSecret != null || current == null ? clientSecret : current.getClientSecret())
+        .accessTokenUri(accessTokenUri)
+        .userAuthorizationUri(userAuthorizationUri)
+        .preEstablishedRedirectUri(preEstablishedRedirectUri)
+        .scopes(scopes != null ? StringUtils.collectionToCommaDelimitedString(scopes) : null)
+        .rateLimitPerSecond(rateLimitPerSecond)
+        .rateLimitBurst(rateLimitBurst)
+        .build();
+  }
+}
@@ -6,19 +6,30 @@
 
 package com.oauth.server.api;
 
+import com.oauth.server.audit.AuditEvent;
+import com.oauth.server.audit.AuditEventType;
+import com.oauth.server.audit.AuditTrail;
 import com.oauth.server.authentication.UserIDAuthenticationToken;
 import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
 import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
 import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.partner.PartnerTokenClient;
+import com.oauth.server.partner.PartnerUnavailableException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
-import org.springframework.security.oauth2.client.token.AccessTokenRequest;
-import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
-import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeAccessTokenProvider;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidClientException;
 import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -28,6 +39,9 @@ import org.springframework.web.bind.annotation.RestController;
  *
  * <p>
  * This endpoint is called by admin clients to retrieve access tokens received from partner OAuth providers (e.g. LWA).
+ * Expired tokens are refreshed asynchronously through {@link PartnerTokenClient}, so the request thread is released
+ * while the partner is being called. While the partner is unavailable, i.e. failing or with its circuit open, expired
+ * tokens are still served up to {@code staleGraceSeconds} after their expiry.
  * <p>
  *
  * @author Varij Kapil
@@ -39,17 +53,31 @@ public class PartnerTokenEndpoint {
     
     private final DynamoDBPartnerDetailsDAO partnerDetailsService;
     
+    private final PartnerTokenClient partnerTokenClient;
+    
+    private final AuditTrail auditTrail;
+    
+    private final long staleGraceMillis;
+    
+    private final WebResponseExceptionTranslator<OAuth2Exception> exceptionTranslator =
+        new DefaultWebResponseExceptionTranslator();
+    
     public PartnerTokenEndpoint(DynamoDBPartnerTokenDAO partnerTokenService,
-        DynamoDBPartnerDetailsDAO partnerDetailsService) {
+        DynamoDBPartnerDetailsDAO partnerDetailsService, PartnerTokenClient partnerTokenClient,
+        AuditTrail auditTrail,
+        @Value("${oauth.partner.circuit-breaker.stale-grace-seconds:0}") long staleGraceSeconds) {
         this.partnerTokenService = partnerTokenService;
         this.partnerDetailsService = partnerDetailsService;
+        this.partnerTokenClient = partnerTokenClient;
+        this.auditTrail = auditTrail;
+        this.staleGraceMillis = TimeUnit.SECONDS.toMillis(staleGraceSeconds);
     }
     
     /**
      * Endpoint to retrieve a client token from ClientTokenService.
      */
     @RequestMapping(value = "/api/partner/token")
-    public OAuth2AccessToken getPartnerToken(final @RequestParam Map<String, String> parameters) {
+    public CompletableFuture<OAuth2AccessToken> getPartnerToken(final @RequestParam Map<String, String> parameters) {
         final String userID = parameters.get("user_id");
         final String partnerId = parameters.get("partner_id");
         
@@ -66,28 +94,43 @@ public class PartnerTokenEndpoint {
 
         if (accessToken == null) {
             throw new OAuth2Exception("No token found for user: " + userID);
-        } else if (accessToken.getExpiresIn() <= NumberUtils.INTEGER_ZERO) {
-            //Token expired, refresh the token.
-            accessToken = refreshClientToken(accessToken, resourceDetails);
+        } else if (accessToken.getExpiresIn() > NumberUtils.INTEGER_ZERO) {
+            return CompletableFuture.completedFuture(accessToken);
         }
 
-        partnerTokenService.saveAccessToken(resourceDetails, new UserIDAuthenticationToken(userID), accessToken);
-
-        return accessToken;
+        //Token expired, refresh the token.
+        return partnerTokenClient.refreshAccessToken(resourceDetails, accessToken.getRefreshToken())
+            .thenApply(refreshedToken -> {
+                partnerTokenService.saveAccessToken(resourceDetails, new UserIDAuthenticationToken(userID),
+                    refreshedToken);
+                return refreshedToken;
+            })
+            .whenComplete((refreshedToken, e) -> auditTrail.record(AuditEvent.builder()
+                .type(e == null ? AuditEventType.PARTNER_TOKEN_REFRESHED : AuditEventType.PARTNER_TOKEN_REFRESH_FAILED)
+                .partnerId(partnerId)
+                .userName(userID)
+                .token(refreshedToken == null ? null : refreshedToken.getValue())
+                .detail(e == null ? null : StringUtils.abbreviate(e.getMessage(), 255))
+                .build()))
+            .exceptionally(e -> {
+                if (e.getCause() instanceof PartnerUnavailableException && isWithinStaleGrace(accessToken)) {
+                    return accessToken;
+                }
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            });
     }
-
+    
+    @ExceptionHandler(OAuth2Exception.class)
+    public ResponseEntity<OAuth2Exception> handleException(OAuth2Exception e) throws Exception {
+        return exceptionTranslator.translate(e);
+    }
+    
     /**
-     * Refresh a client access token.
+     * Whether an expired token may still be served while its partner is unavailable.
      */
-    private OAuth2AccessToken refreshClientToken(final OAuth2AccessToken accessToken,
-                                                 final OAuth2ProtectedResourceDetails resourceDetails) {
-        final AccessTokenRequest AccessTokenRequest = new DefaultAccessTokenRequest();
-
-        final AuthorizationCodeAccessTokenProvider tokenProvider = new AuthorizationCodeAccessTokenProvider();
-        tokenProvider.setStateMandatory(false);
-
-        return tokenProvider.refreshAccessToken(resourceDetails,
-            accessToken.getRefreshToken(), AccessTokenRequest);
+    private boolean isWithinStaleGrace(OAuth2AccessToken accessToken) {
+        return accessToken.getExpiration() != null
+            && accessToken.getExpiration().getTime() + staleGraceMillis > System.currentTimeMillis();
     }
 
 }
@@ -5,18 +5,19 @@
  */
 package com.oauth.server.api;
 
+import com.oauth.server.audit.AuditEvent;
+import com.oauth.server.audit.AuditEventType;
+import com.oauth.server.audit.AuditTrail;
 import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
 import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
 import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.partner.PartnerTokenClient;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
-import org.springframework.security.oauth2.client.token.AccessTokenRequest;
-import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
-import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeAccessTokenProvider;
-import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.UnsupportedGrantTypeException;
 import org.springframework.security.oauth2.provider.NoSuchClientException;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -46,14 +47,26 @@ public class ReciprocalAuthorizationEndpoint {
   
   private final DynamoDBPartnerDetailsDAO partnerDetailsRepository;
   
+  private final PartnerTokenClient partnerTokenClient;
+  
+  private final AuditTrail auditTrail;
+  
   public ReciprocalAuthorizationEndpoint(DynamoDBPartnerTokenDAO partnerTokenRepository,
-      DynamoDBPartnerDetailsDAO partnerDetailsRepository) {
+      DynamoDBPartnerDetailsDAO partnerDetailsRepository, PartnerTokenClient partnerTokenClient,
+      AuditTrail auditTrail) {
     this.partnerTokenRepository = partnerTokenRepository;
     this.partnerDetailsRepository = partnerDetailsRepository;
+    this.partnerTokenClient = partnerTokenClient;
+    this.auditTrail = auditTrail;
   }
   
+  /**
+   * Exchange the reciprocal authorization code with the partner. The request thread is released while the partner
+   * token endpoint is being called.
+   */
   @RequestMapping(value = "/api/reciprocal/authorize", method = RequestMethod.POST)
-  public void postReciprocalCode(final @RequestBody @RequestParam Map<String, String> parameters) {
+  public CompletableFuture<Void> postReciprocalCode(final @RequestBody @RequestParam Map<String, String> parameters) {
+    // Captured on the request thread, the security context is not available to the partner token thread pool.
     Authentication auth = SecurityContextHolder.getContext().getAuthentication();
     
     String grantType = parameters.get("grant_type");
@@ -73,25 +86,16 @@ public class ReciprocalAuthorizationEndpoint {
     
     OAuth2ProtectedResourceDetails resourceDetails = partner.toProtectedResourceDetails();
     
-    AuthorizationCodeAccessTokenProvider tokenProvider = new AuthorizationCodeAccessTokenProvider();
-    tokenProvider.setStateMandatory(false);
-    
-    OAuth2AccessToken accessToken = tokenProvider.obtainAccessToken(resourceDetails,
-        createAccessTokenRequest(authorizationCode));
-    
-    partnerTokenRepository.saveAccessToken(resourceDetails, auth, accessToken);
-  }
-  
-  /**
-   * Method to construct AccessTokenRequest.
-   *
-   * @param authorizationCode authorization code.
-   * @return AccessTokenRequest.
-   */
-  private AccessTokenRequest createAccessTokenRequest(String authorizationCode) {
-    AccessTokenRequest accessTokenRequest = new DefaultAccessTokenRequest();
-    accessTokenRequest.setAuthorizationCode(authorizationCode);
-    return accessTokenRequest;
+    return partnerTokenClient.obtainAccessToken(resourceDetails, authorizationCode)
+        .thenAccept(accessToken -> {
+          partnerTokenRepository.saveAccessToken(resourceDetails, auth, accessToken);
+          auditTrail.record(AuditEvent.builder()
+              .type(AuditEventType.PARTNER_TOKEN_ISSUED)
+              .partnerId(partnerId)
+              .userName(auth.getName())
+              .token(accessToken.getValue())
+              .build());
+        });
   }
   
 }
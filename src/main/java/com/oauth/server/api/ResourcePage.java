@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * A page of a list in the admin API. Pages hold 50 items unless asked otherwise, and at most 500.
+ *
+ * @author Varij Kapil
+ */
+@Value
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+public class ResourcePage<T> {
+  
+  static final String DEFAULT_SIZE = "50";
+  
+  static final int MAX_SIZE = 500;
+  
+  List<T> content;
+  
+  int page;
+  
+  int size;
+  
+  long totalElements;
+  
+  int totalPages;
+  
+  /**
+   * The page to list, in the order of {@code property}.
+   */
+  static Pageable pageable(int page, int size, String property) {
+    return PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_SIZE), Sort.by(property));
+  }
+  
+  static <E, T> ResourcePage<T> of(Page<E> page, Function<E, T> mapper) {
+    return new ResourcePage<>(page.getContent().stream().map(mapper).collect(Collectors.toList()),
+        page.getNumber(), page.getSize(), page.getTotalElements(), page.getTotalPages());
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oauth.server.database.dao.KeyedTokenStore;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Rest Controller exporting the access tokens of a client, or of a user of a client, as NDJSON.
+ *
+ * <p>
+ * Tokens are written as they are read from the token store, so an export takes constant memory whatever the number of
+ * tokens. Lines have the fields the bulk importer reads for access tokens: access_token, client_id, user_name, scopes,
+ * authorities, expires_at, token_type and refresh_token. The response is written on the request thread: the
+ * asynchronous request timeout would cut a long export short.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+@RestController
+@RequestMapping("/api/token/exports")
+public class TokenExportEndpoint {
+  
+  private static final String NDJSON = "application/x-ndjson";
+  
+  private final KeyedTokenStore tokenStore;
+  
+  private final ObjectMapper objectMapper = new ObjectMapper()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  
+  public TokenExportEndpoint(KeyedTokenStore tokenStore) {
+    this.tokenStore = tokenStore;
+  }
+  
+  /**
+   * Export the access tokens of a client, or of a user of the client.
+   */
+  @RequestMapping(method = RequestMethod.GET)
+  public void export(final @RequestParam("client_id") String clientId,
+      final @RequestParam(value = "user_name", required = false) String userName,
+      final HttpServletResponse response) throws IOException {
+    response.setContentType(NDJSON);
+    response.setCharacterEncoding("UTF-8");
+    
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+      generator.setRootValueSeparator(null);
+      long exported = tokenStore.forEachAccessToken(clientId, StringUtils.isEmpty(userName) ? null : userName,
+          accessToken -> {
+            try {
+              write(generator, accessToken.getToken(), accessToken.getAuthentication());
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+      log.info("Exported {} access tokens of client {}", exported, clientId);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+  
+  private static void write(JsonGenerator generator, OAuth2AccessToken token, OAuth2Authentication authentication)
+      throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("access_token", token.getValue());
+    generator.writeStringField("client_id", authentication.getOAuth2Request().getClientId());
+    if (!authentication.isClientOnly()) {
+      generator.writeStringField("user_name", authentication.getName());
+      generator.writeArrayFieldStart("authorities");
+      for (GrantedAuthority authority : authentication.getUserAuthentication().getAuthorities()) {
+        generator.writeString(authority.getAuthority());
+      }
+      generator.writeEndArray();
+    }
+    generator.writeArrayFieldStart("scopes");
+    for (String scope : token.getScope()) {
+      generator.writeString(scope);
+    }
+    generator.writeEndArray();
+    if (token.getExpiration() != null) {
+      generator.writeStringField("expires_at", token.getExpiration().toInstant().toString());
+    }
+    generator.writeStringField("token_type", token.getTokenType());
+    if (token.getRefreshToken() != null) {
+      generator.writeStringField("refresh_token", token.getRefreshToken().getValue());
+    }
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.oauth.server.authentication.RefreshTokenIndex;
+import com.oauth.server.database.dao.KeyedTokenStore;
+import com.oauth.server.database.modal.OAuthAccessToken;
+import com.oauth.server.event.TokenRevokedEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Builder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidRequestException;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Rest Controller for batch token introspection.
+ *
+ * <p>
+ * This endpoint is called by internal resource servers to validate many access tokens in one request. Tokens missing
+ * from the cache are resolved with a single query, and active tokens are cached for a short time.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@RestController
+public class TokenIntrospectionEndpoint {
+  
+  private static final IntrospectionResult INACTIVE = IntrospectionResult.builder().active(false).build();
+  
+  private static final String CLIENT_ONLY_USER_NAME = "#";
+  
+  private final KeyedTokenStore tokenService;
+  
+  private final int maxTokensPerRequest;
+  
+  private final Cache<String, IntrospectionResult> activeTokens;
+  
+  private final RefreshTokenIndex refreshTokenIndex = new RefreshTokenIndex();
+  
+  public TokenIntrospectionEndpoint(KeyedTokenStore tokenService,
+      @Value("${oauth.introspection.max-tokens-per-request:100}") int maxTokensPerRequest,
+      @Value("${oauth.introspection.cache-ttl-seconds:30}") long cacheTtlSeconds,
+      @Value("${oauth.introspection.cache-size:100000}") long cacheSize) {
+    this.tokenService = tokenService;
+    this.maxTokensPerRequest = maxTokensPerRequest;
+    this.activeTokens = CacheBuilder.newBuilder()
+        .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+        .maximumSize(cacheSize)
+        .removalListener((RemovalListener<String, IntrospectionResult>) this::onRemoval)
+        .build();
+  }
+  
+  /**
+   * Introspect the access tokens provided, one result per token in request order.
+   */
+  @RequestMapping(value = "/api/token/introspect", method = RequestMethod.POST)
+  public Map<String, List<IntrospectionResult>> introspect(final @RequestParam("token") List<String> tokens) {
+    if (tokens.size() > maxTokensPerRequest) {
+      throw new InvalidRequestException("At most " + maxTokensPerRequest + " tokens can be introspected at once");
+    }
+    
+    Map<String, IntrospectionResult> resultsByKey = new LinkedHashMap<>();
+    List<String> missingKeys = new ArrayList<>();
+    List<String> tokenKeys = new ArrayList<>(tokens.size());
+    long now = System.currentTimeMillis();
+    
+    for (String token : tokens) {
+      String tokenKey = tokenService.extractTokenKey(token);
+      tokenKeys.add(tokenKey);
+      
+      IntrospectionResult cached = activeTokens.getIfPresent(tokenKey);
+      if (cached != null) {
+        resultsByKey.put(tokenKey, cached.isActiveAt(now) ? cached : INACTIVE);
+      } else if (!resultsByKey.containsKey(tokenKey)) {
+        missingKeys.add(tokenKey);
+      }
+    }
+    
+    tokenService.readAccessTokensByKeys(missingKeys).forEach((tokenKey, accessToken) -> {
+      IntrospectionResult result = toIntrospectionResult(accessToken);
+      if (result.isActiveAt(now)) {
+        refreshTokenIndex.add(result.getRefreshTokenKey(), tokenKey);
+        activeTokens.put(tokenKey, result);
+        resultsByKey.put(tokenKey, result);
+      }
+    });
+    
+    List<IntrospectionResult> results = new ArrayList<>(tokenKeys.size());
+    for (String tokenKey : tokenKeys) {
+      results.add(resultsByKey.getOrDefault(tokenKey, INACTIVE));
+    }
+    
+    Map<String, List<IntrospectionResult>> response = new LinkedHashMap<>();
+    response.put("results", results);
+    return response;
+  }
+  
+  /**
+   * Drop cached results of revoked tokens, once the revocation is committed.
+   *
+   * @param event token revoked event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onTokenRevoked(TokenRevokedEvent event) {
+    if (event.getAccessTokenKey() != null) {
+      activeTokens.invalidate(event.getAccessTokenKey());
+    } else if (event.getRefreshTokenKey() != null) {
+      activeTokens.invalidateAll(refreshTokenIndex.removeAll(event.getRefreshTokenKey()));
+    } else {
+      activeTokens.asMap().values().removeIf(
+          cached -> (event.getClientId() == null || event.getClientId().equals(cached.getClientId()))
+              && (event.getUserName() == null || event.getUserName().equals(cached.getUserName())));
+    }
+  }
+  
+  /**
+   * Keep the index in step with the cache. A replaced entry is indexed again by the put replacing it.
+   */
+  private void onRemoval(RemovalNotification<String, IntrospectionResult> notification) {
+    if (notification.getCause() != RemovalCause.REPLACED && notification.getValue() != null) {
+      refreshTokenIndex.remove(notification.getValue().getRefreshTokenKey(), notification.getKey());
+    }
+  }
+  
+  private IntrospectionResult toIntrospectionResult(OAuthAccessToken accessToken) {
+    OAuth2AccessToken token = accessToken.getToken();
+    if (token == null) {
+      return INACTIVE;
+    }
+    
+    Set<String> scope = token.getScope();
+    return IntrospectionResult.builder()
+        .active(true)
+        .clientId(accessToken.getClientId())
+        .userName(CLIENT_ONLY_USER_NAME.equals(accessToken.getUserName()) ? null : accessToken.getUserName())
+        .scope(scope == null || scope.isEmpty() ? null : StringUtils.collectionToDelimitedString(scope, " "))
+        .expiresAt(token.getExpiration() == null ? null : TimeUnit.MILLISECONDS.toSeconds(token.getExpiration().getTime()))
+        .refreshTokenKey(accessToken.getRefreshToken())
+        .build();
+  }
+  
+  /**
+   * A compact introspection result, modeled after RFC 7662.
+   */
+  @lombok.Value
+  @Builder
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public static class IntrospectionResult {
+    
+    @JsonProperty("active")
+    boolean active;
+    
+    @JsonProperty("client_id")
+    String clientId;
+    
+    @JsonProperty("username")
+    String userName;
+    
+    @JsonProperty("scope")
+    String scope;
+    
+    @JsonProperty("exp")
+    Long expiresAt;
+    
+    @JsonIgnore
+    String refreshTokenKey;
+    
+    boolean isActiveAt(long epochMillis) {
+      return active && (expiresAt == null || TimeUnit.SECONDS.toMillis(expiresAt) > epochMillis);
+    }
+  }
+}
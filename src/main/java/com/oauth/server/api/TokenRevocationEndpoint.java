@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.api;
+
+import com.oauth.server.revocation.RevocationJob;
+import com.oauth.server.revocation.TokenRevocationService;
+import java.util.concurrent.RejectedExecutionException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Rest Controller for mass token revocation.
+ *
+ * <p>
+ * Revocations run in the background: a request is answered with 202 and the job, which can then be polled.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@RestController
+@RequestMapping("/api/token/revocations")
+public class TokenRevocationEndpoint {
+  
+  private final TokenRevocationService tokenRevocationService;
+  
+  private final WebResponseExceptionTranslator<OAuth2Exception> exceptionTranslator =
+      new DefaultWebResponseExceptionTranslator();
+  
+  public TokenRevocationEndpoint(TokenRevocationService tokenRevocationService) {
+    this.tokenRevocationService = tokenRevocationService;
+  }
+  
+  /**
+   * Revoke the tokens of a user, a client, a user of a client, or a partner.
+   */
+  @RequestMapping(method = RequestMethod.POST)
+  public ResponseEntity<RevocationJob> revoke(
+      final @RequestParam(value = "client_id", required = false) String clientId,
+      final @RequestParam(value = "user_name", required = false) String userName,
+      final @RequestParam(value = "partner_id", required = false) String partnerId) {
+    
+    RevocationJob job = StringUtils.isEmpty(partnerId)
+        ? tokenRevocationService.submit(StringUtils.isEmpty(clientId) ? null : clientId,
+            StringUtils.isEmpty(userName) ? null : userName)
+        : tokenRevocationService.submitPartner(partnerId, StringUtils.isEmpty(userName) ? null : userName);
+    
+    return ResponseEntity.accepted()
+        .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(job.getId()).toUri())
+        .body(job);
+  }
+  
+  /**
+   * Get the status of a revocation.
+   */
+  @RequestMapping(value = "/{id}", method = RequestMethod.GET)
+  public ResponseEntity<RevocationJob> getRevocation(final @PathVariable("id") String id) {
+    return tokenRevocationService.getJob(id)
+        .map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.notFound().build());
+  }
+  
+  @ExceptionHandler(OAuth2Exception.class)
+  public ResponseEntity<OAuth2Exception> handleException(OAuth2Exception e) throws Exception {
+    return exceptionTranslator.translate(e);
+  }
+  
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<Void> handleException(RejectedExecutionException e) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+  }
+}
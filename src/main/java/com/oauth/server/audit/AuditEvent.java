@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * An entry of the audit trail.
+ *
+ * <p>
+ * The token value is only held until the event is written: sinks store its key (see
+ * {@link com.oauth.server.database.dao.TokenKeys}), never the token itself.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Getter
+@Builder
+public class AuditEvent {
+  
+  private final AuditEventType type;
+  
+  @Builder.Default
+  private final long occurredAt = System.currentTimeMillis();
+  
+  private final String clientId;
+  
+  private final String userName;
+  
+  private final String partnerId;
+  
+  private final String token;
+  
+  private final String detail;
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+/**
+ * Token lifecycle events kept in the audit trail.
+ *
+ * @author Varij Kapil
+ */
+public enum AuditEventType {
+  ACCESS_TOKEN_ISSUED,
+  ACCESS_TOKEN_REFRESHED,
+  TOKENS_REVOKED,
+  CODE_ISSUED,
+  CODE_REDEEMED,
+  PARTNER_TOKEN_ISSUED,
+  PARTNER_TOKEN_REFRESHED,
+  PARTNER_TOKEN_REFRESH_FAILED
+}
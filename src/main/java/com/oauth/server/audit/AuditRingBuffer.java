@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer, for many producers and a single consumer.
+ *
+ * <p>
+ * Producers claim a sequence with a CAS on the head and then publish their element into its slot; the consumer takes
+ * elements in sequence order, stopping at the first slot not published yet, and frees slots by advancing the tail.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+class AuditRingBuffer<E> {
+  
+  private final AtomicReferenceArray<E> slots;
+  
+  private final int mask;
+  
+  private final AtomicLong head = new AtomicLong();
+  
+  private final AtomicLong tail = new AtomicLong();
+  
+  /**
+   * @param capacity capacity, rounded up to a power of two.
+   */
+  AuditRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+  
+  /**
+   * @param element element to add.
+   * @return false if the buffer is full.
+   */
+  boolean offer(E element) {
+    long sequence;
+    do {
+      sequence = head.get();
+      if (sequence - tail.get() >= slots.length()) {
+        return false;
+      }
+    } while (!head.compareAndSet(sequence, sequence + 1));
+    slots.lazySet((int) sequence & mask, element);
+    return true;
+  }
+  
+  /**
+   * Move the elements published so far, at most {@code maxElements} of them, to a list. Single consumer only.
+   *
+   * @return the number of elements moved.
+   */
+  int drainTo(List<E> target, int maxElements) {
+    long sequence = tail.get();
+    int drained = 0;
+    while (drained < maxElements) {
+      int index = (int) sequence & mask;
+      E element = slots.get(index);
+      if (element == null) {
+        break;
+      }
+      slots.lazySet(index, null);
+      target.add(element);
+      sequence++;
+      drained++;
+    }
+    tail.lazySet(sequence);
+    return drained;
+  }
+  
+  int size() {
+    return (int) Math.max(0, head.get() - tail.get());
+  }
+  
+  int capacity() {
+    return slots.length();
+  }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+import java.util.List;
+
+/**
+ * Durable destination of the audit trail, written to by a single thread in batches.
+ *
+ * @author Varij Kapil
+ */
+public interface AuditSink {
+  
+  /**
+   * Write a batch of events.
+   *
+   * @param events events in the order they were recorded.
+   */
+  void write(List<AuditEvent> events);
+}
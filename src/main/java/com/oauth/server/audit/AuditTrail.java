@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Asynchronous audit trail of the token lifecycle.
+ *
+ * <p>
+ * Recording an event only puts it into a lock-free ring buffer, once the current transaction (if any) commits. A
+ * single background thread drains the buffer and writes the events to the {@link AuditSink} in batches of up to
+ * {@code batchSize}, waiting {@code flushIntervalMillis} for more events when a batch is not full. When the sink falls
+ * behind and the buffer is full, events are dropped, or with the {@code BLOCK} policy the recording thread waits up to
+ * {@code offerTimeoutMillis} for room first. Recorded, dropped, written and failed events are counted in
+ * {@code oauth.audit.events}, tagged by outcome.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+@Component
+public class AuditTrail implements DisposableBean {
+  
+  public enum OverflowPolicy {
+    DROP, BLOCK
+  }
+  
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  
+  private final AuditSink sink;
+  
+  private final boolean enabled;
+  
+  private final int batchSize;
+  
+  private final long flushIntervalNanos;
+  
+  private final OverflowPolicy overflowPolicy;
+  
+  private final long offerTimeoutNanos;
+  
+  private final AuditRingBuffer<AuditEvent> buffer;
+  
+  private final Counter recorded;
+  private final Counter dropped;
+  private final Counter written;
+  private final Counter failed;
+  
+  private final Thread writer;
+  
+  private volatile boolean running = true;
+  
+  public AuditTrail(AuditSink sink, MeterRegistry meterRegistry,
+      @Value("${oauth.audit.enabled:true}") boolean enabled,
+      @Value("${oauth.audit.capacity:65536}") int capacity,
+      @Value("${oauth.audit.batch-size:500}") int batchSize,
+      @Value("${oauth.audit.flush-interval-millis:200}") long flushIntervalMillis,
+      @Value("${oauth.audit.overflow-policy:DROP}") OverflowPolicy overflowPolicy,
+      @Value("${oauth.audit.offer-timeout-millis:5}") long offerTimeoutMillis) {
+    this.sink = sink;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    this.overflowPolicy = overflowPolicy;
+    this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+    this.buffer = new AuditRingBuffer<>(capacity);
+    
+    this.recorded = outcome(meterRegistry, "recorded");
+    this.dropped = outcome(meterRegistry, "dropped");
+    this.written = outcome(meterRegistry, "written");
+    this.failed = outcome(meterRegistry, "failed");
+    Gauge.builder("oauth.audit.buffer.size", buffer, AuditRingBuffer::size)
+        .description("Audit events waiting to be written")
+        .register(meterRegistry);
+    
+    this.writer = new Thread(this::writeEvents, "audit-writer");
+    this.writer.setDaemon(true);
+    if (enabled) {
+      this.writer.start();
+    }
+  }
+  
+  /**
+   * Record an event, after the current transaction commits if there is one. Never blocks with the {@code DROP}
+   * policy.
+   *
+   * @param event event to record.
+   */
+  public void record(AuditEvent event) {
+    if (!enabled) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          offer(event);
+        }
+      });
+    } else {
+      offer(event);
+    }
+  }
+  
+  @Override
+  public void destroy() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(writer);
+    writer.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 5000);
+  }
+  
+  private void offer(AuditEvent event) {
+    if (buffer.offer(event) || (overflowPolicy == OverflowPolicy.BLOCK && offerUntilTimeout(event))) {
+      recorded.increment();
+    } else {
+      dropped.increment();
+    }
+  }
+  
+  private boolean offerUntilTimeout(AuditEvent event) {
+    long deadline = System.nanoTime() + offerTimeoutNanos;
+    while (System.nanoTime() < deadline) {
+      LockSupport.parkNanos(BLOCK_PARK_NANOS);
+      if (buffer.offer(event)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  private void writeEvents() {
+    List<AuditEvent> batch = new ArrayList<>(batchSize);
+    while (running || buffer.size() > 0) {
+      int drained = buffer.drainTo(batch, batchSize);
+      if (drained > 0) {
+        write(batch);
+        batch.clear();
+      }
+      if (drained < batchSize && running) {
+        LockSupport.parkNanos(this, flushIntervalNanos);
+      }
+    }
+  }
+  
+  private void write(List<AuditEvent> batch) {
+    try {
+      sink.write(batch);
+      written.increment(batch.size());
+    } catch (Exception e) {
+      failed.increment(batch.size());
+      log.error("Failed to write {} audit events", batch.size(), e);
+    }
+  }
+  
+  private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("oauth.audit.events")
+        .tag("outcome", outcome)
+        .description("Audit events by outcome")
+        .register(meterRegistry);
+  }
+}
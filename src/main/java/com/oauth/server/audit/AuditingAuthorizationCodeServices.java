@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
+
+/**
+ * {@link AuthorizationCodeServices} recording issued and redeemed authorization codes in the {@link AuditTrail},
+ * whichever code store is in use.
+ *
+ * @author Varij Kapil
+ */
+public class AuditingAuthorizationCodeServices implements AuthorizationCodeServices {
+  
+  private final AuthorizationCodeServices delegate;
+  
+  private final AuditTrail auditTrail;
+  
+  public AuditingAuthorizationCodeServices(AuthorizationCodeServices delegate, AuditTrail auditTrail) {
+    this.delegate = delegate;
+    this.auditTrail = auditTrail;
+  }
+  
+  @Override
+  public String createAuthorizationCode(OAuth2Authentication authentication) {
+    String code = delegate.createAuthorizationCode(authentication);
+    auditTrail.record(event(AuditEventType.CODE_ISSUED, authentication, code));
+    return code;
+  }
+  
+  @Override
+  public OAuth2Authentication consumeAuthorizationCode(String code) throws InvalidGrantException {
+    OAuth2Authentication authentication = delegate.consumeAuthorizationCode(code);
+    auditTrail.record(event(AuditEventType.CODE_REDEEMED, authentication, code));
+    return authentication;
+  }
+  
+  private static AuditEvent event(AuditEventType type, OAuth2Authentication authentication, String code) {
+    return AuditEvent.builder()
+        .type(type)
+        .clientId(authentication.getOAuth2Request().getClientId())
+        .userName(authentication.getName())
+        .token(code)
+        .build();
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+
+/**
+ * Records the access tokens issued and refreshed by {@link DefaultTokenServices} in the {@link AuditTrail}, whichever
+ * token store is in use. The token services call it for every new access token with its authentication at hand, so no
+ * extra read is needed; the event is only recorded once the token is committed.
+ *
+ * @author Varij Kapil
+ */
+public class AuditingTokenEnhancer implements TokenEnhancer {
+  
+  private final AuditTrail auditTrail;
+  
+  public AuditingTokenEnhancer(AuditTrail auditTrail) {
+    this.auditTrail = auditTrail;
+  }
+  
+  @Override
+  public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+    OAuth2Request request = authentication.getOAuth2Request();
+    auditTrail.record(AuditEvent.builder()
+        .type(request.isRefresh() ? AuditEventType.ACCESS_TOKEN_REFRESHED : AuditEventType.ACCESS_TOKEN_ISSUED)
+        .clientId(request.getClientId())
+        .userName(authentication.isClientOnly() ? null : authentication.getName())
+        .token(accessToken.getValue())
+        .detail(request.isRefresh() ? null : request.getGrantType())
+        .build());
+    return accessToken;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.audit;
+
+import com.oauth.server.database.dao.TokenKeys;
+import java.sql.Timestamp;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Appends the audit trail to the {@code oauth_audit_event} table, one JDBC batch per batch of events.
+ *
+ * @author Varij Kapil
+ */
+@Component
+public class JdbcAuditSink implements AuditSink {
+  
+  private static final String INSERT_EVENT = "INSERT INTO oauth_audit_event "
+      + "(occurred_at, event_type, client_id, user_name, partner_id, token_key, detail) VALUES (?, ?, ?, ?, ?, ?, ?)";
+  
+  private final JdbcTemplate jdbcTemplate;
+  
+  public JdbcAuditSink(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+  
+  @Override
+  public void write(List<AuditEvent> events) {
+    jdbcTemplate.batchUpdate(INSERT_EVENT, events, events.size(), (ps, event) -> {
+      ps.setTimestamp(1, new Timestamp(event.getOccurredAt()));
+      ps.setString(2, event.getType().name());
+      ps.setString(3, event.getClientId());
+      ps.setString(4, event.getUserName());
+      ps.setString(5, event.getPartnerId());
+      ps.setString(6, TokenKeys.extractTokenKey(event.getToken()));
+      ps.setString(7, event.getDetail());
+    });
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.oauth.server.database.dao.KeyedTokenStore;
+import com.oauth.server.database.modal.OAuthAccessToken;
+import com.oauth.server.event.ClientChangedEvent;
+import com.oauth.server.event.TokenRevokedEvent;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * A {@link ResourceServerTokenServices} that caches the validated {@link OAuth2Authentication} of each access token.
+ *
+ * <p>
+ * On a cache miss the access token row is read once, for both the token and its authentication, and validated the same
+ * way as {@link DefaultTokenServices#loadAuthentication(String)}. The authentication is then served from memory until
+ * the token expires, the cache TTL elapses, or a {@link TokenRevokedEvent} removes it. The removal of the access tokens
+ * of a refresh token evicts the entries found in a {@link RefreshTokenIndex}, without scanning the cache.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class CachingResourceServerTokenServices implements ResourceServerTokenServices {
+  
+  private final KeyedTokenStore tokenStore;
+  
+  private final ClientDetailsService clientDetailsService;
+  
+  private final long cacheTtlMillis;
+  
+  private final Cache<String, CachedAuthentication> authentications;
+  
+  private final RefreshTokenIndex refreshTokenIndex = new RefreshTokenIndex();
+  
+  public CachingResourceServerTokenServices(KeyedTokenStore tokenStore, ClientDetailsService clientDetailsService,
+      long cacheTtlSeconds, long cacheSize) {
+    this.tokenStore = tokenStore;
+    this.clientDetailsService = clientDetailsService;
+    this.cacheTtlMillis = TimeUnit.SECONDS.toMillis(cacheTtlSeconds);
+    this.authentications = CacheBuilder.newBuilder()
+        .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+        .maximumSize(cacheSize)
+        .removalListener((RemovalListener<String, CachedAuthentication>) this::onRemoval)
+        .build();
+  }
+  
+  @Override
+  public OAuth2Authentication loadAuthentication(String accessTokenValue)
+      throws AuthenticationException, InvalidTokenException {
+    String tokenKey = tokenStore.extractTokenKey(accessTokenValue);
+    long now = System.currentTimeMillis();
+    
+    CachedAuthentication cached = authentications.getIfPresent(tokenKey);
+    if (cached != null && cached.validUntil > now) {
+      return cached.authentication;
+    }
+    
+    OAuthAccessToken accessToken = tokenStore.readAccessTokenByKey(tokenKey);
+    if (accessToken == null || accessToken.getToken() == null) {
+      authentications.invalidate(tokenKey);
+      throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+    }
+    
+    OAuth2AccessToken token = accessToken.getToken();
+    if (token.isExpired()) {
+      authentications.invalidate(tokenKey);
+      tokenStore.removeAccessToken(token);
+      throw new InvalidTokenException("Access token expired: " + accessTokenValue);
+    }
+    
+    OAuth2Authentication authentication = accessToken.getAuthentication();
+    if (authentication == null) {
+      throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+    }
+    
+    String clientId = authentication.getOAuth2Request().getClientId();
+    try {
+      clientDetailsService.loadClientByClientId(clientId);
+    } catch (ClientRegistrationException e) {
+      throw new InvalidTokenException("Client not valid: " + clientId, e);
+    }
+    
+    long validUntil = now + cacheTtlMillis;
+    if (token.getExpiration() != null) {
+      validUntil = Math.min(validUntil, token.getExpiration().getTime());
+    }
+    refreshTokenIndex.add(accessToken.getRefreshToken(), tokenKey);
+    authentications.put(tokenKey, new CachedAuthentication(authentication, validUntil, accessToken.getRefreshToken(),
+        clientId, authentication.isClientOnly() ? null : authentication.getName()));
+    
+    return authentication;
+  }
+  
+  @Override
+  public OAuth2AccessToken readAccessToken(String accessToken) {
+    return tokenStore.readAccessToken(accessToken);
+  }
+  
+  /**
+   * Drop the cached authentications of revoked tokens, once the revocation is committed.
+   *
+   * @param event token revoked event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onTokenRevoked(TokenRevokedEvent event) {
+    if (event.getAccessTokenKey() != null) {
+      authentications.invalidate(event.getAccessTokenKey());
+    } else if (event.getRefreshTokenKey() != null) {
+      authentications.invalidateAll(refreshTokenIndex.removeAll(event.getRefreshTokenKey()));
+    } else {
+      invalidateIf(cached -> (event.getClientId() == null || event.getClientId().equals(cached.clientId))
+          && (event.getUserName() == null || StringUtils.equals(event.getUserName(), cached.userName)));
+    }
+  }
+  
+  /**
+   * Drop the cached authentications of a changed client, whose scopes or validity may have changed.
+   *
+   * @param event client changed event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onClientChanged(ClientChangedEvent event) {
+    if (event.getClientId() == null) {
+      authentications.invalidateAll();
+    } else {
+      invalidateIf(cached -> event.getClientId().equals(cached.clientId));
+    }
+  }
+  
+  /**
+   * Keep the index in step with the cache. A replaced entry is indexed again by the put replacing it.
+   */
+  private void onRemoval(RemovalNotification<String, CachedAuthentication> notification) {
+    if (notification.getCause() != RemovalCause.REPLACED && notification.getValue() != null) {
+      refreshTokenIndex.remove(notification.getValue().refreshTokenKey, notification.getKey());
+    }
+  }
+  
+  private void invalidateIf(Predicate<CachedAuthentication> predicate) {
+    authentications.asMap().values().removeIf(predicate);
+  }
+  
+  @AllArgsConstructor
+  private static class CachedAuthentication {
+    
+    private final OAuth2Authentication authentication;
+    
+    private final long validUntil;
+    
+    private final String refreshTokenKey;
+    
+    private final String clientId;
+    
+    private final String userName;
+  }
+}
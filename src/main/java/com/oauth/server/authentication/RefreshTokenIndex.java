@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.authentication;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The keys of the cached access tokens issued with each refresh token, so that the removal of the access tokens of a
+ * refresh token, which every refresh_token grant does, evicts those entries only instead of scanning or clearing the
+ * cache. Entries are added when an access token is cached, and removed when it leaves the cache.
+ *
+ * @author Varij Kapil
+ */
+public class RefreshTokenIndex {
+  
+  private final ConcurrentMap<String, Set<String>> accessTokenKeys = new ConcurrentHashMap<>();
+  
+  /**
+   * Record a cached access token.
+   *
+   * @param refreshTokenKey key of its refresh token, nothing is recorded when null.
+   * @param accessTokenKey key of the access token.
+   */
+  public void add(String refreshTokenKey, String accessTokenKey) {
+    if (refreshTokenKey == null) {
+      return;
+    }
+    accessTokenKeys.compute(refreshTokenKey, (key, keys) -> {
+      Set<String> updated = keys != null ? keys : ConcurrentHashMap.newKeySet();
+      updated.add(accessTokenKey);
+      return updated;
+    });
+  }
+  
+  /**
+   * Forget an access token that left the cache.
+   */
+  public void remove(String refreshTokenKey, String accessTokenKey) {
+    if (refreshTokenKey == null) {
+      return;
+    }
+    accessTokenKeys.computeIfPresent(refreshTokenKey, (key, keys) -> {
+      keys.remove(accessTokenKey);
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+  
+  /**
+   * Forget a refresh token.
+   *
+   * @return the keys of the cached access tokens issued with it.
+   */
+  public Set<String> removeAll(String refreshTokenKey) {
+    Set<String> keys = accessTokenKeys.remove(refreshTokenKey);
+    return keys != null ? keys : Collections.emptySet();
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.bulkimport;
+
+import java.nio.file.Path;
+import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+/**
+ * Runs the configured import once the application is started, then stops the application when asked to.
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class BulkImportRunner {
+  
+  private final BulkImporter importer;
+  
+  private final Map<ImportTable, Path> sources;
+  
+  private final boolean exitWhenDone;
+  
+  public BulkImportRunner(BulkImporter importer, Map<ImportTable, Path> sources, boolean exitWhenDone) {
+    this.importer = importer;
+    this.sources = sources;
+    this.exitWhenDone = exitWhenDone;
+  }
+  
+  @EventListener(ApplicationReadyEvent.class)
+  public void applicationReady(ApplicationReadyEvent event) throws Exception {
+    int exitCode = 0;
+    try {
+      importer.importAll(sources);
+    } catch (Exception e) {
+      if (!exitWhenDone) {
+        throw e;
+      }
+      log.error("Import failed, run it again to resume after the last checkpoint", e);
+      exitCode = 1;
+    }
+    if (exitWhenDone) {
+      int code = exitCode;
+      System.exit(SpringApplication.exit(event.getApplicationContext(), () -> code));
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.bulkimport;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Imports the clients and tokens exported from another OAuth server, bypassing the DAOs.
+ *
+ * <p>
+ * The source file of a table is read in batches of {@code batchSize} records, which {@code workers} threads map to
+ * rows in parallel with {@link ImportRowMapper}, hashing keys and secrets and serializing tokens. A single
+ * {@link CopyWriter} writes the batches in file order and commits them one by one, each followed by its
+ * {@link ImportCheckpoint}: an interrupted import, run again, resumes after the last committed batch. Records that
+ * cannot be mapped are rejected and logged, rows already present are skipped, so running an import twice is harmless.
+ * </p>
+ *
+ * <p>
+ * Rows are written to {@code spring.datasource} directly, so the caches of the nodes running do not know of them
+ * until they expire.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class BulkImporter {
+  
+  /**
+   * Rejected records logged per batch.
+   */
+  private static final int MAX_LOGGED_REJECTIONS = 100;
+  
+  private final DataSource dataSource;
+  
+  private final ImportRowMapper rowMapper;
+  
+  private final int workers;
+  
+  private final int batchSize;
+  
+  private final Path checkpointDirectory;
+  
+  public BulkImporter(DataSource dataSource, ImportRowMapper rowMapper, int workers, int batchSize,
+      Path checkpointDirectory) {
+    this.dataSource = dataSource;
+    this.rowMapper = rowMapper;
+    this.workers = workers;
+    this.batchSize = batchSize;
+    this.checkpointDirectory = checkpointDirectory;
+  }
+  
+  /**
+   * Import the tables given a source file, in the order of {@link ImportTable}.
+   */
+  public void importAll(Map<ImportTable, Path> sources) throws IOException, SQLException, InterruptedException {
+    for (ImportTable table : ImportTable.values()) {
+      if (sources.containsKey(table)) {
+        importTable(table, sources.get(table));
+      }
+    }
+  }
+  
+  /**
+   * Import a table from its source file, resuming from its checkpoint.
+   *
+   * @return the checkpoint once the whole file is imported.
+   */
+  public ImportCheckpoint importTable(ImportTable table, Path source)
+      throws IOException, SQLException, InterruptedException {
+    ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointDirectory, table, source);
+    if (checkpoint.getRecords() > 0) {
+      log.info("Resuming the import of {} from {} after record {}", table, source, checkpoint.getRecords());
+    } else {
+      log.info("Importing {} from {}", table, source);
+    }
+    
+    ExecutorService executor = Executors.newFixedThreadPool(workers,
+        new ThreadFactoryBuilder().setNameFormat("bulk-import-%d").setDaemon(true).build());
+    Deque<Future<MappedBatch>> pending = new ArrayDeque<>();
+    try (ImportRecordReader reader = ImportRecordReader.open(source);
+        CopyWriter writer = new CopyWriter(dataSource)) {
+      reader.skip(checkpoint.getRecords());
+      
+      long position = checkpoint.getRecords();
+      boolean endOfFile = false;
+      while (!endOfFile || !pending.isEmpty()) {
+        if (!endOfFile) {
+          List<Map<String, String>> records = reader.read(batchSize);
+          endOfFile = records.isEmpty();
+          if (!endOfFile) {
+            long first = position + 1;
+            position += records.size();
+            pending.add(executor.submit(() -> map(table, records, first)));
+          }
+        }
+        // Keep the workers busy while the writer waits for the oldest batch.
+        if (pending.size() > workers || endOfFile && !pending.isEmpty()) {
+          MappedBatch batch = await(pending.poll());
+          int inserted = writer.write(table, batch.getRows());
+          checkpoint.save(batch.getFirstRecord() - 1 + batch.getRecords(), inserted,
+              batch.getRows().size() - inserted, batch.getRecords() - batch.getRows().size());
+          log.debug("Imported {} records of {}, {} rows inserted", checkpoint.getRecords(), table,
+              checkpoint.getImported());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    
+    log.info("Imported {} from {}: {} records, {} rows inserted, {} already present, {} rejected", table, source,
+        checkpoint.getRecords(), checkpoint.getImported(), checkpoint.getSkipped(), checkpoint.getRejected());
+    return checkpoint;
+  }
+  
+  private MappedBatch map(ImportTable table, List<Map<String, String>> records, long firstRecord) {
+    List<Object[]> rows = new ArrayList<>(records.size());
+    int rejected = 0;
+    for (int i = 0; i < records.size(); i++) {
+      try {
+        rows.add(rowMapper.map(table, records.get(i)));
+      } catch (RuntimeException e) {
+        if (++rejected <= MAX_LOGGED_REJECTIONS) {
+          log.warn("Rejected record {} of {}: {}", firstRecord + i, table, e.getMessage());
+        }
+      }
+    }
+    return new MappedBatch(firstRecord, records.size(), rows);
+  }
+  
+  private static MappedBatch await(Future<MappedBatch> batch) throws InterruptedException {
+    try {
+      return batch.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to map a batch of records", e.getCause());
+    }
+  }
+  
+  @Value
+  private static class MappedBatch {
+    
+    long firstRecord;
+    
+    int records;
+    
+    List<Object[]> rows;
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.bulkimport;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+
+/**
+ * Writes batches of rows to their table on a connection of its own, one transaction per batch, skipping rows whose
+ * key is already in the table or earlier in the batch.
+ *
+ * <p>
+ * On PostgreSQL, a batch is streamed with {@code COPY} into a temporary staging table, then moved to the table with a
+ * single {@code INSERT ... SELECT}. Other databases, such as the H2 database of the tests, get a batch of inserts.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class CopyWriter implements AutoCloseable {
+  
+  private static final String ID = "nextval('hibernate_sequence'), CURRENT_TIMESTAMP, CURRENT_TIMESTAMP";
+  
+  private final Connection connection;
+  
+  private final boolean postgres;
+  
+  private final Set<ImportTable> stagingTables = EnumSet.noneOf(ImportTable.class);
+  
+  public CopyWriter(DataSource dataSource) throws SQLException {
+    this.connection = dataSource.getConnection();
+    try {
+      this.postgres = connection.isWrapperFor(PGConnection.class);
+      connection.setAutoCommit(false);
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+  }
+  
+  /**
+   * Write and commit a batch.
+   *
+   * @return the number of rows inserted, the others were already present.
+   */
+  public int write(ImportTable table, List<Object[]> rows) throws SQLException, IOException {
+    if (rows.isEmpty()) {
+      return 0;
+    }
+    try {
+      int inserted = postgres ? copy(table, rows) : insert(table, rows);
+      connection.commit();
+      return inserted;
+    } catch (SQLException | IOException | RuntimeException e) {
+      // Rolls back the creation of the staging tables too.
+      stagingTables.clear();
+      connection.rollback();
+      throw e;
+    }
+  }
+  
+  private int copy(ImportTable table, List<Object[]> rows) throws SQLException, IOException {
+    String columns = String.join(", ", table.getColumns());
+    String staging = "import_" + table.getTableName();
+    if (stagingTables.add(table)) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("CREATE TEMPORARY TABLE IF NOT EXISTS " + staging + " ON COMMIT DELETE ROWS AS SELECT "
+            + columns + " FROM " + table.getTableName() + " WITH NO DATA");
+      }
+    }
+    
+    connection.unwrap(PGConnection.class).getCopyAPI()
+        .copyIn("COPY " + staging + " (" + columns + ") FROM STDIN WITH (FORMAT csv)", new StringReader(csv(rows)));
+    
+    String key = table.getKeyColumn();
+    try (Statement statement = connection.createStatement()) {
+      return statement.executeUpdate("INSERT INTO " + table.getTableName() + " (id, created_at, updated_at, "
+          + columns + ") SELECT " + ID + ", " + columns + " FROM (SELECT DISTINCT ON (" + key + ") " + columns
+          + " FROM " + staging + ") staged WHERE NOT EXISTS (SELECT 1 FROM " + table.getTableName() + " existing"
+          + " WHERE existing." + key + " = staged." + key + ")");
+    }
+  }
+  
+  /**
+   * Rows as {@code COPY} reads them in CSV format, one line each.
+   */
+  static String csv(List<Object[]> rows) {
+    StringBuilder csv = new StringBuilder();
+    for (Object[] row : rows) {
+      for (int i = 0; i < row.length; i++) {
+        if (i > 0) {
+          csv.append(',');
+        }
+        appendCsv(csv, row[i]);
+      }
+      csv.append('\n');
+    }
+    return csv.toString();
+  }
+  
+  /**
+   * A CSV field as {@code COPY} reads it: null unquoted and empty, anything else quoted.
+   */
+  private static void appendCsv(StringBuilder csv, Object value) {
+    if (value == null) {
+      return;
+    }
+    csv.append('"');
+    String text = value.toString();
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"') {
+        csv.append('"');
+      }
+      csv.append(c);
+    }
+    csv.append('"');
+  }
+  
+  private int insert(ImportTable table, List<Object[]> rows) throws SQLException {
+    List<String> columns = table.getColumns();
+    String parameters = String.join(", ", Collections.nCopies(columns.size(), "?"));
+    String sql = "INSERT INTO " + table.getTableName() + " (id, created_at, updated_at, " + String.join(", ", columns)
+        + ") SELECT " + ID + ", " + parameters + " WHERE NOT EXISTS (SELECT 1 FROM " + table.getTableName()
+        + " WHERE " + table.getKeyColumn() + " = ?)";
+    
+    int keyIndex = table.keyIndex();
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (Object[] row : rows) {
+        for (int i = 0; i < row.length; i++) {
+          statement.setObject(i + 1, row[i]);
+        }
+        statement.setObject(row.length + 1, row[keyIndex]);
+        statement.addBatch();
+      }
+      int inserted = 0;
+      for (int count : statement.executeBatch()) {
+        inserted += Math.max(count, 0);
+      }
+      return inserted;
+    }
+  }
+  
+  @Override
+  public void close() throws SQLException {
+    connection.close();
+  }
+}
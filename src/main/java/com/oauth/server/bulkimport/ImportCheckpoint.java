@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.bulkimport;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import lombok.Getter;
+
+/**
+ * The progress of the import of a table, saved after every committed batch as {@code <table>.checkpoint} in the
+ * checkpoint directory: the source file, the number of its records done, and how many of them were imported, skipped
+ * as already present, or rejected. An interrupted import resumes after the records done.
+ *
+ * @author Varij Kapil
+ */
+@Getter
+public class ImportCheckpoint {
+  
+  private final Path path;
+  
+  private final String source;
+  
+  private long records;
+  
+  private long imported;
+  
+  private long skipped;
+  
+  private long rejected;
+  
+  private ImportCheckpoint(Path path, String source) {
+    this.path = path;
+    this.source = source;
+  }
+  
+  /**
+   * The checkpoint of a table, empty when the import of the table has not started.
+   *
+   * @throws IllegalStateException when the checkpoint is of another source file.
+   */
+  public static ImportCheckpoint load(Path directory, ImportTable table, Path source) throws IOException {
+    String sourceName = source.toAbsolutePath().normalize().toString();
+    ImportCheckpoint checkpoint = new ImportCheckpoint(
+        directory.resolve(table.name().toLowerCase() + ".checkpoint"), sourceName);
+    if (!Files.exists(checkpoint.path)) {
+      return checkpoint;
+    }
+    
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(checkpoint.path, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    if (!sourceName.equals(properties.getProperty("source"))) {
+      throw new IllegalStateException("Checkpoint " + checkpoint.path + " is of " + properties.getProperty("source")
+          + ", remove it to import " + sourceName);
+    }
+    checkpoint.records = Long.parseLong(properties.getProperty("records"));
+    checkpoint.imported = Long.parseLong(properties.getProperty("imported"));
+    checkpoint.skipped = Long.parseLong(properties.getProperty("skipped"));
+    checkpoint.rejected = Long.parseLong(properties.getProperty("rejected"));
+    return checkpoint;
+  }
+  
+  /**
+   * Record a committed batch, replacing the saved checkpoint atomically.
+   *
+   * @param records the number of records of the source done with the batch.
+   */
+  public void save(long records, long imported, long skipped, long rejected) throws IOException {
+    this.records = records;
+    this.imported += imported;
+    this.skipped += skipped;
+    this.rejected += rejected;
+    
+    Properties properties = new Properties();
+    properties.setProperty("source", source);
+    properties.setProperty("records", Long.toString(this.records));
+    properties.setProperty("imported", Long.toString(this.imported));
+    properties.setProperty("skipped", Long.toString(this.skipped));
+    properties.setProperty("rejected", Long.toString(this.rejected));
+    
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+      properties.store(writer, null);
+    }
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.bulkimport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Reads the records of an export, one map of field name to value per record.
+ *
+ * <p>
+ * Files ending in {@code .csv} are RFC 4180 CSV with a header row naming the fields; quoted fields may span lines.
+ * Other files are NDJSON, one JSON object per line: arrays are read as their elements separated by commas, blank
+ * lines are ignored. Empty values are read as null.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class ImportRecordReader implements Closeable {
+  
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  
+  private final BufferedReader reader;
+  
+  private final boolean csv;
+  
+  private List<String> header;
+  
+  private long recordNumber;
+  
+  private ImportRecordReader(BufferedReader reader, boolean csv) {
+    this.reader = reader;
+    this.csv = csv;
+  }
+  
+  public static ImportRecordReader open(Path file) throws IOException {
+    return new ImportRecordReader(Files.newBufferedReader(file, StandardCharsets.UTF_8),
+        file.getFileName().toString().toLowerCase().endsWith(".csv"));
+  }
+  
+  /**
+   * Skip records already imported.
+   */
+  public void skip(long records) throws IOException {
+    while (recordNumber < records && next() != null) {
+      // Skipped.
+    }
+  }
+  
+  /**
+   * Read up to {@code count} records.
+   *
+   * @return the records read, none at the end of the file.
+   * @throws IOException when the file cannot be read, or a record cannot be parsed.
+   */
+  public List<Map<String, String>> read(int count) throws IOException {
+    List<Map<String, String>> records = new ArrayList<>(count);
+    Map<String, String> record;
+    while (records.size() < count && (record = next()) != null) {
+      records.add(record);
+    }
+    return records;
+  }
+  
+  private Map<String, String> next() throws IOException {
+    Map<String, String> record = csv ? nextCsv() : nextJson();
+    if (record != null) {
+      recordNumber++;
+    }
+    return record;
+  }
+  
+  private Map<String, String> nextJson() throws IOException {
+    String line;
+    do {
+      line = reader.readLine();
+      if (line == null) {
+        return null;
+      }
+    } while (line.trim().isEmpty());
+    
+    JsonNode node;
+    try {
+      node = OBJECT_MAPPER.readTree(line);
+    } catch (JsonProcessingException e) {
+      throw new IOException("Record " + (recordNumber + 1) + " is not valid JSON: " + e.getOriginalMessage(), e);
+    }
+    if (!node.isObject()) {
+      throw new IOException("Record " + (recordNumber + 1) + " is not a JSON object");
+    }
+    
+    Map<String, String> record = new HashMap<>();
+    Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      record.put(field.getKey(), text(field.getValue()));
+    }
+    return record;
+  }
+  
+  private static String text(JsonNode value) {
+    if (value.isNull()) {
+      return null;
+    }
+    if (value.isArray()) {
+      StringJoiner elements = new StringJoiner(",");
+      value.forEach(element -> elements.add(element.asText()));
+      return emptyToNull(elements.toString());
+    }
+    return emptyToNull(value.isValueNode() ? value.asText() : value.toString());
+  }
+  
+  private Map<String, String> nextCsv() throws IOException {
+    if (header == null) {
+      header = readCsvRow();
+      if (header == null) {
+        return null;
+      }
+    }
+    List<String> row;
+    do {
+      row = readCsvRow();
+      if (row == null) {
+        return null;
+      }
+    } while (row.size() == 1 && row.get(0) == null);
+    
+    if (row.size() != header.size()) {
+      throw new IOException("Record " + (recordNumber + 1) + " has " + row.size() + " fields, the header "
+          + header.size());
+    }
+    Map<String, String> record = new HashMap<>();
+    for (int i = 0; i < row.size(); i++) {
+      record.put(header.get(i), row.get(i));
+    }
+    return record;
+  }
+  
+  /**
+   * The fields of the next CSV row, or null at the end of the file.
+   */
+  private List<String> readCsvRow() throws IOException {
+    int c = reader.read();
+    if (c == -1) {
+      return null;
+    }
+    
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    while (true) {
+      if (quoted) {
+        if (c == -1) {
+          throw new IOException("Record " + (recordNumber + 1) + " ends within a quoted field");
+        }
+        if (c == '"') {
+          reader.mark(1);
+          if (reader.read() != '"') {
+            reader.reset();
+            quoted = false;
+          } else {
+            field.append('"');
+          }
+        } else {
+          field.append((char) c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(emptyToNull(field.toString()));
+        field.setLength(0);
+      } else if (c == '\n' || c == -1) {
+        break;
+      } else if (c != '\r') {
+        field.append((char) c);
+      }
+      c = reader.read();
+    }
+    fields.add(emptyToNull(field.toString()));
+    return fields;
+  }
+  
+  private static String emptyToNull(String value) {
+    return value.isEmpty() ? null : value;
+  }
+  
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
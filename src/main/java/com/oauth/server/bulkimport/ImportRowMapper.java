@@ -0,0 +1,273 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.bulkimport;
+
+import static com.oauth.server.database.dao.TokenKeys.extractTokenKey;
+
+import com.oauth.server.authentication.UserIDAuthenticationToken;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.modal.OAuth2AccessTokenConverter;
+import com.oauth.server.database.modal.OAuth2AuthenticationConverter;
+import com.oauth.server.database.modal.OAuth2RefreshTokenConverter;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.database.modal.OAuthRefreshToken;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.client.token.ClientKeyGenerator;
+import org.springframework.security.oauth2.client.token.DefaultClientKeyGenerator;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+/**
+ * Turns exported records into the column values of their {@link ImportTable}, as the DAOs would store them: token
+ * keys and authentication keys hashed, tokens and authentications serialized with the entity converters, and client
+ * secrets hashed with the password encoder unless already BCrypt hashes. Safe for concurrent use by the import
+ * workers.
+ *
+ * <p>
+ * Record fields, lists separated by commas or spaces, times as ISO-8601 instants or epoch seconds:
+ * </p>
+ * <ul>
+ * <li>clients: client_id, client_secret, scopes, authorized_grant_types, web_server_redirect_uri, authorities,
+ * access_token_validity, refresh_token_validity, autoapprove, rate_limit_per_second, rate_limit_burst.</li>
+ * <li>access tokens: access_token, client_id, user_name, scopes, authorities, expires_at, token_type,
+ * refresh_token.</li>
+ * <li>refresh tokens: refresh_token, client_id, user_name, scopes, authorities, expires_at.</li>
+ * <li>partner tokens: partner_id, user_name, access_token, refresh_token, token_type, scopes, expires_at.</li>
+ * </ul>
+ * <p>
+ * Tokens without user_name were issued to the client itself. Scopes default to those of the client.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class ImportRowMapper {
+  
+  private static final Pattern BCRYPT = Pattern.compile("\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+  
+  private static final Pattern LIST_SEPARATOR = Pattern.compile("[,\\s]+");
+  
+  private final ClientDetailsService clientDetailsService;
+  
+  private final DynamoDBPartnerDetailsDAO partnerDetailsService;
+  
+  private final PasswordEncoder passwordEncoder;
+  
+  private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+  
+  private final ClientKeyGenerator clientKeyGenerator = new DefaultClientKeyGenerator();
+  
+  private final OAuth2AccessTokenConverter accessTokenConverter = new OAuth2AccessTokenConverter();
+  
+  private final OAuth2RefreshTokenConverter refreshTokenConverter = new OAuth2RefreshTokenConverter();
+  
+  private final OAuth2AuthenticationConverter authenticationConverter = new OAuth2AuthenticationConverter();
+  
+  private final ConcurrentMap<String, ClientDetails> clients = new ConcurrentHashMap<>();
+  
+  private final ConcurrentMap<String, OAuth2ProtectedResourceDetails> partners = new ConcurrentHashMap<>();
+  
+  public ImportRowMapper(ClientDetailsService clientDetailsService, DynamoDBPartnerDetailsDAO partnerDetailsService,
+      PasswordEncoder passwordEncoder) {
+    this.clientDetailsService = clientDetailsService;
+    this.partnerDetailsService = partnerDetailsService;
+    this.passwordEncoder = passwordEncoder;
+  }
+  
+  /**
+   * The column values of a record, in the order of {@link ImportTable#getColumns()}.
+   *
+   * @throws RuntimeException when the record is invalid, or refers to an unknown client or partner.
+   */
+  public Object[] map(ImportTable table, Map<String, String> record) {
+    switch (table) {
+      case CLIENTS:
+        return client(record);
+      case ACCESS_TOKENS:
+        return accessToken(record);
+      case REFRESH_TOKENS:
+        return refreshToken(record);
+      case PARTNER_TOKENS:
+        return partnerToken(record);
+      default:
+        throw new IllegalArgumentException("Unknown table " + table);
+    }
+  }
+  
+  private Object[] client(Map<String, String> record) {
+    String clientSecret = record.get("client_secret");
+    if (clientSecret != null && !BCRYPT.matcher(clientSecret).matches()) {
+      clientSecret = passwordEncoder.encode(clientSecret);
+    }
+    return new Object[] {
+        required(record, "client_id"),
+        clientSecret,
+        commaDelimited(record.get("scopes")),
+        commaDelimited(record.get("authorized_grant_types")),
+        commaDelimited(record.get("web_server_redirect_uri")),
+        commaDelimited(record.get("authorities")),
+        integer(record.get("access_token_validity")),
+        integer(record.get("refresh_token_validity")),
+        commaDelimited(record.get("autoapprove")),
+        record.get("rate_limit_per_second") != null ? Double.valueOf(record.get("rate_limit_per_second")) : null,
+        integer(record.get("rate_limit_burst"))
+    };
+  }
+  
+  private Object[] accessToken(Map<String, String> record) {
+    String value = required(record, "access_token");
+    OAuth2Authentication authentication = authentication(record);
+    
+    DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(value);
+    accessToken.setScope(authentication.getOAuth2Request().getScope());
+    accessToken.setExpiration(date(record.get("expires_at")));
+    if (record.get("token_type") != null) {
+      accessToken.setTokenType(record.get("token_type"));
+    }
+    String refreshToken = record.get("refresh_token");
+    if (refreshToken != null) {
+      accessToken.setRefreshToken(new DefaultOAuth2RefreshToken(refreshToken));
+    }
+    
+    return new Object[] {
+        extractTokenKey(value),
+        accessTokenConverter.convertToDatabaseColumn(accessToken),
+        authenticationKeyGenerator.extractKey(authentication),
+        authentication.getOAuth2Request().getClientId(),
+        userName(authentication),
+        authenticationConverter.convertToDatabaseColumn(authentication),
+        extractTokenKey(refreshToken)
+    };
+  }
+  
+  private Object[] refreshToken(Map<String, String> record) {
+    String value = required(record, "refresh_token");
+    OAuth2Authentication authentication = authentication(record);
+    
+    Date expiration = date(record.get("expires_at"));
+    OAuth2RefreshToken refreshToken = expiration != null
+        ? new DefaultExpiringOAuth2RefreshToken(value, expiration) : new DefaultOAuth2RefreshToken(value);
+    
+    return new Object[] {
+        extractTokenKey(value),
+        refreshTokenConverter.convertToDatabaseColumn(refreshToken),
+        authenticationConverter.convertToDatabaseColumn(authentication),
+        authentication.getOAuth2Request().getClientId(),
+        userName(authentication),
+        new Timestamp(OAuthRefreshToken.expiresAt(refreshToken).getTime())
+    };
+  }
+  
+  private Object[] partnerToken(Map<String, String> record) {
+    String partnerId = required(record, "partner_id");
+    String userName = required(record, "user_name");
+    OAuth2ProtectedResourceDetails resource = partners.computeIfAbsent(partnerId, id -> {
+      OAuthPartner partner = partnerDetailsService.loadPartnerByPartnerId(id);
+      if (partner == null) {
+        throw new IllegalArgumentException("Unknown partner " + id);
+      }
+      return partner.toProtectedResourceDetails();
+    });
+    Set<String> scopes = list(record.get("scopes"));
+    Date expiration = date(record.get("expires_at"));
+    
+    return new Object[] {
+        required(record, "access_token"),
+        record.get("refresh_token"),
+        record.get("token_type") != null ? record.get("token_type") : DefaultOAuth2AccessToken.BEARER_TYPE.toLowerCase(),
+        scopes.isEmpty() ? null : OAuth2Utils.formatParameterList(scopes),
+        clientKeyGenerator.extractKey(resource, new UserIDAuthenticationToken(userName)),
+        resource.getClientId(),
+        userName,
+        partnerId,
+        expiration != null ? new Timestamp(expiration.getTime()) : null
+    };
+  }
+  
+  /**
+   * The authentication a token was issued for, as the token services create it: the request of the client, approved
+   * for the scopes, and the user with their authorities, if any.
+   */
+  private OAuth2Authentication authentication(Map<String, String> record) {
+    String clientId = required(record, "client_id");
+    ClientDetails client = clients.computeIfAbsent(clientId, clientDetailsService::loadClientByClientId);
+    Set<String> scopes = list(record.get("scopes"));
+    if (scopes.isEmpty()) {
+      scopes = client.getScope();
+    }
+    
+    OAuth2Request request = new OAuth2Request(Collections.singletonMap(OAuth2Utils.CLIENT_ID, clientId), clientId,
+        client.getAuthorities(), true, scopes, client.getResourceIds(), null, null, null);
+    
+    String userName = record.get("user_name");
+    Authentication user = userName == null ? null : new UsernamePasswordAuthenticationToken(userName, null,
+        AuthorityUtils.commaSeparatedStringToAuthorityList(StringUtils.defaultString(record.get("authorities"))));
+    return new OAuth2Authentication(request, user);
+  }
+  
+  private static String userName(OAuth2Authentication authentication) {
+    return StringUtils.isNotBlank(authentication.getName()) ? authentication.getName() : "#";
+  }
+  
+  private static String required(Map<String, String> record, String field) {
+    String value = record.get(field);
+    if (value == null) {
+      throw new IllegalArgumentException("Missing " + field);
+    }
+    return value;
+  }
+  
+  private static Set<String> list(String value) {
+    Set<String> elements = new LinkedHashSet<>();
+    if (value != null) {
+      for (String element : LIST_SEPARATOR.split(value.trim())) {
+        if (!element.isEmpty()) {
+          elements.add(element);
+        }
+      }
+    }
+    return elements;
+  }
+  
+  private static String commaDelimited(String value) {
+    Set<String> elements = list(value);
+    return elements.isEmpty() ? null : String.join(",", elements);
+  }
+  
+  private static Integer integer(String value) {
+    return value != null ? Integer.valueOf(value) : null;
+  }
+  
+  private static Date date(String value) {
+    if (value == null) {
+      return null;
+    }
+    return StringUtils.isNumeric(value) ? new Date(Long.parseLong(value) * 1000) : Date.from(Instant.parse(value));
+  }
+}
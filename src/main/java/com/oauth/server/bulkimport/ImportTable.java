@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.bulkimport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * The tables {@link BulkImporter} fills, in import order: tokens are checked against the clients imported before them.
+ * Besides the listed columns, rows get an id from {@code hibernate_sequence} and their creation and update time.
+ *
+ * @author Varij Kapil
+ */
+@Getter
+public enum ImportTable {
+  
+  CLIENTS("oauth_client_details", "client_id",
+      "client_id", "client_secret", "scopes", "authorized_grant_types", "web_server_redirect_uri", "authorities",
+      "access_token_validity", "refresh_token_validity", "autoapprove", "rate_limit_per_second", "rate_limit_burst"),
+  
+  ACCESS_TOKENS("oauth_access_token", "token_id",
+      "token_id", "token", "authentication_id", "client_id", "user_name", "authentication", "refresh_token"),
+  
+  REFRESH_TOKENS("oauth_refresh_token", "token_id",
+      "token_id", "token", "authentication", "client_id", "user_name", "expires_at"),
+  
+  PARTNER_TOKENS("oauth_partner_token", "authentication_id",
+      "token_id", "refresh_token", "token_type", "scopes", "authentication_id", "client_id", "user_name", "partner_id",
+      "expires_at");
+  
+  private final String tableName;
+  
+  /**
+   * The column identifying a row: rows whose key is already in the table are skipped.
+   */
+  private final String keyColumn;
+  
+  private final List<String> columns;
+  
+  ImportTable(String tableName, String keyColumn, String... columns) {
+    this.tableName = tableName;
+    this.keyColumn = keyColumn;
+    this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+  }
+  
+  int keyIndex() {
+    return columns.indexOf(keyColumn);
+  }
+}
@@ -5,22 +5,38 @@
  */
 package com.oauth.server.configuration;
 
+import com.oauth.server.audit.AuditTrail;
+import com.oauth.server.audit.AuditingAuthorizationCodeServices;
+import com.oauth.server.audit.AuditingTokenEnhancer;
 import com.oauth.server.authentication.AuthenticationServiceProvider;
+import com.oauth.server.authentication.CachingResourceServerTokenServices;
 import com.oauth.server.database.dao.DynamoDBAuthorizationCodeDAO;
 import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
 import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
 import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
 import com.oauth.server.database.dao.DynamoDBTokenDAO;
+import com.oauth.server.database.dao.KeyedTokenStore;
 import com.oauth.server.database.service.IOAuthAccessToken;
 import com.oauth.server.database.service.IOAuthClientDetails;
 import com.oauth.server.database.service.IOAuthCode;
 import com.oauth.server.database.service.IOAuthPartner;
 import com.oauth.server.database.service.IOAuthPartnerToken;
 import com.oauth.server.database.service.IOAuthRefreshToken;
+import com.oauth.server.token.TokenValueEnhancer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.client.token.ClientTokenServices;
@@ -32,7 +48,11 @@ import org.springframework.security.oauth2.config.annotation.web.configurers.Aut
 import org.springframework.security.oauth2.provider.approval.ApprovalStore;
 import org.springframework.security.oauth2.provider.approval.TokenApprovalStore;
 import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
-import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
 
 /**
  * Configuration for authorization server.
@@ -43,6 +63,12 @@ import org.springframework.security.oauth2.provider.token.TokenStore;
 @EnableAuthorizationServer
 public class AuthorizationServerConfiguration extends AuthorizationServerConfigurerAdapter {
   
+  /**
+   * Qualifier of the token store and authorization code services replacing the JPA ones, see
+   * {@code oauth.token-store.type}.
+   */
+  public static final String SELECTED_STORE = "selectedStore";
+  
   private final IOAuthPartnerToken ioAuthPartnerToken;
   
   private final IOAuthAccessToken ioAuthAccessToken;
@@ -54,14 +80,35 @@ public class AuthorizationServerConfiguration extends AuthorizationServerConfigu
   
   private final IOAuthPartner ioAuthPartner;
   
+  private final ApplicationEventPublisher eventPublisher;
+  
+  private final long clientCacheTtlSeconds;
+  
+  private final ObjectProvider<KeyedTokenStore> selectedTokenStore;
+  private final ObjectProvider<AuthorizationCodeServices> selectedAuthorizationCodeServices;
+  
+  private final AuditTrail auditTrail;
+  
+  private final ObjectProvider<TokenValueEnhancer> tokenValueEnhancer;
+  
   public AuthorizationServerConfiguration(IOAuthPartnerToken ioAuthPartnerToken, IOAuthAccessToken ioAuthAccessToken,
-      IOAuthRefreshToken ioAuthRefreshToken, IOAuthCode ioAuthCode, IOAuthClientDetails ioAuthClientDetails, IOAuthPartner ioAuthPartner) {
+      IOAuthRefreshToken ioAuthRefreshToken, IOAuthCode ioAuthCode, IOAuthClientDetails ioAuthClientDetails, IOAuthPartner ioAuthPartner,
+      ApplicationEventPublisher eventPublisher, @Qualifier(SELECTED_STORE) ObjectProvider<KeyedTokenStore> selectedTokenStore,
+      @Qualifier(SELECTED_STORE) ObjectProvider<AuthorizationCodeServices> selectedAuthorizationCodeServices,
+      @Value("${oauth.client-cache.ttl-seconds:60}") long clientCacheTtlSeconds, AuditTrail auditTrail,
+      ObjectProvider<TokenValueEnhancer> tokenValueEnhancer) {
     this.ioAuthPartnerToken = ioAuthPartnerToken;
     this.ioAuthAccessToken = ioAuthAccessToken;
     this.ioAuthRefreshToken = ioAuthRefreshToken;
     this.ioAuthCode = ioAuthCode;
     this.ioAuthClientDetails = ioAuthClientDetails;
     this.ioAuthPartner = ioAuthPartner;
+    this.eventPublisher = eventPublisher;
+    this.selectedTokenStore = selectedTokenStore;
+    this.selectedAuthorizationCodeServices = selectedAuthorizationCodeServices;
+    this.clientCacheTtlSeconds = clientCacheTtlSeconds;
+    this.auditTrail = auditTrail;
+    this.tokenValueEnhancer = tokenValueEnhancer;
   }
   
   @Bean
@@ -72,8 +119,9 @@ public class AuthorizationServerConfiguration extends AuthorizationServerConfigu
   }
   
   @Bean
-  public DynamoDBPartnerDetailsDAO dynamoDBPartnerDetailsService() {
-    return new DynamoDBPartnerDetailsDAO(ioAuthPartner);
+  public DynamoDBPartnerDetailsDAO dynamoDBPartnerDetailsService(
+      @Value("${oauth.partner-cache.ttl-seconds:60}") long cacheTtlSeconds) {
+    return new DynamoDBPartnerDetailsDAO(ioAuthPartner, eventPublisher, cacheTtlSeconds);
   }
   
   @Bean
@@ -93,7 +141,7 @@ public class AuthorizationServerConfiguration extends AuthorizationServerConfigu
   
   @Bean
   public DynamoDBClientDetailsDAO dynamoDBClientDetailsService() {
-    return new DynamoDBClientDetailsDAO(ioAuthClientDetails, passwordEncoder());
+    return new DynamoDBClientDetailsDAO(ioAuthClientDetails, passwordEncoder(), eventPublisher, clientCacheTtlSeconds);
   }
   
   @Bean
@@ -107,6 +155,7 @@ public class AuthorizationServerConfiguration extends AuthorizationServerConfigu
         .approvalStore(approvalStore())
         .authorizationCodeServices(authorizationCodeServices())
         .tokenStore(tokenStore())
+        .tokenServices(tokenServices())
         .authenticationManager(authenticationServiceProvider())
         .userDetailsService(authenticationServiceProvider());
   }
@@ -120,15 +169,79 @@ public class AuthorizationServerConfiguration extends AuthorizationServerConfigu
   }
   
   @Bean
+  @Primary
   @Scope(proxyMode = ScopedProxyMode.INTERFACES)
   public AuthorizationCodeServices authorizationCodeServices() {
+    return new AuditingAuthorizationCodeServices(
+        selectedAuthorizationCodeServices.getIfAvailable(this::dynamoDBAuthorizationCodeService), auditTrail);
+  }
+  
+  @Bean
+  public DynamoDBAuthorizationCodeDAO dynamoDBAuthorizationCodeService() {
     return new DynamoDBAuthorizationCodeDAO(ioAuthCode);
   }
   
+  /**
+   * The token store in use: the one selected with {@code oauth.token-store.type} (sharded or embedded), the JPA one
+   * otherwise.
+   */
   @Bean
+  @Primary
   @Scope(proxyMode = ScopedProxyMode.INTERFACES)
-  public TokenStore tokenStore() {
-    return new DynamoDBTokenDAO(ioAuthAccessToken, ioAuthRefreshToken);
+  public KeyedTokenStore tokenStore() {
+    return selectedTokenStore.getIfAvailable(this::dynamoDBTokenService);
+  }
+  
+  @Bean
+  public DynamoDBTokenDAO dynamoDBTokenService() {
+    return new DynamoDBTokenDAO(ioAuthAccessToken, ioAuthRefreshToken, eventPublisher);
+  }
+  
+  /**
+   * Token services for the resource server chain (/api/**), caching validated authentications per access token.
+   * Primary over {@link #tokenServices()}, which is also a {@code ResourceServerTokenServices}.
+   */
+  @Bean
+  @Primary
+  public CachingResourceServerTokenServices resourceServerTokenServices(
+      @Value("${oauth.resource-server.cache-ttl-seconds:300}") long cacheTtlSeconds,
+      @Value("${oauth.resource-server.cache-size:10000}") long cacheSize) {
+    return new CachingResourceServerTokenServices(tokenStore(), dynamoDBClientDetailsService(),
+        cacheTtlSeconds, cacheSize);
+  }
+  
+  /**
+   * Token services exposed as a bean, so the transactional boundaries declared on {@link DefaultTokenServices} apply
+   * and a refresh_token grant reads, removes and stores its tokens in a single transaction.
+   */
+  @Bean
+  public DefaultTokenServices tokenServices() {
+    PreAuthenticatedAuthenticationProvider refreshAuthenticationProvider = new PreAuthenticatedAuthenticationProvider();
+    refreshAuthenticationProvider.setPreAuthenticatedUserDetailsService(
+        new UserDetailsByNameServiceWrapper<PreAuthenticatedAuthenticationToken>(authenticationServiceProvider()));
+    
+    DefaultTokenServices tokenServices = new DefaultTokenServices();
+    tokenServices.setTokenStore(tokenStore());
+    tokenServices.setSupportRefreshToken(true);
+    tokenServices.setReuseRefreshToken(true);
+    tokenServices.setClientDetailsService(dynamoDBClientDetailsService());
+    tokenServices.setTokenEnhancer(tokenEnhancer());
+    tokenServices.setAuthenticationManager(
+        new ProviderManager(Collections.singletonList(refreshAuthenticationProvider)));
+    return tokenServices;
+  }
+  
+  /**
+   * Replaces the token values first, when enabled, so the audit trail records the tokens as issued.
+   */
+  private TokenEnhancer tokenEnhancer() {
+    List<TokenEnhancer> enhancers = new ArrayList<>();
+    tokenValueEnhancer.ifAvailable(enhancers::add);
+    enhancers.add(new AuditingTokenEnhancer(auditTrail));
+    
+    TokenEnhancerChain chain = new TokenEnhancerChain();
+    chain.setTokenEnhancers(enhancers);
+    return chain;
   }
   
   @Bean
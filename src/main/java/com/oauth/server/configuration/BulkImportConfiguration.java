@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.bulkimport.BulkImportRunner;
+import com.oauth.server.bulkimport.BulkImporter;
+import com.oauth.server.bulkimport.ImportRowMapper;
+import com.oauth.server.bulkimport.ImportTable;
+import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Configuration for importing the clients and tokens of another OAuth server at startup, enabled with
+ * {@code oauth.import.enabled}, see {@link BulkImporter}.
+ *
+ * <p>
+ * Each of {@code oauth.import.clients}, {@code access-tokens}, {@code refresh-tokens} and {@code partner-tokens} is a
+ * CSV or NDJSON file to import into its table. Access and refresh tokens are written to the JPA tables, so they cannot
+ * be imported with another {@code oauth.token-store.type}.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oauth.import", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(BulkImportConfiguration.ImportProperties.class)
+public class BulkImportConfiguration {
+  
+  @Bean
+  public BulkImporter bulkImporter(DataSource dataSource, DynamoDBClientDetailsDAO clientDetailsService,
+      DynamoDBPartnerDetailsDAO partnerDetailsService, PasswordEncoder passwordEncoder,
+      ImportProperties importProperties) {
+    return new BulkImporter(dataSource,
+        new ImportRowMapper(clientDetailsService, partnerDetailsService, passwordEncoder),
+        importProperties.getWorkers(), importProperties.getBatchSize(),
+        Paths.get(importProperties.getCheckpointDirectory()));
+  }
+  
+  @Bean
+  public BulkImportRunner bulkImportRunner(BulkImporter bulkImporter, ImportProperties importProperties,
+      @Value("${oauth.token-store.type:jpa}") String tokenStoreType) {
+    Map<ImportTable, Path> sources = new EnumMap<>(ImportTable.class);
+    addSource(sources, ImportTable.CLIENTS, importProperties.getClients());
+    addSource(sources, ImportTable.ACCESS_TOKENS, importProperties.getAccessTokens());
+    addSource(sources, ImportTable.REFRESH_TOKENS, importProperties.getRefreshTokens());
+    addSource(sources, ImportTable.PARTNER_TOKENS, importProperties.getPartnerTokens());
+    
+    if (!"jpa".equals(tokenStoreType)
+        && (sources.containsKey(ImportTable.ACCESS_TOKENS) || sources.containsKey(ImportTable.REFRESH_TOKENS))) {
+      throw new IllegalStateException("Tokens can only be imported with oauth.token-store.type jpa, not "
+          + tokenStoreType);
+    }
+    return new BulkImportRunner(bulkImporter, sources, importProperties.isExitWhenDone());
+  }
+  
+  private static void addSource(Map<ImportTable, Path> sources, ImportTable table, String file) {
+    if (file != null && !file.isEmpty()) {
+      sources.put(table, Paths.get(file));
+    }
+  }
+  
+  /**
+   * Properties for {@link BulkImporter}.
+   */
+  @Data
+  @ConfigurationProperties(prefix = "oauth.import")
+  public static class ImportProperties {
+    
+    private String clients;
+    
+    private String accessTokens;
+    
+    private String refreshTokens;
+    
+    private String partnerTokens;
+    
+    private int workers = Runtime.getRuntime().availableProcessors();
+    
+    private int batchSize = 5000;
+    
+    private String checkpointDirectory = "import-checkpoints";
+    
+    private boolean exitWhenDone = true;
+  }
+}
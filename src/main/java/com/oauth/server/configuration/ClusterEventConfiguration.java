@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.event.PostgresNotifyEventBus;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Configuration for propagating token, client and partner changes to every node through Postgres LISTEN/NOTIFY,
+ * enabled with {@code oauth.cluster-events.enabled}.
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oauth.cluster-events", name = "enabled", havingValue = "true")
+public class ClusterEventConfiguration {
+  
+  @Bean
+  public PostgresNotifyEventBus postgresNotifyEventBus(JdbcTemplate jdbcTemplate,
+      DataSourceProperties dataSourceProperties, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+      @Value("${oauth.cluster-events.channel:oauth_invalidation}") String channel,
+      @Value("${oauth.cluster-events.poll-timeout-millis:500}") int pollTimeoutMillis,
+      @Value("${oauth.cluster-events.reconnect-delay-millis:1000}") long reconnectDelayMillis,
+      @Value("${oauth.cluster-events.queue-capacity:10000}") int queueCapacity,
+      @Value("${oauth.cluster-events.batch-interval-millis:200}") long batchIntervalMillis) {
+    return new PostgresNotifyEventBus(jdbcTemplate, dataSourceProperties, eventPublisher, meterRegistry, channel,
+        pollTimeoutMillis, reconnectDelayMillis, queueCapacity, batchIntervalMillis);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.google.common.collect.ImmutableList;
+import com.oauth.server.database.dao.EmbeddedAuthorizationCodeDAO;
+import com.oauth.server.database.dao.EmbeddedTokenDAO;
+import com.oauth.server.database.embedded.EmbeddedStoreMaintainer;
+import com.oauth.server.database.embedded.MappedLogStore;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration for keeping tokens and authorization codes in embedded memory-mapped files, enabled with
+ * {@code oauth.token-store.type=embedded}. Meant for single node deployments: the files under
+ * {@code oauth.embedded.directory} must not be shared between processes.
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "oauth.token-store", name = "type", havingValue = "embedded")
+public class EmbeddedTokenStoreConfiguration {
+  
+  private final Path directory;
+  private final int initialLogBytes;
+  private final int initialIndexSlots;
+  private final boolean syncWrites;
+  
+  public EmbeddedTokenStoreConfiguration(@Value("${oauth.embedded.directory:data}") String directory,
+      @Value("${oauth.embedded.initial-log-bytes:16777216}") int initialLogBytes,
+      @Value("${oauth.embedded.initial-index-slots:65536}") int initialIndexSlots,
+      @Value("${oauth.embedded.sync-writes:false}") boolean syncWrites) {
+    this.directory = Paths.get(directory);
+    this.initialLogBytes = initialLogBytes;
+    this.initialIndexSlots = initialIndexSlots;
+    this.syncWrites = syncWrites;
+  }
+  
+  @Bean
+  public MappedLogStore embeddedAccessTokens() {
+    return new MappedLogStore(directory, "access-tokens", initialLogBytes, initialIndexSlots, syncWrites);
+  }
+  
+  @Bean
+  public MappedLogStore embeddedRefreshTokens() {
+    return new MappedLogStore(directory, "refresh-tokens", initialLogBytes, initialIndexSlots, syncWrites);
+  }
+  
+  @Bean
+  public MappedLogStore embeddedCodes() {
+    return new MappedLogStore(directory, "codes", initialLogBytes, initialIndexSlots, syncWrites);
+  }
+  
+  @Bean
+  public EmbeddedStoreMaintainer embeddedStoreMaintainer(
+      @Value("${oauth.embedded.compaction-dead-ratio:0.5}") double compactionDeadRatio) {
+    return new EmbeddedStoreMaintainer(
+        ImmutableList.of(embeddedAccessTokens(), embeddedRefreshTokens(), embeddedCodes()), compactionDeadRatio);
+  }
+  
+  @Bean
+  @Qualifier(AuthorizationServerConfiguration.SELECTED_STORE)
+  public EmbeddedTokenDAO embeddedTokenService(ApplicationEventPublisher eventPublisher) {
+    return new EmbeddedTokenDAO(embeddedAccessTokens(), embeddedRefreshTokens(), eventPublisher);
+  }
+  
+  @Bean
+  @Qualifier(AuthorizationServerConfiguration.SELECTED_STORE)
+  public EmbeddedAuthorizationCodeDAO embeddedAuthorizationCodeService() {
+    return new EmbeddedAuthorizationCodeDAO(embeddedCodes());
+  }
+}
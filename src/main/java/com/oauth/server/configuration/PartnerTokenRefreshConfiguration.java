@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.audit.AuditTrail;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
+import com.oauth.server.partner.PartnerTokenClient;
+import com.oauth.server.partner.PartnerTokenRefresher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration for refreshing partner tokens ahead of their expiry, enabled unless
+ * {@code oauth.partner.refresh.enabled} is false.
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "oauth.partner.refresh", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class PartnerTokenRefreshConfiguration {
+  
+  @Bean
+  public PartnerTokenRefresher partnerTokenRefresher(DynamoDBPartnerTokenDAO partnerTokenService,
+      DynamoDBPartnerDetailsDAO partnerDetailsService, PartnerTokenClient partnerTokenClient, AuditTrail auditTrail,
+      @Value("${oauth.partner.refresh.refresh-ahead-seconds:300}") long refreshAheadSeconds,
+      @Value("${oauth.partner.refresh.scan-interval-millis:30000}") long scanIntervalMillis,
+      @Value("${oauth.partner.refresh.scan-batch-size:1000}") int scanBatchSize,
+      @Value("${oauth.partner.refresh.per-partner-per-second:10}") double perPartnerPerSecond,
+      @Value("${oauth.partner.refresh.claim-seconds:60}") long claimSeconds,
+      @Value("${oauth.partner.refresh.max-backoff-seconds:3600}") long maxBackoffSeconds,
+      @Value("${oauth.partner.refresh.expired-cutoff-seconds:86400}") long expiredCutoffSeconds) {
+    return new PartnerTokenRefresher(partnerTokenService, partnerDetailsService, partnerTokenClient, auditTrail,
+        refreshAheadSeconds, scanIntervalMillis, scanBatchSize, perPartnerPerSecond, claimSeconds, maxBackoffSeconds,
+        expiredCutoffSeconds);
+  }
+}
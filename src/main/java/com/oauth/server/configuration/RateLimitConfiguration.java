@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.ratelimit.RateLimitFilter;
+import com.oauth.server.ratelimit.RateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration for per client and per partner rate limits on the token endpoints, enabled unless
+ * {@code oauth.rate-limit.enabled} is false.
+ *
+ * <p>
+ * The filter is registered after the Spring Security filter chain, so only authenticated clients are throttled, and a
+ * client id sent by anyone else cannot drain the bucket of that client. Clients and partners without their own limit
+ * are not limited unless {@code oauth.rate-limit.default-per-second} is set.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "oauth.rate-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfiguration {
+  
+  @Bean
+  public RateLimiter rateLimiter(DynamoDBClientDetailsDAO clientDetailsService,
+      DynamoDBPartnerDetailsDAO partnerDetailsService, ApplicationEventPublisher eventPublisher,
+      @Value("${oauth.rate-limit.default-per-second:0}") double defaultPermitsPerSecond,
+      @Value("${oauth.rate-limit.default-burst:40}") int defaultBurst,
+      @Value("${oauth.cluster-events.enabled:false}") boolean syncAcrossNodes,
+      @Value("${oauth.rate-limit.max-buckets:100000}") long maxBuckets) {
+    return new RateLimiter(clientDetailsService, partnerDetailsService, eventPublisher, defaultPermitsPerSecond,
+        defaultBurst, syncAcrossNodes, maxBuckets);
+  }
+  
+  @Bean
+  public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(RateLimiter rateLimiter,
+      MeterRegistry meterRegistry) {
+    FilterRegistrationBean<RateLimitFilter> registration =
+        new FilterRegistrationBean<>(new RateLimitFilter(rateLimiter, meterRegistry));
+    registration.addUrlPatterns(RateLimitFilter.TOKEN_ENDPOINT, RateLimitFilter.PARTNER_TOKEN_ENDPOINT);
+    registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+    return registration;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.database.routing.ReadYourWrites;
+import com.oauth.server.database.routing.ReadYourWritesAspect;
+import com.oauth.server.database.routing.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import lombok.Data;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Configuration for routing read-only repository calls to database replicas.
+ *
+ * <p>
+ * Enabled with {@code oauth.datasource.routing.enabled}. Writes stay on {@code spring.datasource}, the read-only
+ * lookups of the repositories ({@code findByTokenId}, {@code findByClientId}, {@code findByPartnerId}) go to the
+ * replicas listed under {@code oauth.datasource.routing.replicas}, unless the key was written on this node within
+ * {@code oauth.datasource.routing.read-your-writes-window-millis}.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oauth.datasource.routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaRoutingConfiguration.RoutingProperties.class)
+public class ReplicaRoutingConfiguration {
+  
+  @Bean
+  public ReplicaRoutingDataSource routingDataSource(DataSourceProperties primaryProperties,
+      RoutingProperties routingProperties) {
+    List<DataSource> replicas = routingProperties.getReplicas().stream()
+        .map(this::createDataSource)
+        .collect(Collectors.toList());
+    
+    return new ReplicaRoutingDataSource(createDataSource(primaryProperties), replicas);
+  }
+  
+  @Bean
+  @Primary
+  public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+    return new LazyConnectionDataSourceProxy(routingDataSource);
+  }
+  
+  @Bean
+  public ReadYourWrites readYourWrites(RoutingProperties routingProperties) {
+    return new ReadYourWrites(routingProperties.getReadYourWritesWindowMillis(),
+        routingProperties.getReadYourWritesMaxKeys());
+  }
+  
+  @Bean
+  public ReadYourWritesAspect readYourWritesAspect(ReadYourWrites readYourWrites) {
+    return new ReadYourWritesAspect(readYourWrites);
+  }
+  
+  private DataSource createDataSource(DataSourceProperties properties) {
+    return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+  }
+  
+  /**
+   * Properties for {@link ReplicaRoutingDataSource}.
+   */
+  @Data
+  @ConfigurationProperties(prefix = "oauth.datasource.routing")
+  public static class RoutingProperties {
+    
+    private boolean enabled;
+    
+    private List<DataSourceProperties> replicas = new ArrayList<>();
+    
+    private long readYourWritesWindowMillis = 5000;
+    
+    private long readYourWritesMaxKeys = 100000;
+  }
+}
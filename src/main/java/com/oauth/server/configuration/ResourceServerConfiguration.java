@@ -5,11 +5,13 @@
  */
 package com.oauth.server.configuration;
 
+import com.oauth.server.authentication.CachingResourceServerTokenServices;
 import com.oauth.server.authentication.RoleEnum;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableResourceServer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.ResourceServerConfigurerAdapter;
+import org.springframework.security.oauth2.config.annotation.web.configurers.ResourceServerSecurityConfigurer;
 
 /**
  * Configuration for Resource APIs.
@@ -20,12 +22,27 @@ import org.springframework.security.oauth2.config.annotation.web.configuration.R
 @Configuration
 public class ResourceServerConfiguration extends ResourceServerConfigurerAdapter {
 
+    private final CachingResourceServerTokenServices resourceServerTokenServices;
+
+    public ResourceServerConfiguration(CachingResourceServerTokenServices resourceServerTokenServices) {
+        this.resourceServerTokenServices = resourceServerTokenServices;
+    }
+
+    @Override
+    public void configure(ResourceServerSecurityConfigurer resources) {
+        resources.tokenServices(resourceServerTokenServices);
+    }
+
     @Override
     public void configure(HttpSecurity http) throws Exception {
         http.antMatcher("/api/**")
             .csrf().disable()
             .authorizeRequests()
             .antMatchers("/api/partner/token").hasAuthority(RoleEnum.ROLE_CLIENT_ADMIN.name())
+            .antMatchers("/api/token/introspect").hasAuthority(RoleEnum.ROLE_CLIENT_ADMIN.name())
+            .antMatchers("/api/token/revocations/**").hasAuthority(RoleEnum.ROLE_CLIENT_ADMIN.name())
+            .antMatchers("/api/token/exports").hasAuthority(RoleEnum.ROLE_CLIENT_ADMIN.name())
+            .antMatchers("/api/clients/**", "/api/partners/**").hasAuthority(RoleEnum.ROLE_CLIENT_ADMIN.name())
             .antMatchers("/api/**").authenticated();
     }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.database.dao.ShardedAuthorizationCodeDAO;
+import com.oauth.server.database.dao.ShardedTokenDAO;
+import com.oauth.server.database.shard.TokenShards;
+import com.oauth.server.database.shard.TokenShards.Shard;
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.Data;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * Configuration for storing tokens and authorization codes sharded across several databases.
+ *
+ * <p>
+ * Enabled with {@code oauth.token-store.type=sharded}. Each entry of {@code oauth.sharding.shards} is a data source
+ * with a name; the name decides which keys the shard owns, so keep it when the URL of a shard changes. After adding a
+ * shard, start one node with {@code oauth.sharding.reshard-on-startup} to move the rows to their new owners, and list
+ * the names of the shards from before in {@code oauth.sharding.previous-shard-names} until the rows have moved, so that
+ * the tokens stay readable meanwhile. To remove a shard, keep it configured and list it in
+ * {@code oauth.sharding.draining-shard-names}, reshard, and only then drop it: a shard missing from the configuration
+ * is never read, and the tokens still stored on it are lost.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oauth.token-store", name = "type", havingValue = "sharded")
+@EnableConfigurationProperties(ShardedTokenStoreConfiguration.ShardingProperties.class)
+public class ShardedTokenStoreConfiguration {
+  
+  @Bean
+  public TokenShards tokenShards(ShardingProperties shardingProperties) {
+    List<Shard> shards = shardingProperties.getShards().stream()
+        .map(properties -> {
+          if (StringUtils.isBlank(properties.getName())) {
+            throw new IllegalStateException("Every entry of oauth.sharding.shards needs a name");
+          }
+          HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+          if (shardingProperties.isInitializeSchema()) {
+            DatabasePopulatorUtils.execute(
+                new ResourceDatabasePopulator(new ClassPathResource("db/sharding/schema.sql")), dataSource);
+          }
+          return new Shard(properties.getName(), dataSource);
+        })
+        .collect(Collectors.toList());
+    
+    return new TokenShards(shards, shardingProperties.getPreviousShardNames(),
+        shardingProperties.getDrainingShardNames());
+  }
+  
+  @Bean
+  @Qualifier(AuthorizationServerConfiguration.SELECTED_STORE)
+  public ShardedTokenDAO shardedTokenService(TokenShards tokenShards, ApplicationEventPublisher eventPublisher,
+      ShardingProperties shardingProperties) {
+    ShardedTokenDAO tokenService = new ShardedTokenDAO(tokenShards, eventPublisher);
+    if (shardingProperties.isReshardOnStartup()) {
+      tokenService.reshard();
+    }
+    return tokenService;
+  }
+  
+  @Bean
+  @Qualifier(AuthorizationServerConfiguration.SELECTED_STORE)
+  public ShardedAuthorizationCodeDAO shardedAuthorizationCodeService(TokenShards tokenShards) {
+    return new ShardedAuthorizationCodeDAO(tokenShards);
+  }
+  
+  /**
+   * Properties for {@link TokenShards}.
+   */
+  @Data
+  @ConfigurationProperties(prefix = "oauth.sharding")
+  public static class ShardingProperties {
+    
+    private List<DataSourceProperties> shards = new ArrayList<>();
+    
+    private List<String> previousShardNames = new ArrayList<>();
+    
+    private List<String> drainingShardNames = new ArrayList<>();
+    
+    private boolean initializeSchema = true;
+    
+    private boolean reshardOnStartup;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.session.InMemorySessionStore;
+import com.oauth.server.session.JdbcSessionStore;
+import com.oauth.server.session.SessionStore;
+import com.oauth.server.session.SessionStoreMaintainer;
+import com.oauth.server.session.SharedSessionFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration for keeping HTTP sessions in a {@link SessionStore} instead of the servlet container, enabled with
+ * {@code oauth.session.store}: {@code jdbc} shares them between nodes through the {@code oauth_session} table,
+ * {@code memory} keeps them on this node. A {@link SessionStore} bean replaces both.
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "oauth.session", name = "store")
+public class SharedSessionConfiguration {
+  
+  @Bean
+  @ConditionalOnMissingBean
+  public SessionStore sessionStore(@Value("${oauth.session.store}") String store, JdbcTemplate jdbcTemplate) {
+    switch (store) {
+      case "jdbc":
+        return new JdbcSessionStore(jdbcTemplate);
+      case "memory":
+        return new InMemorySessionStore();
+      default:
+        throw new IllegalArgumentException("Unknown session store " + store + ", expected jdbc or memory");
+    }
+  }
+  
+  @Bean
+  public SessionStoreMaintainer sessionStoreMaintainer(SessionStore sessionStore) {
+    return new SessionStoreMaintainer(sessionStore);
+  }
+  
+  @Bean
+  public FilterRegistrationBean<SharedSessionFilter> sharedSessionFilter(SessionStore sessionStore,
+      @Value("${oauth.session.cookie-name:SESSION}") String cookieName,
+      @Value("${oauth.session.timeout-seconds:1800}") int timeoutSeconds,
+      @Value("${oauth.session.touch-interval-millis:60000}") long touchIntervalMillis) {
+    FilterRegistrationBean<SharedSessionFilter> registration = new FilterRegistrationBean<>(
+        new SharedSessionFilter(sessionStore, cookieName, timeoutSeconds, touchIntervalMillis));
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+    return registration;
+  }
+}
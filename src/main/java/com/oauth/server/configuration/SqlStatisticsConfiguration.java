@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.sqlstats.InstrumentedDataSource;
+import com.oauth.server.sqlstats.RepositoryStatisticsAspect;
+import com.oauth.server.sqlstats.SqlStatistics;
+import com.oauth.server.sqlstats.SqlStatisticsEndpoint;
+import com.oauth.server.sqlstats.SqlStatisticsFilter;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Configuration for recording the SQL statements per endpoint and per repository method, enabled when
+ * {@code oauth.sql-statistics.enabled} is true.
+ *
+ * <p>
+ * The {@code dataSource} bean is wrapped in an {@link InstrumentedDataSource}, so the statements of JPA, the
+ * JdbcTemplate and the migrations are all recorded; the shards of the sharded token store are not. The filter runs
+ * ahead of every other filter, so client authentication is attributed to the endpoint too.
+ * </p>
+ *
+ * <p>
+ * Off by default: every connection, statement and result set then goes through a dynamic proxy, and every statement
+ * updates shared counters.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oauth.sql-statistics", name = "enabled", havingValue = "true")
+public class SqlStatisticsConfiguration {
+  
+  @Bean
+  public SqlStatistics sqlStatistics(
+      @Value("${oauth.sql-statistics.slow-query-millis:200}") long slowQueryMillis,
+      @Value("${oauth.sql-statistics.slow-query-capacity:100}") int slowQueryCapacity,
+      @Value("${oauth.sql-statistics.repeated-query-threshold:5}") int repeatedQueryThreshold,
+      @Value("${oauth.sql-statistics.repeated-query-capacity:100}") int repeatedQueryCapacity) {
+    return new SqlStatistics(slowQueryMillis, slowQueryCapacity, repeatedQueryThreshold, repeatedQueryCapacity);
+  }
+  
+  @Bean
+  public static BeanPostProcessor instrumentedDataSourcePostProcessor(ObjectProvider<SqlStatistics> statistics) {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if ("dataSource".equals(beanName) && bean instanceof DataSource) {
+          return new InstrumentedDataSource((DataSource) bean, statistics.getObject());
+        }
+        return bean;
+      }
+    };
+  }
+  
+  @Bean
+  public FilterRegistrationBean<SqlStatisticsFilter> sqlStatisticsFilter(SqlStatistics statistics) {
+    FilterRegistrationBean<SqlStatisticsFilter> registration =
+        new FilterRegistrationBean<>(new SqlStatisticsFilter(statistics));
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return registration;
+  }
+  
+  @Bean
+  public RepositoryStatisticsAspect repositoryStatisticsAspect(SqlStatistics statistics) {
+    return new RepositoryStatisticsAspect(statistics);
+  }
+  
+  @Bean
+  public SqlStatisticsEndpoint sqlStatisticsEndpoint(SqlStatistics statistics) {
+    return new SqlStatisticsEndpoint(statistics);
+  }
+}
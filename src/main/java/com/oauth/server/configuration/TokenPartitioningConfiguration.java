@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.database.partition.TokenPartitionMaintainer;
+import java.time.Clock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Configuration for the time-partitioned token tables, enabled with {@code oauth.partitioning.enabled}.
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "oauth.partitioning", name = "enabled", havingValue = "true")
+public class TokenPartitioningConfiguration {
+  
+  @Bean
+  public TokenPartitionMaintainer tokenPartitionMaintainer(JdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager,
+      @Value("${oauth.partitioning.access-token-retention-days:7}") int accessTokenRetentionDays,
+      @Value("${oauth.partitioning.refresh-token-retention-days:7}") int refreshTokenRetentionDays,
+      @Value("${oauth.partitioning.code-retention-days:1}") int codeRetentionDays,
+      @Value("${oauth.partitioning.days-ahead:7}") int daysAhead,
+      @Value("${oauth.partitioning.refresh-token-months-ahead:13}") int refreshTokenMonthsAhead) {
+    return new TokenPartitionMaintainer(jdbcTemplate, new TransactionTemplate(transactionManager),
+        accessTokenRetentionDays, refreshTokenRetentionDays, codeRetentionDays, daysAhead, refreshTokenMonthsAhead,
+        Clock.systemDefaultZone());
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.token.SecureTokenValueGenerator;
+import com.oauth.server.token.TokenValueEnhancer;
+import com.oauth.server.token.TokenValueGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for the values of the tokens issued, minted by a {@link TokenValueGenerator} in place of the random
+ * UUIDs of the token services unless {@code oauth.token-value.enabled} is false. A {@link TokenValueGenerator} bean
+ * replaces the default one.
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oauth.token-value", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class TokenValueConfiguration {
+  
+  @Bean
+  @ConditionalOnMissingBean
+  public TokenValueGenerator tokenValueGenerator(@Value("${oauth.token-value.algorithm:SHA1PRNG}") String algorithm,
+      @Value("${oauth.token-value.entropy-bytes:32}") int entropyBytes,
+      @Value("${oauth.token-value.access-token-prefix:}") String accessTokenPrefix,
+      @Value("${oauth.token-value.refresh-token-prefix:}") String refreshTokenPrefix) {
+    return new SecureTokenValueGenerator(algorithm, entropyBytes, accessTokenPrefix, refreshTokenPrefix);
+  }
+  
+  @Bean
+  public TokenValueEnhancer tokenValueEnhancer(TokenValueGenerator tokenValueGenerator) {
+    return new TokenValueEnhancer(tokenValueGenerator);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.configuration;
+
+import com.oauth.server.tracing.BatchSpanProcessor;
+import com.oauth.server.tracing.DaoTracingAspect;
+import com.oauth.server.tracing.FileSpanExporter;
+import com.oauth.server.tracing.InMemorySpanExporter;
+import com.oauth.server.tracing.SpanExporter;
+import com.oauth.server.tracing.Tracer;
+import com.oauth.server.tracing.TracingFilter;
+import com.oauth.server.tracing.TracingPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.file.Paths;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Configuration for tracing the token and API endpoints, enabled with {@code oauth.tracing.enabled}.
+ *
+ * <p>
+ * Spans are exported to {@code oauth.tracing.exporter}: {@code file} appends them to {@code oauth.tracing.file} as
+ * JSON lines, {@code memory} keeps the last {@code memory-capacity} of them in an {@link InMemorySpanExporter}. A
+ * {@link SpanExporter} bean replaces both.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oauth.tracing", name = "enabled", havingValue = "true")
+public class TracingConfiguration {
+  
+  @Bean
+  @ConditionalOnMissingBean
+  public SpanExporter spanExporter(@Value("${oauth.tracing.exporter:file}") String exporter,
+      @Value("${oauth.tracing.file:traces.jsonl}") String file,
+      @Value("${oauth.tracing.memory-capacity:10000}") int memoryCapacity) throws IOException {
+    switch (exporter) {
+      case "file":
+        return new FileSpanExporter(Paths.get(file));
+      case "memory":
+        return new InMemorySpanExporter(memoryCapacity);
+      default:
+        throw new IllegalArgumentException("Unknown span exporter " + exporter + ", expected file or memory");
+    }
+  }
+  
+  @Bean
+  public BatchSpanProcessor batchSpanProcessor(SpanExporter spanExporter, MeterRegistry meterRegistry,
+      @Value("${oauth.tracing.queue-capacity:2048}") int queueCapacity,
+      @Value("${oauth.tracing.batch-size:512}") int batchSize,
+      @Value("${oauth.tracing.flush-interval-millis:1000}") long flushIntervalMillis) {
+    return new BatchSpanProcessor(spanExporter, meterRegistry, queueCapacity, batchSize, flushIntervalMillis);
+  }
+  
+  @Bean
+  public Tracer tracer(BatchSpanProcessor batchSpanProcessor,
+      @Value("${oauth.tracing.sample-ratio:0.1}") double sampleRatio) {
+    return new Tracer(batchSpanProcessor, sampleRatio);
+  }
+  
+  @Bean
+  public FilterRegistrationBean<TracingFilter> tracingFilter(Tracer tracer) {
+    FilterRegistrationBean<TracingFilter> registration = new FilterRegistrationBean<>(new TracingFilter(tracer));
+    registration.addUrlPatterns("/oauth/*", "/api/*");
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+    return registration;
+  }
+  
+  @Bean
+  public DaoTracingAspect daoTracingAspect() {
+    return new DaoTracingAspect();
+  }
+  
+  @Bean
+  public static BeanPostProcessor tracingPasswordEncoderPostProcessor() {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof PasswordEncoder && !(bean instanceof TracingPasswordEncoder)
+            ? new TracingPasswordEncoder((PasswordEncoder) bean) : bean;
+      }
+    };
+  }
+}
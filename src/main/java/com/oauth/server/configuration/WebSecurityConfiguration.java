@@ -7,6 +7,9 @@ package com.oauth.server.configuration;
 
 import com.oauth.server.authentication.AuthenticationServiceProvider;
 import com.oauth.server.authentication.RoleEnum;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.info.InfoEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -20,6 +23,11 @@ import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 /**
  * Configuration for web security.
  *
+ * <p>
+ * The health and info actuator endpoints are open, for load balancers and probes. The other actuator endpoints, such as
+ * {@code sqlStatistics} and {@code partnerCircuits}, show statements and partner ids and require an administrator.
+ * </p>
+ *
  * @author Varij Kapil
  */
 @EnableWebSecurity
@@ -47,7 +55,9 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
   protected void configure(HttpSecurity http) throws Exception {
     http
         .authorizeRequests()
-        .mvcMatchers("/login", "/logout.do", "/css/**", "/js/**", "/actuator/**").permitAll()
+        .mvcMatchers("/login", "/logout.do", "/css/**", "/js/**").permitAll()
+        .requestMatchers(EndpointRequest.to(HealthEndpoint.class, InfoEndpoint.class)).permitAll()
+        .requestMatchers(EndpointRequest.toAnyEndpoint()).hasAuthority(RoleEnum.ROLE_USER_ADMIN.name())
         .mvcMatchers("/clients/**", "/partners/**").hasAuthority(RoleEnum.ROLE_USER_ADMIN.name())
         .anyRequest().authenticated()
         .and()
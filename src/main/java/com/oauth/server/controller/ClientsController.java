@@ -8,6 +8,8 @@ package com.oauth.server.controller;
 import com.oauth.server.controller.editor.AuthorityPropertyEditor;
 import com.oauth.server.controller.editor.SplitCollectionEditor;
 import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import com.oauth.server.revocation.TokenRevocationService;
 import java.util.Collection;
 import java.util.Set;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -35,8 +37,12 @@ public class ClientsController {
   
   private final DynamoDBClientDetailsDAO clientsDetailsService;
   
-  public ClientsController(DynamoDBClientDetailsDAO clientsDetailsService) {
+  private final TokenRevocationService tokenRevocationService;
+  
+  public ClientsController(DynamoDBClientDetailsDAO clientsDetailsService,
+      TokenRevocationService tokenRevocationService) {
     this.clientsDetailsService = clientsDetailsService;
+    this.tokenRevocationService = tokenRevocationService;
   }
   
   @InitBinder
@@ -63,8 +69,12 @@ public class ClientsController {
   @RequestMapping(value = "/edit", method = RequestMethod.POST)
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   public String editClient(
-      @ModelAttribute BaseClientDetails clientDetails) {
+      @ModelAttribute BaseClientDetails clientDetails,
+      @RequestParam(value = "rateLimitPerSecond", required = false) String rateLimitPerSecond,
+      @RequestParam(value = "rateLimitBurst", required = false) String rateLimitBurst) {
     
+    clientDetails.addAdditionalInformation(OAuthClientDetails.RATE_LIMIT_PER_SECOND, rateLimitPerSecond);
+    clientDetails.addAdditionalInformation(OAuthClientDetails.RATE_LIMIT_BURST, rateLimitBurst);
     clientsDetailsService.addOrUpdateClientDetails(clientDetails);
     
     if (!clientDetails.getClientSecret().isEmpty()) {
@@ -78,4 +88,11 @@ public class ClientsController {
     clientsDetailsService.removeClientDetails(clientsDetailsService.loadClientByClientId(id).toString());
     return "redirect:/";
   }
+  
+  @RequestMapping(value = "{client.clientId}/revoke", method = RequestMethod.POST)
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  public String revokeClientTokens(@PathVariable("client.clientId") String id) {
+    tokenRevocationService.submit(id, null);
+    return "redirect:/";
+  }
 }
@@ -7,25 +7,29 @@ package com.oauth.server.controller;
 
 import com.oauth.server.authentication.RoleEnum;
 import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.revocation.TokenRevocationService;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.ClientRegistrationService;
 import org.springframework.security.oauth2.provider.approval.Approval;
 import org.springframework.security.oauth2.provider.approval.ApprovalStore;
-import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.security.web.authentication.logout.SecurityContextLogoutHandler;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.ModelAndView;
 
 /**
@@ -42,14 +46,14 @@ public class OAuthManagementController {
   
   private final ApprovalStore approvalStore;
   
-  private final TokenStore tokenStore;
+  private final TokenRevocationService tokenRevocationService;
   
   public OAuthManagementController(ClientRegistrationService clientRegistrationService, DynamoDBPartnerDetailsDAO partnerDetailsService,
-      ApprovalStore approvalStore, TokenStore tokenStore) {
+      ApprovalStore approvalStore, TokenRevocationService tokenRevocationService) {
     this.clientRegistrationService = clientRegistrationService;
     this.partnerDetailsService = partnerDetailsService;
     this.approvalStore = approvalStore;
-    this.tokenStore = tokenStore;
+    this.tokenRevocationService = tokenRevocationService;
   }
   
   @RequestMapping("/")
@@ -70,14 +74,22 @@ public class OAuthManagementController {
   }
   
   /**
-   * Method to revoke the OAuth approval.
+   * Method to revoke the OAuth approval of the logged in user. The tokens of the user for the client are revoked in the
+   * background.
    */
   @RequestMapping(value = "/approval/revoke", method = RequestMethod.POST)
-  public String revokeApproval(@ModelAttribute Approval approval) {
+  public String revokeApproval(@ModelAttribute Approval approval, Principal principal) {
+    if (StringUtils.isEmpty(approval.getClientId())) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A client id is required");
+    }
     
-    approvalStore.revokeApprovals(Collections.singletonList(approval));
-    tokenStore.findTokensByClientIdAndUserName(approval.getClientId(), approval.getUserId())
-        .forEach(tokenStore::removeAccessToken);
+    try {
+      tokenRevocationService.submitUserOfClient(approval.getClientId(), principal.getName());
+    } catch (RejectedExecutionException e) {
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many pending revocations", e);
+    }
+    approvalStore.revokeApprovals(Collections.singletonList(new Approval(principal.getName(), approval.getClientId(),
+        approval.getScope(), approval.getExpiresAt(), approval.getStatus())));
     return "redirect:/";
   }
   
@@ -8,6 +8,7 @@ package com.oauth.server.controller;
 import com.oauth.server.controller.editor.SplitCollectionEditor;
 import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
 import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.revocation.TokenRevocationService;
 import java.util.Collection;
 import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,6 +35,9 @@ public class PartnersController {
     @Autowired
     private DynamoDBPartnerDetailsDAO partnerDetailsRepository;
 
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
     @InitBinder
     public void initBinder(WebDataBinder binder) {
         binder.registerCustomEditor(Collection.class, new SplitCollectionEditor(Set.class, ","));
@@ -66,4 +70,11 @@ public class PartnersController {
         partnerDetailsRepository.deletePartnerByPartnerId(partnerId);
         return "redirect:/";
     }
+
+    @RequestMapping(value = "{partner.partnerId}/revoke", method = RequestMethod.POST)
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public String revokePartnerTokens(@PathVariable("partner.partnerId") String partnerId) {
+        tokenRevocationService.submitPartner(partnerId, null);
+        return "redirect:/";
+    }
 }
@@ -6,34 +6,60 @@
 
 package com.oauth.server.database.dao;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.oauth.server.database.modal.OAuthClientDetails;
 import com.oauth.server.database.service.IOAuthClientDetails;
+import com.oauth.server.event.ClientChangedEvent;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.provider.ClientAlreadyExistsException;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.ClientRegistrationService;
 import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.transaction.event.TransactionalEventListener;
 import org.springframework.util.StringUtils;
 
 /**
  * A DAO to access {@link ClientDetails} in DynamoDB.
  *
+ * <p>
+ * Clients loaded by id are cached for {@code cacheTtlSeconds}. Every change publishes a {@link ClientChangedEvent},
+ * which drops the cached client on this node, and on the other nodes when cluster events are enabled.
+ * </p>
+ *
  * @author Varij Kapil
  */
-@RequiredArgsConstructor
 @Log4j2
 public class DynamoDBClientDetailsDAO implements ClientDetailsService, ClientRegistrationService {
   
   private final IOAuthClientDetails ioAuthClientDetails;
   private final PasswordEncoder passwordEncoder;
   
+  private final ApplicationEventPublisher eventPublisher;
+  
+  private final Cache<String, ClientDetails> clients;
+  
+  public DynamoDBClientDetailsDAO(IOAuthClientDetails ioAuthClientDetails, PasswordEncoder passwordEncoder,
+      ApplicationEventPublisher eventPublisher, long cacheTtlSeconds) {
+    this.ioAuthClientDetails = ioAuthClientDetails;
+    this.passwordEncoder = passwordEncoder;
+    this.eventPublisher = eventPublisher;
+    this.clients = CacheBuilder.newBuilder()
+        .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+  
   /**
    * Load {@link ClientDetails} by clientId provided.
    *
@@ -44,9 +70,16 @@ public class DynamoDBClientDetailsDAO implements ClientDetailsService, ClientReg
    */
   @Override
   public ClientDetails loadClientByClientId(String clientId) throws NoSuchClientException {
-    return ioAuthClientDetails.findByClientId(clientId)
+    ClientDetails cached = clients.getIfPresent(clientId);
+    if (cached != null) {
+      return cached;
+    }
+    
+    ClientDetails clientDetails = ioAuthClientDetails.findByClientId(clientId)
         .map(OAuthClientDetails::toClientDetails)
         .orElseThrow(() -> new NoSuchClientException("Client: " + clientId + " not found."));
+    clients.put(clientId, clientDetails);
+    return clientDetails;
   }
   
   /**
@@ -102,6 +135,7 @@ public class DynamoDBClientDetailsDAO implements ClientDetailsService, ClientReg
     OAuthClientDetails updatedItem = oAuthClientDetails.get().toBuilder().clientSecret(passwordEncoder.encode(secret))
         .build();
     ioAuthClientDetails.save(updatedItem);
+    eventPublisher.publishEvent(new ClientChangedEvent(this, clientId));
   }
   
   /**
@@ -117,6 +151,7 @@ public class DynamoDBClientDetailsDAO implements ClientDetailsService, ClientReg
       log.error("clientId {} already deleted.", clientId);
     } else {
       ioAuthClientDetails.delete(oAuthClientDetails.get());
+      eventPublisher.publishEvent(new ClientChangedEvent(this, clientId));
     }
   }
   
@@ -133,6 +168,55 @@ public class DynamoDBClientDetailsDAO implements ClientDetailsService, ClientReg
         .collect(Collectors.toList());
   }
   
+  /**
+   * List a page of the oauth clients in database.
+   *
+   * @param pageable page to list.
+   * @return the clients of the page.
+   */
+  public Page<OAuthClientDetails> listClients(Pageable pageable) {
+    return ioAuthClientDetails.findAll(pageable);
+  }
+  
+  /**
+   * Load a client as stored, bypassing the cache.
+   *
+   * @param clientId client id.
+   * @return the client, or empty if not found.
+   */
+  public Optional<OAuthClientDetails> findClient(@NonNull String clientId) {
+    return ioAuthClientDetails.findByClientId(clientId);
+  }
+  
+  /**
+   * Load a client and lock it until the end of the current transaction.
+   *
+   * @param clientId client id.
+   * @return the client, or empty if not found.
+   */
+  public Optional<OAuthClientDetails> lockClient(@NonNull String clientId) {
+    return ioAuthClientDetails.findForUpdateByClientId(clientId);
+  }
+  
+  /**
+   * The id and version of a client, without loading it.
+   *
+   * @param clientId client id.
+   * @return the revision, or empty if not found.
+   */
+  public Optional<IOAuthClientDetails.Revision> findClientRevision(@NonNull String clientId) {
+    return ioAuthClientDetails.findRevisionByClientId(clientId);
+  }
+  
+  /**
+   * The number of clients, the highest id and the sum of their versions.
+   *
+   * @return the version of the clients.
+   */
+  public IOAuthClientDetails.Version findClientsVersion() {
+    return ioAuthClientDetails.findVersion();
+  }
+  
   /**
    * Add or update a client details in database.
    *
@@ -143,8 +227,11 @@ public class DynamoDBClientDetailsDAO implements ClientDetailsService, ClientReg
         .filter(clientDetails::isAutoApprove)
         .collect(Collectors.toList());
     
-    OAuthClientDetails oAuthClientDetails = OAuthClientDetails
-        .builder()
+    Map<String, Object> additionalInformation = clientDetails.getAdditionalInformation();
+    
+    OAuthClientDetails oAuthClientDetails = ioAuthClientDetails.findByClientId(clientDetails.getClientId())
+        .map(OAuthClientDetails::toBuilder)
+        .orElseGet(OAuthClientDetails::builder)
         .clientId(clientDetails.getClientId())
         .authorities(StringUtils.collectionToCommaDelimitedString(clientDetails.getAuthorities()))
         .authorizedGrantTypes(
@@ -155,8 +242,33 @@ public class DynamoDBClientDetailsDAO implements ClientDetailsService, ClientReg
         .accessTokenValidity(clientDetails.getAccessTokenValiditySeconds())
         .refreshTokenValidity(clientDetails.getRefreshTokenValiditySeconds())
         .autoapprove(StringUtils.collectionToCommaDelimitedString(autoApproveList))
+        .rateLimitPerSecond(toDouble(additionalInformation.get(OAuthClientDetails.RATE_LIMIT_PER_SECOND)))
+        .rateLimitBurst(toInteger(additionalInformation.get(OAuthClientDetails.RATE_LIMIT_BURST)))
         .build();
     
     ioAuthClientDetails.save(oAuthClientDetails);
+    eventPublisher.publishEvent(new ClientChangedEvent(this, clientDetails.getClientId()));
+  }
+  
+  private static Double toDouble(Object value) {
+    return value == null || value.toString().isEmpty() ? null : Double.valueOf(value.toString());
+  }
+  
+  private static Integer toInteger(Object value) {
+    return value == null || value.toString().isEmpty() ? null : Integer.valueOf(value.toString());
+  }
+  
+  /**
+   * Drop a changed client from the cache, once the change is committed.
+   *
+   * @param event client changed event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onClientChanged(ClientChangedEvent event) {
+    if (event.getClientId() == null) {
+      clients.invalidateAll();
+    } else {
+      clients.invalidate(event.getClientId());
+    }
   }
 }
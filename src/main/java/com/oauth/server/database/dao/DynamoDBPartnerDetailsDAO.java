@@ -5,16 +5,30 @@
  */
 package com.oauth.server.database.dao;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.oauth.server.database.modal.OAuthPartner;
 import com.oauth.server.database.service.IOAuthPartner;
+import com.oauth.server.event.PartnerChangedEvent;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import lombok.NonNull;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 /**
  * A DAO to access {@link OAuthPartner} in DynamoDB.
  *
+ * <p>
+ * Partners loaded by id are cached for {@code cacheTtlSeconds}. Saves and deletes publish a {@link PartnerChangedEvent},
+ * which drops the cached partner on this node, and on the other nodes when cluster events are enabled.
+ * </p>
+ *
  * @author Varij Kapil
  */
 @Log4j2
@@ -22,8 +36,17 @@ public class DynamoDBPartnerDetailsDAO {
     
     private IOAuthPartner ioAuthPartner;
     
-    public DynamoDBPartnerDetailsDAO(IOAuthPartner ioAuthPartner) {
+    private final ApplicationEventPublisher eventPublisher;
+    
+    private final Cache<String, Optional<OAuthPartner>> partners;
+    
+    public DynamoDBPartnerDetailsDAO(IOAuthPartner ioAuthPartner, ApplicationEventPublisher eventPublisher,
+        long cacheTtlSeconds) {
         this.ioAuthPartner = ioAuthPartner;
+        this.eventPublisher = eventPublisher;
+        this.partners = CacheBuilder.newBuilder()
+            .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+            .build();
     }
     
     /**
@@ -33,7 +56,11 @@ public class DynamoDBPartnerDetailsDAO {
      * @return {@link OAuthPartner} or null if not found.
      */
     public OAuthPartner loadPartnerByPartnerId(@NonNull String partnerId) {
-        return ioAuthPartner.findByPartnerId(partnerId).orElse(null);
+        try {
+            return partners.get(partnerId, () -> ioAuthPartner.findByPartnerId(partnerId)).orElse(null);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load partner " + partnerId, e.getCause());
+        }
     }
 
     /**
@@ -46,12 +73,75 @@ public class DynamoDBPartnerDetailsDAO {
     }
     
     /**
-     * Save the {@link OAuthPartner} provided.
+     * List a page of the partners.
+     *
+     * @param pageable page to list.
+     * @return the partners of the page.
+     */
+    public Page<OAuthPartner> listPartners(Pageable pageable) {
+        return ioAuthPartner.findAll(pageable);
+    }
+    
+    /**
+     * Load a partner as stored, bypassing the cache.
+     *
+     * @param partnerId partnerId.
+     * @return the partner, or empty if not found.
+     */
+    public Optional<OAuthPartner> findPartner(@NonNull String partnerId) {
+        return ioAuthPartner.findByPartnerId(partnerId);
+    }
+    
+    /**
+     * Load a partner and lock it until the end of the current transaction.
+     *
+     * @param partnerId partnerId.
+     * @return the partner, or empty if not found.
+     */
+    public Optional<OAuthPartner> lockPartner(@NonNull String partnerId) {
+        return ioAuthPartner.findForUpdateByPartnerId(partnerId);
+    }
+    
+    /**
+     * The id and version of a partner, without loading it.
+     *
+     * @param partnerId partnerId.
+     * @return the revision, or empty if not found.
+     */
+    public Optional<IOAuthPartner.Revision> findPartnerRevision(@NonNull String partnerId) {
+        return ioAuthPartner.findRevisionByPartnerId(partnerId);
+    }
+    
+    /**
+     * The number of partners, the highest id and the sum of their versions.
+     *
+     * @return the version of the partners.
+     */
+    public IOAuthPartner.Version findPartnersVersion() {
+        return ioAuthPartner.findVersion();
+    }
+    
+    /**
+     * Save the {@link OAuthPartner} provided. A partner without id, as posted from the partner form, updates the fields
+     * of that form on the partner with the same partnerId when there is one.
      *
      * @param partner {@link OAuthPartner}
      */
     public void savePartner(OAuthPartner partner) {
-        ioAuthPartner.save(partner);
+        OAuthPartner saved = partner.getId() != null ? partner : ioAuthPartner.findByPartnerId(partner.getPartnerId())
+            .map(existing -> existing.toBuilder()
+                .clientId(partner.getClientId())
+                .clientSecret(partner.getClientSecret())
+                .accessTokenUri(partner.getAccessTokenUri())
+                .userAuthorizationUri(partner.getUserAuthorizationUri())
+                .scopes(partner.getScopes())
+                .rateLimitPerSecond(partner.getRateLimitPerSecond())
+                .rateLimitBurst(partner.getRateLimitBurst())
+                .build())
+            .orElse(partner);
+        
+        ioAuthPartner.save(saved);
+        eventPublisher.publishEvent(new PartnerChangedEvent(this, partner.getPartnerId()));
     }
     
     /**
@@ -65,6 +155,21 @@ public class DynamoDBPartnerDetailsDAO {
             log.error("partner {} already deleted.", partnerId);
         } else {
             ioAuthPartner.delete(partner.get());
+            eventPublisher.publishEvent(new PartnerChangedEvent(this, partnerId));
+        }
+    }
+    
+    /**
+     * Drop a changed partner from the cache, once the change is committed.
+     *
+     * @param event partner changed event.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPartnerChanged(PartnerChangedEvent event) {
+        if (event.getPartnerId() == null) {
+            partners.invalidateAll();
+        } else {
+            partners.invalidate(event.getPartnerId());
         }
     }
 }
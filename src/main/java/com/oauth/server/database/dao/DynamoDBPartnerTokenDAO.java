@@ -7,7 +7,12 @@ package com.oauth.server.database.dao;
 
 import com.oauth.server.database.modal.OAuthPartnerToken;
 import com.oauth.server.database.service.IOAuthPartnerToken;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
+import lombok.NonNull;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
 import org.springframework.security.oauth2.client.token.ClientKeyGenerator;
@@ -43,11 +48,12 @@ public class DynamoDBPartnerTokenDAO implements ClientTokenServices {
         String authenticationId = keyGenerator.extractKey(resource, authentication);
         List<OAuthPartnerToken> accessTokens = getOAuthPartnerTokensByAuthenticationId(authenticationId);
 
-        return accessTokens.stream().findAny().map(OAuthPartnerToken::getToken).orElse(null);
+        return accessTokens.stream().findAny().map(OAuthPartnerToken::toAccessToken).orElse(null);
     }
 
     /**
-     * Save the {@link OAuth2AccessToken} of a partner protected resource for the {@link Authentication} provided.
+     * Save the {@link OAuth2AccessToken} of a partner protected resource for the {@link Authentication} provided,
+     * replacing the previous one.
      *
      * @param resource partner protected resource.
      * @param authentication user authentication.
@@ -59,16 +65,92 @@ public class DynamoDBPartnerTokenDAO implements ClientTokenServices {
                                 OAuth2AccessToken accessToken) {
 
         String userName = authentication != null ? authentication.getName() : null;
+        List<OAuthPartnerToken> existingTokens =
+            getOAuthPartnerTokensByAuthenticationId(keyGenerator.extractKey(resource, authentication));
 
-        OAuthPartnerToken oauthPartnerToken = OAuthPartnerToken.builder()
-            .tokenId(accessToken.getValue())
-            .token(accessToken)
+        OAuthPartnerToken oauthPartnerToken = existingTokens.stream().findFirst()
+            .map(OAuthPartnerToken::toBuilder)
+            .orElseGet(OAuthPartnerToken::builder)
+            .accessToken(accessToken)
             .authenticationId(keyGenerator.extractKey(resource, authentication))
             .userName(userName)
             .clientId(resource.getClientId())
+            .partnerId(resource.getId())
+            .refreshClaimedUntil(null)
             .build();
 
         ioAuthPartnerToken.save(oauthPartnerToken);
+        if (existingTokens.size() > 1) {
+            ioAuthPartnerToken.deleteInBatch(existingTokens.subList(1, existingTokens.size()));
+        }
+    }
+    
+    /**
+     * Find the partner tokens expiring before the given time that no node is refreshing, soonest expiring first.
+     *
+     * @param expiringBefore expiry upper bound.
+     * @param expiredAfter expiry lower bound, tokens expired before are no longer refreshed.
+     * @param batchSize maximum number of tokens returned.
+     * @return partner tokens to refresh.
+     */
+    public List<OAuthPartnerToken> findExpiringBefore(@NonNull Date expiringBefore, @NonNull Date expiredAfter,
+                                                      int batchSize) {
+        return ioAuthPartnerToken.findExpiringBefore(expiringBefore, expiredAfter, new Date(),
+            PageRequest.of(0, batchSize));
+    }
+    
+    /**
+     * Claim the refresh of a partner token for this node until the given time.
+     *
+     * @param partnerToken partner token to refresh.
+     * @param until end of the claim, after which another node may refresh the token.
+     * @return true when claimed, false when another node holds the claim.
+     */
+    public boolean claimRefresh(@NonNull OAuthPartnerToken partnerToken, @NonNull Date until) {
+        return ioAuthPartnerToken.claimRefresh(partnerToken.getId(), until, new Date()) > 0;
+    }
+    
+    /**
+     * Replace a partner token by its refreshed token and release its claim. Keeps the previous refresh token when the
+     * partner did not issue a new one.
+     *
+     * @param partnerToken partner token refreshed.
+     * @param refreshedToken refreshed access token.
+     * @return the token stored, or null when the partner token was replaced in the meantime.
+     */
+    public OAuth2AccessToken replaceRefreshedToken(@NonNull OAuthPartnerToken partnerToken,
+                                                   @NonNull OAuth2AccessToken refreshedToken) {
+        OAuthPartnerToken storedToken = partnerToken.toBuilder()
+            .accessToken(refreshedToken)
+            .build();
+        if (refreshedToken.getRefreshToken() == null) {
+            storedToken.setRefreshToken(partnerToken.getRefreshToken());
+        }
+
+        int replaced = ioAuthPartnerToken.replaceRefreshedToken(partnerToken.getId(), partnerToken.getTokenId(),
+            storedToken.getTokenId(), storedToken.getRefreshToken(), storedToken.getTokenType(),
+            storedToken.getScopes(), storedToken.getExpiresAt(), new Date());
+        return replaced > 0 ? storedToken.toAccessToken() : null;
+    }
+    
+    /**
+     * Count a failed refresh of a partner token, and keep its claim until the next attempt.
+     *
+     * @param partnerToken partner token whose refresh failed.
+     * @param retryAt time of the next attempt.
+     */
+    public void recordRefreshFailure(@NonNull OAuthPartnerToken partnerToken, @NonNull Date retryAt) {
+        ioAuthPartnerToken.recordRefreshFailure(partnerToken.getId(), partnerToken.getTokenId(), retryAt);
+    }
+    
+    /**
+     * Drop the refresh token of a partner token that the partner rejected, so it is no longer refreshed. The access
+     * token is kept until it expires.
+     *
+     * @param partnerToken partner token whose refresh token was rejected.
+     */
+    public void dropRefreshToken(@NonNull OAuthPartnerToken partnerToken) {
+        ioAuthPartnerToken.dropRefreshToken(partnerToken.getId(), partnerToken.getTokenId());
     }
     
     /**
@@ -85,6 +167,28 @@ public class DynamoDBPartnerTokenDAO implements ClientTokenServices {
         ioAuthPartnerToken.deleteInBatch(accessTokens);
     }
     
+    /**
+     * Remove a batch of the partner access tokens of a partner client, or of a user of a partner client. Call it until
+     * it returns 0 to remove all of them.
+     *
+     * @param clientId client id of the partner.
+     * @param userName user name, any user when null.
+     * @param batchSize maximum number of tokens to remove.
+     * @return the number of tokens removed, 0 once none is left.
+     */
+    public int removeAccessTokenBatch(@NonNull String clientId, String userName, int batchSize) {
+        Pageable batch = PageRequest.of(0, batchSize);
+        List<IOAuthPartnerToken.Reference> accessTokens = userName == null
+            ? ioAuthPartnerToken.findReferencesByClientId(clientId, batch)
+            : ioAuthPartnerToken.findReferencesByClientIdAndUserName(clientId, userName, batch);
+
+        if (accessTokens.isEmpty()) {
+            return 0;
+        }
+        return ioAuthPartnerToken.deleteAllByIdIn(
+            accessTokens.stream().map(IOAuthPartnerToken.Reference::getId).collect(Collectors.toList()));
+    }
+    
     private List<OAuthPartnerToken> getOAuthPartnerTokensByAuthenticationId(String authenticationId) {
         return ioAuthPartnerToken.findAllByAuthenticationId(authenticationId);
     }
@@ -9,38 +9,59 @@ import com.oauth.server.database.modal.OAuthAccessToken;
 import com.oauth.server.database.modal.OAuthRefreshToken;
 import com.oauth.server.database.service.IOAuthAccessToken;
 import com.oauth.server.database.service.IOAuthRefreshToken;
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import com.oauth.server.event.TokenRevokedEvent;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
 import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
-import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * A DAO to access {@link OAuth2AccessToken} in DynamoDB. This is an implementation of token services that stores tokens in
  * DynamoDB. This was primarily based off of the functionality of the {@link JdbcTokenStore}.
  *
+ * <p>
+ * Inside a transaction (e.g. a refresh_token grant through the transactional token services), refresh token rows are
+ * read at most once and reused by {@link #readRefreshToken(String)} and {@link #readAuthenticationForRefreshToken(String)}.
+ * </p>
+ *
+ * <p>
+ * Every removal publishes a {@link TokenRevokedEvent}, so in-memory token caches can drop the tokens removed.
+ * </p>
+ *
  * @author Varij Kapil
  */
-public class DynamoDBTokenDAO implements TokenStore {
+public class DynamoDBTokenDAO implements KeyedTokenStore {
   
   private final AuthenticationKeyGenerator authenticationKeyGenerator;
   
   private final IOAuthAccessToken ioAuthAccessToken;
   private final IOAuthRefreshToken ioAuthRefreshToken;
   
-  public DynamoDBTokenDAO(IOAuthAccessToken ioAuthAccessToken, IOAuthRefreshToken ioAuthRefreshToken) {
+  private final ApplicationEventPublisher eventPublisher;
+  
+  public DynamoDBTokenDAO(IOAuthAccessToken ioAuthAccessToken, IOAuthRefreshToken ioAuthRefreshToken,
+      ApplicationEventPublisher eventPublisher) {
     this.ioAuthAccessToken = ioAuthAccessToken;
     this.ioAuthRefreshToken = ioAuthRefreshToken;
+    this.eventPublisher = eventPublisher;
     this.authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
   }
   
@@ -71,7 +92,36 @@ public class DynamoDBTokenDAO implements TokenStore {
         .userName(StringUtils.isNotBlank(authentication.getName()) ? authentication.getName() : "#")
         .build();
     
-    ioAuthAccessToken.save(accessToken);
+    // DefaultTokenServices stores a reused token again, which replaces its row; new tokens have no row to update.
+    if (ioAuthAccessToken.updateByTokenId(accessToken) == 0) {
+      ioAuthAccessToken.save(accessToken);
+    }
+  }
+  
+  /**
+   * Read the stored rows of many access tokens with a single query.
+   *
+   * @param tokenKeys token keys, see {@link #extractTokenKey(String)}.
+   * @return the rows found, keyed by token key. Unknown keys are absent.
+   */
+  @Override
+  public Map<String, OAuthAccessToken> readAccessTokensByKeys(Collection<String> tokenKeys) {
+    if (tokenKeys.isEmpty()) {
+      return new HashMap<>();
+    }
+    return ioAuthAccessToken.findAllByTokenIdIn(tokenKeys).stream()
+        .collect(Collectors.toMap(OAuthAccessToken::getTokenId, accessToken -> accessToken, (first, second) -> first));
+  }
+  
+  /**
+   * Read the stored row of an access token, with both the token and its authentication.
+   *
+   * @param tokenKey token key, see {@link #extractTokenKey(String)}.
+   * @return the row, or null if not found.
+   */
+  @Override
+  public OAuthAccessToken readAccessTokenByKey(String tokenKey) {
+    return ioAuthAccessToken.findByTokenId(tokenKey).orElse(null);
   }
   
   public OAuth2AccessToken readAccessToken(String tokenValue) {
@@ -88,26 +138,33 @@ public class DynamoDBTokenDAO implements TokenStore {
   
   public void removeAccessToken(String tokenValue) {
     String tokenId = extractTokenKey(tokenValue);
-    OAuthAccessToken itemToDelete = OAuthAccessToken.builder().tokenId(tokenId).build();
     
-    ioAuthAccessToken.delete(itemToDelete);
+    ioAuthAccessToken.deleteByTokenId(tokenId);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofAccessToken(this, tokenId));
   }
   
   public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
     
-    OAuthRefreshToken itemToSave = OAuthRefreshToken.builder()
-        .tokenId(extractTokenKey(refreshToken.getValue()))
+    String tokenId = extractTokenKey(refreshToken.getValue());
+    OAuthRefreshToken itemToSave = findRefreshToken(tokenId)
+        .map(OAuthRefreshToken::toBuilder)
+        .orElseGet(OAuthRefreshToken::builder)
+        .tokenId(tokenId)
         .token(refreshToken)
         .authentication(authentication)
+        .clientId(authentication.getOAuth2Request().getClientId())
+        .userName(StringUtils.isNotBlank(authentication.getName()) ? authentication.getName() : "#")
+        .expiresAt(OAuthRefreshToken.expiresAt(refreshToken))
         .build();
     
     ioAuthRefreshToken.save(itemToSave);
+    evictRefreshToken(itemToSave.getTokenId());
   }
   
   public OAuth2RefreshToken readRefreshToken(String token) {
     String tokenId = extractTokenKey(token);
     
-    return ioAuthRefreshToken.findByTokenId(tokenId)
+    return findRefreshToken(tokenId)
         .map(OAuthRefreshToken::getToken)
         .orElse(null);
   }
@@ -122,9 +179,10 @@ public class DynamoDBTokenDAO implements TokenStore {
   
   public void removeRefreshToken(String token) {
     String tokenId = extractTokenKey(token);
-    OAuthRefreshToken itemToDelete = OAuthRefreshToken.builder().tokenId(tokenId).build();
     
-    ioAuthRefreshToken.delete(itemToDelete);
+    ioAuthRefreshToken.deleteByTokenId(tokenId);
+    evictRefreshToken(tokenId);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofRefreshToken(this, tokenId));
   }
   
   public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
@@ -141,45 +199,150 @@ public class DynamoDBTokenDAO implements TokenStore {
   }
   
   public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
-    List<OAuthAccessToken> accessTokens = ioAuthAccessToken.findAllByClientIdAndUserName(clientId, userName);
-    return accessTokens.stream().map(OAuthAccessToken::getToken).collect(Collectors.toList());
+    List<OAuth2AccessToken> accessTokens = new ArrayList<>();
+    ioAuthAccessToken.forEachByClientIdAndUserName(clientId, userName,
+        accessToken -> accessTokens.add(accessToken.getToken()));
+    return accessTokens;
   }
   
+  /**
+   * The tokens of a client. Only the tokens are kept, the rows they are read from are dropped as they go; clients with
+   * too many tokens to hold in memory are read with {@link #forEachAccessToken}.
+   */
   public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
-    
-    List<OAuthAccessToken> accessTokens = ioAuthAccessToken.findAllByClientId(clientId);
-    return accessTokens.stream().map(OAuthAccessToken::getToken).collect(Collectors.toList());
+    List<OAuth2AccessToken> accessTokens = new ArrayList<>();
+    ioAuthAccessToken.forEachByClientIdAndUserName(clientId, null,
+        accessToken -> accessTokens.add(accessToken.getToken()));
+    return accessTokens;
+  }
+  
+  @Override
+  public long forEachAccessToken(String clientId, String userName, Consumer<OAuthAccessToken> action) {
+    return ioAuthAccessToken.forEachByClientIdAndUserName(clientId, userName, action);
   }
   
   public void removeAccessTokenUsingRefreshToken(String refreshToken) {
     String refreshTokenId = extractTokenKey(refreshToken);
     
-    List<OAuthAccessToken> accessTokens = ioAuthAccessToken.findAllByRefreshToken(refreshTokenId);
+    ioAuthAccessToken.deleteAllByRefreshToken(refreshTokenId);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofRefreshToken(this, refreshTokenId));
+  }
+  
+  /**
+   * Remove a batch of tokens with set-based deletes: the access tokens found and the refresh tokens they reference,
+   * or once no access token is left, the refresh tokens found by their own client and user columns.
+   */
+  @Override
+  public int removeTokenBatch(String clientId, String userName, int batchSize) {
+    Pageable batch = PageRequest.of(0, batchSize);
+    
+    List<IOAuthAccessToken.Reference> accessTokens = findAccessTokenReferences(clientId, userName, batch);
+    
+    if (!accessTokens.isEmpty()) {
+      Set<String> refreshTokenIds = accessTokens.stream()
+          .map(IOAuthAccessToken.Reference::getRefreshToken)
+          .filter(Objects::nonNull)
+          .collect(Collectors.toSet());
+      
+      int removed = ioAuthAccessToken.deleteAllByIdIn(
+          accessTokens.stream().map(IOAuthAccessToken.Reference::getId).collect(Collectors.toList()));
+      if (!refreshTokenIds.isEmpty()) {
+        removed += ioAuthRefreshToken.deleteAllByTokenIdIn(refreshTokenIds);
+      }
+      return removed;
+    }
+    
+    List<IOAuthRefreshToken.Reference> refreshTokens = findRefreshTokenReferences(clientId, userName, batch);
     
-    ioAuthAccessToken.deleteInBatch(accessTokens);
+    if (refreshTokens.isEmpty()) {
+      return 0;
+    }
+    return ioAuthRefreshToken.deleteAllByIdIn(
+        refreshTokens.stream().map(IOAuthRefreshToken.Reference::getId).collect(Collectors.toList()));
+  }
+  
+  private List<IOAuthAccessToken.Reference> findAccessTokenReferences(String clientId, String userName, Pageable batch) {
+    if (clientId == null) {
+      return ioAuthAccessToken.findReferencesByUserName(userName, batch);
+    } else if (userName == null) {
+      return ioAuthAccessToken.findReferencesByClientId(clientId, batch);
+    }
+    return ioAuthAccessToken.findReferencesByClientIdAndUserName(clientId, userName, batch);
+  }
+  
+  private List<IOAuthRefreshToken.Reference> findRefreshTokenReferences(String clientId, String userName,
+      Pageable batch) {
+    if (clientId == null) {
+      return ioAuthRefreshToken.findReferencesByUserName(userName, batch);
+    } else if (userName == null) {
+      return ioAuthRefreshToken.findReferencesByClientId(clientId, batch);
+    }
+    return ioAuthRefreshToken.findReferencesByClientIdAndUserName(clientId, userName, batch);
   }
   
   public OAuth2Authentication readAuthenticationForRefreshToken(String value) {
     String tokenId = extractTokenKey(value);
     
-    return ioAuthRefreshToken.findByTokenId(tokenId)
+    return findRefreshToken(tokenId)
         .map(OAuthRefreshToken::getAuthentication)
         .orElse(null);
   }
   
-  protected String extractTokenKey(String value) {
-    if (value == null) {
-      return null;
+  /**
+   * Find a refresh token row, reusing the row already read in the current transaction if there is one.
+   *
+   * @param tokenId refresh token key.
+   * @return the refresh token row.
+   */
+  private Optional<OAuthRefreshToken> findRefreshToken(String tokenId) {
+    Map<String, Optional<OAuthRefreshToken>> transactionRows = getTransactionRefreshTokens(true);
+    
+    if (transactionRows == null) {
+      return ioAuthRefreshToken.findByTokenId(tokenId);
+    }
+    return transactionRows.computeIfAbsent(tokenId, ioAuthRefreshToken::findByTokenId);
+  }
+  
+  private void evictRefreshToken(String tokenId) {
+    Map<String, Optional<OAuthRefreshToken>> transactionRows = getTransactionRefreshTokens(false);
+    
+    if (transactionRows != null) {
+      transactionRows.remove(tokenId);
     }
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance("MD5");
-    } catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
+  }
+  
+  /**
+   * The refresh token rows read in the current transaction, unbound when the transaction completes.
+   *
+   * @param create whether to bind a new map if the transaction has none yet.
+   * @return the rows keyed by token id, or null outside of a transaction.
+   */
+  @SuppressWarnings("unchecked")
+  private Map<String, Optional<OAuthRefreshToken>> getTransactionRefreshTokens(boolean create) {
+    if (!TransactionSynchronizationManager.isActualTransactionActive()
+        || !TransactionSynchronizationManager.isSynchronizationActive()) {
+      return null;
     }
     
-    byte[] bytes = digest.digest(value.getBytes(StandardCharsets.UTF_8));
-    return String.format("%032x", new BigInteger(1, bytes));
+    Map<String, Optional<OAuthRefreshToken>> transactionRows =
+        (Map<String, Optional<OAuthRefreshToken>>) TransactionSynchronizationManager.getResource(this);
+    
+    if (transactionRows == null && create) {
+      transactionRows = new HashMap<>();
+      TransactionSynchronizationManager.bindResource(this, transactionRows);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResourceIfPossible(DynamoDBTokenDAO.this);
+        }
+      });
+    }
+    return transactionRows;
+  }
+  
+  @Override
+  public String extractTokenKey(String value) {
+    return TokenKeys.extractTokenKey(value);
   }
   
 }
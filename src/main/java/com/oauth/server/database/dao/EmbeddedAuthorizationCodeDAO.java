@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.dao;
+
+import com.oauth.server.database.embedded.MappedLogStore;
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.RandomValueAuthorizationCodeServices;
+
+/**
+ * Authorization code services kept in an embedded {@link MappedLogStore}.
+ *
+ * @author Varij Kapil
+ */
+public class EmbeddedAuthorizationCodeDAO extends RandomValueAuthorizationCodeServices {
+  
+  private final MappedLogStore codes;
+  
+  public EmbeddedAuthorizationCodeDAO(MappedLogStore codes) {
+    this.codes = codes;
+  }
+  
+  /**
+   * Store the authorization code for a authenticated user.
+   *
+   * @param code authorization code.
+   * @param authentication authentication for the user.
+   */
+  @Override
+  protected void store(String code, OAuth2Authentication authentication) {
+    codes.put(code, SerializationUtils.serialize(authentication));
+  }
+  
+  /**
+   * Remove/Invalidate the authorization code.
+   *
+   * @param code authorization code.
+   * @return user authentication.
+   */
+  @Override
+  public OAuth2Authentication remove(String code) {
+    byte[] authentication = codes.remove(code);
+    return authentication == null ? null : SerializationUtils.deserialize(authentication);
+  }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.dao;
+
+import com.oauth.server.database.embedded.MappedLogStore;
+import com.oauth.server.database.modal.OAuth2AccessTokenConverter;
+import com.oauth.server.database.modal.OAuthAccessToken;
+import com.oauth.server.event.TokenRevokedEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+/**
+ * A token store kept in embedded {@link MappedLogStore}s, for single node deployments without a database.
+ *
+ * <p>
+ * Access and refresh tokens are stored by token key. The lookups by authentication, client, user and refresh token
+ * use in-memory indexes of the access token keys, built when the store is opened from the access token records.
+ * Those records keep the indexed columns ahead of the token and authentication, so building the indexes does not
+ * deserialize any authentication.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class EmbeddedTokenDAO implements KeyedTokenStore {
+  
+  private final MappedLogStore accessTokens;
+  private final MappedLogStore refreshTokens;
+  
+  private final ApplicationEventPublisher eventPublisher;
+  
+  private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+  
+  private final OAuth2AccessTokenConverter accessTokenConverter = new OAuth2AccessTokenConverter();
+  
+  private final Map<String, Set<String>> tokensByAuthenticationId = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> tokensByRefreshToken = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> tokensByClientId = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> tokensByClientIdAndUserName = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> tokensByUserName = new ConcurrentHashMap<>();
+  
+  public EmbeddedTokenDAO(MappedLogStore accessTokens, MappedLogStore refreshTokens,
+      ApplicationEventPublisher eventPublisher) {
+    this.accessTokens = accessTokens;
+    this.refreshTokens = refreshTokens;
+    this.eventPublisher = eventPublisher;
+    
+    accessTokens.forEach((tokenId, value) -> index(tokenId, decodeAccessToken(tokenId, value, false)));
+    log.info("Opened embedded token store with {} access tokens and {} refresh tokens", accessTokens.size(),
+        refreshTokens.size());
+  }
+  
+  @Override
+  public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+    return readAuthentication(token.getValue());
+  }
+  
+  @Override
+  public OAuth2Authentication readAuthentication(String token) {
+    OAuthAccessToken accessToken = readAccessTokenByKey(extractTokenKey(token));
+    return accessToken == null ? null : accessToken.getAuthentication();
+  }
+  
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    OAuthAccessToken accessToken = OAuthAccessToken.builder()
+        .tokenId(extractTokenKey(token.getValue()))
+        .token(token)
+        .authenticationId(authenticationKeyGenerator.extractKey(authentication))
+        .authentication(authentication)
+        .clientId(authentication.getOAuth2Request().getClientId())
+        .refreshToken(token.getRefreshToken() == null ? null : extractTokenKey(token.getRefreshToken().getValue()))
+        .userName(StringUtils.isNotBlank(authentication.getName()) ? authentication.getName() : "#")
+        .build();
+    
+    byte[] previous = accessTokens.get(accessToken.getTokenId());
+    accessTokens.put(accessToken.getTokenId(), encodeAccessToken(accessToken));
+    if (previous != null) {
+      unindex(accessToken.getTokenId(), decodeAccessToken(accessToken.getTokenId(), previous, false));
+    }
+    index(accessToken.getTokenId(), accessToken);
+  }
+  
+  @Override
+  public OAuthAccessToken readAccessTokenByKey(String tokenKey) {
+    byte[] value = accessTokens.get(tokenKey);
+    return value == null ? null : decodeAccessToken(tokenKey, value, true);
+  }
+  
+  @Override
+  public Map<String, OAuthAccessToken> readAccessTokensByKeys(Collection<String> tokenKeys) {
+    Map<String, OAuthAccessToken> found = new HashMap<>();
+    for (String tokenKey : tokenKeys) {
+      OAuthAccessToken accessToken = readAccessTokenByKey(tokenKey);
+      if (accessToken != null) {
+        found.put(tokenKey, accessToken);
+      }
+    }
+    return found;
+  }
+  
+  @Override
+  public OAuth2AccessToken readAccessToken(String tokenValue) {
+    OAuthAccessToken accessToken = readAccessTokenByKey(extractTokenKey(tokenValue));
+    return accessToken == null ? null : accessToken.getToken();
+  }
+  
+  @Override
+  public void removeAccessToken(OAuth2AccessToken token) {
+    removeAccessToken(token.getValue());
+  }
+  
+  public void removeAccessToken(String tokenValue) {
+    String tokenId = extractTokenKey(tokenValue);
+    
+    removeAccessTokenByKey(tokenId);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofAccessToken(this, tokenId));
+  }
+  
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    byte[] token = SerializationUtils.serialize((Serializable) refreshToken);
+    byte[] serializedAuthentication = SerializationUtils.serialize(authentication);
+    
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(token.length);
+      out.write(token);
+      out.write(serializedAuthentication);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    refreshTokens.put(extractTokenKey(refreshToken.getValue()), bytes.toByteArray());
+  }
+  
+  @Override
+  public OAuth2RefreshToken readRefreshToken(String token) {
+    byte[] value = refreshTokens.get(extractTokenKey(token));
+    if (value == null) {
+      return null;
+    }
+    int tokenLength = readInt(value);
+    return SerializationUtils.deserialize(new ByteArrayInputStream(value, 4, tokenLength));
+  }
+  
+  @Override
+  public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+    return readAuthenticationForRefreshToken(token.getValue());
+  }
+  
+  public OAuth2Authentication readAuthenticationForRefreshToken(String value) {
+    byte[] stored = refreshTokens.get(extractTokenKey(value));
+    if (stored == null) {
+      return null;
+    }
+    int authenticationOffset = 4 + readInt(stored);
+    return SerializationUtils.deserialize(
+        new ByteArrayInputStream(stored, authenticationOffset, stored.length - authenticationOffset));
+  }
+  
+  @Override
+  public void removeRefreshToken(OAuth2RefreshToken token) {
+    removeRefreshToken(token.getValue());
+  }
+  
+  public void removeRefreshToken(String token) {
+    String tokenId = extractTokenKey(token);
+    
+    refreshTokens.remove(tokenId);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofRefreshToken(this, tokenId));
+  }
+  
+  @Override
+  public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+    removeAccessTokenUsingRefreshToken(refreshToken.getValue());
+  }
+  
+  public void removeAccessTokenUsingRefreshToken(String refreshToken) {
+    String refreshTokenId = extractTokenKey(refreshToken);
+    
+    indexed(tokensByRefreshToken, refreshTokenId).forEach(this::removeAccessTokenByKey);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofRefreshToken(this, refreshTokenId));
+  }
+  
+  @Override
+  public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+    String authenticationId = authenticationKeyGenerator.extractKey(authentication);
+    
+    return indexed(tokensByAuthenticationId, authenticationId).stream()
+        .map(this::readAccessTokenByKey)
+        .filter(Objects::nonNull)
+        .map(OAuthAccessToken::getToken)
+        .findAny()
+        .orElse(null);
+  }
+  
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+    return readTokens(indexed(tokensByClientIdAndUserName, clientAndUser(clientId, userName)));
+  }
+  
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+    return readTokens(indexed(tokensByClientId, clientId));
+  }
+  
+  /**
+   * Read the access tokens found through the index one at a time. Only their token ids are copied beforehand.
+   */
+  @Override
+  public long forEachAccessToken(String clientId, String userName, Consumer<OAuthAccessToken> action) {
+    Set<String> tokenIds = userName != null
+        ? indexed(tokensByClientIdAndUserName, clientAndUser(clientId, userName)) : indexed(tokensByClientId, clientId);
+    long count = 0;
+    for (String tokenId : tokenIds) {
+      OAuthAccessToken accessToken = readAccessTokenByKey(tokenId);
+      if (accessToken != null) {
+        action.accept(accessToken);
+        count++;
+      }
+    }
+    return count;
+  }
+  
+  /**
+   * Remove a batch of tokens: the access tokens found through the indexes with the refresh tokens they reference, or
+   * once no access token is left, refresh tokens found by scanning their authentications.
+   */
+  @Override
+  public int removeTokenBatch(String clientId, String userName, int batchSize) {
+    Set<String> tokenIds;
+    if (clientId == null) {
+      tokenIds = indexed(tokensByUserName, userName);
+    } else if (userName == null) {
+      tokenIds = indexed(tokensByClientId, clientId);
+    } else {
+      tokenIds = indexed(tokensByClientIdAndUserName, clientAndUser(clientId, userName));
+    }
+    
+    int removed = 0;
+    if (!tokenIds.isEmpty()) {
+      for (String tokenId : tokenIds.stream().limit(batchSize).collect(Collectors.toList())) {
+        byte[] value = accessTokens.remove(tokenId);
+        if (value != null) {
+          OAuthAccessToken accessToken = decodeAccessToken(tokenId, value, false);
+          unindex(tokenId, accessToken);
+          removed++;
+          if (accessToken.getRefreshToken() != null && refreshTokens.remove(accessToken.getRefreshToken()) != null) {
+            removed++;
+          }
+        }
+      }
+      return removed;
+    }
+    
+    List<String> refreshTokenIds = new ArrayList<>();
+    refreshTokens.forEach((tokenId, value) -> {
+      if (refreshTokenIds.size() < batchSize) {
+        int authenticationOffset = 4 + readInt(value);
+        OAuth2Authentication authentication = SerializationUtils.deserialize(
+            new ByteArrayInputStream(value, authenticationOffset, value.length - authenticationOffset));
+        String authenticationUserName = StringUtils.isNotBlank(authentication.getName()) ? authentication.getName() : "#";
+        if ((clientId == null || clientId.equals(authentication.getOAuth2Request().getClientId()))
+            && (userName == null || userName.equals(authenticationUserName))) {
+          refreshTokenIds.add(tokenId);
+        }
+      }
+    });
+    for (String tokenId : refreshTokenIds) {
+      if (refreshTokens.remove(tokenId) != null) {
+        removed++;
+      }
+    }
+    return removed;
+  }
+  
+  @Override
+  public String extractTokenKey(String value) {
+    return TokenKeys.extractTokenKey(value);
+  }
+  
+  private void removeAccessTokenByKey(String tokenId) {
+    byte[] removed = accessTokens.remove(tokenId);
+    if (removed != null) {
+      unindex(tokenId, decodeAccessToken(tokenId, removed, false));
+    }
+  }
+  
+  private Collection<OAuth2AccessToken> readTokens(Set<String> tokenIds) {
+    return tokenIds.stream()
+        .map(this::readAccessTokenByKey)
+        .filter(Objects::nonNull)
+        .map(OAuthAccessToken::getToken)
+        .collect(Collectors.toList());
+  }
+  
+  private void index(String tokenId, OAuthAccessToken accessToken) {
+    addIndexed(tokensByAuthenticationId, accessToken.getAuthenticationId(), tokenId);
+    addIndexed(tokensByClientId, accessToken.getClientId(), tokenId);
+    addIndexed(tokensByClientIdAndUserName, clientAndUser(accessToken.getClientId(), accessToken.getUserName()), tokenId);
+    addIndexed(tokensByRefreshToken, accessToken.getRefreshToken(), tokenId);
+    addIndexed(tokensByUserName, accessToken.getUserName(), tokenId);
+  }
+  
+  private void unindex(String tokenId, OAuthAccessToken accessToken) {
+    removeIndexed(tokensByAuthenticationId, accessToken.getAuthenticationId(), tokenId);
+    removeIndexed(tokensByClientId, accessToken.getClientId(), tokenId);
+    removeIndexed(tokensByClientIdAndUserName, clientAndUser(accessToken.getClientId(), accessToken.getUserName()),
+        tokenId);
+    removeIndexed(tokensByRefreshToken, accessToken.getRefreshToken(), tokenId);
+    removeIndexed(tokensByUserName, accessToken.getUserName(), tokenId);
+  }
+  
+  private static void addIndexed(Map<String, Set<String>> index, String key, String tokenId) {
+    if (key != null) {
+      index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(tokenId);
+    }
+  }
+  
+  private static void removeIndexed(Map<String, Set<String>> index, String key, String tokenId) {
+    if (key != null) {
+      index.computeIfPresent(key, (k, tokenIds) -> {
+        tokenIds.remove(tokenId);
+        return tokenIds.isEmpty() ? null : tokenIds;
+      });
+    }
+  }
+  
+  private static Set<String> indexed(Map<String, Set<String>> index, String key) {
+    Set<String> tokenIds = key == null ? null : index.get(key);
+    return tokenIds == null ? Collections.emptySet() : new HashSet<>(tokenIds);
+  }
+  
+  private static String clientAndUser(String clientId, String userName) {
+    return clientId + '\u0000' + userName;
+  }
+  
+  /**
+   * Access token record: authentication id, client id, user name, refresh token key ("" for none) and token JSON, each
+   * as its UTF-8 length (int) and bytes, then the serialized authentication.
+   */
+  private byte[] encodeAccessToken(OAuthAccessToken accessToken) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writeString(out, accessToken.getAuthenticationId());
+      writeString(out, accessToken.getClientId());
+      writeString(out, accessToken.getUserName());
+      writeString(out, StringUtils.defaultString(accessToken.getRefreshToken()));
+      writeString(out, accessTokenConverter.convertToDatabaseColumn(accessToken.getToken()));
+      out.write(SerializationUtils.serialize(accessToken.getAuthentication()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+  
+  private OAuthAccessToken decodeAccessToken(String tokenId, byte[] value, boolean full) {
+    ByteArrayInputStream bytes = new ByteArrayInputStream(value);
+    try (DataInputStream in = new DataInputStream(bytes)) {
+      OAuthAccessToken.OAuthAccessTokenBuilder accessToken = OAuthAccessToken.builder()
+          .tokenId(tokenId)
+          .authenticationId(readString(in))
+          .clientId(readString(in))
+          .userName(readString(in))
+          .refreshToken(StringUtils.defaultIfEmpty(readString(in), null));
+      if (full) {
+        accessToken
+            .token(accessTokenConverter.convertToEntityAttribute(readString(in)))
+            .authentication(SerializationUtils.deserialize(bytes));
+      }
+      return accessToken.build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+  
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+  
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+  
+  private static int readInt(byte[] value) {
+    return ((value[0] & 0xFF) << 24) | ((value[1] & 0xFF) << 16) | ((value[2] & 0xFF) << 8) | (value[3] & 0xFF);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.dao;
+
+import com.oauth.server.database.modal.OAuthAccessToken;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * A {@link TokenStore} whose access tokens can be read by token key, with the token and its authentication in one
+ * read.
+ *
+ * @author Varij Kapil
+ */
+public interface KeyedTokenStore extends TokenStore {
+  
+  /**
+   * The key a token value is stored under.
+   *
+   * @param value token value.
+   * @return the token key, or null for a null value.
+   */
+  String extractTokenKey(String value);
+  
+  /**
+   * Read the stored access token, with both the token and its authentication.
+   *
+   * @param tokenKey token key.
+   * @return the access token, or null if not found.
+   */
+  OAuthAccessToken readAccessTokenByKey(String tokenKey);
+  
+  /**
+   * Read many stored access tokens at once.
+   *
+   * @param tokenKeys token keys.
+   * @return the access tokens found, keyed by token key. Unknown keys are absent.
+   */
+  Map<String, OAuthAccessToken> readAccessTokensByKeys(Collection<String> tokenKeys);
+  
+  /**
+   * Remove a batch of the access and refresh tokens of a client, a user, or a user of a client. Call it until it
+   * returns 0 to remove all of them.
+   *
+   * @param clientId client id, any client when null.
+   * @param userName user name, any user when null.
+   * @param batchSize maximum number of access tokens, or refresh tokens once no access token is left, to remove.
+   * @return the number of access and refresh tokens removed, 0 once none is left.
+   */
+  int removeTokenBatch(String clientId, String userName, int batchSize);
+  
+  /**
+   * Pass the access tokens of a client, or of a user of a client, to {@code action} one at a time as they are read,
+   * without holding them all in memory.
+   *
+   * @param clientId client id.
+   * @param userName user name, any user when null.
+   * @param action called with every access token, with both the token and its authentication.
+   * @return the number of access tokens passed.
+   */
+  long forEachAccessToken(String clientId, String userName, Consumer<OAuthAccessToken> action);
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.dao;
+
+import com.oauth.server.database.modal.OAuth2AuthenticationConverter;
+import com.oauth.server.database.shard.TokenShards;
+import com.oauth.server.database.shard.TokenShards.Shard;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.RandomValueAuthorizationCodeServices;
+
+/**
+ * Authorization code services storing codes on the shard owning the code, see {@link TokenShards}.
+ *
+ * @author Varij Kapil
+ */
+public class ShardedAuthorizationCodeDAO extends RandomValueAuthorizationCodeServices {
+  
+  private final TokenShards shards;
+  
+  private final OAuth2AuthenticationConverter authenticationConverter = new OAuth2AuthenticationConverter();
+  
+  public ShardedAuthorizationCodeDAO(TokenShards shards) {
+    this.shards = shards;
+  }
+  
+  /**
+   * Store the authorization code for a authenticated user.
+   *
+   * @param code authorization code.
+   * @param authentication authentication for the user.
+   */
+  @Override
+  protected void store(String code, OAuth2Authentication authentication) {
+    shards.shardFor(code).getJdbcTemplate().update("INSERT INTO oauth_code (code, authentication, created_at, "
+            + "updated_at) VALUES (?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", code,
+        authenticationConverter.convertToDatabaseColumn(authentication));
+  }
+  
+  /**
+   * Remove/Invalidate the authorization code. Only the caller whose delete removed the row gets the authentication,
+   * so a code can be redeemed once.
+   *
+   * @param code authorization code.
+   * @return user authentication.
+   */
+  @Override
+  public OAuth2Authentication remove(String code) {
+    JdbcTemplate owner = shards.shardFor(code).getJdbcTemplate();
+    List<String> rows = owner.queryForList("SELECT authentication FROM oauth_code WHERE code = ?", String.class, code);
+    
+    Shard previousOwner = shards.previousShardFor(code);
+    if (rows.isEmpty() && previousOwner != null) {
+      owner = previousOwner.getJdbcTemplate();
+      rows = owner.queryForList("SELECT authentication FROM oauth_code WHERE code = ?", String.class, code);
+    }
+    
+    if (rows.isEmpty() || owner.update("DELETE FROM oauth_code WHERE code = ?", code) == 0) {
+      return null;
+    }
+    return authenticationConverter.convertToEntityAttribute(rows.get(0));
+  }
+}
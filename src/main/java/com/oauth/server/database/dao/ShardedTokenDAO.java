@@ -0,0 +1,509 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.dao;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimaps;
+import com.oauth.server.database.modal.OAuth2AccessTokenConverter;
+import com.oauth.server.database.modal.OAuth2AuthenticationConverter;
+import com.oauth.server.database.modal.OAuth2RefreshTokenConverter;
+import com.oauth.server.database.modal.OAuthAccessToken;
+import com.oauth.server.database.shard.TokenShards;
+import com.oauth.server.database.shard.TokenShards.Shard;
+import com.oauth.server.event.TokenRevokedEvent;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+/**
+ * A token store that shards access and refresh token rows across several databases by token key, see
+ * {@link TokenShards}. The schema of every shard is in {@code db/sharding/schema.sql}.
+ *
+ * <p>
+ * Lookups that are not by token key go through the {@code oauth_token_route} index, which is sharded by its own key:
+ * authentication id ('A') and refresh token key ('R') each map to the access token keys stored for them. Lookups by
+ * client id and user name are scattered to every shard.
+ * </p>
+ *
+ * <p>
+ * Writes to different shards are not atomic. A route left behind by a failed write points to a missing token and is
+ * dropped the next time it is read.
+ * </p>
+ *
+ * <p>
+ * While a shard is being added or drained, see {@link TokenShards#previousShardFor(String)}, lookups by key that find
+ * nothing on the owner shard are run again on the previous owner, and removals apply to both.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class ShardedTokenDAO implements KeyedTokenStore {
+  
+  static final String AUTHENTICATION_ROUTE = "A";
+  static final String REFRESH_TOKEN_ROUTE = "R";
+  
+  private static final String ACCESS_TOKEN_COLUMNS =
+      "token_id, token, authentication_id, client_id, user_name, authentication, refresh_token";
+  
+  private static final List<String> UPDATED_ACCESS_TOKEN_COLUMNS = ImmutableList.of(
+      "token", "authentication_id", "client_id", "user_name", "authentication", "refresh_token", "updated_at");
+  
+  private static final List<String> UPDATED_REFRESH_TOKEN_COLUMNS = ImmutableList.of(
+      "token", "authentication", "client_id", "user_name", "updated_at");
+  
+  private static final int RESHARD_PAGE_SIZE = 500;
+  
+  private final TokenShards shards;
+  
+  private final ApplicationEventPublisher eventPublisher;
+  
+  private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+  
+  private final OAuth2AccessTokenConverter accessTokenConverter = new OAuth2AccessTokenConverter();
+  private final OAuth2AuthenticationConverter authenticationConverter = new OAuth2AuthenticationConverter();
+  private final OAuth2RefreshTokenConverter refreshTokenConverter = new OAuth2RefreshTokenConverter();
+  
+  private final RowMapper<OAuthAccessToken> accessTokenMapper = this::mapAccessToken;
+  
+  public ShardedTokenDAO(TokenShards shards, ApplicationEventPublisher eventPublisher) {
+    this.shards = shards;
+    this.eventPublisher = eventPublisher;
+  }
+  
+  @Override
+  public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+    return readAuthentication(token.getValue());
+  }
+  
+  @Override
+  public OAuth2Authentication readAuthentication(String token) {
+    OAuthAccessToken accessToken = readAccessTokenByKey(extractTokenKey(token));
+    return accessToken == null ? null : accessToken.getAuthentication();
+  }
+  
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    String tokenId = extractTokenKey(token.getValue());
+    String authenticationId = authenticationKeyGenerator.extractKey(authentication);
+    String refreshTokenId = token.getRefreshToken() == null ? null : extractTokenKey(token.getRefreshToken().getValue());
+    
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    Map<String, Object> values = new LinkedHashMap<>();
+    values.put("token", accessTokenConverter.convertToDatabaseColumn(token));
+    values.put("authentication_id", authenticationId);
+    values.put("client_id", authentication.getOAuth2Request().getClientId());
+    values.put("user_name", StringUtils.isNotBlank(authentication.getName()) ? authentication.getName() : "#");
+    values.put("authentication", authenticationConverter.convertToDatabaseColumn(authentication));
+    values.put("refresh_token", refreshTokenId);
+    values.put("created_at", now);
+    values.put("updated_at", now);
+    
+    shards.shardFor(tokenId).upsert("oauth_access_token", Collections.singletonMap("token_id", tokenId), values,
+        UPDATED_ACCESS_TOKEN_COLUMNS);
+    
+    addRoute(AUTHENTICATION_ROUTE, authenticationId, tokenId);
+    if (refreshTokenId != null) {
+      addRoute(REFRESH_TOKEN_ROUTE, refreshTokenId, tokenId);
+    }
+  }
+  
+  @Override
+  public OAuthAccessToken readAccessTokenByKey(String tokenKey) {
+    List<OAuthAccessToken> rows = queryByKey(tokenKey, jdbcTemplate -> jdbcTemplate
+        .query("SELECT " + ACCESS_TOKEN_COLUMNS + " FROM oauth_access_token WHERE token_id = ?", accessTokenMapper,
+            tokenKey));
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+  
+  /**
+   * Read many access tokens, with one query per shard owning any of the keys, and one per previous owner of the keys
+   * not found.
+   */
+  @Override
+  public Map<String, OAuthAccessToken> readAccessTokensByKeys(Collection<String> tokenKeys) {
+    Map<String, OAuthAccessToken> found = new HashMap<>();
+    readAccessTokensByKeys(Multimaps.index(tokenKeys, shards::shardFor).asMap(), found);
+    
+    List<String> missing = tokenKeys.stream()
+        .filter(tokenKey -> !found.containsKey(tokenKey) && shards.previousShardFor(tokenKey) != null)
+        .collect(Collectors.toList());
+    readAccessTokensByKeys(Multimaps.index(missing, shards::previousShardFor).asMap(), found);
+    return found;
+  }
+  
+  private void readAccessTokensByKeys(Map<Shard, Collection<String>> keysByShard, Map<String, OAuthAccessToken> found) {
+    keysByShard.forEach((shard, keys) ->
+        new NamedParameterJdbcTemplate(shard.getJdbcTemplate())
+            .query("SELECT " + ACCESS_TOKEN_COLUMNS + " FROM oauth_access_token WHERE token_id IN (:tokenIds)",
+                new MapSqlParameterSource("tokenIds", keys), accessTokenMapper)
+            .forEach(accessToken -> found.put(accessToken.getTokenId(), accessToken)));
+  }
+  
+  @Override
+  public OAuth2AccessToken readAccessToken(String tokenValue) {
+    OAuthAccessToken accessToken = readAccessTokenByKey(extractTokenKey(tokenValue));
+    return accessToken == null ? null : accessToken.getToken();
+  }
+  
+  @Override
+  public void removeAccessToken(OAuth2AccessToken token) {
+    removeAccessToken(token.getValue());
+  }
+  
+  public void removeAccessToken(String tokenValue) {
+    String tokenId = extractTokenKey(tokenValue);
+    
+    removeAccessTokenByKey(tokenId);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofAccessToken(this, tokenId));
+  }
+  
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    String tokenId = extractTokenKey(refreshToken.getValue());
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    Map<String, Object> values = new LinkedHashMap<>();
+    values.put("token", refreshTokenConverter.convertToDatabaseColumn(refreshToken));
+    values.put("authentication", authenticationConverter.convertToDatabaseColumn(authentication));
+    values.put("client_id", authentication.getOAuth2Request().getClientId());
+    values.put("user_name", StringUtils.isNotBlank(authentication.getName()) ? authentication.getName() : "#");
+    values.put("created_at", now);
+    values.put("updated_at", now);
+    
+    shards.shardFor(tokenId).upsert("oauth_refresh_token", Collections.singletonMap("token_id", tokenId), values,
+        UPDATED_REFRESH_TOKEN_COLUMNS);
+  }
+  
+  @Override
+  public OAuth2RefreshToken readRefreshToken(String token) {
+    String tokenId = extractTokenKey(token);
+    List<OAuth2RefreshToken> rows = queryByKey(tokenId, jdbcTemplate -> jdbcTemplate
+        .query("SELECT token FROM oauth_refresh_token WHERE token_id = ?",
+            (rs, rowNum) -> refreshTokenConverter.convertToEntityAttribute(rs.getString("token")), tokenId));
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+  
+  @Override
+  public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+    return readAuthenticationForRefreshToken(token.getValue());
+  }
+  
+  public OAuth2Authentication readAuthenticationForRefreshToken(String value) {
+    String tokenId = extractTokenKey(value);
+    List<OAuth2Authentication> rows = queryByKey(tokenId, jdbcTemplate -> jdbcTemplate
+        .query("SELECT authentication FROM oauth_refresh_token WHERE token_id = ?",
+            (rs, rowNum) -> authenticationConverter.convertToEntityAttribute(rs.getString("authentication")),
+            tokenId));
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+  
+  @Override
+  public void removeRefreshToken(OAuth2RefreshToken token) {
+    removeRefreshToken(token.getValue());
+  }
+  
+  public void removeRefreshToken(String token) {
+    String tokenId = extractTokenKey(token);
+    
+    updateByKey(tokenId, "DELETE FROM oauth_refresh_token WHERE token_id = ?", tokenId);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofRefreshToken(this, tokenId));
+  }
+  
+  @Override
+  public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+    removeAccessTokenUsingRefreshToken(refreshToken.getValue());
+  }
+  
+  public void removeAccessTokenUsingRefreshToken(String refreshToken) {
+    String refreshTokenId = extractTokenKey(refreshToken);
+    
+    readRoute(REFRESH_TOKEN_ROUTE, refreshTokenId).forEach(this::removeAccessTokenByKey);
+    eventPublisher.publishEvent(TokenRevokedEvent.ofRefreshToken(this, refreshTokenId));
+  }
+  
+  @Override
+  public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+    String authenticationId = authenticationKeyGenerator.extractKey(authentication);
+    
+    for (String tokenId : readRoute(AUTHENTICATION_ROUTE, authenticationId)) {
+      OAuthAccessToken accessToken = readAccessTokenByKey(tokenId);
+      if (accessToken != null && authenticationId.equals(accessToken.getAuthenticationId())) {
+        return accessToken.getToken();
+      }
+      removeRoute(AUTHENTICATION_ROUTE, authenticationId, tokenId);
+    }
+    return null;
+  }
+  
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+    return shards.scatter(jdbcTemplate -> jdbcTemplate.query("SELECT token FROM oauth_access_token "
+            + "WHERE client_id = ? AND user_name = ?",
+        (rs, rowNum) -> accessTokenConverter.convertToEntityAttribute(rs.getString("token")), clientId, userName));
+  }
+  
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+    return shards.scatter(jdbcTemplate -> jdbcTemplate.query("SELECT token FROM oauth_access_token WHERE client_id = ?",
+        (rs, rowNum) -> accessTokenConverter.convertToEntityAttribute(rs.getString("token")), clientId));
+  }
+  
+  /**
+   * Stream the access tokens of every shard, one shard after the other.
+   */
+  @Override
+  public long forEachAccessToken(String clientId, String userName, Consumer<OAuthAccessToken> action) {
+    String sql = "SELECT " + ACCESS_TOKEN_COLUMNS + " FROM oauth_access_token WHERE client_id = ?"
+        + (userName != null ? " AND user_name = ?" : "");
+    Object[] args = userName != null ? new Object[] {clientId, userName} : new Object[] {clientId};
+    
+    long[] count = {0};
+    for (Shard shard : shards.all()) {
+      shard.stream(sql, rs -> {
+        action.accept(mapAccessToken(rs, 0));
+        count[0]++;
+      }, args);
+    }
+    return count[0];
+  }
+  
+  @Override
+  public String extractTokenKey(String value) {
+    return TokenKeys.extractTokenKey(value);
+  }
+  
+  /**
+   * Remove a batch of tokens on every shard in parallel. Each shard removes up to {@code batchSize} of its access
+   * tokens, with their routes and refresh tokens, or once none is left, up to {@code batchSize} of its refresh tokens.
+   */
+  @Override
+  public int removeTokenBatch(String clientId, String userName, int batchSize) {
+    return shards.scatter(jdbcTemplate -> Collections.singletonList(
+        removeShardTokenBatch(jdbcTemplate, clientId, userName, batchSize)))
+        .stream()
+        .mapToInt(Integer::intValue)
+        .sum();
+  }
+  
+  /**
+   * Move every row not stored on the shard owning it, e.g. after a shard was added or started draining. Each table is
+   * read {@value #RESHARD_PAGE_SIZE} rows at a time in key order, and rows are copied to their owner before they are
+   * deleted. A row written to the owner since is kept over the copy. Until this is done, tokens stay readable from
+   * their old shard as long as it is draining or listed in {@code oauth.sharding.previous-shard-names}. A shard that
+   * was dropped from the configuration is not read, so its rows are never moved.
+   *
+   * @return the number of rows moved.
+   */
+  public int reshard() {
+    int moved = 0;
+    for (Shard shard : shards.all()) {
+      moved += moveMisplacedRows(shard, "oauth_access_token", "token_id", "token_id");
+      moved += moveMisplacedRows(shard, "oauth_refresh_token", "token_id", "token_id");
+      moved += moveMisplacedRows(shard, "oauth_code", "code", "code");
+      moved += moveMisplacedRows(shard, "oauth_token_route", "route_key", "route_type", "route_key", "token_id");
+    }
+    log.info("Moved {} token rows to their owner shards", moved);
+    return moved;
+  }
+  
+  /**
+   * Move the rows of a table not stored on their owner, paging through the table with a cursor on its primary key.
+   *
+   * @param ownerColumn column whose value decides the owner shard of a row.
+   * @param keyColumns primary key columns of the table.
+   */
+  private int moveMisplacedRows(Shard shard, String table, String ownerColumn, String... keyColumns) {
+    String keys = String.join(", ", keyColumns);
+    String firstPage = "SELECT * FROM " + table + " ORDER BY " + keys + " LIMIT " + RESHARD_PAGE_SIZE;
+    String nextPage = "SELECT * FROM " + table + " WHERE (" + keys + ") > ("
+        + String.join(", ", Collections.nCopies(keyColumns.length, "?")) + ") ORDER BY " + keys + " LIMIT "
+        + RESHARD_PAGE_SIZE;
+    String delete = "DELETE FROM " + table + " WHERE " + Arrays.stream(keyColumns)
+        .map(column -> column + " = ?")
+        .collect(Collectors.joining(" AND "));
+    
+    int moved = 0;
+    List<Map<String, Object>> page = shard.getJdbcTemplate().queryForList(firstPage);
+    while (!page.isEmpty()) {
+      for (Map<String, Object> row : page) {
+        Shard owner = shards.shardFor((String) row.get(ownerColumn));
+        if (owner == shard) {
+          continue;
+        }
+        Map<String, Object> key = new LinkedHashMap<>();
+        Map<String, Object> values = new LinkedHashMap<>();
+        row.forEach((column, value) -> {
+          String name = column.toLowerCase();
+          (Arrays.asList(keyColumns).contains(name) ? key : values).put(name, value);
+        });
+        
+        owner.upsert(table, key, values, Collections.emptyList());
+        shard.getJdbcTemplate().update(delete, key.values().toArray());
+        moved++;
+      }
+      
+      if (page.size() < RESHARD_PAGE_SIZE) {
+        break;
+      }
+      Map<String, Object> last = page.get(page.size() - 1);
+      page = shard.getJdbcTemplate().queryForList(nextPage, Arrays.stream(keyColumns).map(last::get).toArray());
+    }
+    return moved;
+  }
+  
+  private int removeShardTokenBatch(JdbcTemplate jdbcTemplate, String clientId, String userName, int batchSize) {
+    MapSqlParameterSource parameters = new MapSqlParameterSource()
+        .addValue("clientId", clientId)
+        .addValue("userName", userName)
+        .addValue("batchSize", batchSize);
+    String condition = (clientId == null ? "" : "client_id = :clientId")
+        + (clientId != null && userName != null ? " AND " : "")
+        + (userName == null ? "" : "user_name = :userName");
+    NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    
+    List<OAuthAccessToken> accessTokens = namedJdbcTemplate.query("SELECT token_id, authentication_id, refresh_token "
+            + "FROM oauth_access_token WHERE " + condition + " LIMIT :batchSize", parameters,
+        (rs, rowNum) -> OAuthAccessToken.builder()
+            .tokenId(rs.getString("token_id"))
+            .authenticationId(rs.getString("authentication_id"))
+            .refreshToken(rs.getString("refresh_token"))
+            .build());
+    
+    if (accessTokens.isEmpty()) {
+      List<String> refreshTokenIds = namedJdbcTemplate.queryForList("SELECT token_id FROM oauth_refresh_token WHERE "
+          + condition + " LIMIT :batchSize", parameters, String.class);
+      return refreshTokenIds.isEmpty() ? 0 : namedJdbcTemplate.update(
+          "DELETE FROM oauth_refresh_token WHERE token_id IN (:tokenIds)",
+          new MapSqlParameterSource("tokenIds", refreshTokenIds));
+    }
+    
+    int removed = namedJdbcTemplate.update("DELETE FROM oauth_access_token WHERE token_id IN (:tokenIds)",
+        new MapSqlParameterSource("tokenIds",
+            accessTokens.stream().map(OAuthAccessToken::getTokenId).collect(Collectors.toList())));
+    
+    for (OAuthAccessToken accessToken : accessTokens) {
+      removeRoute(AUTHENTICATION_ROUTE, accessToken.getAuthenticationId(), accessToken.getTokenId());
+      if (accessToken.getRefreshToken() != null) {
+        removeRoute(REFRESH_TOKEN_ROUTE, accessToken.getRefreshToken(), accessToken.getTokenId());
+      }
+    }
+    
+    List<String> refreshTokenIds = accessTokens.stream()
+        .map(OAuthAccessToken::getRefreshToken)
+        .filter(Objects::nonNull)
+        .distinct()
+        .collect(Collectors.toList());
+    List<String> previouslyOwnedIds = refreshTokenIds.stream()
+        .filter(tokenId -> shards.previousShardFor(tokenId) != null)
+        .collect(Collectors.toList());
+    for (Map<Shard, Collection<String>> owned : Arrays.asList(
+        Multimaps.index(refreshTokenIds, shards::shardFor).asMap(),
+        Multimaps.index(previouslyOwnedIds, shards::previousShardFor).asMap())) {
+      for (Map.Entry<Shard, Collection<String>> shardIds : owned.entrySet()) {
+        removed += new NamedParameterJdbcTemplate(shardIds.getKey().getJdbcTemplate()).update(
+            "DELETE FROM oauth_refresh_token WHERE token_id IN (:tokenIds)",
+            new MapSqlParameterSource("tokenIds", shardIds.getValue()));
+      }
+    }
+    return removed;
+  }
+  
+  private void removeAccessTokenByKey(String tokenId) {
+    OAuthAccessToken accessToken = readAccessTokenByKey(tokenId);
+    if (accessToken == null) {
+      return;
+    }
+    updateByKey(tokenId, "DELETE FROM oauth_access_token WHERE token_id = ?", tokenId);
+    
+    removeRoute(AUTHENTICATION_ROUTE, accessToken.getAuthenticationId(), tokenId);
+    if (accessToken.getRefreshToken() != null) {
+      removeRoute(REFRESH_TOKEN_ROUTE, accessToken.getRefreshToken(), tokenId);
+    }
+  }
+  
+  private void addRoute(String routeType, String routeKey, String tokenId) {
+    shards.shardFor(routeKey).upsert("oauth_token_route",
+        ImmutableMap.of("route_type", routeType, "route_key", routeKey, "token_id", tokenId), Collections.emptyMap(),
+        Collections.emptyList());
+  }
+  
+  /**
+   * The token keys of a route, from the owner of the route key and from its previous owner.
+   */
+  private List<String> readRoute(String routeType, String routeKey) {
+    String sql = "SELECT token_id FROM oauth_token_route WHERE route_type = ? AND route_key = ?";
+    List<String> tokenIds = shards.shardFor(routeKey).getJdbcTemplate()
+        .queryForList(sql, String.class, routeType, routeKey);
+    Shard previousOwner = shards.previousShardFor(routeKey);
+    if (previousOwner == null) {
+      return tokenIds;
+    }
+    return Stream.concat(tokenIds.stream(),
+        previousOwner.getJdbcTemplate().queryForList(sql, String.class, routeType, routeKey).stream())
+        .distinct()
+        .collect(Collectors.toList());
+  }
+  
+  private void removeRoute(String routeType, String routeKey, String tokenId) {
+    updateByKey(routeKey, "DELETE FROM oauth_token_route WHERE route_type = ? AND route_key = ? AND token_id = ?",
+        routeType, routeKey, tokenId);
+  }
+  
+  /**
+   * Run a query by key on the owner of the key, and when it finds nothing, on the previous owner of the key.
+   */
+  private <T> List<T> queryByKey(String key, Function<JdbcTemplate, List<T>> query) {
+    List<T> rows = query.apply(shards.shardFor(key).getJdbcTemplate());
+    Shard previousOwner = shards.previousShardFor(key);
+    return rows.isEmpty() && previousOwner != null ? query.apply(previousOwner.getJdbcTemplate()) : rows;
+  }
+  
+  /**
+   * Run an update by key on the owner of the key, and on the previous owner of the key.
+   */
+  private int updateByKey(String key, String sql, Object... args) {
+    int updated = shards.shardFor(key).getJdbcTemplate().update(sql, args);
+    Shard previousOwner = shards.previousShardFor(key);
+    return previousOwner == null ? updated : updated + previousOwner.getJdbcTemplate().update(sql, args);
+  }
+  
+  private OAuthAccessToken mapAccessToken(ResultSet rs, int rowNum) throws SQLException {
+    return OAuthAccessToken.builder()
+        .tokenId(rs.getString("token_id"))
+        .token(accessTokenConverter.convertToEntityAttribute(rs.getString("token")))
+        .authenticationId(rs.getString("authentication_id"))
+        .clientId(rs.getString("client_id"))
+        .userName(rs.getString("user_name"))
+        .authentication(authenticationConverter.convertToEntityAttribute(rs.getString("authentication")))
+        .refreshToken(rs.getString("refresh_token"))
+        .build();
+  }
+}
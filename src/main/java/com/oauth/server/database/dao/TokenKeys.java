@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The keys tokens are stored under, shared by the token stores.
+ *
+ * @author Varij Kapil
+ */
+public final class TokenKeys {
+  
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  
+  // MessageDigest.getInstance looks the provider up on every call, so each thread keeps its digest.
+  private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
+    }
+  });
+  
+  private TokenKeys() {
+  }
+  
+  /**
+   * The key a token value is stored under.
+   *
+   * @param value token value.
+   * @return MD5 hex digest of the value, or null for a null value.
+   */
+  public static String extractTokenKey(String value) {
+    if (value == null) {
+      return null;
+    }
+    byte[] bytes = MD5.get().digest(value.getBytes(StandardCharsets.UTF_8));
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+      hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+}
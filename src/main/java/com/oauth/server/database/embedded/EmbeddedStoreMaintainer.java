@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.embedded;
+
+import java.io.IOException;
+import java.util.List;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Flushes the embedded stores to disk periodically, and compacts a store once overwritten and removed records take
+ * more than {@code compactionDeadRatio} of its log.
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class EmbeddedStoreMaintainer implements DisposableBean {
+  
+  private final List<MappedLogStore> stores;
+  
+  private final double compactionDeadRatio;
+  
+  public EmbeddedStoreMaintainer(List<MappedLogStore> stores, double compactionDeadRatio) {
+    this.stores = stores;
+    this.compactionDeadRatio = compactionDeadRatio;
+  }
+  
+  @Scheduled(fixedDelayString = "${oauth.embedded.flush-interval-millis:1000}")
+  public void flush() {
+    stores.forEach(MappedLogStore::flush);
+  }
+  
+  @Scheduled(fixedDelayString = "${oauth.embedded.compaction-interval-millis:600000}")
+  public void compact() {
+    for (MappedLogStore store : stores) {
+      if (store.deadRatio() > compactionDeadRatio) {
+        store.compact();
+      }
+    }
+  }
+  
+  @Override
+  public void destroy() {
+    for (MappedLogStore store : stores) {
+      try {
+        store.close();
+      } catch (IOException e) {
+        log.warn("Failed to close embedded store", e);
+      }
+    }
+  }
+}
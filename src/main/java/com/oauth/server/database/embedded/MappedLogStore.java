@@ -0,0 +1,553 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.embedded;
+
+import com.google.common.hash.Hashing;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * A key/value store kept in two memory-mapped files: an append-only log of records and an open addressing hash index
+ * pointing into the log.
+ *
+ * <p>
+ * Every put and remove appends a record to the log, so the log is the source of truth. The index is off-heap and is
+ * mapped as is on open; only the log records appended after the index was last flushed are replayed, or the whole
+ * log if the index does not belong to it. Overwritten and removed records stay in the log until {@link #compact()}
+ * rewrites it with the live records only.
+ * </p>
+ *
+ * <p>
+ * Log record: total length (int), type (byte), key length (int), key, value, CRC32 of type to value (int).
+ * Index slot: key hash (long, 0 for an empty slot), log offset (long, -1 for a removed key).
+ * </p>
+ *
+ * <p>
+ * Each file is mapped as a single buffer, so the log holds at most 2 GB ({@link Integer#MAX_VALUE} bytes), live and
+ * dead records included, and the index at most 2^26 slots, about 47 million keys. A put that would grow either past
+ * that fails with an {@link UncheckedIOException}; compacting the store, or splitting the data across stores, makes
+ * room.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class MappedLogStore implements Closeable {
+  
+  private static final int LOG_MAGIC = 0x4F544C47;
+  private static final int INDEX_MAGIC = 0x4F544958;
+  private static final int VERSION = 1;
+  
+  /** Log header: magic, version, generation. */
+  private static final int LOG_HEADER_BYTES = 16;
+  /** Index header: magic, version, capacity, size, removed slots, generation, log end, dead bytes. */
+  private static final int INDEX_HEADER_BYTES = 48;
+  private static final int SLOT_BYTES = 16;
+  /** Record overhead: length, type, key length, CRC. */
+  private static final int RECORD_OVERHEAD_BYTES = 13;
+  
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 2;
+  
+  private static final long EMPTY_HASH = 0;
+  private static final long REMOVED_OFFSET = -1;
+  
+  private static final double MAX_LOAD_FACTOR = 0.7;
+  
+  private static final String COMPACTING_SUFFIX = ".compacting";
+  
+  private final Path directory;
+  private final String name;
+  private final int initialLogBytes;
+  private final int initialIndexSlots;
+  private final boolean syncWrites;
+  
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  
+  private FileChannel logChannel;
+  private MappedByteBuffer logBuffer;
+  private int logEnd;
+  
+  private FileChannel indexChannel;
+  private MappedByteBuffer indexBuffer;
+  private int capacity;
+  private int size;
+  private int removedSlots;
+  private long generation;
+  private long deadBytes;
+  
+  public MappedLogStore(Path directory, String name, int initialLogBytes, int initialIndexSlots, boolean syncWrites) {
+    this.directory = directory;
+    this.name = name;
+    this.initialLogBytes = Math.max(initialLogBytes, LOG_HEADER_BYTES * 2);
+    this.initialIndexSlots = Integer.highestOneBit(Math.max(initialIndexSlots, 16) - 1) << 1;
+    this.syncWrites = syncWrites;
+    try {
+      Files.createDirectories(directory);
+      Files.deleteIfExists(directory.resolve(name + COMPACTING_SUFFIX + ".log"));
+      Files.deleteIfExists(directory.resolve(name + COMPACTING_SUFFIX + ".idx"));
+      open();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open embedded store " + name + " in " + directory, e);
+    }
+  }
+  
+  /**
+   * @param key key.
+   * @return the value stored for the key, or null.
+   */
+  public byte[] get(String key) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    lock.readLock().lock();
+    try {
+      int slot = findSlot(keyBytes, hash(keyBytes));
+      if (slot < 0) {
+        return null;
+      }
+      int offset = (int) slotOffset(slot);
+      return readValue(offset, readRecordLength(offset), keyBytes.length);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * Store a value, replacing the value stored for the key.
+   *
+   * @param key key.
+   * @param value value.
+   */
+  public void put(String key, byte[] value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    long hash = hash(keyBytes);
+    lock.writeLock().lock();
+    try {
+      int offset = append(PUT, keyBytes, value);
+      int slot = findSlot(keyBytes, hash);
+      if (slot >= 0) {
+        deadBytes += readRecordLength((int) slotOffset(slot));
+        writeSlot(slot, hash, offset);
+      } else {
+        insertSlot(hash, offset);
+      }
+      writeHeader();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write to embedded store " + name, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Remove the value stored for a key.
+   *
+   * @param key key.
+   * @return the value removed, or null if there was none.
+   */
+  public byte[] remove(String key) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    lock.writeLock().lock();
+    try {
+      int slot = findSlot(keyBytes, hash(keyBytes));
+      if (slot < 0) {
+        return null;
+      }
+      int offset = (int) slotOffset(slot);
+      int length = readRecordLength(offset);
+      byte[] value = readValue(offset, length, keyBytes.length);
+      
+      int removeOffset = append(REMOVE, keyBytes, new byte[0]);
+      deadBytes += length + readRecordLength(removeOffset);
+      writeSlot(slot, slotHash(slot), REMOVED_OFFSET);
+      size--;
+      removedSlots++;
+      writeHeader();
+      return value;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write to embedded store " + name, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Visit every live key and value.
+   *
+   * @param consumer consumer of the keys and values.
+   */
+  public void forEach(BiConsumer<String, byte[]> consumer) {
+    lock.readLock().lock();
+    try {
+      for (int slot = 0; slot < capacity; slot++) {
+        long offset = slotOffset(slot);
+        if (slotHash(slot) != EMPTY_HASH && offset != REMOVED_OFFSET) {
+          int length = readRecordLength((int) offset);
+          byte[] keyBytes = readKey((int) offset);
+          consumer.accept(new String(keyBytes, StandardCharsets.UTF_8),
+              readValue((int) offset, length, keyBytes.length));
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * @return the number of live keys.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * @return the share of the log taken by overwritten and removed records.
+   */
+  public double deadRatio() {
+    lock.readLock().lock();
+    try {
+      return logEnd <= LOG_HEADER_BYTES ? 0 : (double) deadBytes / (logEnd - LOG_HEADER_BYTES);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * Write the mapped pages of the log and the index to disk.
+   */
+  public void flush() {
+    lock.writeLock().lock();
+    try {
+      logBuffer.force();
+      indexBuffer.force();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Rewrite the log with the live records only, and rebuild the index for it.
+   */
+  public void compact() {
+    lock.writeLock().lock();
+    try {
+      long started = System.currentTimeMillis();
+      int before = logEnd;
+      
+      MappedLogStore compacted = new MappedLogStore(directory, name + COMPACTING_SUFFIX, Math.max(initialLogBytes,
+          before - (int) deadBytes + LOG_HEADER_BYTES), Math.max(initialIndexSlots, size * 2), false);
+      forEach(compacted::put);
+      compacted.generation = generation + 1;
+      compacted.writeLogHeader();
+      compacted.writeHeader();
+      compacted.flush();
+      compacted.close();
+      
+      close();
+      Files.move(compacted.logPath(), logPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      Files.move(compacted.indexPath(), indexPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      open();
+      
+      log.info("Compacted embedded store {} from {} to {} bytes in {} ms", name, before, logEnd,
+          System.currentTimeMillis() - started);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot compact embedded store " + name, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (logChannel != null && logChannel.isOpen()) {
+        logBuffer.force();
+        indexBuffer.force();
+        logChannel.close();
+        indexChannel.close();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  private void open() throws IOException {
+    logChannel = FileChannel.open(logPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    boolean newLog = logChannel.size() == 0;
+    logBuffer = logChannel.map(MapMode.READ_WRITE, 0, Math.max(logChannel.size(), initialLogBytes));
+    if (newLog || logBuffer.getInt(0) != LOG_MAGIC) {
+      generation = System.currentTimeMillis();
+      writeLogHeader();
+    } else {
+      generation = logBuffer.getLong(8);
+    }
+    
+    indexChannel = FileChannel.open(indexPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    boolean indexMatchesLog = indexChannel.size() >= INDEX_HEADER_BYTES;
+    if (indexMatchesLog) {
+      indexBuffer = indexChannel.map(MapMode.READ_WRITE, 0, indexChannel.size());
+      indexMatchesLog = indexBuffer.getInt(0) == INDEX_MAGIC && indexBuffer.getInt(4) == VERSION
+          && indexBuffer.getLong(20) == generation;
+    }
+    
+    if (indexMatchesLog) {
+      capacity = indexBuffer.getInt(8);
+      size = indexBuffer.getInt(12);
+      removedSlots = indexBuffer.getInt(16);
+      logEnd = (int) indexBuffer.getLong(28);
+      deadBytes = indexBuffer.getLong(36);
+    } else {
+      log.info("Rebuilding the index of embedded store {} from its log", name);
+      mapIndex(initialIndexSlots);
+      logEnd = LOG_HEADER_BYTES;
+      deadBytes = 0;
+    }
+    replay();
+    writeHeader();
+  }
+  
+  /**
+   * Apply the log records appended after the index was last written, up to the first incomplete record.
+   */
+  private void replay() {
+    int replayed = 0;
+    while (logEnd + RECORD_OVERHEAD_BYTES <= logBuffer.capacity()) {
+      int length = logBuffer.getInt(logEnd);
+      if (length < RECORD_OVERHEAD_BYTES || logEnd + length > logBuffer.capacity() || !checksumMatches(logEnd, length)) {
+        break;
+      }
+      byte[] keyBytes = readKey(logEnd);
+      long hash = hash(keyBytes);
+      int slot = findSlot(keyBytes, hash);
+      
+      if (logBuffer.get(logEnd + 4) == PUT) {
+        if (slot >= 0) {
+          deadBytes += readRecordLength((int) slotOffset(slot));
+          writeSlot(slot, hash, logEnd);
+        } else {
+          insertSlot(hash, logEnd);
+        }
+      } else {
+        deadBytes += length;
+        if (slot >= 0) {
+          deadBytes += readRecordLength((int) slotOffset(slot));
+          writeSlot(slot, hash, REMOVED_OFFSET);
+          size--;
+          removedSlots++;
+        }
+      }
+      logEnd += length;
+      replayed++;
+    }
+    if (replayed > 0) {
+      log.info("Replayed {} records of embedded store {}", replayed, name);
+    }
+  }
+  
+  private int append(byte type, byte[] keyBytes, byte[] value) throws IOException {
+    long recordLength = (long) RECORD_OVERHEAD_BYTES + keyBytes.length + value.length;
+    ensureLogCapacity(logEnd + recordLength);
+    int length = (int) recordLength;
+    
+    int offset = logEnd;
+    ByteBuffer record = logBuffer.duplicate();
+    record.position(offset);
+    record.putInt(length).put(type).putInt(keyBytes.length).put(keyBytes).put(value);
+    record.putInt(checksum(offset, length));
+    logEnd += length;
+    
+    if (syncWrites) {
+      logBuffer.force();
+    }
+    return offset;
+  }
+  
+  private void ensureLogCapacity(long required) throws IOException {
+    if (required <= logBuffer.capacity()) {
+      return;
+    }
+    if (required > Integer.MAX_VALUE) {
+      throw new IOException("Embedded store " + name + " log is full at 2 GB, compact it or split the data");
+    }
+    long newCapacity = logBuffer.capacity();
+    while (newCapacity < required) {
+      newCapacity = Math.min(newCapacity * 2, Integer.MAX_VALUE);
+    }
+    logBuffer.force();
+    logBuffer = logChannel.map(MapMode.READ_WRITE, 0, newCapacity);
+  }
+  
+  private void mapIndex(int slots) throws IOException {
+    if (INDEX_HEADER_BYTES + (long) slots * SLOT_BYTES > Integer.MAX_VALUE) {
+      throw new IOException("Embedded store " + name + " index is full, split the data");
+    }
+    capacity = slots;
+    size = 0;
+    removedSlots = 0;
+    indexChannel.truncate(0);
+    indexBuffer = indexChannel.map(MapMode.READ_WRITE, 0, INDEX_HEADER_BYTES + (long) slots * SLOT_BYTES);
+  }
+  
+  private void insertSlot(long hash, long offset) {
+    if (size + removedSlots + 1 > capacity * MAX_LOAD_FACTOR) {
+      resizeIndex();
+    }
+    int slot = (int) (hash & (capacity - 1));
+    while (slotHash(slot) != EMPTY_HASH && slotOffset(slot) != REMOVED_OFFSET) {
+      slot = (slot + 1) & (capacity - 1);
+    }
+    if (slotHash(slot) != EMPTY_HASH) {
+      removedSlots--;
+    }
+    writeSlot(slot, hash, offset);
+    size++;
+  }
+  
+  /**
+   * Rehash the live slots into an index twice as large, dropping removed slots.
+   */
+  private void resizeIndex() {
+    int oldCapacity = capacity;
+    long[] live = new long[size * 2];
+    int count = 0;
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      if (slotHash(slot) != EMPTY_HASH && slotOffset(slot) != REMOVED_OFFSET) {
+        live[count++] = slotHash(slot);
+        live[count++] = slotOffset(slot);
+      }
+    }
+    try {
+      // Removed slots alone can fill the index; only grow it when the live keys need the room.
+      mapIndex(size + 1 > oldCapacity * MAX_LOAD_FACTOR / 2 ? oldCapacity * 2 : oldCapacity);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot resize the index of embedded store " + name, e);
+    }
+    for (int i = 0; i < count; i += 2) {
+      insertSlot(live[i], live[i + 1]);
+    }
+  }
+  
+  /**
+   * @return the slot holding the key, or -1.
+   */
+  private int findSlot(byte[] keyBytes, long hash) {
+    int slot = (int) (hash & (capacity - 1));
+    for (int probes = 0; probes < capacity; probes++) {
+      long slotHash = slotHash(slot);
+      if (slotHash == EMPTY_HASH) {
+        return -1;
+      }
+      long offset = slotOffset(slot);
+      if (slotHash == hash && offset != REMOVED_OFFSET && Arrays.equals(keyBytes, readKey((int) offset))) {
+        return slot;
+      }
+      slot = (slot + 1) & (capacity - 1);
+    }
+    return -1;
+  }
+  
+  private long slotHash(int slot) {
+    return indexBuffer.getLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES);
+  }
+  
+  private long slotOffset(int slot) {
+    return indexBuffer.getLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8);
+  }
+  
+  private void writeSlot(int slot, long hash, long offset) {
+    indexBuffer.putLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES, hash);
+    indexBuffer.putLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8, offset);
+  }
+  
+  private void writeHeader() {
+    indexBuffer.putInt(0, INDEX_MAGIC);
+    indexBuffer.putInt(4, VERSION);
+    indexBuffer.putInt(8, capacity);
+    indexBuffer.putInt(12, size);
+    indexBuffer.putInt(16, removedSlots);
+    indexBuffer.putLong(20, generation);
+    indexBuffer.putLong(28, logEnd);
+    indexBuffer.putLong(36, deadBytes);
+  }
+  
+  private void writeLogHeader() {
+    logBuffer.putInt(0, LOG_MAGIC);
+    logBuffer.putInt(4, VERSION);
+    logBuffer.putLong(8, generation);
+  }
+  
+  private int readRecordLength(int offset) {
+    return logBuffer.getInt(offset);
+  }
+  
+  private byte[] readKey(int offset) {
+    byte[] keyBytes = new byte[logBuffer.getInt(offset + 5)];
+    ByteBuffer record = logBuffer.duplicate();
+    record.position(offset + 9);
+    record.get(keyBytes);
+    return keyBytes;
+  }
+  
+  private byte[] readValue(int offset, int length, int keyLength) {
+    byte[] value = new byte[length - RECORD_OVERHEAD_BYTES - keyLength];
+    ByteBuffer record = logBuffer.duplicate();
+    record.position(offset + 9 + keyLength);
+    record.get(value);
+    return value;
+  }
+  
+  private int checksum(int offset, int length) {
+    byte[] covered = new byte[length - 8];
+    ByteBuffer record = logBuffer.duplicate();
+    record.position(offset + 4);
+    record.get(covered);
+    CRC32 crc = new CRC32();
+    crc.update(covered);
+    return (int) crc.getValue();
+  }
+  
+  private boolean checksumMatches(int offset, int length) {
+    return logBuffer.getInt(offset + length - 4) == checksum(offset, length);
+  }
+  
+  private static long hash(byte[] keyBytes) {
+    long hash = Hashing.murmur3_128().hashBytes(keyBytes).asLong();
+    return hash == EMPTY_HASH ? 1 : hash;
+  }
+  
+  private Path logPath() {
+    return directory.resolve(name + ".log");
+  }
+  
+  private Path indexPath() {
+    return directory.resolve(name + ".idx");
+  }
+}
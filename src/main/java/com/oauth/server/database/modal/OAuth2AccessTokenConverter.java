@@ -2,29 +2,68 @@ package com.oauth.server.database.modal;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oauth.server.tracing.Span;
 import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 
+/**
+ * Stores an {@link OAuth2AccessToken} as its JSON representation.
+ *
+ * <p>
+ * The JSON representation only has the seconds left ({@code expires_in}) at the time it was written, which would make
+ * a token read back later valid for its full validity again. The expiration instant is therefore stored along, and
+ * restored on read.
+ * </p>
+ */
 @Converter
 public class OAuth2AccessTokenConverter implements AttributeConverter<OAuth2AccessToken, String> {
   
+  private static final String EXPIRATION = "expiration_millis";
+  
   private final ObjectMapper objectMapper = new ObjectMapper();
   
   @Override
   public String convertToDatabaseColumn(OAuth2AccessToken oAuth2AccessToken) {
+    return Span.inSpan("OAuth2AccessTokenConverter.convertToDatabaseColumn", () -> write(oAuth2AccessToken));
+  }
+  
+  @Override
+  public OAuth2AccessToken convertToEntityAttribute(String s) {
+    return Span.inSpan("OAuth2AccessTokenConverter.convertToEntityAttribute", () -> read(s));
+  }
+  
+  private String write(OAuth2AccessToken oAuth2AccessToken) {
     try {
+      if (oAuth2AccessToken != null && oAuth2AccessToken.getExpiration() != null) {
+        DefaultOAuth2AccessToken stored = new DefaultOAuth2AccessToken(oAuth2AccessToken);
+        Map<String, Object> additionalInformation = new LinkedHashMap<>(oAuth2AccessToken.getAdditionalInformation());
+        additionalInformation.put(EXPIRATION, oAuth2AccessToken.getExpiration().getTime());
+        stored.setAdditionalInformation(additionalInformation);
+        return objectMapper.writeValueAsString(stored);
+      }
       return objectMapper.writeValueAsString(oAuth2AccessToken);
     } catch (JsonProcessingException e) {
       return "";
     }
   }
   
-  @Override
-  public OAuth2AccessToken convertToEntityAttribute(String s) {
+  private OAuth2AccessToken read(String s) {
     try {
-      return objectMapper.readValue(s, OAuth2AccessToken.class);
+      DefaultOAuth2AccessToken token = (DefaultOAuth2AccessToken) objectMapper.readValue(s, OAuth2AccessToken.class);
+      Object expiration = token.getAdditionalInformation().get(EXPIRATION);
+      if (expiration != null) {
+        Map<String, Object> additionalInformation = new LinkedHashMap<>(token.getAdditionalInformation());
+        additionalInformation.remove(EXPIRATION);
+        token.setAdditionalInformation(additionalInformation);
+        token.setExpiration(new Date(Long.parseLong(expiration.toString())));
+      }
+      return token;
     } catch (IOException e) {
       return null;
     }
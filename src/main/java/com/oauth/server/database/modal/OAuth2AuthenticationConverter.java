@@ -5,6 +5,7 @@
  */
 package com.oauth.server.database.modal;
 
+import com.oauth.server.tracing.Span;
 import java.util.Base64;
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
@@ -22,14 +23,18 @@ public class OAuth2AuthenticationConverter implements AttributeConverter<OAuth2A
     
     @Override
     public String convertToDatabaseColumn(OAuth2Authentication authentication) {
-        byte[] bytes = SerializationUtils.serialize(authentication);
-        return new String(Base64.getEncoder().encode(bytes));
+        return Span.inSpan("OAuth2AuthenticationConverter.convertToDatabaseColumn", () -> {
+            byte[] bytes = SerializationUtils.serialize(authentication);
+            return new String(Base64.getEncoder().encode(bytes));
+        });
     }
     
     @Override
     public OAuth2Authentication convertToEntityAttribute(String authenticationString) {
-        byte[] bytes = Base64.getDecoder().decode(authenticationString.getBytes());
-        return SerializationUtils.deserialize(bytes);
+        return Span.inSpan("OAuth2AuthenticationConverter.convertToEntityAttribute", () -> {
+            byte[] bytes = Base64.getDecoder().decode(authenticationString.getBytes());
+            return SerializationUtils.<OAuth2Authentication>deserialize(bytes);
+        });
         
     }
 }
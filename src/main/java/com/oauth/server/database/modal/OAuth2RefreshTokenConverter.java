@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.modal;
+
+import com.oauth.server.tracing.Span;
+import java.io.Serializable;
+import java.util.Base64;
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+
+/**
+ * This is a converter between OAuth2RefreshToken and String.
+ *
+ * @author Varij Kapil
+ */
+@Converter
+public class OAuth2RefreshTokenConverter implements AttributeConverter<OAuth2RefreshToken, String> {
+  
+  @Override
+  public String convertToDatabaseColumn(OAuth2RefreshToken refreshToken) {
+    return Span.inSpan("OAuth2RefreshTokenConverter.convertToDatabaseColumn", () -> {
+      byte[] bytes = SerializationUtils.serialize((Serializable) refreshToken);
+      return Base64.getEncoder().encodeToString(bytes);
+    });
+  }
+  
+  @Override
+  public OAuth2RefreshToken convertToEntityAttribute(String refreshTokenString) {
+    return Span.inSpan("OAuth2RefreshTokenConverter.convertToEntityAttribute", () -> {
+      byte[] bytes = Base64.getDecoder().decode(refreshTokenString);
+      return SerializationUtils.<OAuth2RefreshToken>deserialize(bytes);
+    });
+  }
+}
@@ -5,11 +5,13 @@
  */
 package com.oauth.server.database.modal;
 
+import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -34,7 +36,11 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "oauth_access_token")
+@Table(name = "oauth_access_token", indexes = {
+    @Index(name = "oauth_access_token_token_id_idx", columnList = "tokenId"),
+    @Index(name = "oauth_access_token_client_user_idx", columnList = "clientId, userName"),
+    @Index(name = "oauth_access_token_user_idx", columnList = "userName")
+})
 public class OAuthAccessToken extends AuditModel {
     
     @Id
@@ -43,6 +49,7 @@ public class OAuthAccessToken extends AuditModel {
     
     String tokenId;
     
+    @Column(columnDefinition = "varchar")
     @Convert(converter = OAuth2AccessTokenConverter.class)
     OAuth2AccessToken token;
     
@@ -52,6 +59,7 @@ public class OAuthAccessToken extends AuditModel {
     
     String userName;
     
+    @Column(columnDefinition = "varchar")
     @Convert(converter = OAuth2AuthenticationConverter.class)
     OAuth2Authentication authentication;
     
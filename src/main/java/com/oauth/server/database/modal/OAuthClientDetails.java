@@ -10,6 +10,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -38,6 +39,12 @@ public class OAuthClientDetails extends AuditModel {
     
     private static final String RESOURCE_ID = "oauth2-resource";
     
+    /**
+     * Additional information keys of the rate limit, see {@link com.oauth.server.ratelimit.RateLimiter}.
+     */
+    public static final String RATE_LIMIT_PER_SECOND = "rate_limit_per_second";
+    public static final String RATE_LIMIT_BURST = "rate_limit_burst";
+    
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     Integer id;
@@ -60,6 +67,16 @@ public class OAuthClientDetails extends AuditModel {
 
     String autoapprove;
 
+    Double rateLimitPerSecond;
+
+    Integer rateLimitBurst;
+
+    /**
+     * Incremented on every update, see {@link com.oauth.server.api.ClientAdminEndpoint} for the entity tags.
+     */
+    @Version
+    Long version;
+
     public ClientDetails toClientDetails() {
         BaseClientDetails clientDetails = new BaseClientDetails(clientId, RESOURCE_ID, scopes, authorizedGrantTypes, authorities, webServerRedirectUri);
         clientDetails.setClientSecret(clientSecret);
@@ -67,6 +84,12 @@ public class OAuthClientDetails extends AuditModel {
         clientDetails.setRefreshTokenValiditySeconds(refreshTokenValidity);
         clientDetails.setAutoApproveScopes(StringUtils
             .commaDelimitedListToSet(autoapprove));
+        if (rateLimitPerSecond != null) {
+            clientDetails.addAdditionalInformation(RATE_LIMIT_PER_SECOND, rateLimitPerSecond);
+        }
+        if (rateLimitBurst != null) {
+            clientDetails.addAdditionalInformation(RATE_LIMIT_BURST, rateLimitBurst);
+        }
 
         return clientDetails;
     }
@@ -5,6 +5,7 @@
  */
 package com.oauth.server.database.modal;
 
+import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -17,8 +18,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
-import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
@@ -33,18 +32,17 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@RequiredArgsConstructor
 @Entity
 @Table(name = "oauth_code")
 public class OAuthCode extends AuditModel {
     
     @Id
-    @NonNull
     @GeneratedValue(strategy = GenerationType.AUTO)
     Integer id;
     
     String code;
     
+    @Column(columnDefinition = "varchar")
     @Convert(converter = OAuth2AuthenticationConverter.class)
     OAuth2Authentication authentication;
 }
@@ -11,6 +11,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -57,6 +58,19 @@ public class OAuthPartner extends AuditModel {
 
     private String scopes;
 
+    /**
+     * Partner token requests allowed per second, the default when null, unlimited when 0.
+     */
+    private Double rateLimitPerSecond;
+
+    private Integer rateLimitBurst;
+
+    /**
+     * Incremented on every update, see {@link com.oauth.server.api.PartnerAdminEndpoint} for the entity tags.
+     */
+    @Version
+    private Long version;
+
     public OAuth2ProtectedResourceDetails toProtectedResourceDetails() {
         AuthorizationCodeResourceDetails resourceDetails = new AuthorizationCodeResourceDetails();
 
@@ -5,12 +5,15 @@
  */
 package com.oauth.server.database.modal;
 
-import javax.persistence.Convert;
+import java.util.Date;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -18,7 +21,10 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
 
 /**
  * An DTO object represents an OAuth partner token.
@@ -39,14 +45,78 @@ public class OAuthPartnerToken extends AuditModel {
     @GeneratedValue(strategy = GenerationType.AUTO)
     Integer id;
     
+    /**
+     * The access token value.
+     */
+    @Column(columnDefinition = "varchar")
     String tokenId;
     
-    @Convert(converter = OAuth2AuthenticationConverter.class)
-    OAuth2AccessToken token;
+    @Column(columnDefinition = "varchar")
+    String refreshToken;
+    
+    String tokenType;
+    
+    /**
+     * Space separated scopes of the access token.
+     */
+    @Column(columnDefinition = "varchar")
+    String scopes;
     
     String authenticationId;
     
     String clientId;
     
     String userName;
+    
+    String partnerId;
+    
+    @Temporal(TemporalType.TIMESTAMP)
+    Date expiresAt;
+    
+    /**
+     * Until when a node refreshes the token ahead of its expiry, see
+     * {@link com.oauth.server.partner.PartnerTokenRefresher}.
+     */
+    @Temporal(TemporalType.TIMESTAMP)
+    Date refreshClaimedUntil;
+    
+    /**
+     * Failed refreshes since the last successful one, see {@link com.oauth.server.partner.PartnerTokenRefresher}.
+     */
+    int refreshFailures;
+    
+    /**
+     * Convert to {@link OAuth2AccessToken}.
+     *
+     * @return the partner access token.
+     */
+    public OAuth2AccessToken toAccessToken() {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(tokenId);
+        
+        accessToken.setTokenType(tokenType);
+        accessToken.setExpiration(expiresAt);
+        accessToken.setScope(OAuth2Utils.parseParameterList(scopes));
+        
+        if (refreshToken != null) {
+            accessToken.setRefreshToken(new DefaultOAuth2RefreshToken(refreshToken));
+        }
+        return accessToken;
+    }
+    
+    public static class OAuthPartnerTokenBuilder {
+        
+        /**
+         * Set the columns of an {@link OAuth2AccessToken}.
+         *
+         * @param accessToken partner access token.
+         * @return this builder.
+         */
+        public OAuthPartnerTokenBuilder accessToken(OAuth2AccessToken accessToken) {
+            return tokenId(accessToken.getValue())
+                .refreshToken(accessToken.getRefreshToken() != null ? accessToken.getRefreshToken().getValue() : null)
+                .tokenType(accessToken.getTokenType())
+                .scopes(accessToken.getScope() != null ? OAuth2Utils.formatParameterList(accessToken.getScope()) : null)
+                .expiresAt(accessToken.getExpiration());
+        }
+    }
 }
@@ -5,12 +5,19 @@
  */
 package com.oauth.server.database.modal;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Date;
+import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -18,6 +25,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
@@ -33,18 +41,49 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "oauth_refresh_token")
+@Table(name = "oauth_refresh_token", indexes = {
+    @Index(name = "oauth_refresh_token_token_id_idx", columnList = "tokenId"),
+    @Index(name = "oauth_refresh_token_client_user_idx", columnList = "clientId, userName"),
+    @Index(name = "oauth_refresh_token_user_idx", columnList = "userName")
+})
 public class OAuthRefreshToken extends AuditModel {
   
+  /**
+   * The expiry stored for refresh tokens that do not expire, so that the column is never null.
+   */
+  public static final LocalDateTime NEVER_EXPIRES = LocalDateTime.of(9999, 12, 31, 0, 0);
+  
   @Id
   @GeneratedValue(strategy = GenerationType.AUTO)
   Integer id;
   
   String tokenId;
   
-  @Convert(converter = OAuth2AccessTokenConverter.class)
+  @Column(columnDefinition = "varchar")
+  @Convert(converter = OAuth2RefreshTokenConverter.class)
   OAuth2RefreshToken token;
   
+  String clientId;
+  
+  String userName;
+  
+  @Column(columnDefinition = "varchar")
   @Convert(converter = OAuth2AuthenticationConverter.class)
   OAuth2Authentication authentication;
+  
+  /**
+   * When the token expires, {@link #NEVER_EXPIRES} if it does not. Partitioned refresh token tables are partitioned
+   * by it.
+   */
+  @Temporal(TemporalType.TIMESTAMP)
+  Date expiresAt;
+  
+  /**
+   * The value of {@link #expiresAt} for a refresh token.
+   */
+  public static Date expiresAt(OAuth2RefreshToken refreshToken) {
+    return refreshToken instanceof ExpiringOAuth2RefreshToken
+        && ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() != null
+        ? ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() : Timestamp.valueOf(NEVER_EXPIRES);
+  }
 }
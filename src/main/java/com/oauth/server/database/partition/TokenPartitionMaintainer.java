@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.partition;
+
+import com.google.common.collect.ImmutableList;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains the partitions of the token tables converted by {@code db/partitioning/convert-to-partitioned.sql}:
+ * access tokens and authorization codes in daily partitions by {@code created_at}, refresh tokens in monthly
+ * partitions by {@code expires_at}, since they live much longer and may be reused for as long as they have not
+ * expired. Refresh tokens that do not expire are kept in the {@code oauth_refresh_token_never} partition.
+ *
+ * <p>
+ * Partitions are created ahead of time, so that new rows rarely land in the default partition. A partition is
+ * detached and dropped once every row in it is older than the retention of its table: for access tokens and codes it
+ * must be longer than the longest validity, refresh tokens are kept that many days after they expired.
+ * </p>
+ *
+ * <p>
+ * When the default partition holds rows belonging to a partition about to be created, or expired rows, it is
+ * detached and replaced, and its rows are moved back into the table with a single {@code INSERT ... SELECT},
+ * leaving the expired rows behind, instead of being deleted from it. The table is locked until the rows are moved.
+ * Each table is maintained under a PostgreSQL advisory lock, so only one node works on it at a time.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class TokenPartitionMaintainer {
+  
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+  
+  private static final String PARTITION_INFIX = "_p";
+  
+  private static final String DEFAULT_PARTITION_SUFFIX = "_default";
+  
+  private static final String MOVED_PARTITION_SUFFIX = "_default_moved";
+  
+  private final JdbcTemplate jdbcTemplate;
+  
+  private final TransactionTemplate transactionTemplate;
+  
+  private final List<PartitionedTable> tables;
+  
+  private final Clock clock;
+  
+  public TokenPartitionMaintainer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+      int accessTokenRetentionDays, int refreshTokenRetentionDays, int codeRetentionDays, int daysAhead,
+      int refreshTokenMonthsAhead, Clock clock) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.tables = ImmutableList.of(
+        new PartitionedTable("oauth_access_token", "created_at", ChronoUnit.DAYS, daysAhead,
+            accessTokenRetentionDays),
+        new PartitionedTable("oauth_refresh_token", "expires_at", ChronoUnit.MONTHS, refreshTokenMonthsAhead,
+            refreshTokenRetentionDays),
+        new PartitionedTable("oauth_code", "created_at", ChronoUnit.DAYS, daysAhead, codeRetentionDays));
+    this.clock = clock;
+  }
+  
+  @EventListener(ApplicationReadyEvent.class)
+  public void applicationReady() {
+    maintain();
+  }
+  
+  /**
+   * Create the upcoming partitions and drop the expired ones, for every token table.
+   */
+  @Scheduled(cron = "${oauth.partitioning.cron:0 15 * * * *}")
+  public void maintain() {
+    tables.forEach(table -> {
+      try {
+        transactionTemplate.execute(status -> {
+          maintainTable(table);
+          return null;
+        });
+      } catch (DataAccessException e) {
+        log.error("Failed to maintain partitions of {}", table.getName(), e);
+      }
+    });
+  }
+  
+  private void maintainTable(PartitionedTable table) {
+    String name = table.getName();
+    Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(hashtext(?))", Boolean.class,
+        name);
+    if (!Boolean.TRUE.equals(locked)) {
+      log.info("Partitions of {} are maintained by another node.", name);
+      return;
+    }
+    
+    String partitionKey = partitionKey(name);
+    if (partitionKey == null) {
+      log.warn("{} is not partitioned, run db/partitioning/convert-to-partitioned.sql first.", name);
+      return;
+    }
+    if (!partitionKey.equals("RANGE (" + table.getColumn() + ")")) {
+      log.warn("{} is partitioned by {} instead of {}, run db/partitioning/convert-to-partitioned.sql again.", name,
+          partitionKey, table.getColumn());
+      return;
+    }
+    
+    NavigableSet<LocalDate> partitions = listPartitions(table);
+    LocalDate today = LocalDate.now(clock);
+    LocalDate current = table.getUnit() == ChronoUnit.MONTHS ? today.withDayOfMonth(1) : today;
+    LocalDate oldestKept = today.minusDays(table.getRetentionDays());
+    
+    NavigableSet<LocalDate> missing = new TreeSet<>();
+    for (int i = 0; i <= table.getAhead(); i++) {
+      LocalDate start = current.plus(i, table.getUnit());
+      if (!partitions.contains(start)) {
+        missing.add(start);
+      }
+    }
+    List<LocalDate> expired = partitions.stream()
+        .filter(start -> !table.end(start).isAfter(oldestKept))
+        .collect(Collectors.toList());
+    
+    boolean moveDefaultRows = hasDefaultRowsToMove(table, missing, oldestKept);
+    String defaultPartition = name + DEFAULT_PARTITION_SUFFIX;
+    String movedPartition = name + MOVED_PARTITION_SUFFIX;
+    if (moveDefaultRows) {
+      jdbcTemplate.execute("ALTER TABLE " + name + " DETACH PARTITION " + defaultPartition);
+      jdbcTemplate.execute("ALTER TABLE " + defaultPartition + " RENAME TO " + movedPartition);
+    }
+    
+    missing.forEach(start -> createPartition(table, start));
+    expired.forEach(start -> dropPartition(table, start));
+    
+    if (moveDefaultRows) {
+      jdbcTemplate.execute("CREATE TABLE " + defaultPartition + " PARTITION OF " + name + " DEFAULT");
+      int moved = jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM " + movedPartition + " WHERE "
+          + table.getColumn() + " >= ?", timestamp(oldestKept));
+      jdbcTemplate.execute("DROP TABLE " + movedPartition);
+      log.info("Moved {} rows out of the default partition of {}", moved, name);
+    }
+  }
+  
+  /**
+   * @return the partition key of a partitioned table, e.g. {@code RANGE (created_at)}, null if the table is not
+   * partitioned.
+   */
+  private String partitionKey(String table) {
+    return jdbcTemplate.queryForList("SELECT pg_get_partkeydef(oid) FROM pg_class WHERE relname = ? AND relkind = 'p'",
+        String.class, table)
+        .stream()
+        .findFirst()
+        .orElse(null);
+  }
+  
+  private NavigableSet<LocalDate> listPartitions(PartitionedTable table) {
+    NavigableSet<LocalDate> partitions = new TreeSet<>();
+    String prefix = table.getName() + PARTITION_INFIX;
+    
+    jdbcTemplate.queryForList("SELECT child.relname FROM pg_inherits"
+        + " JOIN pg_class parent ON parent.oid = pg_inherits.inhparent"
+        + " JOIN pg_class child ON child.oid = pg_inherits.inhrelid"
+        + " WHERE parent.relname = ?", String.class, table.getName())
+        .stream()
+        .filter(partition -> partition.startsWith(prefix))
+        .forEach(partition -> {
+          try {
+            partitions.add(LocalDate.parse(partition.substring(prefix.length()), PARTITION_SUFFIX));
+          } catch (DateTimeParseException e) {
+            log.warn("Ignoring partition {} of {}", partition, table.getName());
+          }
+        });
+    return partitions;
+  }
+  
+  /**
+   * Whether the default partition holds rows in the range of the partitions about to be created, which must leave
+   * it before a partition can take the range over, or expired rows.
+   */
+  private boolean hasDefaultRowsToMove(PartitionedTable table, NavigableSet<LocalDate> missing,
+      LocalDate oldestKept) {
+    String column = table.getColumn();
+    String sql = "SELECT EXISTS (SELECT 1 FROM " + table.getName() + DEFAULT_PARTITION_SUFFIX + " WHERE " + column
+        + " < ?";
+    if (missing.isEmpty()) {
+      return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql + ")", Boolean.class, timestamp(oldestKept)));
+    }
+    return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql + " OR (" + column + " >= ? AND " + column + " < ?))",
+        Boolean.class, timestamp(oldestKept), timestamp(missing.first()), timestamp(table.end(missing.last()))));
+  }
+  
+  private void createPartition(PartitionedTable table, LocalDate start) {
+    String partition = table.getName() + PARTITION_INFIX + start.format(PARTITION_SUFFIX);
+    
+    jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + table.getName()
+        + " FOR VALUES FROM ('" + start + "') TO ('" + table.end(start) + "')");
+    log.info("Created partition {}", partition);
+  }
+  
+  private void dropPartition(PartitionedTable table, LocalDate start) {
+    String partition = table.getName() + PARTITION_INFIX + start.format(PARTITION_SUFFIX);
+    
+    jdbcTemplate.execute("ALTER TABLE " + table.getName() + " DETACH PARTITION " + partition);
+    jdbcTemplate.execute("DROP TABLE " + partition);
+    log.info("Dropped expired partition {}", partition);
+  }
+  
+  private static Timestamp timestamp(LocalDate day) {
+    return Timestamp.valueOf(day.atStartOfDay());
+  }
+  
+  /**
+   * A partitioned token table, with partitions of one {@code unit} each, named after their first day.
+   */
+  @Value
+  private static class PartitionedTable {
+    
+    String name;
+    
+    String column;
+    
+    ChronoUnit unit;
+    
+    int ahead;
+    
+    int retentionDays;
+    
+    LocalDate end(LocalDate start) {
+      return start.plus(1, unit);
+    }
+  }
+}
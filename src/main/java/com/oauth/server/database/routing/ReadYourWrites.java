@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.routing;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-your-writes protection for {@link ReplicaRoutingDataSource}.
+ *
+ * <p>
+ * Keys written recently (token ids, client ids, partner ids) are remembered for a window at least as long as the
+ * replication lag, and reads of these keys are pinned to the primary. The tracking is local to this node: a key
+ * written by another node is not known here, so a lookup that finds nothing on a replica is run again on the primary
+ * (see {@link ReadYourWritesAspect}).
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class ReadYourWrites {
+  
+  private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+  
+  private static final ThreadLocal<Boolean> REPLICA_READ = new ThreadLocal<>();
+  
+  private final Cache<String, Boolean> recentWrites;
+  
+  public ReadYourWrites(long windowMillis, long maximumSize) {
+    this.recentWrites = CacheBuilder.newBuilder()
+        .expireAfterWrite(windowMillis, TimeUnit.MILLISECONDS)
+        .maximumSize(maximumSize)
+        .build();
+  }
+  
+  /**
+   * Remember a key as just written.
+   *
+   * @param key token id, client id or partner id.
+   */
+  public void recordWrite(String key) {
+    if (key != null) {
+      recentWrites.put(key, Boolean.TRUE);
+    }
+  }
+  
+  /**
+   * Whether a key was written within the window.
+   *
+   * @param key token id, client id or partner id.
+   * @return true if reads of the key must go to the primary.
+   */
+  public boolean isRecentlyWritten(String key) {
+    return key != null && recentWrites.getIfPresent(key) != null;
+  }
+  
+  /**
+   * Run a read against the primary, whatever the transaction it runs in.
+   *
+   * @param read the read to run.
+   * @return the result of the read.
+   * @throws Throwable any exception thrown by the read.
+   */
+  public static <T> T runOnPrimary(PrimaryRead<T> read) throws Throwable {
+    if (isPrimaryRequired()) {
+      return read.run();
+    }
+    PRIMARY_REQUIRED.set(Boolean.TRUE);
+    try {
+      return read.run();
+    } finally {
+      PRIMARY_REQUIRED.remove();
+    }
+  }
+  
+  static boolean isPrimaryRequired() {
+    return PRIMARY_REQUIRED.get() != null;
+  }
+  
+  /**
+   * Record that a connection to a replica was obtained by this thread.
+   */
+  static void markReplicaRead() {
+    REPLICA_READ.set(Boolean.TRUE);
+  }
+  
+  /**
+   * Whether a connection to a replica was obtained by this thread since the last call, and reset.
+   */
+  static boolean consumeReplicaRead() {
+    boolean replicaRead = REPLICA_READ.get() != null;
+    REPLICA_READ.remove();
+    return replicaRead;
+  }
+  
+  /**
+   * A read to run against the primary.
+   */
+  @FunctionalInterface
+  public interface PrimaryRead<T> {
+    
+    T run() throws Throwable;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.routing;
+
+import com.oauth.server.database.modal.OAuthAccessToken;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.database.modal.OAuthRefreshToken;
+import java.util.Collection;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Feeds {@link ReadYourWrites} from the repositories in {@code com.oauth.server.database.service}: saved keys are
+ * recorded, and key lookups of recently saved keys are pinned to the primary.
+ *
+ * <p>
+ * A key lookup answered by a replica with nothing is run again on the primary, as the key may have been written by
+ * another node within the replication lag, such as a token issued by one node and validated by another. Lookups of
+ * unknown keys therefore cost a read on the primary too.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Aspect
+@RequiredArgsConstructor
+public class ReadYourWritesAspect {
+  
+  private final ReadYourWrites readYourWrites;
+  
+  @AfterReturning("execution(* org.springframework.data.repository.CrudRepository+.save(..)) && args(entity)")
+  public void afterSave(Object entity) {
+    if (entity instanceof OAuthAccessToken) {
+      readYourWrites.recordWrite(((OAuthAccessToken) entity).getTokenId());
+    } else if (entity instanceof OAuthRefreshToken) {
+      readYourWrites.recordWrite(((OAuthRefreshToken) entity).getTokenId());
+    } else if (entity instanceof OAuthClientDetails) {
+      readYourWrites.recordWrite(((OAuthClientDetails) entity).getClientId());
+    } else if (entity instanceof OAuthPartner) {
+      readYourWrites.recordWrite(((OAuthPartner) entity).getPartnerId());
+    }
+  }
+  
+  @Around("(execution(* com.oauth.server.database.service.*.findByTokenId(String))"
+      + " || execution(* com.oauth.server.database.service.*.find*ByClientId(String))"
+      + " || execution(* com.oauth.server.database.service.*.find*ByPartnerId(String))) && args(key)")
+  public Object aroundFind(ProceedingJoinPoint joinPoint, String key) throws Throwable {
+    if (readYourWrites.isRecentlyWritten(key)) {
+      return ReadYourWrites.runOnPrimary(joinPoint::proceed);
+    }
+    ReadYourWrites.consumeReplicaRead();
+    Object result = joinPoint.proceed();
+    if (isMiss(result) && ReadYourWrites.consumeReplicaRead()) {
+      return ReadYourWrites.runOnPrimary(joinPoint::proceed);
+    }
+    return result;
+  }
+  
+  private static boolean isMiss(Object result) {
+    return result == null
+        || result instanceof Optional && !((Optional<?>) result).isPresent()
+        || result instanceof Collection && ((Collection<?>) result).isEmpty();
+  }
+}
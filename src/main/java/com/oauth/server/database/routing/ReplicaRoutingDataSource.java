@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.routing;
+
+import com.google.common.collect.ImmutableList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A DataSource routing read-only transactions to replicas (round robin) and everything else to the primary.
+ *
+ * <p>
+ * The routing decision is taken when a connection is obtained, so this DataSource must be wrapped in a
+ * {@link LazyConnectionDataSourceProxy}: the connection is then fetched at the first statement, once the transaction
+ * has been marked read-only. Reads can be pinned to the primary with {@link ReadYourWrites#runOnPrimary}.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+  
+  private static final String PRIMARY = "primary";
+  
+  private static final String REPLICA_PREFIX = "replica-";
+  
+  private final DataSource primary;
+  
+  private final List<DataSource> replicas;
+  
+  private final List<String> replicaKeys;
+  
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  
+  public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+    this.primary = primary;
+    this.replicas = ImmutableList.copyOf(replicas);
+    
+    Map<Object, Object> targetDataSources = new HashMap<>();
+    ImmutableList.Builder<String> replicaKeys = ImmutableList.builder();
+    targetDataSources.put(PRIMARY, primary);
+    for (int i = 0; i < replicas.size(); i++) {
+      targetDataSources.put(REPLICA_PREFIX + i, replicas.get(i));
+      replicaKeys.add(REPLICA_PREFIX + i);
+    }
+    this.replicaKeys = replicaKeys.build();
+    
+    setTargetDataSources(targetDataSources);
+    setDefaultTargetDataSource(primary);
+  }
+  
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (replicaKeys.isEmpty()
+        || ReadYourWrites.isPrimaryRequired()
+        || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return PRIMARY;
+    }
+    ReadYourWrites.markReplicaRead();
+    return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+  }
+  
+  @Override
+  public void destroy() {
+    close(primary);
+    replicas.forEach(this::close);
+  }
+  
+  private void close(DataSource dataSource) {
+    if (dataSource instanceof Closeable) {
+      try {
+        ((Closeable) dataSource).close();
+      } catch (IOException e) {
+        log.warn("Failed to close data source {}", dataSource, e);
+      }
+    }
+  }
+}
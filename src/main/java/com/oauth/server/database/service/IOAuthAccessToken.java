@@ -1,20 +1,70 @@
 package com.oauth.server.database.service;
 
 import com.oauth.server.database.modal.OAuthAccessToken;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface IOAuthAccessToken extends JpaRepository<OAuthAccessToken, Integer> {
+public interface IOAuthAccessToken extends JpaRepository<OAuthAccessToken, Integer>, IOAuthAccessTokenStreaming {
   
+  @Transactional(readOnly = true)
   Optional<OAuthAccessToken> findByTokenId(String tokenId);
   
+  List<OAuthAccessToken> findAllByTokenIdIn(Collection<String> tokenIds);
+  
   List<OAuthAccessToken> findAllByAuthenticationId(String authenticationId);
   
   List<OAuthAccessToken> findAllByRefreshToken(String refreshToken);
   
-  List<OAuthAccessToken> findAllByClientId(String clientId);
+  /**
+   * Replace the row of an access token in place, without loading it first.
+   *
+   * @return the number of rows updated, 0 when the token is not stored yet.
+   */
+  @Modifying
+  @Transactional
+  @Query("update OAuthAccessToken t set t.token = :#{#accessToken.token},"
+      + " t.authenticationId = :#{#accessToken.authenticationId}, t.authentication = :#{#accessToken.authentication},"
+      + " t.clientId = :#{#accessToken.clientId}, t.userName = :#{#accessToken.userName},"
+      + " t.refreshToken = :#{#accessToken.refreshToken}, t.updatedAt = CURRENT_TIMESTAMP"
+      + " where t.tokenId = :#{#accessToken.tokenId}")
+  int updateByTokenId(@Param("accessToken") OAuthAccessToken accessToken);
+  
+  @Modifying
+  @Transactional
+  @Query("delete from OAuthAccessToken t where t.tokenId = :tokenId")
+  int deleteByTokenId(@Param("tokenId") String tokenId);
+  
+  @Modifying
+  @Transactional
+  @Query("delete from OAuthAccessToken t where t.refreshToken = :refreshToken")
+  int deleteAllByRefreshToken(@Param("refreshToken") String refreshToken);
+  
+  List<Reference> findReferencesByClientId(String clientId, Pageable pageable);
+  
+  List<Reference> findReferencesByUserName(String userName, Pageable pageable);
+  
+  List<Reference> findReferencesByClientIdAndUserName(String clientId, String userName, Pageable pageable);
+  
+  @Modifying
+  @Transactional
+  @Query("delete from OAuthAccessToken t where t.id in :ids")
+  int deleteAllByIdIn(@Param("ids") Collection<Integer> ids);
   
-  List<OAuthAccessToken> findAllByClientIdAndUserName(String clientId, String userName);
+  /**
+   * The columns of an access token needed to delete it with its refresh token.
+   */
+  interface Reference {
+    
+    Integer getId();
+    
+    String getRefreshToken();
+  }
   
 }
@@ -0,0 +1,18 @@
+package com.oauth.server.database.service;
+
+import com.oauth.server.database.modal.OAuthAccessToken;
+import java.util.function.Consumer;
+
+/**
+ * Access token queries reading their rows through a cursor, for clients with too many tokens to hold in memory.
+ */
+public interface IOAuthAccessTokenStreaming {
+  
+  /**
+   * Pass the access tokens of a client, or of a user of a client when {@code userName} is not null, to
+   * {@code action} as they are fetched. Each entity is detached once passed.
+   *
+   * @return the number of access tokens passed.
+   */
+  long forEachByClientIdAndUserName(String clientId, String userName, Consumer<OAuthAccessToken> action);
+}
@@ -0,0 +1,47 @@
+package com.oauth.server.database.service;
+
+import com.oauth.server.database.modal.OAuthAccessToken;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Fetches {@value #FETCH_SIZE} rows at a time, through a server side cursor on PostgreSQL, which needs the
+ * transaction. Entities are read-only, so Hibernate keeps no snapshot of them, and detached once passed, so the
+ * persistence context stays empty.
+ */
+public class IOAuthAccessTokenStreamingImpl implements IOAuthAccessTokenStreaming {
+  
+  private static final int FETCH_SIZE = 500;
+  
+  @PersistenceContext
+  private EntityManager entityManager;
+  
+  @Override
+  @Transactional(readOnly = true)
+  public long forEachByClientIdAndUserName(String clientId, String userName, Consumer<OAuthAccessToken> action) {
+    TypedQuery<OAuthAccessToken> query = entityManager.createQuery("select t from OAuthAccessToken t"
+        + " where t.clientId = :clientId" + (userName != null ? " and t.userName = :userName" : ""),
+        OAuthAccessToken.class)
+        .setParameter("clientId", clientId)
+        .setHint(QueryHints.HINT_FETCH_SIZE, FETCH_SIZE)
+        .setHint(QueryHints.HINT_READONLY, true);
+    if (userName != null) {
+      query.setParameter("userName", userName);
+    }
+    
+    long count = 0;
+    try (Stream<OAuthAccessToken> accessTokens = query.getResultStream()) {
+      for (OAuthAccessToken accessToken : (Iterable<OAuthAccessToken>) accessTokens::iterator) {
+        action.accept(accessToken);
+        entityManager.detach(accessToken);
+        count++;
+      }
+    }
+    return count;
+  }
+}
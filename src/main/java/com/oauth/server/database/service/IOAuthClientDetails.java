@@ -2,9 +2,51 @@ package com.oauth.server.database.service;
 
 import com.oauth.server.database.modal.OAuthClientDetails;
 import java.util.Optional;
+import javax.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface IOAuthClientDetails extends JpaRepository<OAuthClientDetails, Integer> {
   
+  @Transactional(readOnly = true)
   Optional<OAuthClientDetails> findByClientId(String clientId);
+  
+  @Transactional(readOnly = true)
+  @Query("select c.id as id, c.version as version from OAuthClientDetails c where c.clientId = :clientId")
+  Optional<Revision> findRevisionByClientId(@Param("clientId") String clientId);
+  
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select c from OAuthClientDetails c where c.clientId = :clientId")
+  Optional<OAuthClientDetails> findForUpdateByClientId(@Param("clientId") String clientId);
+  
+  @Transactional(readOnly = true)
+  @Query("select count(c) as count, coalesce(max(c.id), 0) as maxId, coalesce(sum(c.version), 0) as versionSum"
+      + " from OAuthClientDetails c")
+  Version findVersion();
+  
+  /**
+   * The id and version of a client, which change whenever it is updated, or removed and added again.
+   */
+  interface Revision {
+    
+    Integer getId();
+    
+    long getVersion();
+  }
+  
+  /**
+   * The number of clients, the highest id and the sum of the versions, which change whenever a client is added, updated
+   * or removed: an add raises the highest id unless removed again, and an update raises the sum.
+   */
+  interface Version {
+    
+    long getCount();
+    
+    long getMaxId();
+    
+    long getVersionSum();
+  }
 }
@@ -2,9 +2,51 @@ package com.oauth.server.database.service;
 
 import com.oauth.server.database.modal.OAuthPartner;
 import java.util.Optional;
+import javax.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface IOAuthPartner extends JpaRepository<OAuthPartner, Integer> {
   
+  @Transactional(readOnly = true)
   Optional<OAuthPartner> findByPartnerId(String partnerId);
+  
+  @Transactional(readOnly = true)
+  @Query("select p.id as id, p.version as version from OAuthPartner p where p.partnerId = :partnerId")
+  Optional<Revision> findRevisionByPartnerId(@Param("partnerId") String partnerId);
+  
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select p from OAuthPartner p where p.partnerId = :partnerId")
+  Optional<OAuthPartner> findForUpdateByPartnerId(@Param("partnerId") String partnerId);
+  
+  @Transactional(readOnly = true)
+  @Query("select count(p) as count, coalesce(max(p.id), 0) as maxId, coalesce(sum(p.version), 0) as versionSum"
+      + " from OAuthPartner p")
+  Version findVersion();
+  
+  /**
+   * The id and version of a partner, which change whenever it is updated, or removed and added again.
+   */
+  interface Revision {
+    
+    Integer getId();
+    
+    long getVersion();
+  }
+  
+  /**
+   * The number of partners, the highest id and the sum of the versions, which change whenever a partner is added,
+   * updated or removed: an add raises the highest id unless removed again, and an update raises the sum.
+   */
+  interface Version {
+    
+    long getCount();
+    
+    long getMaxId();
+    
+    long getVersionSum();
+  }
 }
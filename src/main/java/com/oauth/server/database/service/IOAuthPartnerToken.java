@@ -1,11 +1,91 @@
 package com.oauth.server.database.service;
 
 import com.oauth.server.database.modal.OAuthPartnerToken;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface IOAuthPartnerToken extends JpaRepository<OAuthPartnerToken, Integer> {
   
   List<OAuthPartnerToken> findAllByAuthenticationId(String authenticationId);
   
+  List<Reference> findReferencesByClientId(String clientId, Pageable pageable);
+  
+  List<Reference> findReferencesByClientIdAndUserName(String clientId, String userName, Pageable pageable);
+  
+  @Modifying
+  @Transactional
+  @Query("delete from OAuthPartnerToken t where t.id in :ids")
+  int deleteAllByIdIn(@Param("ids") Collection<Integer> ids);
+  
+  @Query("select t from OAuthPartnerToken t where t.expiresAt < :expiringBefore and t.expiresAt > :expiredAfter"
+      + " and t.partnerId is not null and t.refreshToken is not null"
+      + " and (t.refreshClaimedUntil is null or t.refreshClaimedUntil < :now) order by t.expiresAt")
+  List<OAuthPartnerToken> findExpiringBefore(@Param("expiringBefore") Date expiringBefore,
+      @Param("expiredAfter") Date expiredAfter, @Param("now") Date now, Pageable pageable);
+  
+  /**
+   * Claim the refresh of a partner token until the given time, unless another node holds an unexpired claim.
+   *
+   * @return 1 when claimed, 0 otherwise.
+   */
+  @Modifying
+  @Transactional
+  @Query("update OAuthPartnerToken t set t.refreshClaimedUntil = :until where t.id = :id"
+      + " and (t.refreshClaimedUntil is null or t.refreshClaimedUntil < :now)")
+  int claimRefresh(@Param("id") Integer id, @Param("until") Date until, @Param("now") Date now);
+  
+  /**
+   * Replace a refreshed partner token and release its claim, unless the token was replaced in the meantime.
+   *
+   * @return 1 when replaced, 0 otherwise.
+   */
+  @Modifying
+  @Transactional
+  @Query("update OAuthPartnerToken t set t.tokenId = :tokenId, t.refreshToken = :refreshToken,"
+      + " t.tokenType = :tokenType, t.scopes = :scopes, t.expiresAt = :expiresAt, t.refreshClaimedUntil = null,"
+      + " t.refreshFailures = 0, t.updatedAt = :now where t.id = :id and t.tokenId = :previousTokenId")
+  int replaceRefreshedToken(@Param("id") Integer id, @Param("previousTokenId") String previousTokenId,
+      @Param("tokenId") String tokenId, @Param("refreshToken") String refreshToken,
+      @Param("tokenType") String tokenType, @Param("scopes") String scopes, @Param("expiresAt") Date expiresAt,
+      @Param("now") Date now);
+  
+  /**
+   * Count a failed refresh of a partner token and hold its claim until the next attempt, unless the token was replaced
+   * in the meantime.
+   *
+   * @return 1 when counted, 0 otherwise.
+   */
+  @Modifying
+  @Transactional
+  @Query("update OAuthPartnerToken t set t.refreshFailures = t.refreshFailures + 1, t.refreshClaimedUntil = :retryAt"
+      + " where t.id = :id and t.tokenId = :previousTokenId")
+  int recordRefreshFailure(@Param("id") Integer id, @Param("previousTokenId") String previousTokenId,
+      @Param("retryAt") Date retryAt);
+  
+  /**
+   * Drop the refresh token of a partner token the partner no longer accepts, and release its claim, unless the token
+   * was replaced in the meantime.
+   *
+   * @return 1 when dropped, 0 otherwise.
+   */
+  @Modifying
+  @Transactional
+  @Query("update OAuthPartnerToken t set t.refreshToken = null, t.refreshClaimedUntil = null"
+      + " where t.id = :id and t.tokenId = :previousTokenId")
+  int dropRefreshToken(@Param("id") Integer id, @Param("previousTokenId") String previousTokenId);
+  
+  /**
+   * The columns of a partner token needed to delete it.
+   */
+  interface Reference {
+    
+    Integer getId();
+  }
 }
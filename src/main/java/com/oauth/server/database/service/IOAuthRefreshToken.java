@@ -1,11 +1,47 @@
 package com.oauth.server.database.service;
 
 import com.oauth.server.database.modal.OAuthRefreshToken;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface IOAuthRefreshToken extends JpaRepository<OAuthRefreshToken, Integer> {
   
+  @Transactional(readOnly = true)
   Optional<OAuthRefreshToken> findByTokenId(String tokenId);
   
+  @Modifying
+  @Transactional
+  @Query("delete from OAuthRefreshToken t where t.tokenId = :tokenId")
+  int deleteByTokenId(@Param("tokenId") String tokenId);
+  
+  @Modifying
+  @Transactional
+  @Query("delete from OAuthRefreshToken t where t.tokenId in :tokenIds")
+  int deleteAllByTokenIdIn(@Param("tokenIds") Collection<String> tokenIds);
+  
+  List<Reference> findReferencesByClientId(String clientId, Pageable pageable);
+  
+  List<Reference> findReferencesByUserName(String userName, Pageable pageable);
+  
+  List<Reference> findReferencesByClientIdAndUserName(String clientId, String userName, Pageable pageable);
+  
+  @Modifying
+  @Transactional
+  @Query("delete from OAuthRefreshToken t where t.id in :ids")
+  int deleteAllByIdIn(@Param("ids") Collection<Integer> ids);
+  
+  /**
+   * The columns of a refresh token needed to delete it.
+   */
+  interface Reference {
+    
+    Integer getId();
+  }
 }
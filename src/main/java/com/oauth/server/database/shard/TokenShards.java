@@ -0,0 +1,281 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.database.shard;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The databases token rows are sharded across.
+ *
+ * <p>
+ * A key is owned by the shard with the highest rendezvous hash of (shard name, key), so adding or removing a shard
+ * only moves the keys of that shard. Secondary lookups that cannot be routed are scattered to every shard in parallel
+ * and gathered.
+ * </p>
+ *
+ * <p>
+ * After a shard was added, and until its rows have been moved, the keys it took over are still stored on their
+ * previous owner, the owner among the shards named in {@code previousShardNames}.
+ * </p>
+ *
+ * <p>
+ * A shard is removed by draining it first: a shard named in {@code drainingShardNames} owns no keys, but it is still
+ * read from as a previous owner and by scattered lookups until its rows have been moved, and only then is it dropped
+ * from the configuration.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class TokenShards implements DisposableBean {
+  
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+  
+  private final List<Shard> shards;
+  
+  private final List<Shard> owners;
+  
+  private final List<Shard> previousShards;
+  
+  private final ExecutorService scatterExecutor;
+  
+  public TokenShards(List<Shard> shards) {
+    this(shards, Collections.emptyList(), Collections.emptyList());
+  }
+  
+  /**
+   * @param shards the shards, including the draining ones.
+   * @param previousShardNames names of the shards before one was added, empty once its rows have been moved. The
+   * draining shards are previous shards too, and so is every shard when this is empty while shards are draining.
+   * @param drainingShardNames names of the shards being removed, which own no keys.
+   */
+  public TokenShards(List<Shard> shards, Collection<String> previousShardNames,
+      Collection<String> drainingShardNames) {
+    this.shards = ImmutableList.copyOf(shards);
+    this.owners = shards.stream()
+        .filter(shard -> !drainingShardNames.contains(shard.getName()))
+        .collect(ImmutableList.toImmutableList());
+    if (owners.isEmpty()) {
+      throw new IllegalArgumentException("At least one token shard that is not draining is required");
+    }
+    boolean draining = owners.size() < shards.size();
+    this.previousShards = shards.stream()
+        .filter(shard -> previousShardNames.contains(shard.getName()) || drainingShardNames.contains(shard.getName())
+            || draining && previousShardNames.isEmpty())
+        .collect(ImmutableList.toImmutableList());
+    this.scatterExecutor = Executors.newFixedThreadPool(shards.size(),
+        new ThreadFactoryBuilder().setNameFormat("token-shard-%d").setDaemon(true).build());
+  }
+  
+  /**
+   * @return every shard, including the draining ones.
+   */
+  public List<Shard> all() {
+    return shards;
+  }
+  
+  /**
+   * The shard owning a key.
+   *
+   * @param key token key, code or routing key.
+   * @return the owner shard.
+   */
+  public Shard shardFor(String key) {
+    return ownerAmong(owners, key);
+  }
+  
+  /**
+   * The shard that owned a key before the last shard was added or started draining, when it still holds rows that
+   * have not been moved.
+   *
+   * @param key token key, code or routing key.
+   * @return the previous owner shard, null when it is the owner shard or no previous shards are set.
+   */
+  public Shard previousShardFor(String key) {
+    if (previousShards.isEmpty()) {
+      return null;
+    }
+    Shard previousOwner = ownerAmong(previousShards, key);
+    return previousOwner == shardFor(key) ? null : previousOwner;
+  }
+  
+  private static Shard ownerAmong(List<Shard> shards, String key) {
+    Shard owner = null;
+    long ownerScore = Long.MIN_VALUE;
+    for (Shard shard : shards) {
+      long score = HASH_FUNCTION.newHasher()
+          .putString(shard.getName(), StandardCharsets.UTF_8)
+          .putString(key, StandardCharsets.UTF_8)
+          .hash()
+          .asLong();
+      if (owner == null || score > ownerScore) {
+        owner = shard;
+        ownerScore = score;
+      }
+    }
+    return owner;
+  }
+  
+  /**
+   * Run a query on every shard in parallel and gather the results.
+   *
+   * @param query query to run on one shard.
+   * @return the results of all shards.
+   */
+  public <T> List<T> scatter(Function<JdbcTemplate, List<T>> query) {
+    List<CompletableFuture<List<T>>> futures = shards.stream()
+        .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard.getJdbcTemplate()), scatterExecutor))
+        .collect(Collectors.toList());
+    
+    List<T> results = new ArrayList<>();
+    futures.forEach(future -> results.addAll(future.join()));
+    return results;
+  }
+  
+  @Override
+  public void destroy() {
+    scatterExecutor.shutdown();
+    for (Shard shard : shards) {
+      DataSource dataSource = shard.getJdbcTemplate().getDataSource();
+      if (dataSource instanceof Closeable) {
+        try {
+          ((Closeable) dataSource).close();
+        } catch (IOException e) {
+          log.warn("Failed to close token shard {}", shard.getName(), e);
+        }
+      }
+    }
+  }
+  
+  /**
+   * A named shard. The name, not the position, decides which keys the shard owns.
+   */
+  @Getter
+  public static class Shard {
+    
+    private static final int STREAMING_FETCH_SIZE = 500;
+    
+    private final String name;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Getter(AccessLevel.NONE)
+    private final JdbcTemplate streamingJdbcTemplate;
+    
+    @Getter(AccessLevel.NONE)
+    private final TransactionTemplate readOnlyTransaction;
+    
+    @Getter(AccessLevel.NONE)
+    private volatile Boolean postgres;
+    
+    public Shard(String name, DataSource dataSource) {
+      this.name = name;
+      this.jdbcTemplate = new JdbcTemplate(dataSource);
+      this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+      this.streamingJdbcTemplate.setFetchSize(STREAMING_FETCH_SIZE);
+      this.readOnlyTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+      this.readOnlyTransaction.setReadOnly(true);
+    }
+    
+    /**
+     * Run a query handling its rows as they are fetched, {@value #STREAMING_FETCH_SIZE} at a time. The query runs in
+     * a read-only transaction, which PostgreSQL needs to fetch through a cursor rather than all rows at once.
+     */
+    public void stream(String sql, RowCallbackHandler rowHandler, Object... args) {
+      readOnlyTransaction.execute(status -> {
+        streamingJdbcTemplate.query(sql, rowHandler, args);
+        return null;
+      });
+    }
+    
+    /**
+     * Insert a row, or update some of the columns of the row with the same key, in one statement: {@code INSERT ...
+     * ON CONFLICT} on PostgreSQL, {@code MERGE} on H2.
+     *
+     * @param table table name.
+     * @param key values of the key columns, which must be character columns.
+     * @param values values of the other columns.
+     * @param updatedColumns columns of {@code values} updated when the row exists; when empty, an existing row is
+     * left as it is.
+     * @return 1 when a row was inserted or updated, 0 otherwise.
+     */
+    public int upsert(String table, Map<String, Object> key, Map<String, Object> values,
+        Collection<String> updatedColumns) {
+      List<String> columns = new ArrayList<>(key.keySet());
+      columns.addAll(values.keySet());
+      List<Object> args = new ArrayList<>(key.values());
+      String sql;
+      
+      if (isPostgres()) {
+        args.addAll(values.values());
+        sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+            + String.join(", ", Collections.nCopies(columns.size(), "?")) + ") ON CONFLICT ("
+            + String.join(", ", key.keySet()) + ") "
+            + (updatedColumns.isEmpty() ? "DO NOTHING" : "DO UPDATE SET " + updatedColumns.stream()
+                .map(column -> column + " = EXCLUDED." + column)
+                .collect(Collectors.joining(", ")));
+      } else {
+        // H2 needs the source columns typed, and takes the type of the other parameters from their target columns.
+        sql = "MERGE INTO " + table + " USING (SELECT " + key.keySet().stream()
+            .map(column -> "CAST(? AS VARCHAR) " + column)
+            .collect(Collectors.joining(", ")) + ") s ON (" + key.keySet().stream()
+            .map(column -> table + "." + column + " = s." + column)
+            .collect(Collectors.joining(" AND ")) + ")";
+        if (!updatedColumns.isEmpty()) {
+          sql += " WHEN MATCHED THEN UPDATE SET " + updatedColumns.stream()
+              .map(column -> column + " = ?")
+              .collect(Collectors.joining(", "));
+          updatedColumns.forEach(column -> args.add(values.get(column)));
+        }
+        List<String> inserted = key.keySet().stream().map(column -> "s." + column).collect(Collectors.toList());
+        inserted.addAll(Collections.nCopies(values.size(), "?"));
+        sql += " WHEN NOT MATCHED THEN INSERT (" + String.join(", ", columns) + ") VALUES ("
+            + String.join(", ", inserted) + ")";
+        args.addAll(values.values());
+      }
+      return jdbcTemplate.update(sql, args.toArray());
+    }
+    
+    private boolean isPostgres() {
+      if (postgres == null) {
+        try {
+          postgres = "PostgreSQL".equals(JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+              "getDatabaseProductName"));
+        } catch (MetaDataAccessException e) {
+          throw new IllegalStateException("Failed to read the database product of token shard " + name, e);
+        }
+      }
+      return postgres;
+    }
+  }
+}
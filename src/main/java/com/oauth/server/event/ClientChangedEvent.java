@@ -0,0 +1,29 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * An event published when a client is added, edited or removed, so that anything holding client details in memory can
+ * drop them.
+ *
+ * @author Varij Kapil
+ */
+@Getter
+public class ClientChangedEvent extends ApplicationEvent {
+  
+  /**
+   * Client changed, all clients when null.
+   */
+  private final String clientId;
+  
+  public ClientChangedEvent(Object source, String clientId) {
+    super(source);
+    this.clientId = clientId;
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * An event published when a partner is saved or deleted, so that anything holding partners in memory can drop them.
+ *
+ * @author Varij Kapil
+ */
+@Getter
+public class PartnerChangedEvent extends ApplicationEvent {
+  
+  /**
+   * Partner changed, all partners when null.
+   */
+  private final String partnerId;
+  
+  public PartnerChangedEvent(Object source, String partnerId) {
+    super(source);
+    this.partnerId = partnerId;
+  }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.event;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Propagates {@link TokenRevokedEvent}, {@link ClientChangedEvent} and {@link PartnerChangedEvent} to every node through
+ * Postgres NOTIFY, so the in-memory caches of all nodes drop what another node changed. {@link RateLimitUsageEvent}s
+ * are propagated the same way, so rate limits apply across nodes.
+ *
+ * <p>
+ * Events published on this node are sent once their transaction commits, from a single background thread. Every node
+ * LISTENs on a dedicated connection and republishes the events of the other nodes locally, with this bus as source.
+ * Notifications sent while the listening connection was down are lost, so after reconnecting every cache is dropped.
+ * </p>
+ *
+ * <p>
+ * Events wait in a queue of {@code queueCapacity} events. The revocations of refresh tokens, which every
+ * refresh_token grant makes, are not queued one by one: their keys are collected and sent at most every
+ * {@code batchIntervalMillis}, many to a notification. When the queue or the collected keys are full, rate limit usage
+ * is dropped, and the invalidations are merged into a single notification sending the other nodes to drop all their
+ * caches. Sent, dropped and failed events are counted in {@code oauth.cluster-events}, tagged by outcome.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class PostgresNotifyEventBus implements DisposableBean {
+  
+  private static final String TOKEN_REVOKED = "token";
+  private static final String CLIENT_CHANGED = "client";
+  private static final String PARTNER_CHANGED = "partner";
+  private static final String RATE_LIMIT_USAGE = "rate";
+  private static final String REFRESH_TOKENS_REVOKED = "refresh";
+  private static final String DROP_ALL = "all";
+  
+  private static final String USAGE_PREFIX = "usage:";
+  
+  /**
+   * Rate limit usage entries per notification, well within the 8000 bytes NOTIFY payload limit.
+   */
+  private static final int USAGE_ENTRIES_PER_MESSAGE = 100;
+  
+  /**
+   * Refresh token keys per notification, about 4 KB.
+   */
+  private static final int REFRESH_TOKEN_KEYS_PER_MESSAGE = 100;
+  
+  private final String nodeId = UUID.randomUUID().toString();
+  
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  
+  private final JdbcTemplate jdbcTemplate;
+  private final DataSourceProperties dataSourceProperties;
+  private final ApplicationEventPublisher eventPublisher;
+  private final String channel;
+  private final int pollTimeoutMillis;
+  private final long reconnectDelayMillis;
+  private final int queueCapacity;
+  private final long batchIntervalMillis;
+  
+  private final BlockingQueue<Map<String, String>> queue;
+  private final Set<String> revokedRefreshTokenKeys = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean overflowed = new AtomicBoolean();
+  
+  private final Counter sent;
+  private final Counter dropped;
+  private final Counter failed;
+  
+  private final Thread sender;
+  private final ExecutorService listener = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("event-bus-listen").setDaemon(true).build());
+  
+  private volatile boolean running = true;
+  
+  public PostgresNotifyEventBus(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties,
+      ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry, String channel, int pollTimeoutMillis,
+      long reconnectDelayMillis, int queueCapacity, long batchIntervalMillis) {
+    if (!channel.matches("[a-z_][a-z0-9_]*")) {
+      throw new IllegalArgumentException("Invalid cluster event channel: " + channel);
+    }
+    this.jdbcTemplate = jdbcTemplate;
+    this.dataSourceProperties = dataSourceProperties;
+    this.eventPublisher = eventPublisher;
+    this.channel = channel;
+    this.pollTimeoutMillis = pollTimeoutMillis;
+    this.reconnectDelayMillis = reconnectDelayMillis;
+    this.queueCapacity = queueCapacity;
+    this.batchIntervalMillis = batchIntervalMillis;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    
+    this.sent = outcome(meterRegistry, "sent");
+    this.dropped = outcome(meterRegistry, "dropped");
+    this.failed = outcome(meterRegistry, "failed");
+    
+    this.sender = new Thread(this::sendEvents, "event-bus-notify");
+    this.sender.setDaemon(true);
+    this.sender.start();
+  }
+  
+  @EventListener(ApplicationReadyEvent.class)
+  public void applicationReady() {
+    listener.execute(this::listen);
+  }
+  
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onTokenRevoked(TokenRevokedEvent event) {
+    if (event.getSource() == this) {
+      return;
+    }
+    if (event.getRefreshTokenKey() != null) {
+      if (revokedRefreshTokenKeys.size() < queueCapacity) {
+        revokedRefreshTokenKeys.add(event.getRefreshTokenKey());
+      } else {
+        overflow(message(TOKEN_REVOKED));
+      }
+    } else {
+      Map<String, String> message = message(TOKEN_REVOKED);
+      message.put("accessTokenKey", event.getAccessTokenKey());
+      message.put("clientId", event.getClientId());
+      message.put("userName", event.getUserName());
+      send(message);
+    }
+  }
+  
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onClientChanged(ClientChangedEvent event) {
+    if (event.getSource() != this) {
+      Map<String, String> message = message(CLIENT_CHANGED);
+      message.put("clientId", event.getClientId());
+      send(message);
+    }
+  }
+  
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onPartnerChanged(PartnerChangedEvent event) {
+    if (event.getSource() != this) {
+      Map<String, String> message = message(PARTNER_CHANGED);
+      message.put("partnerId", event.getPartnerId());
+      send(message);
+    }
+  }
+  
+  @EventListener
+  public void onRateLimitUsage(RateLimitUsageEvent event) {
+    if (event.getSource() != this) {
+      for (List<Map.Entry<String, Long>> entries
+          : Iterables.partition(event.getUsage().entrySet(), USAGE_ENTRIES_PER_MESSAGE)) {
+        Map<String, String> message = message(RATE_LIMIT_USAGE);
+        entries.forEach(entry -> message.put(USAGE_PREFIX + entry.getKey(), entry.getValue().toString()));
+        send(message);
+      }
+    }
+  }
+  
+  @Override
+  public void destroy() throws InterruptedException {
+    running = false;
+    listener.shutdownNow();
+    sender.interrupt();
+    sender.join(batchIntervalMillis + pollTimeoutMillis);
+  }
+  
+  private Map<String, String> message(String type) {
+    Map<String, String> message = new HashMap<>();
+    message.put("node", nodeId);
+    message.put("type", type);
+    return message;
+  }
+  
+  private void send(Map<String, String> message) {
+    if (!queue.offer(message)) {
+      overflow(message);
+    }
+  }
+  
+  /**
+   * Drop an event that does not fit in the queue. Rate limit usage is approximate anyway; an invalidation is replaced
+   * by the next drop-all notification.
+   */
+  private void overflow(Map<String, String> message) {
+    dropped.increment();
+    if (!RATE_LIMIT_USAGE.equals(message.get("type")) && !overflowed.getAndSet(true)) {
+      log.warn("Cluster event queue of {} is full, the other nodes will drop all their caches", channel);
+    }
+  }
+  
+  private void sendEvents() {
+    long nextBatch = System.currentTimeMillis() + batchIntervalMillis;
+    while (running || !queue.isEmpty()) {
+      try {
+        Map<String, String> message = queue.poll(batchIntervalMillis, TimeUnit.MILLISECONDS);
+        if (message != null) {
+          notify(message);
+        }
+      } catch (InterruptedException e) {
+        // Shutting down, send what is left.
+      }
+      if (System.currentTimeMillis() >= nextBatch) {
+        sendBatched();
+        nextBatch = System.currentTimeMillis() + batchIntervalMillis;
+      }
+    }
+    sendBatched();
+  }
+  
+  /**
+   * Send the refresh token keys collected since the last batch, or a drop-all notification if events were dropped.
+   */
+  private void sendBatched() {
+    if (overflowed.getAndSet(false)) {
+      revokedRefreshTokenKeys.clear();
+      notify(message(DROP_ALL));
+      return;
+    }
+    List<String> keys = new ArrayList<>(revokedRefreshTokenKeys);
+    revokedRefreshTokenKeys.removeAll(keys);
+    for (List<String> batch : Lists.partition(keys, REFRESH_TOKEN_KEYS_PER_MESSAGE)) {
+      Map<String, String> message = message(REFRESH_TOKENS_REVOKED);
+      message.put("refreshTokenKeys", String.join(",", batch));
+      notify(message);
+    }
+  }
+  
+  private void notify(Map<String, String> message) {
+    try {
+      String payload = objectMapper.writeValueAsString(message);
+      jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, channel, payload);
+      sent.increment();
+    } catch (Exception e) {
+      failed.increment();
+      log.warn("Failed to notify {} of {}", channel, message, e);
+    }
+  }
+  
+  /**
+   * Listen for notifications until the bus is destroyed, reconnecting whenever the connection fails.
+   */
+  private void listen() {
+    boolean reconnected = false;
+    while (running) {
+      try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+          dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("LISTEN " + channel);
+        }
+        log.info("Listening for cluster events on {}", channel);
+        if (reconnected) {
+          publishDropAll();
+        }
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMillis);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              receive(notification.getParameter());
+            }
+          }
+        }
+      } catch (SQLException e) {
+        if (!running) {
+          return;
+        }
+        log.warn("Cluster event connection failed, reconnecting in {} ms", reconnectDelayMillis, e);
+        reconnected = true;
+        try {
+          Thread.sleep(reconnectDelayMillis);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+  
+  private void receive(String payload) {
+    Map<String, String> message;
+    try {
+      message = objectMapper.readValue(payload, new TypeReference<Map<String, String>>() { });
+    } catch (IOException e) {
+      log.warn("Ignoring malformed cluster event {}", payload, e);
+      return;
+    }
+    if (nodeId.equals(message.get("node"))) {
+      return;
+    }
+    
+    switch (message.getOrDefault("type", "")) {
+      case TOKEN_REVOKED:
+        if (message.get("accessTokenKey") != null) {
+          eventPublisher.publishEvent(TokenRevokedEvent.ofAccessToken(this, message.get("accessTokenKey")));
+        } else {
+          eventPublisher.publishEvent(
+              TokenRevokedEvent.ofClientAndUser(this, message.get("clientId"), message.get("userName")));
+        }
+        break;
+      case REFRESH_TOKENS_REVOKED:
+        for (String refreshTokenKey : message.getOrDefault("refreshTokenKeys", "").split(",")) {
+          if (!refreshTokenKey.isEmpty()) {
+            eventPublisher.publishEvent(TokenRevokedEvent.ofRefreshToken(this, refreshTokenKey));
+          }
+        }
+        break;
+      case DROP_ALL:
+        publishDropAll();
+        break;
+      case CLIENT_CHANGED:
+        eventPublisher.publishEvent(new ClientChangedEvent(this, message.get("clientId")));
+        break;
+      case PARTNER_CHANGED:
+        eventPublisher.publishEvent(new PartnerChangedEvent(this, message.get("partnerId")));
+        break;
+      case RATE_LIMIT_USAGE:
+        Map<String, Long> usage = new HashMap<>();
+        message.forEach((key, value) -> {
+          if (key.startsWith(USAGE_PREFIX)) {
+            usage.put(key.substring(USAGE_PREFIX.length()), Long.valueOf(value));
+          }
+        });
+        eventPublisher.publishEvent(new RateLimitUsageEvent(this, usage));
+        break;
+      default:
+        log.warn("Ignoring unknown cluster event {}", payload);
+    }
+  }
+  
+  private void publishDropAll() {
+    eventPublisher.publishEvent(TokenRevokedEvent.ofClientAndUser(this, null, null));
+    eventPublisher.publishEvent(new ClientChangedEvent(this, null));
+    eventPublisher.publishEvent(new PartnerChangedEvent(this, null));
+  }
+  
+  private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("oauth.cluster-events")
+        .tag("outcome", outcome)
+        .description("Cluster events sent by outcome")
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.event;
+
+import java.util.Map;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * An event published periodically with the requests each rate limit let through on a node, so that the other nodes
+ * can take them from their own buckets.
+ *
+ * @author Varij Kapil
+ */
+@Getter
+public class RateLimitUsageEvent extends ApplicationEvent {
+  
+  /**
+   * Requests let through by bucket key since the previous event.
+   */
+  private final Map<String, Long> usage;
+  
+  public RateLimitUsageEvent(Object source, Map<String, Long> usage) {
+    super(source);
+    this.usage = usage;
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * An event published when tokens are removed from the token store, so that anything holding tokens in memory can drop
+ * them. The tokens revoked are identified by either an access token key, a refresh token key, or a client id and/or
+ * user name.
+ *
+ * @author Varij Kapil
+ */
+@Getter
+public class TokenRevokedEvent extends ApplicationEvent {
+  
+  /**
+   * Key of the access token revoked.
+   */
+  private final String accessTokenKey;
+  
+  /**
+   * Key of the refresh token whose access tokens are revoked.
+   */
+  private final String refreshTokenKey;
+  
+  /**
+   * Client whose tokens are revoked, the tokens of all clients when null.
+   */
+  private final String clientId;
+  
+  /**
+   * User whose tokens are revoked, the tokens of all users when null.
+   */
+  private final String userName;
+  
+  private TokenRevokedEvent(Object source, String accessTokenKey, String refreshTokenKey, String clientId,
+      String userName) {
+    super(source);
+    this.accessTokenKey = accessTokenKey;
+    this.refreshTokenKey = refreshTokenKey;
+    this.clientId = clientId;
+    this.userName = userName;
+  }
+  
+  public static TokenRevokedEvent ofAccessToken(Object source, String accessTokenKey) {
+    return new TokenRevokedEvent(source, accessTokenKey, null, null, null);
+  }
+  
+  public static TokenRevokedEvent ofRefreshToken(Object source, String refreshTokenKey) {
+    return new TokenRevokedEvent(source, null, refreshTokenKey, null, null);
+  }
+  
+  public static TokenRevokedEvent ofClientAndUser(Object source, String clientId, String userName) {
+    return new TokenRevokedEvent(source, null, null, clientId, userName);
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.partner;
+
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
+
+/**
+ * A circuit breaker for the calls to the token endpoint of one partner.
+ *
+ * <p>
+ * Closed, the outcome of the last {@code windowSize} calls is kept, a call counting as failed when it throws or takes
+ * longer than {@code slowCallNanos}. Once at least {@code minimumCalls} calls are recorded and the failure rate reaches
+ * {@code failureRateThreshold} percent, the circuit opens and calls are refused for {@code openNanos}. It is then
+ * half-open: {@code halfOpenCalls} probe calls are let through, and the circuit closes when all of them succeed, or
+ * opens again at the first failure.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class PartnerCircuitBreaker {
+  
+  /**
+   * Circuit breaker states.
+   */
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+  
+  private final int minimumCalls;
+  
+  private final double failureRateThreshold;
+  
+  private final long slowCallNanos;
+  
+  private final long openNanos;
+  
+  private final int halfOpenCalls;
+  
+  private final boolean[] window;
+  
+  private int calls;
+  
+  private int failures;
+  
+  private int next;
+  
+  private State state = State.CLOSED;
+  
+  private long openedAt;
+  
+  private int probesStarted;
+  
+  private int probesSucceeded;
+  
+  public PartnerCircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long slowCallNanos,
+      long openNanos, int halfOpenCalls) {
+    this.window = new boolean[windowSize];
+    this.minimumCalls = Math.min(minimumCalls, windowSize);
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = slowCallNanos;
+    this.openNanos = openNanos;
+    this.halfOpenCalls = halfOpenCalls;
+  }
+  
+  /**
+   * Ask for a call to the partner. Every permitted call must be followed by {@link #onResult} or {@link #release}.
+   *
+   * @param now current {@link System#nanoTime()}.
+   * @return true when the call is permitted.
+   */
+  public synchronized boolean tryAcquire(long now) {
+    if (state == State.CLOSED) {
+      return true;
+    }
+    if (state == State.OPEN) {
+      if (now - openedAt < openNanos) {
+        return false;
+      }
+      state = State.HALF_OPEN;
+      probesStarted = 0;
+      probesSucceeded = 0;
+    }
+    if (probesStarted >= halfOpenCalls) {
+      return false;
+    }
+    probesStarted++;
+    return true;
+  }
+  
+  /**
+   * Record the outcome of a permitted call.
+   *
+   * @param failed whether the partner failed to answer.
+   * @param startedAt {@link System#nanoTime()} when the call started.
+   * @param now current {@link System#nanoTime()}.
+   */
+  public synchronized void onResult(boolean failed, long startedAt, long now) {
+    boolean failure = failed || now - startedAt > slowCallNanos;
+    if (state == State.HALF_OPEN) {
+      if (failure) {
+        open(now);
+      } else if (++probesSucceeded >= halfOpenCalls) {
+        close();
+      }
+    } else if (state == State.CLOSED) {
+      record(failure);
+      if (calls >= minimumCalls && failures * 100.0 / calls >= failureRateThreshold) {
+        open(now);
+      }
+    }
+  }
+  
+  /**
+   * Give back a permitted call that was not made.
+   */
+  public synchronized void release() {
+    if (state == State.HALF_OPEN && probesStarted > 0) {
+      probesStarted--;
+    }
+  }
+  
+  /**
+   * @param now current {@link System#nanoTime()}.
+   * @return the current state and failure rate.
+   */
+  public synchronized Snapshot snapshot(long now) {
+    long remainingOpenNanos = state == State.OPEN ? Math.max(0, openedAt + openNanos - now) : 0;
+    return new Snapshot(state, calls, calls == 0 ? 0 : failures * 100.0 / calls,
+        TimeUnit.NANOSECONDS.toMillis(remainingOpenNanos));
+  }
+  
+  private void record(boolean failure) {
+    if (calls == window.length) {
+      if (window[next]) {
+        failures--;
+      }
+    } else {
+      calls++;
+    }
+    window[next] = failure;
+    if (failure) {
+      failures++;
+    }
+    next = (next + 1) % window.length;
+  }
+  
+  private void open(long now) {
+    state = State.OPEN;
+    openedAt = now;
+  }
+  
+  private void close() {
+    state = State.CLOSED;
+    calls = 0;
+    failures = 0;
+    next = 0;
+  }
+  
+  /**
+   * The state of a circuit breaker at some point in time.
+   */
+  @Value
+  public static class Snapshot {
+    
+    State state;
+    
+    int calls;
+    
+    double failureRate;
+    
+    long remainingOpenMillis;
+  }
+}
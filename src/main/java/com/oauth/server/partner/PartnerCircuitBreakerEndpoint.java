@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.partner;
+
+import java.util.SortedMap;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint showing the circuit breaker state of every partner, at {@code /actuator/partnerCircuits} once
+ * exposed.
+ *
+ * @author Varij Kapil
+ */
+@Component
+@Endpoint(id = "partnerCircuits")
+public class PartnerCircuitBreakerEndpoint {
+  
+  private final PartnerCircuitBreakers circuitBreakers;
+  
+  public PartnerCircuitBreakerEndpoint(PartnerCircuitBreakers circuitBreakers) {
+    this.circuitBreakers = circuitBreakers;
+  }
+  
+  @ReadOperation
+  public SortedMap<String, PartnerCircuitBreaker.Snapshot> circuits() {
+    return circuitBreakers.snapshots();
+  }
+}
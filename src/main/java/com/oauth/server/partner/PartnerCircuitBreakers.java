@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.partner;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link PartnerCircuitBreaker}s of the partners, created on their first call.
+ *
+ * @author Varij Kapil
+ */
+@Component
+public class PartnerCircuitBreakers {
+  
+  private final Map<String, PartnerCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+  
+  private final boolean enabled;
+  
+  private final int windowSize;
+  
+  private final int minimumCalls;
+  
+  private final double failureRateThreshold;
+  
+  private final long slowCallNanos;
+  
+  private final long openNanos;
+  
+  private final int halfOpenCalls;
+  
+  public PartnerCircuitBreakers(@Value("${oauth.partner.circuit-breaker.enabled:true}") boolean enabled,
+      @Value("${oauth.partner.circuit-breaker.window-size:20}") int windowSize,
+      @Value("${oauth.partner.circuit-breaker.minimum-calls:10}") int minimumCalls,
+      @Value("${oauth.partner.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+      @Value("${oauth.partner.circuit-breaker.slow-call-millis:2000}") long slowCallMillis,
+      @Value("${oauth.partner.circuit-breaker.open-millis:30000}") long openMillis,
+      @Value("${oauth.partner.circuit-breaker.half-open-calls:3}") int halfOpenCalls) {
+    this.enabled = enabled;
+    this.windowSize = windowSize;
+    this.minimumCalls = minimumCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    this.halfOpenCalls = halfOpenCalls;
+  }
+  
+  /**
+   * Ask for a call to a partner.
+   *
+   * @param partnerId partner id.
+   * @return the circuit breaker to report the outcome of the call to.
+   * @throws PartnerUnavailableException when the circuit of the partner is open.
+   */
+  public PartnerCircuitBreaker acquire(String partnerId) {
+    PartnerCircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(partnerId, id ->
+        new PartnerCircuitBreaker(windowSize, minimumCalls, failureRateThreshold, slowCallNanos, openNanos,
+            halfOpenCalls));
+    if (!circuitBreaker.tryAcquire(System.nanoTime()) && enabled) {
+      throw new PartnerUnavailableException("Partner " + partnerId + " is unavailable");
+    }
+    return circuitBreaker;
+  }
+  
+  /**
+   * Whether a failed call means that the partner is failing. A partner answering with an OAuth error, e.g. an expired
+   * refresh token, is working.
+   *
+   * @param e exception thrown by the call.
+   * @return true when the partner did not answer, or answered with a server error.
+   */
+  public static boolean isPartnerFailure(Throwable e) {
+    return !(e instanceof OAuth2Exception && e.getCause() instanceof OAuth2Exception);
+  }
+  
+  /**
+   * @return the state of the circuit of every partner called since startup, by partner id.
+   */
+  public SortedMap<String, PartnerCircuitBreaker.Snapshot> snapshots() {
+    long now = System.nanoTime();
+    SortedMap<String, PartnerCircuitBreaker.Snapshot> snapshots = new TreeMap<>();
+    circuitBreakers.forEach((partnerId, circuitBreaker) -> snapshots.put(partnerId, circuitBreaker.snapshot(now)));
+    return snapshots;
+  }
+}
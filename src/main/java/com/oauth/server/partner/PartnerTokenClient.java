@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.partner;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.oauth.server.tracing.Span;
+import com.oauth.server.tracing.SpanKind;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.client.resource.UserRedirectRequiredException;
+import org.springframework.security.oauth2.client.token.AccessTokenRequest;
+import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
+import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeAccessTokenProvider;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * A client for the token endpoints of partner OAuth providers (e.g. LWA).
+ *
+ * <p>
+ * Every call to a partner runs on a dedicated, bounded thread pool with connect and read timeouts, so a slow partner
+ * can never hold servlet request threads. When the pool and its queue are saturated, new calls are rejected instead of
+ * piling up. Calls also go through the {@link PartnerCircuitBreaker} of the partner, and fail fast with
+ * {@link PartnerUnavailableException} while its circuit is open.
+ * </p>
+ *
+ * <p>
+ * Within a sampled trace, every call is recorded as a client span, and the partner gets its {@code traceparent}.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+@Component
+public class PartnerTokenClient implements DisposableBean {
+  
+  private final ThreadPoolExecutor executor;
+  
+  private final SimpleClientHttpRequestFactory requestFactory;
+  
+  private final PartnerCircuitBreakers circuitBreakers;
+  
+  public PartnerTokenClient(PartnerCircuitBreakers circuitBreakers,
+      @Value("${oauth.partner.executor.core-pool-size:8}") int corePoolSize,
+      @Value("${oauth.partner.executor.max-pool-size:32}") int maxPoolSize,
+      @Value("${oauth.partner.executor.queue-capacity:200}") int queueCapacity,
+      @Value("${oauth.partner.http.connect-timeout-millis:2000}") int connectTimeoutMillis,
+      @Value("${oauth.partner.http.read-timeout-millis:5000}") int readTimeoutMillis) {
+    this.executor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("partner-token-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.circuitBreakers = circuitBreakers;
+    
+    this.requestFactory = new SimpleClientHttpRequestFactory();
+    this.requestFactory.setConnectTimeout(connectTimeoutMillis);
+    this.requestFactory.setReadTimeout(readTimeoutMillis);
+  }
+  
+  /**
+   * Exchange an authorization code for an access token at the partner token endpoint.
+   *
+   * @param resourceDetails partner protected resource.
+   * @param authorizationCode authorization code issued by the partner.
+   * @return a future completed with the partner access token.
+   */
+  public CompletableFuture<OAuth2AccessToken> obtainAccessToken(final OAuth2ProtectedResourceDetails resourceDetails,
+      final String authorizationCode) {
+    return call(resourceDetails, "PartnerTokenClient.obtainAccessToken", () -> {
+      AccessTokenRequest accessTokenRequest = new DefaultAccessTokenRequest();
+      accessTokenRequest.setAuthorizationCode(authorizationCode);
+      return createTokenProvider().obtainAccessToken(resourceDetails, accessTokenRequest);
+    });
+  }
+  
+  /**
+   * Refresh a partner access token.
+   *
+   * @param resourceDetails partner protected resource.
+   * @param refreshToken partner refresh token.
+   * @return a future completed with the refreshed access token.
+   */
+  public CompletableFuture<OAuth2AccessToken> refreshAccessToken(final OAuth2ProtectedResourceDetails resourceDetails,
+      final OAuth2RefreshToken refreshToken) {
+    return call(resourceDetails, "PartnerTokenClient.refreshAccessToken", () -> createTokenProvider()
+        .refreshAccessToken(resourceDetails, refreshToken, new DefaultAccessTokenRequest()));
+  }
+  
+  private CompletableFuture<OAuth2AccessToken> call(OAuth2ProtectedResourceDetails resourceDetails, String spanName,
+      Supplier<OAuth2AccessToken> tokenRequest) {
+    PartnerCircuitBreaker circuitBreaker;
+    try {
+      circuitBreaker = circuitBreakers.acquire(resourceDetails.getId());
+    } catch (PartnerUnavailableException e) {
+      CompletableFuture<OAuth2AccessToken> unavailable = new CompletableFuture<>();
+      unavailable.completeExceptionally(e);
+      return unavailable;
+    }
+    
+    Span parent = Span.current();
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        Span span = parent.startChild(spanName, SpanKind.CLIENT)
+            .setAttribute("partner.id", resourceDetails.getId())
+            .setAttribute("http.url", resourceDetails.getAccessTokenUri());
+        long start = System.nanoTime();
+        try (Span.Scope ignored = span.makeCurrent()) {
+          OAuth2AccessToken accessToken = tokenRequest.get();
+          circuitBreaker.onResult(false, start, System.nanoTime());
+          return accessToken;
+        } catch (RuntimeException e) {
+          span.recordException(e);
+          boolean partnerFailure = PartnerCircuitBreakers.isPartnerFailure(e);
+          circuitBreaker.onResult(partnerFailure, start, System.nanoTime());
+          if (partnerFailure) {
+            throw new PartnerUnavailableException("Partner " + resourceDetails.getId() + " failed to answer", e);
+          }
+          throw e;
+        } finally {
+          span.end();
+        }
+      }, executor);
+    } catch (RejectedExecutionException e) {
+      circuitBreaker.release();
+      throw e;
+    }
+  }
+  
+  private AuthorizationCodeAccessTokenProvider createTokenProvider() {
+    AuthorizationCodeAccessTokenProvider tokenProvider = new PartnerTokenProvider();
+    tokenProvider.setStateMandatory(false);
+    tokenProvider.setRequestFactory(requestFactory);
+    tokenProvider.setInterceptors(Collections.singletonList(PartnerTokenClient::propagateTrace));
+    return tokenProvider;
+  }
+  
+  private static ClientHttpResponse propagateTrace(HttpRequest request, byte[] body,
+      ClientHttpRequestExecution execution) throws IOException {
+    Span span = Span.current();
+    if (span.isSampled()) {
+      request.getHeaders().set(Span.TRACEPARENT, span.traceparent());
+    }
+    ClientHttpResponse response = execution.execute(request, body);
+    span.setAttribute("http.status_code", response.getRawStatusCode());
+    return response;
+  }
+  
+  @Override
+  public void destroy() throws InterruptedException {
+    executor.shutdown();
+    if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+      log.warn("Partner token calls still running after shutdown, {} pending.", executor.getQueue().size());
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Refreshes tokens without turning every error into a {@link UserRedirectRequiredException}, so that a partner
+   * rejecting the refresh token can be told from a failing partner. Keeps the refresh token when the partner does not
+   * issue a new one.
+   */
+  private static class PartnerTokenProvider extends AuthorizationCodeAccessTokenProvider {
+    
+    @Override
+    public OAuth2AccessToken refreshAccessToken(OAuth2ProtectedResourceDetails resource,
+        OAuth2RefreshToken refreshToken, AccessTokenRequest request) {
+      MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+      form.add(OAuth2Utils.GRANT_TYPE, "refresh_token");
+      form.add("refresh_token", refreshToken.getValue());
+      
+      DefaultOAuth2AccessToken accessToken =
+          new DefaultOAuth2AccessToken(retrieveToken(request, resource, form, new HttpHeaders()));
+      if (accessToken.getRefreshToken() == null) {
+        accessToken.setRefreshToken(refreshToken);
+      }
+      return accessToken;
+    }
+  }
+}
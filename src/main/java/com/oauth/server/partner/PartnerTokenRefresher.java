@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.partner;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.oauth.server.audit.AuditEvent;
+import com.oauth.server.audit.AuditEventType;
+import com.oauth.server.audit.AuditTrail;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.database.modal.OAuthPartnerToken;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+
+/**
+ * Refreshes partner tokens shortly before they expire, so {@code /api/partner/token} is served from storage instead
+ * of waiting for the partner.
+ *
+ * <p>
+ * A scan picks up the tokens expiring within the refresh-ahead window, plus one scan interval, soonest first. They wait
+ * in a delay queue until {@code refreshAheadSeconds} before their expiry, and are then refreshed by a single
+ * dispatcher at most {@code perPartnerPerSecond} per partner; tokens of a partner over its rate go back to the queue
+ * without holding back the other partners. Before refreshing a token, a node claims it in the database for
+ * {@code claimSeconds}, so every token is refreshed by one node only.
+ * </p>
+ *
+ * <p>
+ * A failed refresh is retried after a backoff that doubles with every consecutive failure of the token, from
+ * {@code claimSeconds} up to {@code maxBackoffSeconds}. A refresh token the partner answers {@code invalid_grant} to
+ * is dropped, and tokens that expired more than {@code expiredCutoffSeconds} ago are no longer scanned, so tokens that
+ * cannot be refreshed do not crowd out the others.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class PartnerTokenRefresher implements DisposableBean {
+  
+  private final DynamoDBPartnerTokenDAO partnerTokenService;
+  
+  private final DynamoDBPartnerDetailsDAO partnerDetailsService;
+  
+  private final PartnerTokenClient partnerTokenClient;
+  
+  private final AuditTrail auditTrail;
+  
+  private final long refreshAheadMillis;
+  
+  private final long scanIntervalMillis;
+  
+  private final int scanBatchSize;
+  
+  private final double perPartnerPerSecond;
+  
+  private final long claimMillis;
+  
+  private final long maxBackoffMillis;
+  
+  private final long expiredCutoffMillis;
+  
+  private final DelayQueue<DueToken> queue = new DelayQueue<>();
+  
+  private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+  
+  private final Map<String, RateLimiter> partnerRates = new ConcurrentHashMap<>();
+  
+  private final Thread dispatcher;
+  
+  public PartnerTokenRefresher(DynamoDBPartnerTokenDAO partnerTokenService,
+      DynamoDBPartnerDetailsDAO partnerDetailsService, PartnerTokenClient partnerTokenClient, AuditTrail auditTrail,
+      long refreshAheadSeconds, long scanIntervalMillis, int scanBatchSize, double perPartnerPerSecond,
+      long claimSeconds, long maxBackoffSeconds, long expiredCutoffSeconds) {
+    this.partnerTokenService = partnerTokenService;
+    this.partnerDetailsService = partnerDetailsService;
+    this.partnerTokenClient = partnerTokenClient;
+    this.auditTrail = auditTrail;
+    this.refreshAheadMillis = TimeUnit.SECONDS.toMillis(refreshAheadSeconds);
+    this.scanIntervalMillis = scanIntervalMillis;
+    this.scanBatchSize = scanBatchSize;
+    this.perPartnerPerSecond = perPartnerPerSecond;
+    this.claimMillis = TimeUnit.SECONDS.toMillis(claimSeconds);
+    this.maxBackoffMillis = TimeUnit.SECONDS.toMillis(maxBackoffSeconds);
+    this.expiredCutoffMillis = TimeUnit.SECONDS.toMillis(expiredCutoffSeconds);
+    
+    this.dispatcher = new Thread(this::dispatch, "partner-token-refresher");
+    this.dispatcher.setDaemon(true);
+    this.dispatcher.start();
+  }
+  
+  /**
+   * Queue the partner tokens due for a refresh before the next scan. Tokens already queued are skipped, and no more
+   * than {@code scanBatchSize} tokens are queued at a time.
+   */
+  @Scheduled(fixedDelayString = "${oauth.partner.refresh.scan-interval-millis:30000}")
+  public void scan() {
+    int room = scanBatchSize - queued.size();
+    if (room <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    List<OAuthPartnerToken> expiring = partnerTokenService.findExpiringBefore(
+        new Date(now + refreshAheadMillis + scanIntervalMillis), new Date(now - expiredCutoffMillis), room);
+    for (OAuthPartnerToken partnerToken : expiring) {
+      if (queued.add(partnerToken.getId())) {
+        queue.offer(new DueToken(partnerToken, partnerToken.getExpiresAt().getTime() - refreshAheadMillis));
+      }
+    }
+  }
+  
+  @Override
+  public void destroy() throws InterruptedException {
+    dispatcher.interrupt();
+    dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+  }
+  
+  private void dispatch() {
+    while (!Thread.currentThread().isInterrupted()) {
+      DueToken dueToken;
+      try {
+        dueToken = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    
+      String partnerId = dueToken.partnerToken.getPartnerId();
+      if (!partnerRate(partnerId).tryAcquire()) {
+        queue.offer(new DueToken(dueToken.partnerToken, System.currentTimeMillis()
+            + (long) Math.ceil(TimeUnit.SECONDS.toMillis(1) / perPartnerPerSecond)));
+        continue;
+      }
+    
+      try {
+        refresh(dueToken.partnerToken);
+      } catch (RuntimeException e) {
+        queued.remove(dueToken.partnerToken.getId());
+        log.warn("Failed to refresh a token of partner {}.", partnerId, e);
+      }
+    }
+  }
+  
+  private void refresh(OAuthPartnerToken partnerToken) {
+    OAuthPartner partner = partnerDetailsService.loadPartnerByPartnerId(partnerToken.getPartnerId());
+    if (partner == null || partnerToken.getRefreshToken() == null
+        || !partnerTokenService.claimRefresh(partnerToken, new Date(System.currentTimeMillis() + claimMillis))) {
+      queued.remove(partnerToken.getId());
+      return;
+    }
+    
+    try {
+      partnerTokenClient.refreshAccessToken(partner.toProtectedResourceDetails(),
+          new DefaultOAuth2RefreshToken(partnerToken.getRefreshToken()))
+          .thenApply(refreshedToken -> partnerTokenService.replaceRefreshedToken(partnerToken, refreshedToken))
+          .whenComplete((storedToken, e) -> {
+            if (e != null) {
+              onRefreshFailed(partnerToken, e);
+            }
+            queued.remove(partnerToken.getId());
+            auditTrail.record(AuditEvent.builder()
+                .type(e == null ? AuditEventType.PARTNER_TOKEN_REFRESHED : AuditEventType.PARTNER_TOKEN_REFRESH_FAILED)
+                .partnerId(partnerToken.getPartnerId())
+                .userName(partnerToken.getUserName())
+                .token(storedToken == null ? null : storedToken.getValue())
+                .detail(e == null ? "ahead of expiry" : StringUtils.abbreviate(e.getMessage(), 255))
+                .build());
+          });
+    } catch (RejectedExecutionException e) {
+      // The partner calls are saturated, the token is picked up again once its claim expires.
+      queued.remove(partnerToken.getId());
+    }
+  }
+  
+  /**
+   * Drop a refresh token the partner rejected, or back the next attempt off.
+   */
+  private void onRefreshFailed(OAuthPartnerToken partnerToken, Throwable e) {
+    try {
+      if (ExceptionUtils.indexOfType(e, InvalidGrantException.class) >= 0) {
+        partnerTokenService.dropRefreshToken(partnerToken);
+        log.info("Dropped a refresh token rejected by partner {}.", partnerToken.getPartnerId());
+      } else {
+        partnerTokenService.recordRefreshFailure(partnerToken,
+            new Date(System.currentTimeMillis() + backoffMillis(partnerToken.getRefreshFailures())));
+      }
+    } catch (RuntimeException recordFailure) {
+      log.warn("Failed to record a failed refresh of a token of partner {}.", partnerToken.getPartnerId(),
+          recordFailure);
+    }
+  }
+  
+  /**
+   * {@code claimMillis} doubled once per earlier failure, at most {@code maxBackoffMillis}.
+   */
+  private long backoffMillis(int previousFailures) {
+    return Math.min(claimMillis << Math.min(previousFailures, 30), Math.max(maxBackoffMillis, claimMillis));
+  }
+  
+  private RateLimiter partnerRate(String partnerId) {
+    return partnerRates.computeIfAbsent(partnerId, id -> RateLimiter.create(perPartnerPerSecond));
+  }
+  
+  /**
+   * A partner token waiting in the queue until its refresh is due.
+   */
+  private static final class DueToken implements Delayed {
+    
+    private final OAuthPartnerToken partnerToken;
+    
+    private final long dueAtMillis;
+    
+    private DueToken(OAuthPartnerToken partnerToken, long dueAtMillis) {
+      this.partnerToken = partnerToken;
+      this.dueAtMillis = dueAtMillis;
+    }
+    
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.partner;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+/**
+ * Thrown when a partner fails to answer, or instead of calling it while its circuit is open.
+ *
+ * @author Varij Kapil
+ */
+public class PartnerUnavailableException extends OAuth2Exception {
+  
+  public PartnerUnavailableException(String msg) {
+    super(msg);
+  }
+  
+  public PartnerUnavailableException(String msg, Throwable t) {
+    super(msg, t);
+  }
+  
+  @Override
+  public String getOAuth2ErrorCode() {
+    return "temporarily_unavailable";
+  }
+  
+  @Override
+  public int getHttpErrorCode() {
+    return HttpStatus.SERVICE_UNAVAILABLE.value();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Rate limits the token endpoint per client and the partner token endpoint per partner, once the caller has been
+ * authenticated.
+ *
+ * <p>
+ * The client id is the name of the authenticated client, so a request cannot spend the limit of a client whose
+ * credentials it does not have; requests that are not authenticated are left alone, authentication rejected them
+ * already. Throttled requests are answered with 429 and a Retry-After header, and counted in
+ * {@code oauth.rate-limit.requests} with the other requests, tagged by endpoint and outcome.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+  
+  public static final String TOKEN_ENDPOINT = "/oauth/token";
+  public static final String PARTNER_TOKEN_ENDPOINT = "/api/partner/token";
+  
+  private final RateLimiter rateLimiter;
+  
+  private final Counter tokenAllowed;
+  private final Counter tokenThrottled;
+  private final Counter partnerAllowed;
+  private final Counter partnerThrottled;
+  
+  public RateLimitFilter(RateLimiter rateLimiter, MeterRegistry meterRegistry) {
+    this.rateLimiter = rateLimiter;
+    this.tokenAllowed = counter(meterRegistry, "token", "allowed");
+    this.tokenThrottled = counter(meterRegistry, "token", "throttled");
+    this.partnerAllowed = counter(meterRegistry, "partner_token", "allowed");
+    this.partnerThrottled = counter(meterRegistry, "partner_token", "throttled");
+  }
+  
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String path = request.getServletPath();
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication == null || !authentication.isAuthenticated()
+        || authentication instanceof AnonymousAuthenticationToken) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    
+    if (TOKEN_ENDPOINT.equals(path)) {
+      String clientId = authentication.getName();
+      if (throttled(rateLimiter.tryAcquireForClient(clientId), tokenAllowed, tokenThrottled,
+          response, "client " + clientId)) {
+        return;
+      }
+    } else if (PARTNER_TOKEN_ENDPOINT.equals(path)) {
+      String partnerId = request.getParameter("partner_id");
+      if (partnerId != null && throttled(rateLimiter.tryAcquireForPartner(partnerId), partnerAllowed,
+          partnerThrottled, response, "partner " + partnerId)) {
+        return;
+      }
+    }
+    filterChain.doFilter(request, response);
+  }
+  
+  private boolean throttled(long retryAfterNanos, Counter allowed, Counter throttled, HttpServletResponse response,
+      String subject) throws IOException {
+    if (retryAfterNanos == 0) {
+      allowed.increment();
+      return false;
+    }
+    throttled.increment();
+    response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+    response.setHeader(HttpHeaders.RETRY_AFTER,
+        Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1))));
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    response.getWriter().write("{\"error\":\"rate_limit_exceeded\",\"error_description\":\"Too many requests for "
+        + subject.replaceAll("[\"\\\\]", "") + "\"}");
+    return true;
+  }
+  
+  private static Counter counter(MeterRegistry meterRegistry, String endpoint, String outcome) {
+    return Counter.builder("oauth.rate-limit.requests")
+        .tag("endpoint", endpoint)
+        .tag("outcome", outcome)
+        .description("Rate limited requests by outcome")
+        .register(meterRegistry);
+  }
+}
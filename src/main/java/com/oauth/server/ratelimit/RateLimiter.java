@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.ratelimit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.event.ClientChangedEvent;
+import com.oauth.server.event.PartnerChangedEvent;
+import com.oauth.server.event.RateLimitUsageEvent;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Per client and per partner rate limits, one {@link TokenBucket} each.
+ *
+ * <p>
+ * Limits come from {@link OAuthClientDetails} and {@link OAuthPartner}, or the defaults when not set there; a rate of 0
+ * disables the limit. Buckets are built once from the cached client or partner, and rebuilt when it changes.
+ * </p>
+ *
+ * <p>
+ * Unknown client and partner ids all share a single bucket with the default limit, so guessing ids is throttled as a
+ * whole and does not evict the buckets of real clients. Ids are remembered as unknown for a minute, so they are not
+ * looked up in the database on every request, or until a client or partner with that id is saved.
+ * </p>
+ *
+ * <p>
+ * Each node refills its buckets at the full configured rate. With {@code syncAcrossNodes}, the requests let through
+ * are published every sync interval as a {@link RateLimitUsageEvent}, which the cluster event bus sends to the other
+ * nodes; they take the same number of permits from their own buckets. Limits are therefore cluster-wide, give or take
+ * what the nodes let through within one sync interval.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class RateLimiter {
+  
+  private static final String CLIENT_PREFIX = "client:";
+  private static final String PARTNER_PREFIX = "partner:";
+  
+  /**
+   * Key of the shared bucket of unknown ids in {@link RateLimitUsageEvent}s.
+   */
+  private static final String UNKNOWN_KEY = "unknown";
+  
+  private static final long UNKNOWN_ID_TTL_SECONDS = 60;
+  
+  private final DynamoDBClientDetailsDAO clientDetailsService;
+  
+  private final DynamoDBPartnerDetailsDAO partnerDetailsService;
+  
+  private final ApplicationEventPublisher eventPublisher;
+  
+  private final double defaultPermitsPerSecond;
+  
+  private final int defaultBurst;
+  
+  private final boolean syncAcrossNodes;
+  
+  private final Cache<String, Optional<TokenBucket>> buckets;
+  
+  private final Cache<String, Boolean> unknownIds;
+  
+  private final Optional<TokenBucket> unknownBucket;
+  
+  public RateLimiter(DynamoDBClientDetailsDAO clientDetailsService, DynamoDBPartnerDetailsDAO partnerDetailsService,
+      ApplicationEventPublisher eventPublisher, double defaultPermitsPerSecond, int defaultBurst,
+      boolean syncAcrossNodes, long maxBuckets) {
+    this.clientDetailsService = clientDetailsService;
+    this.partnerDetailsService = partnerDetailsService;
+    this.eventPublisher = eventPublisher;
+    this.defaultPermitsPerSecond = defaultPermitsPerSecond;
+    this.defaultBurst = defaultBurst;
+    this.syncAcrossNodes = syncAcrossNodes;
+    this.buckets = CacheBuilder.newBuilder()
+        .maximumSize(maxBuckets)
+        .expireAfterAccess(10, TimeUnit.MINUTES)
+        .build();
+    this.unknownIds = CacheBuilder.newBuilder()
+        .maximumSize(maxBuckets)
+        .expireAfterWrite(UNKNOWN_ID_TTL_SECONDS, TimeUnit.SECONDS)
+        .build();
+    this.unknownBucket = bucket(null, null);
+  }
+  
+  /**
+   * Take a permit for a client.
+   *
+   * @param clientId client id.
+   * @return 0 if the request may proceed, otherwise the nanoseconds until it may be retried.
+   */
+  public long tryAcquireForClient(String clientId) {
+    return tryAcquire(CLIENT_PREFIX + clientId);
+  }
+  
+  /**
+   * Take a permit for a partner.
+   *
+   * @param partnerId partner id.
+   * @return 0 if the request may proceed, otherwise the nanoseconds until it may be retried.
+   */
+  public long tryAcquireForPartner(String partnerId) {
+    return tryAcquire(PARTNER_PREFIX + partnerId);
+  }
+  
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onClientChanged(ClientChangedEvent event) {
+    invalidate(CLIENT_PREFIX, event.getClientId());
+  }
+  
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onPartnerChanged(PartnerChangedEvent event) {
+    invalidate(PARTNER_PREFIX, event.getPartnerId());
+  }
+  
+  /**
+   * Take the permits other nodes used from the local buckets.
+   *
+   * @param event usage of another node.
+   */
+  @EventListener
+  public void onRateLimitUsage(RateLimitUsageEvent event) {
+    if (event.getSource() == this) {
+      return;
+    }
+    long now = System.nanoTime();
+    event.getUsage().forEach((key, permits) -> {
+      Optional<TokenBucket> bucket = UNKNOWN_KEY.equals(key) ? unknownBucket : buckets.getIfPresent(key);
+      if (bucket != null && bucket.isPresent()) {
+        bucket.get().drain(permits, now);
+      }
+    });
+  }
+  
+  /**
+   * Publish the permits taken on this node since the previous run, for the other nodes.
+   */
+  @Scheduled(fixedDelayString = "${oauth.rate-limit.sync-interval-millis:1000}")
+  public void publishUsage() {
+    if (!syncAcrossNodes) {
+      return;
+    }
+    Map<String, Long> usage = new HashMap<>();
+    buckets.asMap().forEach((key, bucket) -> {
+      long taken = bucket.map(TokenBucket::takenSinceLastCall).orElse(0L);
+      if (taken > 0) {
+        usage.put(key, taken);
+      }
+    });
+    long unknownTaken = unknownBucket.map(TokenBucket::takenSinceLastCall).orElse(0L);
+    if (unknownTaken > 0) {
+      usage.put(UNKNOWN_KEY, unknownTaken);
+    }
+    if (!usage.isEmpty()) {
+      eventPublisher.publishEvent(new RateLimitUsageEvent(this, usage));
+    }
+  }
+  
+  private long tryAcquire(String key) {
+    Optional<TokenBucket> bucket = bucketOf(key);
+    return bucket.map(tokenBucket -> tokenBucket.tryAcquire(System.nanoTime())).orElse(0L);
+  }
+  
+  private Optional<TokenBucket> bucketOf(String key) {
+    Optional<TokenBucket> bucket = buckets.getIfPresent(key);
+    if (bucket != null) {
+      return bucket;
+    }
+    if (unknownIds.getIfPresent(key) != null) {
+      return unknownBucket;
+    }
+    try {
+      return buckets.get(key, () -> newBucket(key));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UnknownIdException) {
+        unknownIds.put(key, Boolean.TRUE);
+      } else {
+        log.warn("Failed to load the rate limit of {}, using the default", key, e.getCause());
+      }
+      return unknownBucket;
+    }
+  }
+  
+  private Optional<TokenBucket> newBucket(String key) throws UnknownIdException {
+    if (key.startsWith(PARTNER_PREFIX)) {
+      OAuthPartner partner = partnerDetailsService.loadPartnerByPartnerId(key.substring(PARTNER_PREFIX.length()));
+      if (partner == null) {
+        throw new UnknownIdException();
+      }
+      return bucket(partner.getRateLimitPerSecond(), partner.getRateLimitBurst());
+    }
+    try {
+      ClientDetails clientDetails = clientDetailsService.loadClientByClientId(key.substring(CLIENT_PREFIX.length()));
+      Map<String, Object> additionalInformation = clientDetails.getAdditionalInformation();
+      return bucket(toNumber(additionalInformation.get(OAuthClientDetails.RATE_LIMIT_PER_SECOND)),
+          toNumber(additionalInformation.get(OAuthClientDetails.RATE_LIMIT_BURST)));
+    } catch (NoSuchClientException e) {
+      throw new UnknownIdException();
+    }
+  }
+  
+  private Optional<TokenBucket> bucket(Number permitsPerSecond, Number burst) {
+    double rate = permitsPerSecond == null ? defaultPermitsPerSecond : permitsPerSecond.doubleValue();
+    if (rate <= 0) {
+      return Optional.empty();
+    }
+    return Optional.of(new TokenBucket(rate, burst == null ? defaultBurst : burst.intValue(), System.nanoTime()));
+  }
+  
+  private void invalidate(String prefix, String id) {
+    if (id == null) {
+      buckets.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+      unknownIds.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    } else {
+      buckets.invalidate(prefix + id);
+      unknownIds.invalidate(prefix + id);
+    }
+  }
+  
+  private static Number toNumber(Object value) {
+    if (value instanceof Number) {
+      return (Number) value;
+    }
+    return value == null || !NumberUtils.isCreatable(value.toString()) ? null : NumberUtils.createNumber(value.toString());
+  }
+  
+  /**
+   * Thrown when loading the bucket of a client or partner that does not exist.
+   */
+  private static class UnknownIdException extends Exception {
+    
+    UnknownIdException() {
+      super(null, null, false, false);
+    }
+  }
+}
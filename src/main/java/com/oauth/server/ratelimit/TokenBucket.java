@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free token bucket, refilled at {@code permitsPerSecond} up to {@code burst} permits.
+ *
+ * <p>
+ * The bucket is kept as the single instant at which it will be full again (the "theoretical arrival time" of the
+ * generic cell rate algorithm): taking a permit moves that instant one refill interval later, and is refused when it
+ * would move more than {@code burst} intervals past now. One CAS per request, no refill thread.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+class TokenBucket {
+  
+  private final long intervalNanos;
+  
+  private final long capacityNanos;
+  
+  private final AtomicLong fullAt;
+  
+  private final LongAdder taken = new LongAdder();
+  
+  TokenBucket(double permitsPerSecond, int burst, long nowNanos) {
+    this.intervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+    this.capacityNanos = intervalNanos * Math.max(1, burst);
+    this.fullAt = new AtomicLong(nowNanos);
+  }
+  
+  /**
+   * Take a permit if one is available.
+   *
+   * @param nowNanos current {@link System#nanoTime()}.
+   * @return 0 if a permit was taken, otherwise the nanoseconds until one is available.
+   */
+  long tryAcquire(long nowNanos) {
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.max(current, nowNanos) + intervalNanos;
+      long excess = next - nowNanos - capacityNanos;
+      if (excess > 0) {
+        return excess;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        taken.increment();
+        return 0;
+      }
+    }
+  }
+  
+  /**
+   * Take permits used elsewhere (by other nodes), down to an empty bucket.
+   *
+   * @param permits permits to take.
+   * @param nowNanos current {@link System#nanoTime()}.
+   */
+  void drain(long permits, long nowNanos) {
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.min(Math.max(current, nowNanos) + permits * intervalNanos, nowNanos + capacityNanos);
+      if (next <= current || fullAt.compareAndSet(current, next)) {
+        return;
+      }
+    }
+  }
+  
+  /**
+   * @return the permits taken on this node since the previous call.
+   */
+  long takenSinceLastCall() {
+    return taken.sumThenReset();
+  }
+}
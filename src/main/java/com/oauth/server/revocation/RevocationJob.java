@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.revocation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+
+/**
+ * A mass revocation running in the background, see {@link TokenRevocationService}.
+ *
+ * @author Varij Kapil
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RevocationJob {
+  
+  public enum Status {
+    QUEUED, RUNNING, COMPLETED, FAILED
+  }
+  
+  private final String id = UUID.randomUUID().toString();
+  
+  private final String clientId;
+  
+  private final String userName;
+  
+  private final String partnerId;
+  
+  private final AtomicLong removedTokens = new AtomicLong();
+  
+  private volatile Status status = Status.QUEUED;
+  
+  private volatile Date startedAt;
+  
+  private volatile Date finishedAt;
+  
+  private volatile String error;
+  
+  RevocationJob(String clientId, String userName, String partnerId) {
+    this.clientId = clientId;
+    this.userName = userName;
+    this.partnerId = partnerId;
+  }
+  
+  void started() {
+    startedAt = new Date();
+    status = Status.RUNNING;
+  }
+  
+  void completed() {
+    finishedAt = new Date();
+    status = Status.COMPLETED;
+  }
+  
+  void failed(Exception e) {
+    finishedAt = new Date();
+    error = e.getMessage();
+    status = Status.FAILED;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.revocation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.oauth.server.audit.AuditEvent;
+import com.oauth.server.audit.AuditEventType;
+import com.oauth.server.audit.AuditTrail;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
+import com.oauth.server.database.dao.KeyedTokenStore;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.event.TokenRevokedEvent;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.oauth2.common.exceptions.InvalidRequestException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Revokes all the tokens of a user, a client, a user of a client, or a partner.
+ *
+ * <p>
+ * Tokens are removed with set-based deletes of at most {@code batchSize} rows, each in its own short transaction, with
+ * a pause between batches so a revocation of millions of tokens does not starve the token endpoints. Mass revocations
+ * run one at a time in the background and are tracked as {@link RevocationJob}s. A {@link TokenRevokedEvent} follows
+ * every batch, so caches drop the revoked tokens as they go.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+@Component
+public class TokenRevocationService implements DisposableBean {
+  
+  private final KeyedTokenStore tokenStore;
+  
+  private final DynamoDBPartnerTokenDAO partnerTokenService;
+  
+  private final DynamoDBPartnerDetailsDAO partnerDetailsService;
+  
+  private final ApplicationEventPublisher eventPublisher;
+  
+  private final AuditTrail auditTrail;
+  
+  private final int batchSize;
+  
+  private final long batchPauseMillis;
+  
+  private final ThreadPoolExecutor executor;
+  
+  private final Cache<String, RevocationJob> jobs;
+  
+  public TokenRevocationService(KeyedTokenStore tokenStore, DynamoDBPartnerTokenDAO partnerTokenService,
+      DynamoDBPartnerDetailsDAO partnerDetailsService, ApplicationEventPublisher eventPublisher, AuditTrail auditTrail,
+      @Value("${oauth.revocation.batch-size:1000}") int batchSize,
+      @Value("${oauth.revocation.batch-pause-millis:20}") long batchPauseMillis,
+      @Value("${oauth.revocation.max-queued-jobs:100}") int maxQueuedJobs,
+      @Value("${oauth.revocation.job-retention-hours:24}") long jobRetentionHours) {
+    this.tokenStore = tokenStore;
+    this.partnerTokenService = partnerTokenService;
+    this.partnerDetailsService = partnerDetailsService;
+    this.eventPublisher = eventPublisher;
+    this.auditTrail = auditTrail;
+    this.batchSize = batchSize;
+    this.batchPauseMillis = batchPauseMillis;
+    this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(maxQueuedJobs),
+        new ThreadFactoryBuilder().setNameFormat("token-revocation-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.jobs = CacheBuilder.newBuilder()
+        .expireAfterWrite(jobRetentionHours, TimeUnit.HOURS)
+        .build();
+  }
+  
+  /**
+   * Start revoking the tokens of a user of a client in the background, e.g. when the user revokes the approval of the
+   * client.
+   *
+   * @param clientId client id.
+   * @param userName user name.
+   * @return the job started.
+   */
+  public RevocationJob submitUserOfClient(String clientId, String userName) {
+    if (clientId == null || userName == null) {
+      throw new InvalidRequestException("A client id and a user name are required");
+    }
+    return submit(new RevocationJob(clientId, userName, null));
+  }
+  
+  /**
+   * Start revoking the tokens of a user, a client, or a user of a client in the background.
+   *
+   * @param clientId client id, any client when null.
+   * @param userName user name, any user when null.
+   * @return the job started.
+   */
+  public RevocationJob submit(String clientId, String userName) {
+    if (clientId == null && userName == null) {
+      throw new InvalidRequestException("A client id, a user name or both are required");
+    }
+    return submit(new RevocationJob(clientId, userName, null));
+  }
+  
+  /**
+   * Start revoking the partner tokens of a partner, or of a user of a partner, in the background.
+   *
+   * @param partnerId partner id.
+   * @param userName user name, any user when null.
+   * @return the job started.
+   */
+  public RevocationJob submitPartner(String partnerId, String userName) {
+    if (partnerDetailsService.loadPartnerByPartnerId(partnerId) == null) {
+      throw new InvalidRequestException("Unknown partner id: " + partnerId);
+    }
+    return submit(new RevocationJob(null, userName, partnerId));
+  }
+  
+  /**
+   * @param id job id.
+   * @return the job, if it is still retained.
+   */
+  public Optional<RevocationJob> getJob(String id) {
+    return Optional.ofNullable(jobs.getIfPresent(id));
+  }
+  
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+  
+  private RevocationJob submit(RevocationJob job) {
+    jobs.put(job.getId(), job);
+    try {
+      executor.execute(() -> run(job));
+    } catch (RejectedExecutionException e) {
+      jobs.invalidate(job.getId());
+      throw e;
+    }
+    return job;
+  }
+  
+  private void run(RevocationJob job) {
+    job.started();
+    try {
+      if (job.getPartnerId() != null) {
+        OAuthPartner partner = partnerDetailsService.loadPartnerByPartnerId(job.getPartnerId());
+        if (partner != null) {
+          removeInBatches(job, () ->
+              partnerTokenService.removeAccessTokenBatch(partner.getClientId(), job.getUserName(), batchSize));
+        }
+      } else {
+        removeInBatches(job, () -> {
+          int removed = tokenStore.removeTokenBatch(job.getClientId(), job.getUserName(), batchSize);
+          if (removed > 0) {
+            eventPublisher.publishEvent(TokenRevokedEvent.ofClientAndUser(this, job.getClientId(), job.getUserName()));
+          }
+          return removed;
+        });
+      }
+      job.completed();
+      auditTrail.record(AuditEvent.builder()
+          .type(AuditEventType.TOKENS_REVOKED)
+          .clientId(job.getClientId())
+          .userName(job.getUserName())
+          .partnerId(job.getPartnerId())
+          .detail(Long.toString(job.getRemovedTokens().get()))
+          .build());
+      log.info("Revoked {} tokens of client {}, user {}, partner {}", job.getRemovedTokens(), job.getClientId(),
+          job.getUserName(), job.getPartnerId());
+    } catch (Exception e) {
+      job.failed(e);
+      log.error("Failed to revoke the tokens of client {}, user {}, partner {}", job.getClientId(), job.getUserName(),
+          job.getPartnerId(), e);
+    }
+  }
+  
+  private void removeInBatches(RevocationJob job, IntSupplier batch) throws InterruptedException {
+    int removed;
+    while ((removed = batch.getAsInt()) > 0) {
+      job.getRemovedTokens().addAndGet(removed);
+      if (batchPauseMillis > 0) {
+        Thread.sleep(batchPauseMillis);
+      }
+    }
+  }
+}
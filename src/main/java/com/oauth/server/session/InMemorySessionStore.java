@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link SessionStore} local to this node, standing in for a shared store in development and single node
+ * deployments. Sessions are kept serialized, so that attributes which could not be shared fail the same way.
+ *
+ * @author Varij Kapil
+ */
+public class InMemorySessionStore implements SessionStore {
+  
+  private final ConcurrentMap<String, StoredSession> sessions = new ConcurrentHashMap<>();
+  
+  @Override
+  public byte[] load(String key, long now) {
+    StoredSession session = sessions.get(key);
+    return session != null && session.expiresAt > now ? session.data : null;
+  }
+  
+  @Override
+  public void save(String key, byte[] data, long expiresAt) {
+    sessions.put(key, new StoredSession(data, expiresAt));
+  }
+  
+  @Override
+  public void delete(String key) {
+    sessions.remove(key);
+  }
+  
+  @Override
+  public int deleteExpired(long now) {
+    int deleted = 0;
+    for (Map.Entry<String, StoredSession> session : sessions.entrySet()) {
+      if (session.getValue().expiresAt <= now && sessions.remove(session.getKey(), session.getValue())) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+  
+  private static final class StoredSession {
+    
+    private final byte[] data;
+    
+    private final long expiresAt;
+    
+    private StoredSession(byte[] data, long expiresAt) {
+      this.data = data;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.session;
+
+import java.sql.Timestamp;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A {@link SessionStore} in the {@code oauth_session} table of the primary database, shared by all nodes.
+ *
+ * <p>
+ * Sessions are read outside of any transaction, so never from a read replica, which could lag behind the node that
+ * wrote them.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class JdbcSessionStore implements SessionStore {
+  
+  private static final String SELECT_SESSION =
+      "SELECT data FROM oauth_session WHERE session_key = ? AND expires_at > ?";
+  
+  private static final String UPDATE_SESSION =
+      "UPDATE oauth_session SET data = ?, expires_at = ? WHERE session_key = ?";
+  
+  private static final String INSERT_SESSION =
+      "INSERT INTO oauth_session (session_key, data, expires_at) VALUES (?, ?, ?)";
+  
+  private static final String DELETE_SESSION = "DELETE FROM oauth_session WHERE session_key = ?";
+  
+  private static final String DELETE_EXPIRED = "DELETE FROM oauth_session WHERE expires_at <= ?";
+  
+  private final JdbcTemplate jdbcTemplate;
+  
+  public JdbcSessionStore(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+  
+  @Override
+  public byte[] load(String key, long now) {
+    return jdbcTemplate.query(SELECT_SESSION, rs -> rs.next() ? rs.getBytes(1) : null, key, new Timestamp(now));
+  }
+  
+  @Override
+  public void save(String key, byte[] data, long expiresAt) {
+    Timestamp expiry = new Timestamp(expiresAt);
+    if (jdbcTemplate.update(UPDATE_SESSION, data, expiry, key) > 0) {
+      return;
+    }
+    try {
+      jdbcTemplate.update(INSERT_SESSION, key, data, expiry);
+    } catch (DuplicateKeyException e) {
+      // Inserted by a concurrent request of the same session.
+      jdbcTemplate.update(UPDATE_SESSION, data, expiry, key);
+    }
+  }
+  
+  @Override
+  public void delete(String key) {
+    jdbcTemplate.update(DELETE_SESSION, key);
+  }
+  
+  @Override
+  public int deleteExpired(long now) {
+    return jdbcTemplate.update(DELETE_EXPIRED, new Timestamp(now));
+  }
+}
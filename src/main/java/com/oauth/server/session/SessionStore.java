@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.session;
+
+/**
+ * Storage of the HTTP sessions served by {@link SharedSessionFilter}, shared by all nodes so that a login or an
+ * authorization can continue on any of them.
+ *
+ * <p>
+ * Sessions are stored by key, the MD5 of the session id, as serialized bytes with an expiry.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public interface SessionStore {
+  
+  /**
+   * Load a session.
+   *
+   * @param key session key.
+   * @param now current time in milliseconds.
+   * @return the serialized session, or null if not found or expired.
+   */
+  byte[] load(String key, long now);
+  
+  /**
+   * Add or replace a session.
+   *
+   * @param key session key.
+   * @param data serialized session.
+   * @param expiresAt expiry in milliseconds.
+   */
+  void save(String key, byte[] data, long expiresAt);
+  
+  void delete(String key);
+  
+  /**
+   * Delete the sessions expired at the given time.
+   *
+   * @return the number of sessions deleted.
+   */
+  int deleteExpired(long now);
+}
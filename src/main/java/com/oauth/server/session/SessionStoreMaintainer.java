@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.session;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Deletes expired sessions from the {@link SessionStore} periodically. Every node runs it, which is harmless since
+ * deleting expired sessions is idempotent.
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class SessionStoreMaintainer {
+  
+  private final SessionStore sessionStore;
+  
+  public SessionStoreMaintainer(SessionStore sessionStore) {
+    this.sessionStore = sessionStore;
+  }
+  
+  @Scheduled(fixedDelayString = "${oauth.session.cleanup-interval-millis:60000}")
+  public void deleteExpired() {
+    try {
+      int deleted = sessionStore.deleteExpired(System.currentTimeMillis());
+      if (deleted > 0) {
+        log.debug("Deleted {} expired sessions", deleted);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to delete expired sessions", e);
+    }
+  }
+}
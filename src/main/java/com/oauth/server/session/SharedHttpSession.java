@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.session;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionContext;
+
+/**
+ * An {@link HttpSession} loaded from a {@link SessionStore} for the duration of a request. Attribute values must be
+ * {@link Serializable}.
+ *
+ * <p>
+ * The session records whether its attributes changed, so that requests which only read it are not written back.
+ * Attributes changed in place must be set again to be saved, as with any replicated session.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+class SharedHttpSession implements HttpSession {
+  
+  private final ServletContext servletContext;
+  
+  private final Consumer<SharedHttpSession> onInvalidate;
+  
+  private final State state;
+  
+  private long savedAccessedTime;
+  
+  private String id;
+  
+  private boolean created;
+  
+  private boolean changed;
+  
+  private boolean invalidated;
+  
+  private SharedHttpSession(String id, State state, boolean created, ServletContext servletContext,
+      Consumer<SharedHttpSession> onInvalidate) {
+    this.id = id;
+    this.state = state;
+    this.created = created;
+    this.savedAccessedTime = state.lastAccessedTime;
+    this.servletContext = servletContext;
+    this.onInvalidate = onInvalidate;
+  }
+  
+  static SharedHttpSession create(String id, int maxInactiveInterval, ServletContext servletContext,
+      Consumer<SharedHttpSession> onInvalidate) {
+    long now = System.currentTimeMillis();
+    return new SharedHttpSession(id, new State(now, now, maxInactiveInterval, new HashMap<>()), true, servletContext,
+        onInvalidate);
+  }
+  
+  static SharedHttpSession restore(String id, State state, ServletContext servletContext,
+      Consumer<SharedHttpSession> onInvalidate) {
+    SharedHttpSession session = new SharedHttpSession(id, state, false, servletContext, onInvalidate);
+    state.lastAccessedTime = System.currentTimeMillis();
+    return session;
+  }
+  
+  /**
+   * Whether the session must be saved: it is new, was changed, or was last saved more than {@code touchIntervalMillis}
+   * ago and its expiry must be pushed back.
+   */
+  boolean isSaveNeeded(long touchIntervalMillis) {
+    return created || changed || state.lastAccessedTime - savedAccessedTime > touchIntervalMillis;
+  }
+  
+  void saved() {
+    created = false;
+    changed = false;
+    savedAccessedTime = state.lastAccessedTime;
+  }
+  
+  void changeId(String newId) {
+    id = newId;
+    changed = true;
+  }
+  
+  long expiresAt() {
+    return state.lastAccessedTime + TimeUnit.SECONDS.toMillis(state.maxInactiveInterval);
+  }
+  
+  State state() {
+    return state;
+  }
+  
+  @Override
+  public long getCreationTime() {
+    checkValid();
+    return state.creationTime;
+  }
+  
+  @Override
+  public String getId() {
+    return id;
+  }
+  
+  @Override
+  public long getLastAccessedTime() {
+    checkValid();
+    return state.lastAccessedTime;
+  }
+  
+  @Override
+  public ServletContext getServletContext() {
+    return servletContext;
+  }
+  
+  @Override
+  public void setMaxInactiveInterval(int interval) {
+    state.maxInactiveInterval = interval;
+    changed = true;
+  }
+  
+  @Override
+  public int getMaxInactiveInterval() {
+    return state.maxInactiveInterval;
+  }
+  
+  @Override
+  @Deprecated
+  public HttpSessionContext getSessionContext() {
+    return null;
+  }
+  
+  @Override
+  public Object getAttribute(String name) {
+    checkValid();
+    return state.attributes.get(name);
+  }
+  
+  @Override
+  @Deprecated
+  public Object getValue(String name) {
+    return getAttribute(name);
+  }
+  
+  @Override
+  public Enumeration<String> getAttributeNames() {
+    checkValid();
+    return Collections.enumeration(state.attributes.keySet());
+  }
+  
+  @Override
+  @Deprecated
+  public String[] getValueNames() {
+    checkValid();
+    return state.attributes.keySet().toArray(new String[0]);
+  }
+  
+  @Override
+  public void setAttribute(String name, Object value) {
+    checkValid();
+    if (value == null) {
+      removeAttribute(name);
+      return;
+    }
+    if (!(value instanceof Serializable)) {
+      throw new IllegalArgumentException("Session attribute " + name + " of type " + value.getClass().getName()
+          + " is not serializable");
+    }
+    state.attributes.put(name, value);
+    changed = true;
+  }
+  
+  @Override
+  @Deprecated
+  public void putValue(String name, Object value) {
+    setAttribute(name, value);
+  }
+  
+  @Override
+  public void removeAttribute(String name) {
+    checkValid();
+    if (state.attributes.remove(name) != null) {
+      changed = true;
+    }
+  }
+  
+  @Override
+  @Deprecated
+  public void removeValue(String name) {
+    removeAttribute(name);
+  }
+  
+  @Override
+  public void invalidate() {
+    checkValid();
+    invalidated = true;
+    onInvalidate.accept(this);
+  }
+  
+  @Override
+  public boolean isNew() {
+    checkValid();
+    return created;
+  }
+  
+  private void checkValid() {
+    if (invalidated) {
+      throw new IllegalStateException("Session " + id + " was invalidated");
+    }
+  }
+  
+  /**
+   * The serialized form of a session.
+   */
+  static final class State implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final long creationTime;
+    
+    private long lastAccessedTime;
+    
+    private int maxInactiveInterval;
+    
+    private final HashMap<String, Object> attributes;
+    
+    private State(long creationTime, long lastAccessedTime, int maxInactiveInterval,
+        HashMap<String, Object> attributes) {
+      this.creationTime = creationTime;
+      this.lastAccessedTime = lastAccessedTime;
+      this.maxInactiveInterval = maxInactiveInterval;
+      this.attributes = attributes;
+    }
+  }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.session;
+
+import com.oauth.server.database.dao.TokenKeys;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Replaces the servlet container sessions with sessions kept in a {@link SessionStore}, so that the login, the saved
+ * request, the CSRF token and the pending authorization request of the authorize flow are seen by every node, and
+ * nodes can be added or removed without sticky load balancing or lost flows.
+ *
+ * <p>
+ * The session id is a random 256 bit value sent in the {@code cookieName} cookie, and stored as its MD5 key only. A
+ * session is loaded the first time the request asks for it, only when the cookie is present, and saved when it was
+ * created or changed, or to push its expiry back once {@code touchIntervalMillis} passed. It is saved before anything
+ * can commit the response, a redirect, an error or a write of the body, so that the next request of the flow finds it
+ * on any node.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class SharedSessionFilter extends OncePerRequestFilter {
+  
+  private static final int SESSION_ID_BYTES = 32;
+  
+  private final SessionStore sessionStore;
+  
+  private final String cookieName;
+  
+  private final int maxInactiveInterval;
+  
+  private final long touchIntervalMillis;
+  
+  private final SecureRandom random = new SecureRandom();
+  
+  private final SerializingConverter serializer = new SerializingConverter();
+  
+  private final DeserializingConverter deserializer = new DeserializingConverter(getClass().getClassLoader());
+  
+  public SharedSessionFilter(SessionStore sessionStore, String cookieName, int maxInactiveInterval,
+      long touchIntervalMillis) {
+    this.sessionStore = sessionStore;
+    this.cookieName = cookieName;
+    this.maxInactiveInterval = maxInactiveInterval;
+    this.touchIntervalMillis = touchIntervalMillis;
+  }
+  
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    SessionRequest sessionRequest = new SessionRequest(request, response);
+    try {
+      filterChain.doFilter(sessionRequest, new SessionResponse(response, sessionRequest));
+    } finally {
+      sessionRequest.commit();
+    }
+  }
+  
+  private String newSessionId() {
+    byte[] bytes = new byte[SESSION_ID_BYTES];
+    random.nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+  
+  /**
+   * A request whose sessions come from the store. Only used by the thread running the request.
+   */
+  private final class SessionRequest extends HttpServletRequestWrapper {
+    
+    private final HttpServletResponse response;
+    
+    private final List<String> deletedKeys = new ArrayList<>();
+    
+    private String requestedSessionId;
+    
+    private boolean requestedSessionIdRead;
+    
+    private boolean loaded;
+    
+    private SharedHttpSession session;
+    
+    private SessionRequest(HttpServletRequest request, HttpServletResponse response) {
+      super(request);
+      this.response = response;
+    }
+    
+    @Override
+    public HttpSession getSession() {
+      return getSession(true);
+    }
+    
+    @Override
+    public HttpSession getSession(boolean create) {
+      if (session != null) {
+        return session;
+      }
+      if (!loaded) {
+        loaded = true;
+        session = load(getRequestedSessionId());
+        if (session != null) {
+          return session;
+        }
+      }
+      if (!create) {
+        return null;
+      }
+      session = SharedHttpSession.create(newSessionId(), maxInactiveInterval, getServletContext(), this::invalidated);
+      writeCookie(session.getId());
+      return session;
+    }
+    
+    @Override
+    public String changeSessionId() {
+      if (session == null && getSession(false) == null) {
+        throw new IllegalStateException("No session to change the id of");
+      }
+      deletedKeys.add(TokenKeys.extractTokenKey(session.getId()));
+      session.changeId(newSessionId());
+      writeCookie(session.getId());
+      return session.getId();
+    }
+    
+    @Override
+    public String getRequestedSessionId() {
+      if (!requestedSessionIdRead) {
+        requestedSessionIdRead = true;
+        Cookie[] cookies = getCookies();
+        if (cookies != null) {
+          for (Cookie cookie : cookies) {
+            if (cookieName.equals(cookie.getName()) && StringUtils.hasText(cookie.getValue())) {
+              requestedSessionId = cookie.getValue();
+            }
+          }
+        }
+      }
+      return requestedSessionId;
+    }
+    
+    @Override
+    public boolean isRequestedSessionIdValid() {
+      HttpSession current = getSession(false);
+      return current != null && current.getId().equals(getRequestedSessionId());
+    }
+    
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+      return getRequestedSessionId() != null;
+    }
+    
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+      return false;
+    }
+    
+    @Override
+    @Deprecated
+    public boolean isRequestedSessionIdFromUrl() {
+      return false;
+    }
+    
+    /**
+     * Save the session if needed and delete the sessions replaced or invalidated. Called again at the end of the
+     * request once called on commit of the response, to save what changed in between.
+     */
+    private void commit() {
+      deletedKeys.forEach(sessionStore::delete);
+      deletedKeys.clear();
+      if (session != null && session.isSaveNeeded(touchIntervalMillis)) {
+        byte[] data;
+        try {
+          data = serializer.convert(session.state());
+        } catch (SerializationFailedException e) {
+          log.error("Failed to serialize session of {}", getRequestURI(), e);
+          return;
+        }
+        sessionStore.save(TokenKeys.extractTokenKey(session.getId()), data, session.expiresAt());
+        session.saved();
+      }
+    }
+    
+    private SharedHttpSession load(String sessionId) {
+      if (sessionId == null) {
+        return null;
+      }
+      byte[] data = sessionStore.load(TokenKeys.extractTokenKey(sessionId), System.currentTimeMillis());
+      if (data == null) {
+        return null;
+      }
+      try {
+        return SharedHttpSession.restore(sessionId, (SharedHttpSession.State) deserializer.convert(data),
+            getServletContext(), this::invalidated);
+      } catch (SerializationFailedException | ClassCastException e) {
+        log.warn("Discarding session that could not be read", e);
+        return null;
+      }
+    }
+    
+    private void invalidated(SharedHttpSession invalidated) {
+      deletedKeys.add(TokenKeys.extractTokenKey(invalidated.getId()));
+      session = null;
+      Cookie cookie = cookie("");
+      cookie.setMaxAge(0);
+      response.addCookie(cookie);
+    }
+    
+    private void writeCookie(String sessionId) {
+      response.addCookie(cookie(sessionId));
+    }
+    
+    private Cookie cookie(String value) {
+      Cookie cookie = new Cookie(cookieName, value);
+      cookie.setPath(StringUtils.hasLength(getContextPath()) ? getContextPath() : "/");
+      cookie.setHttpOnly(true);
+      cookie.setSecure(isSecure());
+      return cookie;
+    }
+  }
+  
+  /**
+   * Saves the session before the response can be committed: by a redirect, an error, a flush, or a write of the body,
+   * which commits the response once the buffer fills or the content length is reached. Saving only does work when the
+   * session changed since last saved.
+   */
+  private static final class SessionResponse extends HttpServletResponseWrapper {
+    
+    private final SessionRequest request;
+    
+    private SessionOutputStream outputStream;
+    
+    private SessionWriter writer;
+    
+    private SessionResponse(HttpServletResponse response, SessionRequest request) {
+      super(response);
+      this.request = request;
+    }
+    
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      request.commit();
+      super.sendRedirect(location);
+    }
+    
+    @Override
+    public void sendError(int sc) throws IOException {
+      request.commit();
+      super.sendError(sc);
+    }
+    
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      request.commit();
+      super.sendError(sc, msg);
+    }
+    
+    @Override
+    public void flushBuffer() throws IOException {
+      request.commit();
+      super.flushBuffer();
+    }
+    
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (outputStream == null) {
+        outputStream = new SessionOutputStream(super.getOutputStream(), request);
+      }
+      return outputStream;
+    }
+    
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        writer = new SessionWriter(super.getWriter(), request);
+      }
+      return writer;
+    }
+  }
+  
+  /**
+   * Saves the session before every write, flush or close of the body.
+   */
+  private static final class SessionOutputStream extends ServletOutputStream {
+    
+    private final ServletOutputStream delegate;
+    
+    private final SessionRequest request;
+    
+    private SessionOutputStream(ServletOutputStream delegate, SessionRequest request) {
+      this.delegate = delegate;
+      this.request = request;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+      request.commit();
+      delegate.write(b);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      request.commit();
+      delegate.write(b, off, len);
+    }
+    
+    @Override
+    public void flush() throws IOException {
+      request.commit();
+      delegate.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+      request.commit();
+      delegate.close();
+    }
+    
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+    
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      delegate.setWriteListener(writeListener);
+    }
+  }
+  
+  /**
+   * Saves the session before every write, flush or close of the body. The print methods all end up in these, except
+   * the line separator of {@link #println()}, written to the delegate directly.
+   */
+  private static final class SessionWriter extends PrintWriter {
+    
+    private final SessionRequest request;
+    
+    private SessionWriter(PrintWriter delegate, SessionRequest request) {
+      super(delegate);
+      this.request = request;
+    }
+    
+    @Override
+    public void write(int c) {
+      request.commit();
+      super.write(c);
+    }
+    
+    @Override
+    public void write(char[] buf, int off, int len) {
+      request.commit();
+      super.write(buf, off, len);
+    }
+    
+    @Override
+    public void write(String s, int off, int len) {
+      request.commit();
+      super.write(s, off, len);
+    }
+    
+    @Override
+    public void println() {
+      request.commit();
+      super.println();
+    }
+    
+    @Override
+    public void flush() {
+      request.commit();
+      super.flush();
+    }
+    
+    @Override
+    public void close() {
+      request.commit();
+      super.close();
+    }
+  }
+}
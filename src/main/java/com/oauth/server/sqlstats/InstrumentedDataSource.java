@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.sqlstats;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * A data source recording every statement executed through its connections in {@link SqlStatistics}: its SQL, its
+ * execution time, the rows it updated, and the rows read from its result sets.
+ *
+ * <p>
+ * Connections, statements and result sets are wrapped in dynamic proxies, which only intercept the execute methods,
+ * {@code ResultSet.next} and {@code close}; everything else goes straight to the driver.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+  
+  private static final Set<String> EXECUTE_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch")));
+  
+  private final SqlStatistics statistics;
+  
+  public InstrumentedDataSource(DataSource targetDataSource, SqlStatistics statistics) {
+    super(targetDataSource);
+    this.statistics = statistics;
+  }
+  
+  @Override
+  public Connection getConnection() throws SQLException {
+    return proxy(Connection.class, new ConnectionHandler(obtainTargetDataSource().getConnection()));
+  }
+  
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return proxy(Connection.class,
+        new ConnectionHandler(obtainTargetDataSource().getConnection(username, password)));
+  }
+  
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[] {type},
+        handler));
+  }
+  
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+  
+  /**
+   * Handles {@code equals} and {@code hashCode} on the proxy itself, returns null for other methods.
+   */
+  private static Object identity(Object proxy, Method method, Object[] args) {
+    if ("equals".equals(method.getName()) && args != null && args.length == 1) {
+      return proxy == args[0];
+    }
+    if ("hashCode".equals(method.getName()) && (args == null || args.length == 0)) {
+      return System.identityHashCode(proxy);
+    }
+    return null;
+  }
+  
+  private final class ConnectionHandler implements InvocationHandler {
+    
+    private final Connection connection;
+    
+    private ConnectionHandler(Connection connection) {
+      this.connection = connection;
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object identity = identity(proxy, method, args);
+      if (identity != null) {
+        return identity;
+      }
+    
+      Object result = InstrumentedDataSource.invoke(connection, method, args);
+      if (!(result instanceof Statement)) {
+        return result;
+      }
+      String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+      if (result instanceof CallableStatement) {
+        return proxy(CallableStatement.class, new StatementHandler((Statement) result, sql));
+      }
+      if (result instanceof PreparedStatement) {
+        return proxy(PreparedStatement.class, new StatementHandler((Statement) result, sql));
+      }
+      return proxy(Statement.class, new StatementHandler((Statement) result, null));
+    }
+  }
+  
+  private final class StatementHandler implements InvocationHandler {
+    
+    private final Statement statement;
+    
+    private final String preparedSql;
+    
+    private String batchSql;
+    
+    private StatementHandler(Statement statement, String preparedSql) {
+      this.statement = statement;
+      this.preparedSql = preparedSql;
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object identity = identity(proxy, method, args);
+      if (identity != null) {
+        return identity;
+      }
+    
+      String name = method.getName();
+      if ("addBatch".equals(name) && args != null && args.length == 1 && batchSql == null) {
+        batchSql = (String) args[0];
+      }
+      if (!EXECUTE_METHODS.contains(name)) {
+        Object result = InstrumentedDataSource.invoke(statement, method, args);
+        return "getResultSet".equals(name) ? resultSet(result) : result;
+      }
+    
+      String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0]
+          : preparedSql != null ? preparedSql : batchSql;
+      long rows = 0;
+      long start = System.nanoTime();
+      try {
+        Object result = InstrumentedDataSource.invoke(statement, method, args);
+        rows = updatedRows(result);
+        return "executeQuery".equals(name) ? resultSet(result) : result;
+      } finally {
+        statistics.recordStatement(sql, System.nanoTime() - start, rows);
+        if (name.endsWith("Batch")) {
+          batchSql = null;
+        }
+      }
+    }
+    
+    private Object resultSet(Object resultSet) {
+      return resultSet instanceof ResultSet
+          ? proxy(ResultSet.class, new ResultSetHandler((ResultSet) resultSet)) : resultSet;
+    }
+    
+    private long updatedRows(Object result) {
+      if (result instanceof Number) {
+        return Math.max(0, ((Number) result).longValue());
+      }
+      long rows = 0;
+      if (result instanceof int[]) {
+        for (int count : (int[]) result) {
+          rows += Math.max(0, count);
+        }
+      } else if (result instanceof long[]) {
+        for (long count : (long[]) result) {
+          rows += Math.max(0, count);
+        }
+      }
+      return rows;
+    }
+  }
+  
+  /**
+   * Counts the rows read, and records them once the result set is exhausted or closed.
+   */
+  private final class ResultSetHandler implements InvocationHandler {
+    
+    private final ResultSet resultSet;
+    
+    private long rows;
+    
+    private boolean recorded;
+    
+    private ResultSetHandler(ResultSet resultSet) {
+      this.resultSet = resultSet;
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object identity = identity(proxy, method, args);
+      if (identity != null) {
+        return identity;
+      }
+    
+      String name = method.getName();
+      if ("close".equals(name)) {
+        record();
+      }
+      Object result = InstrumentedDataSource.invoke(resultSet, method, args);
+      if ("next".equals(name)) {
+        if (Boolean.TRUE.equals(result)) {
+          rows++;
+        } else {
+          record();
+        }
+      }
+      return result;
+    }
+    
+    private void record() {
+      if (!recorded) {
+        recorded = true;
+        statistics.recordRows(rows);
+      }
+    }
+  }
+}
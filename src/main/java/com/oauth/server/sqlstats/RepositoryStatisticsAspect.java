@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.sqlstats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Attributes the SQL statements executed by the repositories in {@code com.oauth.server.database.service} to the
+ * repository method that runs them, named after the {@code IOAuth*} interface of the repository (e.g.
+ * {@code IOAuthAccessToken.findByTokenId}), including the methods it inherits such as {@code save}.
+ *
+ * @author Varij Kapil
+ */
+@Aspect
+@RequiredArgsConstructor
+public class RepositoryStatisticsAspect {
+  
+  private static final String REPOSITORY_PACKAGE = "com.oauth.server.database.service.";
+  
+  private final SqlStatistics statistics;
+  
+  private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+  
+  @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+  public Object aroundRepositoryMethod(ProceedingJoinPoint joinPoint) throws Throwable {
+    String repository = repositoryNames.computeIfAbsent(joinPoint.getTarget().getClass(), this::repositoryName);
+    if (repository.isEmpty()) {
+      return joinPoint.proceed();
+    }
+    
+    SqlStatistics.MethodScope scope =
+        statistics.enterRepositoryMethod(repository + "." + joinPoint.getSignature().getName());
+    try {
+      return joinPoint.proceed();
+    } finally {
+      statistics.exitRepositoryMethod(scope);
+    }
+  }
+  
+  /**
+   * The simple name of the repository interface implemented by the target, or an empty name for repositories of other
+   * packages.
+   */
+  private String repositoryName(Class<?> targetClass) {
+    for (Class<?> type : ClassUtils.getAllInterfacesForClassAsSet(targetClass)) {
+      if (type.getName().startsWith(REPOSITORY_PACKAGE)) {
+        return type.getSimpleName();
+      }
+    }
+    return "";
+  }
+}
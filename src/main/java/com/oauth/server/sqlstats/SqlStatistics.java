@@ -0,0 +1,377 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.sqlstats;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Aggregates the SQL statements executed through {@link InstrumentedDataSource} per HTTP endpoint and per repository
+ * method, and keeps the slowest statements and the statements repeated within a request.
+ *
+ * <p>
+ * Statements are attributed to the request and the repository method running on the current thread, as opened by
+ * {@link SqlStatisticsFilter} and {@link RepositoryStatisticsAspect}. A statement executed {@code repeatedThreshold}
+ * times or more by a single request is flagged as a likely N+1 query, and logged the first time it is seen.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class SqlStatistics {
+  
+  private static final int MAX_SQL_LENGTH = 1000;
+  
+  private static final int MAX_STATEMENTS_PER_REQUEST = 256;
+  
+  private final long slowQueryNanos;
+  
+  private final int slowQueryCapacity;
+  
+  private final int repeatedThreshold;
+  
+  private final int repeatedCapacity;
+  
+  private final ThreadLocal<RequestScope> currentRequest = new ThreadLocal<>();
+  
+  private final ThreadLocal<MethodScope> currentRepositoryMethod = new ThreadLocal<>();
+  
+  private final Counters total = new Counters();
+  
+  private final ConcurrentMap<String, Counters> endpoints = new ConcurrentHashMap<>();
+  
+  private final ConcurrentMap<String, Counters> repositoryMethods = new ConcurrentHashMap<>();
+  
+  private final ConcurrentMap<RepeatedKey, RepeatedCounters> repeatedQueries = new ConcurrentHashMap<>();
+  
+  private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+  
+  public SqlStatistics(long slowQueryMillis, int slowQueryCapacity, int repeatedThreshold, int repeatedCapacity) {
+    this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+    this.slowQueryCapacity = slowQueryCapacity;
+    this.repeatedThreshold = repeatedThreshold;
+    this.repeatedCapacity = repeatedCapacity;
+  }
+  
+  /**
+   * Attribute the statements of the current thread to a request until {@link #endRequest(RequestScope)}.
+   *
+   * @param endpoint the endpoint of the request, resolved when needed since it is only known once the request is
+   *     mapped to a handler.
+   * @return the request scope, or null when the thread already runs a request.
+   */
+  public RequestScope beginRequest(Supplier<String> endpoint) {
+    if (currentRequest.get() != null) {
+      return null;
+    }
+    RequestScope scope = new RequestScope(endpoint);
+    currentRequest.set(scope);
+    return scope;
+  }
+  
+  public void endRequest(RequestScope scope) {
+    if (scope == null) {
+      return;
+    }
+    currentRequest.remove();
+    
+    String endpoint = scope.endpoint.get();
+    long elapsedNanos = System.nanoTime() - scope.startedAt;
+    endpoints.computeIfAbsent(endpoint, key -> new Counters()).add(1, scope.statements, scope.rows, elapsedNanos);
+    total.add(1, 0, 0, 0);
+    
+    scope.executions.forEach((sql, executions) -> {
+      if (executions >= repeatedThreshold) {
+        flagRepeated(endpoint, sql, executions);
+      }
+    });
+  }
+  
+  /**
+   * Attribute the statements of the current thread to a repository method until {@link #exitRepositoryMethod}.
+   *
+   * @return the scope of the call, to be given back on exit.
+   */
+  public MethodScope enterRepositoryMethod(String repositoryMethod) {
+    MethodScope scope = new MethodScope(repositoryMethod, currentRepositoryMethod.get());
+    currentRepositoryMethod.set(scope);
+    return scope;
+  }
+  
+  public void exitRepositoryMethod(MethodScope scope) {
+    if (scope.previous == null) {
+      currentRepositoryMethod.remove();
+    } else {
+      currentRepositoryMethod.set(scope.previous);
+    }
+    repositoryMethods.computeIfAbsent(scope.name, key -> new Counters())
+        .add(1, scope.statements, scope.rows, System.nanoTime() - scope.startedAt);
+  }
+  
+  /**
+   * Record a statement executed on the current thread.
+   *
+   * @param sql the statement, with parameter placeholders when prepared.
+   * @param elapsedNanos the execution time.
+   * @param rows the rows updated, or 0 for queries whose rows are counted with {@link #recordRows(long)}.
+   */
+  public void recordStatement(String sql, long elapsedNanos, long rows) {
+    total.add(0, 1, rows, elapsedNanos);
+    
+    MethodScope method = currentRepositoryMethod.get();
+    if (method != null) {
+      method.statements++;
+      method.rows += rows;
+    }
+    
+    RequestScope scope = currentRequest.get();
+    if (scope != null) {
+      scope.statements++;
+      scope.rows += rows;
+      if (sql != null
+          && (scope.executions.size() < MAX_STATEMENTS_PER_REQUEST || scope.executions.containsKey(sql))) {
+        scope.executions.merge(sql, 1, Integer::sum);
+      }
+    }
+    
+    if (elapsedNanos >= slowQueryNanos) {
+      SlowQuery slowQuery = new SlowQuery(new Date(), abbreviate(sql), elapsedNanos / 1e6,
+          scope != null ? scope.endpoint.get() : null, method != null ? method.name : null);
+      synchronized (slowQueries) {
+        if (slowQueries.size() >= slowQueryCapacity) {
+          slowQueries.pollFirst();
+        }
+        slowQueries.offerLast(slowQuery);
+      }
+    }
+  }
+  
+  /**
+   * Record rows read from a result set on the current thread.
+   */
+  public void recordRows(long rows) {
+    total.add(0, 0, rows, 0);
+    
+    MethodScope method = currentRepositoryMethod.get();
+    if (method != null) {
+      method.rows += rows;
+    }
+    RequestScope scope = currentRequest.get();
+    if (scope != null) {
+      scope.rows += rows;
+    }
+  }
+  
+  public Snapshot snapshot() {
+    List<SlowQuery> slowest;
+    synchronized (slowQueries) {
+      slowest = new ArrayList<>(slowQueries);
+    }
+    slowest.sort((first, second) -> Double.compare(second.getMillis(), first.getMillis()));
+    
+    List<RepeatedQuery> repeated = new ArrayList<>();
+    repeatedQueries.forEach((key, counters) -> repeated.add(new RepeatedQuery(key.endpoint, key.sql,
+        counters.requests.sum(), counters.maxExecutions.get())));
+    repeated.sort((first, second) -> Long.compare(second.getRequests(), first.getRequests()));
+    
+    return new Snapshot(total.summary(), summaries(endpoints), summaries(repositoryMethods), slowest, repeated);
+  }
+  
+  private void flagRepeated(String endpoint, String sql, int executions) {
+    RepeatedKey key = new RepeatedKey(endpoint, abbreviate(sql));
+    RepeatedCounters counters = repeatedQueries.get(key);
+    if (counters == null) {
+      log.warn("Possible N+1 query on {}, executed {} times by one request: {}", endpoint, executions, key.sql);
+      if (repeatedQueries.size() >= repeatedCapacity) {
+        return;
+      }
+      counters = repeatedQueries.computeIfAbsent(key, ignored -> new RepeatedCounters());
+    }
+    counters.requests.increment();
+    counters.maxExecutions.accumulateAndGet(executions, Math::max);
+  }
+  
+  private static SortedMap<String, Summary> summaries(Map<String, Counters> counters) {
+    SortedMap<String, Summary> summaries = new TreeMap<>();
+    counters.forEach((key, value) -> summaries.put(key, value.summary()));
+    return summaries;
+  }
+  
+  private static String abbreviate(String sql) {
+    return sql == null ? null : StringUtils.abbreviate(StringUtils.normalizeSpace(sql), MAX_SQL_LENGTH);
+  }
+  
+  /**
+   * The statements of a request in progress, only touched by the thread running the request.
+   */
+  public static final class RequestScope {
+    
+    private final Supplier<String> endpoint;
+    
+    private final long startedAt = System.nanoTime();
+    
+    private final Map<String, Integer> executions = new HashMap<>();
+    
+    private long statements;
+    
+    private long rows;
+    
+    private RequestScope(Supplier<String> endpoint) {
+      this.endpoint = endpoint;
+    }
+  }
+  
+  /**
+   * The statements of a repository method call in progress, within the call it is nested in if any.
+   */
+  public static final class MethodScope {
+    
+    private final String name;
+    
+    private final MethodScope previous;
+    
+    private final long startedAt = System.nanoTime();
+    
+    private long statements;
+    
+    private long rows;
+    
+    private MethodScope(String name, MethodScope previous) {
+      this.name = name;
+      this.previous = previous;
+    }
+  }
+  
+  /**
+   * Counters of an endpoint or a repository method. The count is the number of requests or calls, and the elapsed
+   * time is theirs, not only the time spent in statements. In the totals, the count is the number of requests and the
+   * elapsed time the time spent in statements.
+   */
+  private static final class Counters {
+    
+    private final LongAdder count = new LongAdder();
+    
+    private final LongAdder statements = new LongAdder();
+    
+    private final LongAdder rows = new LongAdder();
+    
+    private final LongAdder nanos = new LongAdder();
+    
+    private final AtomicLong maxStatements = new AtomicLong();
+    
+    private void add(long count, long statements, long rows, long nanos) {
+      this.count.add(count);
+      this.statements.add(statements);
+      this.rows.add(rows);
+      this.nanos.add(nanos);
+      if (count > 0) {
+        maxStatements.accumulateAndGet(statements, Math::max);
+      }
+    }
+    
+    private Summary summary() {
+      long countSum = count.sum();
+      long statementSum = statements.sum();
+      return new Summary(countSum, statementSum, rows.sum(), nanos.sum() / 1e6,
+          countSum == 0 ? 0 : (double) statementSum / countSum, maxStatements.get());
+    }
+  }
+  
+  private static final class RepeatedCounters {
+    
+    private final LongAdder requests = new LongAdder();
+    
+    private final AtomicLong maxExecutions = new AtomicLong();
+  }
+  
+  @Value
+  private static class RepeatedKey {
+    
+    String endpoint;
+    
+    String sql;
+  }
+  
+  /**
+   * Statements, rows and time of an endpoint, a repository method, or of all statements. {@code maxStatements} is the
+   * most statements executed by a single request or call.
+   */
+  @Value
+  public static class Summary {
+    
+    long count;
+    
+    long statements;
+    
+    long rows;
+    
+    double totalMillis;
+    
+    double statementsPerCount;
+    
+    long maxStatements;
+  }
+  
+  @Value
+  public static class SlowQuery {
+    
+    Date executedAt;
+    
+    String sql;
+    
+    double millis;
+    
+    String endpoint;
+    
+    String repositoryMethod;
+  }
+  
+  /**
+   * A statement flagged as a likely N+1 query: the number of requests to the endpoint that repeated it, and the most
+   * executions by one of them.
+   */
+  @Value
+  public static class RepeatedQuery {
+    
+    String endpoint;
+    
+    String sql;
+    
+    long requests;
+    
+    long maxExecutions;
+  }
+  
+  @Value
+  public static class Snapshot {
+    
+    Summary total;
+    
+    SortedMap<String, Summary> endpoints;
+    
+    SortedMap<String, Summary> repositoryMethods;
+    
+    List<SlowQuery> slowQueries;
+    
+    List<RepeatedQuery> repeatedQueries;
+  }
+}
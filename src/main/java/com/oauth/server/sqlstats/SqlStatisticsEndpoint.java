@@ -0,0 +1,30 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.sqlstats;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint showing the SQL statements per endpoint and per repository method, the slowest statements and the
+ * likely N+1 queries, at {@code /actuator/sqlStatistics} once exposed.
+ *
+ * @author Varij Kapil
+ */
+@Endpoint(id = "sqlStatistics")
+public class SqlStatisticsEndpoint {
+  
+  private final SqlStatistics statistics;
+  
+  public SqlStatisticsEndpoint(SqlStatistics statistics) {
+    this.statistics = statistics;
+  }
+  
+  @ReadOperation
+  public SqlStatistics.Snapshot statistics() {
+    return statistics.snapshot();
+  }
+}
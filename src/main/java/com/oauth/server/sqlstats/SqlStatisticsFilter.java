@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.sqlstats;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Attributes the SQL statements executed while serving a request to its endpoint: the HTTP method and the pattern of
+ * the handler mapped to the request, or {@code (unmapped)} for requests answered before reaching a handler, such as
+ * the login form, so that arbitrary URLs do not each get their own statistics.
+ *
+ * <p>
+ * Only the statements executed on the request thread are attributed to the endpoint. Those of asynchronous requests
+ * completed by other threads, such as partner token calls, are only counted in the totals and per repository method.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+  
+  private static final String UNMAPPED = "(unmapped)";
+  
+  private final SqlStatistics statistics;
+  
+  public SqlStatisticsFilter(SqlStatistics statistics) {
+    this.statistics = statistics;
+  }
+  
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    SqlStatistics.RequestScope scope = statistics.beginRequest(() -> endpoint(request));
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      statistics.endRequest(scope);
+    }
+  }
+  
+  private static String endpoint(HttpServletRequest request) {
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    return request.getMethod() + " " + (pattern != null ? pattern : UNMAPPED);
+  }
+}
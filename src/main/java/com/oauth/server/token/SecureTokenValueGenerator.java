@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.token;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Mints token values of {@code entropyBytes} random bytes, base64url encoded without padding (43 characters for the
+ * default 32 bytes), after an optional prefix per token type, such as {@code at_} and {@code rt_}, which tells tokens
+ * apart in logs and secret scanners.
+ *
+ * <p>
+ * {@code UUID.randomUUID()} draws every token from one shared {@code SecureRandom}, whose default NativePRNG
+ * implementation serializes all threads on a single lock. Here every thread has its own {@code SecureRandom} of the
+ * given algorithm, seeded once from the shared one, so minting never contends. The algorithm must not share state
+ * between its instances: SHA1PRNG, or DRBG from JDK 9 on.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class SecureTokenValueGenerator implements TokenValueGenerator {
+  
+  private static final int MIN_ENTROPY_BYTES = 16;
+  
+  private static final int SEED_BYTES = 32;
+  
+  private static final SecureRandom SEED_SOURCE = new SecureRandom();
+  
+  private final int entropyBytes;
+  
+  private final String accessTokenPrefix;
+  
+  private final String refreshTokenPrefix;
+  
+  private final ThreadLocal<SecureRandom> random;
+  
+  private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+  
+  public SecureTokenValueGenerator(String algorithm, int entropyBytes, String accessTokenPrefix,
+      String refreshTokenPrefix) {
+    if (entropyBytes < MIN_ENTROPY_BYTES) {
+      throw new IllegalArgumentException("Token values need at least " + MIN_ENTROPY_BYTES + " random bytes, not "
+          + entropyBytes);
+    }
+    // Fail at startup rather than on the first token when the algorithm is not available.
+    newRandom(algorithm);
+    
+    this.entropyBytes = entropyBytes;
+    this.accessTokenPrefix = accessTokenPrefix;
+    this.refreshTokenPrefix = refreshTokenPrefix;
+    this.random = ThreadLocal.withInitial(() -> newRandom(algorithm));
+  }
+  
+  @Override
+  public String generateAccessTokenValue() {
+    return accessTokenPrefix + randomValue();
+  }
+  
+  @Override
+  public String generateRefreshTokenValue() {
+    return refreshTokenPrefix + randomValue();
+  }
+  
+  private String randomValue() {
+    byte[] bytes = new byte[entropyBytes];
+    random.get().nextBytes(bytes);
+    return encoder.encodeToString(bytes);
+  }
+  
+  private static SecureRandom newRandom(String algorithm) {
+    try {
+      SecureRandom secureRandom = SecureRandom.getInstance(algorithm);
+      byte[] seed = new byte[SEED_BYTES];
+      SEED_SOURCE.nextBytes(seed);
+      secureRandom.setSeed(seed);
+      return secureRandom;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SecureRandom algorithm " + algorithm + " not available", e);
+    }
+  }
+}
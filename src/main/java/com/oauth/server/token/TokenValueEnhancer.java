@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.token;
+
+import java.util.regex.Pattern;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+
+/**
+ * Replaces the random UUID values minted by {@link DefaultTokenServices} with values of a {@link TokenValueGenerator},
+ * before the tokens are stored. Runs first in the enhancer chain, so the other enhancers see the final values.
+ *
+ * <p>
+ * The access token is always new. The refresh token is only replaced while it still has a UUID value, which the token
+ * services minted for this token, and when it is not the refresh token the client presented to a refresh_token grant,
+ * which is reused as it is.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class TokenValueEnhancer implements TokenEnhancer {
+  
+  private static final Pattern UUID =
+      Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+  
+  private final TokenValueGenerator generator;
+  
+  public TokenValueEnhancer(TokenValueGenerator generator) {
+    this.generator = generator;
+  }
+  
+  @Override
+  public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+    DefaultOAuth2AccessToken enhanced = new DefaultOAuth2AccessToken(accessToken);
+    enhanced.setValue(generator.generateAccessTokenValue());
+    
+    OAuth2RefreshToken refreshToken = accessToken.getRefreshToken();
+    if (refreshToken != null && UUID.matcher(refreshToken.getValue()).matches()
+        && !isPresented(refreshToken, authentication.getOAuth2Request())) {
+      String value = generator.generateRefreshTokenValue();
+      enhanced.setRefreshToken(refreshToken instanceof ExpiringOAuth2RefreshToken
+          ? new DefaultExpiringOAuth2RefreshToken(value, ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration())
+          : new DefaultOAuth2RefreshToken(value));
+    }
+    return enhanced;
+  }
+  
+  private static boolean isPresented(OAuth2RefreshToken refreshToken, OAuth2Request request) {
+    return request.isRefresh()
+        && refreshToken.getValue().equals(request.getRefreshTokenRequest().getRequestParameters().get("refresh_token"));
+  }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.token;
+
+/**
+ * Mints the values of access and refresh tokens.
+ *
+ * @author Varij Kapil
+ */
+public interface TokenValueGenerator {
+  
+  /**
+   * A new, unguessable access token value.
+   */
+  String generateAccessTokenValue();
+  
+  /**
+   * A new, unguessable refresh token value.
+   */
+  String generateRefreshTokenValue();
+}
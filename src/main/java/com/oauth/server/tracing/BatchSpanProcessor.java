@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Hands ended spans to the {@link SpanExporter} in batches, from a single background thread, so that exporting never
+ * slows down the traced code.
+ *
+ * <p>
+ * Ended spans wait in a queue of {@code queueCapacity} spans, and are dropped when it is full. The exporter gets
+ * batches of up to {@code batchSize} spans, at least every {@code flushIntervalMillis}. Exported, dropped and failed
+ * spans are counted in {@code oauth.tracing.spans}, tagged by outcome.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class BatchSpanProcessor implements DisposableBean {
+  
+  private final SpanExporter exporter;
+  
+  private final int batchSize;
+  
+  private final long flushIntervalMillis;
+  
+  private final BlockingQueue<Span> queue;
+  
+  private final Counter exported;
+  private final Counter dropped;
+  private final Counter failed;
+  
+  private final Thread worker;
+  
+  private volatile boolean running = true;
+  
+  public BatchSpanProcessor(SpanExporter exporter, MeterRegistry meterRegistry, int queueCapacity, int batchSize,
+      long flushIntervalMillis) {
+    this.exporter = exporter;
+    this.batchSize = batchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    
+    this.exported = outcome(meterRegistry, "exported");
+    this.dropped = outcome(meterRegistry, "dropped");
+    this.failed = outcome(meterRegistry, "failed");
+    
+    this.worker = new Thread(this::exportSpans, "span-exporter");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+  
+  void onEnd(Span span) {
+    if (!queue.offer(span)) {
+      dropped.increment();
+    }
+  }
+  
+  @Override
+  public void destroy() throws InterruptedException {
+    running = false;
+    worker.interrupt();
+    worker.join(flushIntervalMillis + 5000);
+    exporter.shutdown();
+  }
+  
+  private void exportSpans() {
+    List<Span> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        Span first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+      } catch (InterruptedException e) {
+        // Shutting down, export what is left.
+      }
+      queue.drainTo(batch, batchSize - batch.size());
+      if (!batch.isEmpty()) {
+        export(batch);
+        batch.clear();
+      }
+    }
+  }
+  
+  private void export(List<Span> batch) {
+    try {
+      exporter.export(batch);
+      exported.increment(batch.size());
+    } catch (RuntimeException e) {
+      failed.increment(batch.size());
+      log.warn("Failed to export {} spans", batch.size(), e);
+    }
+  }
+  
+  private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("oauth.tracing.spans")
+        .tag("outcome", outcome)
+        .description("Ended spans by outcome")
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+
+/**
+ * Records a span for every public method of the {@code DynamoDB*DAO} classes called within a sampled trace, named
+ * after the class and the method (e.g. {@code DynamoDBTokenDAO.readAccessToken}). DAOs behind a scoped proxy, such as
+ * the token store, are advised twice; only the innermost call is recorded.
+ *
+ * @author Varij Kapil
+ */
+@Aspect
+public class DaoTracingAspect {
+  
+  @Around("execution(public * *(..)) && (target(com.oauth.server.database.dao.DynamoDBTokenDAO)"
+      + " || target(com.oauth.server.database.dao.DynamoDBClientDetailsDAO)"
+      + " || target(com.oauth.server.database.dao.DynamoDBAuthorizationCodeDAO)"
+      + " || target(com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO)"
+      + " || target(com.oauth.server.database.dao.DynamoDBPartnerTokenDAO))")
+  public Object aroundDaoMethod(ProceedingJoinPoint joinPoint) throws Throwable {
+    Span parent = Span.current();
+    if (!parent.isSampled() || AopUtils.isAopProxy(joinPoint.getTarget())) {
+      return joinPoint.proceed();
+    }
+    
+    Span span = parent.startChild(joinPoint.getTarget().getClass().getSimpleName() + "."
+        + joinPoint.getSignature().getName(), SpanKind.INTERNAL);
+    try (Span.Scope ignored = span.makeCurrent()) {
+      return joinPoint.proceed();
+    } catch (Throwable e) {
+      span.recordException(e);
+      throw e;
+    } finally {
+      span.end();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Appends exported spans to a file, one JSON object per line, with the field names of the OpenTelemetry protocol
+ * ({@code traceId}, {@code spanId}, {@code parentSpanId}, {@code name}, {@code kind}, {@code startTimeUnixNano},
+ * {@code endTimeUnixNano}, {@code attributes} and {@code status}).
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class FileSpanExporter implements SpanExporter {
+  
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  
+  private final BufferedWriter writer;
+  
+  public FileSpanExporter(Path file) throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    if (directory != null) {
+      Files.createDirectories(directory);
+    }
+    this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+  
+  @Override
+  public void export(List<Span> spans) {
+    try {
+      for (Span span : spans) {
+        writer.write(objectMapper.writeValueAsString(toJson(span)));
+        writer.newLine();
+      }
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+  
+  @Override
+  public void shutdown() {
+    try {
+      writer.close();
+    } catch (IOException e) {
+      log.warn("Failed to close the span file", e);
+    }
+  }
+  
+  private static Map<String, Object> toJson(Span span) {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("code", span.getStatus().name());
+    if (span.getStatusMessage() != null) {
+      status.put("message", span.getStatusMessage());
+    }
+    
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("traceId", span.getTraceId());
+    json.put("spanId", span.getSpanId());
+    json.put("parentSpanId", span.getParentSpanId());
+    json.put("name", span.getName());
+    json.put("kind", span.getKind().name());
+    json.put("startTimeUnixNano", span.getStartEpochNanos());
+    json.put("endTimeUnixNano", span.getEndEpochNanos());
+    json.put("attributes", span.getAttributes());
+    json.put("status", status);
+    return json;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the last {@code capacity} exported spans in memory, for tests and local debugging.
+ *
+ * @author Varij Kapil
+ */
+public class InMemorySpanExporter implements SpanExporter {
+  
+  private final int capacity;
+  
+  private final Deque<Span> spans = new ArrayDeque<>();
+  
+  public InMemorySpanExporter(int capacity) {
+    this.capacity = capacity;
+  }
+  
+  @Override
+  public synchronized void export(List<Span> batch) {
+    for (Span span : batch) {
+      if (spans.size() >= capacity) {
+        spans.pollFirst();
+      }
+      spans.offerLast(span);
+    }
+  }
+  
+  /**
+   * The exported spans, oldest first.
+   */
+  public synchronized List<Span> getFinishedSpans() {
+    return new ArrayList<>(spans);
+  }
+  
+  public synchronized void reset() {
+    spans.clear();
+  }
+}
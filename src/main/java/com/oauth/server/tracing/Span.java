@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A timed operation of a trace, following the OpenTelemetry span model: 16 byte trace id, 8 byte span id, parent span
+ * id, kind, start and end in nanoseconds since the epoch, attributes and status.
+ *
+ * <p>
+ * The current span is held per thread. Spans are only recorded below a sampled root span started by {@link Tracer};
+ * anywhere else {@link #current()} is {@link #NOOP}, whose children are {@code NOOP} too, so unsampled code paths cost
+ * a thread local lookup and no allocation. Spans are exported by their {@link BatchSpanProcessor} once ended.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Getter
+public final class Span {
+  
+  /**
+   * The W3C trace context header.
+   */
+  public static final String TRACEPARENT = "traceparent";
+  
+  public static final Span NOOP = new Span(null, null, null, "", SpanKind.INTERNAL);
+  
+  private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+  
+  private static final Scope NOOP_SCOPE = () -> { };
+  
+  public enum StatusCode {
+    UNSET, OK, ERROR
+  }
+  
+  @Getter(AccessLevel.NONE)
+  private final BatchSpanProcessor processor;
+  
+  private final String traceId;
+  
+  private final String spanId;
+  
+  private final String parentSpanId;
+  
+  private final SpanKind kind;
+  
+  private final long startEpochNanos;
+  
+  @Getter(AccessLevel.NONE)
+  private final long startNanoTime;
+  
+  private String name;
+  
+  private long endEpochNanos;
+  
+  private Map<String, Object> attributes;
+  
+  private StatusCode status = StatusCode.UNSET;
+  
+  private String statusMessage;
+  
+  Span(BatchSpanProcessor processor, String traceId, String parentSpanId, String name, SpanKind kind) {
+    this.processor = processor;
+    this.traceId = traceId;
+    this.spanId = processor != null ? randomId(1) : null;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.kind = kind;
+    this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    this.startNanoTime = System.nanoTime();
+  }
+  
+  /**
+   * The span of the current thread, or {@link #NOOP}.
+   */
+  public static Span current() {
+    Span span = CURRENT.get();
+    return span != null ? span : NOOP;
+  }
+  
+  /**
+   * Run {@code work} in an internal span, child of the current span.
+   */
+  public static <T> T inSpan(String name, Supplier<T> work) {
+    Span span = current().startChild(name, SpanKind.INTERNAL);
+    if (!span.isSampled()) {
+      return work.get();
+    }
+    try (Scope ignored = span.makeCurrent()) {
+      return work.get();
+    } catch (RuntimeException | Error e) {
+      span.recordException(e);
+      throw e;
+    } finally {
+      span.end();
+    }
+  }
+  
+  public boolean isSampled() {
+    return processor != null;
+  }
+  
+  /**
+   * Start a child span, which is only recorded when this span is.
+   */
+  public Span startChild(String name, SpanKind kind) {
+    return isSampled() ? new Span(processor, traceId, spanId, name, kind) : NOOP;
+  }
+  
+  /**
+   * Make this span the current span of the thread, until the returned scope is closed.
+   */
+  public Scope makeCurrent() {
+    if (!isSampled()) {
+      return NOOP_SCOPE;
+    }
+    Span previous = CURRENT.get();
+    CURRENT.set(this);
+    return () -> {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    };
+  }
+  
+  public Span setName(String name) {
+    if (isSampled()) {
+      this.name = name;
+    }
+    return this;
+  }
+  
+  public Span setAttribute(String key, Object value) {
+    if (isSampled() && value != null) {
+      if (attributes == null) {
+        attributes = new LinkedHashMap<>();
+      }
+      attributes.put(key, value);
+    }
+    return this;
+  }
+  
+  public Span setStatus(StatusCode status, String statusMessage) {
+    if (isSampled()) {
+      this.status = status;
+      this.statusMessage = statusMessage;
+    }
+    return this;
+  }
+  
+  /**
+   * Set the status to error, with the exception recorded as attributes.
+   */
+  public void recordException(Throwable exception) {
+    setAttribute("exception.type", exception.getClass().getName());
+    setAttribute("exception.message", exception.getMessage());
+    setStatus(StatusCode.ERROR, exception.getMessage());
+  }
+  
+  /**
+   * End the span and hand it to the exporter. Calls after the first are ignored.
+   */
+  public void end() {
+    if (!isSampled() || endEpochNanos != 0) {
+      return;
+    }
+    endEpochNanos = startEpochNanos + (System.nanoTime() - startNanoTime);
+    processor.onEnd(this);
+  }
+  
+  public Map<String, Object> getAttributes() {
+    return attributes != null ? Collections.unmodifiableMap(attributes) : Collections.emptyMap();
+  }
+  
+  /**
+   * The {@code traceparent} header propagating this span, always flagged as sampled.
+   */
+  public String traceparent() {
+    return "00-" + traceId + "-" + spanId + "-01";
+  }
+  
+  /**
+   * A random, non-zero hexadecimal id of {@code longs} times 8 bytes.
+   */
+  static String randomId(int longs) {
+    StringBuilder id = new StringBuilder(longs * 16);
+    for (int i = 0; i < longs; i++) {
+      long random = ThreadLocalRandom.current().nextLong();
+      while (i == longs - 1 && random == 0) {
+        random = ThreadLocalRandom.current().nextLong();
+      }
+      String hex = Long.toHexString(random);
+      for (int padding = hex.length(); padding < 16; padding++) {
+        id.append('0');
+      }
+      id.append(hex);
+    }
+    return id.toString();
+  }
+  
+  /**
+   * Restores the previously current span when closed.
+   */
+  @FunctionalInterface
+  public interface Scope extends AutoCloseable {
+    
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import java.util.List;
+
+/**
+ * Destination of ended spans. Define a bean of this type to export spans elsewhere than to the built-in exporters.
+ *
+ * @author Varij Kapil
+ */
+public interface SpanExporter {
+  
+  /**
+   * Export a batch of spans, from the single exporting thread of {@link BatchSpanProcessor}.
+   *
+   * @param spans ended spans, in the order they ended.
+   */
+  void export(List<Span> spans);
+  
+  /**
+   * Release the resources of the exporter, once the last spans are exported.
+   */
+  default void shutdown() {
+  }
+}
@@ -0,0 +1,15 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+/**
+ * The OpenTelemetry span kinds used by this server.
+ *
+ * @author Varij Kapil
+ */
+public enum SpanKind {
+  SERVER, CLIENT, INTERNAL
+}
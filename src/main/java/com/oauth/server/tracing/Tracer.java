@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts the root spans of traces and decides whether they are sampled.
+ *
+ * <p>
+ * A request carrying a valid W3C {@code traceparent} header continues the trace of the caller, and is sampled when
+ * the caller's is. Other requests start a new trace, sampled with probability {@code sampleRatio}. Unsampled requests
+ * get {@link Span#NOOP}, so nothing below them is recorded.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+public class Tracer {
+  
+  private static final int TRACEPARENT_LENGTH = 55;
+  
+  private final BatchSpanProcessor processor;
+  
+  private final double sampleRatio;
+  
+  public Tracer(BatchSpanProcessor processor, double sampleRatio) {
+    this.processor = processor;
+    this.sampleRatio = sampleRatio;
+  }
+  
+  /**
+   * Start the server span of a request.
+   *
+   * @param name span name.
+   * @param traceparent the {@code traceparent} header of the request, if any.
+   * @return the span, or {@link Span#NOOP} when the request is not sampled.
+   */
+  public Span startServerSpan(String name, String traceparent) {
+    if (isValid(traceparent)) {
+      if ((Character.digit(traceparent.charAt(54), 16) & 1) == 0) {
+        return Span.NOOP;
+      }
+      return new Span(processor, traceparent.substring(3, 35), traceparent.substring(36, 52), name, SpanKind.SERVER);
+    }
+    if (sampleRatio <= 0 || (sampleRatio < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRatio)) {
+      return Span.NOOP;
+    }
+    return new Span(processor, Span.randomId(2), null, name, SpanKind.SERVER);
+  }
+  
+  /**
+   * Whether the header is a version 00 {@code traceparent}, with non-zero trace and parent ids.
+   */
+  private static boolean isValid(String traceparent) {
+    if (traceparent == null || traceparent.length() != TRACEPARENT_LENGTH || !traceparent.startsWith("00-")
+        || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+      return false;
+    }
+    return isHex(traceparent, 3, 35) && isHex(traceparent, 36, 52) && isHex(traceparent, 53, 55)
+        && !isZero(traceparent, 3, 35) && !isZero(traceparent, 36, 52);
+  }
+  
+  private static boolean isHex(String value, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private static boolean isZero(String value, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) != '0') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
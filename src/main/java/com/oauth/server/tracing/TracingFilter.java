@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import java.io.IOException;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Starts the server span of the requests to {@code /oauth/*} and {@code /api/*}, named after the HTTP method and the
+ * handler pattern. The span of an asynchronous request, such as a partner token request, ends when its response is
+ * complete.
+ *
+ * @author Varij Kapil
+ */
+public class TracingFilter extends OncePerRequestFilter {
+  
+  private final Tracer tracer;
+  
+  public TracingFilter(Tracer tracer) {
+    this.tracer = tracer;
+  }
+  
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    Span span = tracer.startServerSpan(request.getMethod() + " " + request.getServletPath(),
+        request.getHeader(Span.TRACEPARENT));
+    if (!span.isSampled()) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    
+    span.setAttribute("http.method", request.getMethod());
+    span.setAttribute("http.target", request.getRequestURI());
+    try (Span.Scope ignored = span.makeCurrent()) {
+      filterChain.doFilter(request, response);
+    } catch (IOException | ServletException | RuntimeException e) {
+      span.recordException(e);
+      throw e;
+    } finally {
+      if (request.isAsyncStarted()) {
+        request.getAsyncContext().addListener(new AsyncListener() {
+          @Override
+          public void onComplete(AsyncEvent event) {
+            end(span, request, response);
+          }
+          
+          @Override
+          public void onTimeout(AsyncEvent event) {
+            span.setStatus(Span.StatusCode.ERROR, "timeout");
+          }
+          
+          @Override
+          public void onError(AsyncEvent event) {
+            if (event.getThrowable() != null) {
+              span.recordException(event.getThrowable());
+            }
+          }
+          
+          @Override
+          public void onStartAsync(AsyncEvent event) {
+          }
+        });
+      } else {
+        end(span, request, response);
+      }
+    }
+  }
+  
+  private static void end(Span span, HttpServletRequest request, HttpServletResponse response) {
+    Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    if (route != null) {
+      span.setName(request.getMethod() + " " + route);
+      span.setAttribute("http.route", route);
+    }
+    span.setAttribute("http.status_code", response.getStatus());
+    if (response.getStatus() >= 500) {
+      span.setStatus(Span.StatusCode.ERROR, null);
+    }
+    span.end();
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package com.oauth.server.tracing;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Records a span for every password hash and verification of the wrapped encoder, BCrypt being one of the most
+ * expensive steps of client and user authentication.
+ *
+ * @author Varij Kapil
+ */
+public class TracingPasswordEncoder implements PasswordEncoder {
+  
+  private final PasswordEncoder delegate;
+  
+  private final String encodeSpanName;
+  
+  private final String matchesSpanName;
+  
+  public TracingPasswordEncoder(PasswordEncoder delegate) {
+    this.delegate = delegate;
+    this.encodeSpanName = delegate.getClass().getSimpleName() + ".encode";
+    this.matchesSpanName = delegate.getClass().getSimpleName() + ".matches";
+  }
+  
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return Span.inSpan(encodeSpanName, () -> delegate.encode(rawPassword));
+  }
+  
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return Span.inSpan(matchesSpanName, () -> delegate.matches(rawPassword, encodedPassword));
+  }
+  
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return delegate.upgradeEncoding(encodedPassword);
+  }
+}
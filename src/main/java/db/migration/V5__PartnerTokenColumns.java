@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * Licensed under the Amazon Software License
+ * http://aws.amazon.com/asl/
+ */
+package db.migration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Base64;
+import java.util.Date;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+
+/**
+ * Moves partner tokens from the serialized {@code token} column to the {@code token_id}, {@code refresh_token},
+ * {@code token_type}, {@code scopes} and {@code expires_at} columns, and drops the {@code token} column.
+ *
+ * <p>
+ * Serialized tokens are either JSON, possibly with the {@code expiration_millis} of OAuth2AccessTokenConverter, or
+ * Base64 encoded Java serialization. Tokens that can be read neither way are useless and removed.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@Log4j2
+public class V5__PartnerTokenColumns extends BaseJavaMigration {
+  
+  private static final int BATCH_SIZE = 500;
+  
+  private static final String EXPIRATION = "expiration_millis";
+  
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  
+  @Override
+  public void migrate(Context context) throws Exception {
+    Connection connection = context.getConnection();
+    
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("ALTER TABLE oauth_partner_token ALTER COLUMN token_id SET DATA TYPE VARCHAR");
+      statement.execute("ALTER TABLE oauth_partner_token ADD COLUMN IF NOT EXISTS refresh_token VARCHAR");
+      statement.execute("ALTER TABLE oauth_partner_token ADD COLUMN IF NOT EXISTS token_type VARCHAR(255)");
+      statement.execute("ALTER TABLE oauth_partner_token ADD COLUMN IF NOT EXISTS scopes VARCHAR");
+    }
+    
+    int converted = 0;
+    int removed = 0;
+    try (Statement select = connection.createStatement();
+        PreparedStatement update = connection.prepareStatement("UPDATE oauth_partner_token SET token_id = ?,"
+            + " refresh_token = ?, token_type = ?, scopes = ?, expires_at = COALESCE(expires_at, ?) WHERE id = ?");
+        PreparedStatement delete = connection.prepareStatement("DELETE FROM oauth_partner_token WHERE id = ?")) {
+      select.setFetchSize(BATCH_SIZE);
+    
+      try (ResultSet rows = select.executeQuery("SELECT id, token FROM oauth_partner_token WHERE token IS NOT NULL")) {
+        while (rows.next()) {
+          OAuth2AccessToken accessToken = readToken(rows.getString("token"));
+          if (accessToken == null) {
+            delete.setInt(1, rows.getInt("id"));
+            delete.addBatch();
+            removed++;
+            continue;
+          }
+    
+          Date expiration = expiration(accessToken);
+          update.setString(1, accessToken.getValue());
+          update.setString(2, accessToken.getRefreshToken() != null ? accessToken.getRefreshToken().getValue() : null);
+          update.setString(3, accessToken.getTokenType());
+          update.setString(4, OAuth2Utils.formatParameterList(accessToken.getScope()));
+          if (expiration != null) {
+            update.setTimestamp(5, new Timestamp(expiration.getTime()));
+          } else {
+            update.setNull(5, Types.TIMESTAMP);
+          }
+          update.setInt(6, rows.getInt("id"));
+          update.addBatch();
+    
+          if (++converted % BATCH_SIZE == 0) {
+            update.executeBatch();
+          }
+        }
+      }
+      update.executeBatch();
+      delete.executeBatch();
+    }
+    
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("ALTER TABLE oauth_partner_token DROP COLUMN IF EXISTS token");
+    }
+    log.info("Moved {} partner tokens to typed columns, removed {} unreadable partner tokens.", converted, removed);
+  }
+  
+  private OAuth2AccessToken readToken(String token) {
+    try {
+      return objectMapper.readValue(token, OAuth2AccessToken.class);
+    } catch (IOException e) {
+      // Not JSON, written with Java serialization.
+    }
+    try {
+      Object deserialized = SerializationUtils.deserialize(Base64.getDecoder().decode(token));
+      return deserialized instanceof OAuth2AccessToken ? (OAuth2AccessToken) deserialized : null;
+    } catch (IllegalArgumentException | SerializationException e) {
+      return null;
+    }
+  }
+  
+  /**
+   * The expiry written along the JSON token, otherwise the one computed from {@code expires_in} when it was read.
+   */
+  private Date expiration(OAuth2AccessToken accessToken) {
+    Object expirationMillis = accessToken.getAdditionalInformation().get(EXPIRATION);
+    return expirationMillis != null ? new Date(Long.parseLong(expirationMillis.toString()))
+        : accessToken.getExpiration();
+  }
+}
@@ -0,0 +1,11 @@
+-- Client ids and partner ids are unique, so that two concurrent creates of the same client or partner cannot both
+-- insert a row (see ClientAdminEndpoint). Duplicates left by earlier versions are removed first, keeping the latest.
+
+DELETE FROM oauth_client_details WHERE id NOT IN (SELECT MAX(id) FROM oauth_client_details GROUP BY client_id);
+DELETE FROM oauth_partner WHERE id NOT IN (SELECT MAX(id) FROM oauth_partner GROUP BY partner_id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS oauth_client_details_client_id_key ON oauth_client_details (client_id);
+CREATE UNIQUE INDEX IF NOT EXISTS oauth_partner_partner_id_key ON oauth_partner (partner_id);
+
+DROP INDEX IF EXISTS oauth_client_details_client_id_idx;
+DROP INDEX IF EXISTS oauth_partner_partner_id_idx;
@@ -0,0 +1,100 @@
+-- Baseline schema, as Hibernate used to create it with ddl-auto: update.
+-- Written to be re-runnable, so databases created by ddl-auto are brought up to date by the same script
+-- (spring.flyway.baseline-version is 0). Kept to portable SQL so it also runs on H2. Serialized tokens and
+-- authentications are VARCHAR without a length, unbounded on both Postgres and H2.
+
+CREATE SEQUENCE IF NOT EXISTS hibernate_sequence START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE IF NOT EXISTS oauth_client_details (
+  id                      INTEGER      NOT NULL PRIMARY KEY,
+  created_at              TIMESTAMP    NOT NULL,
+  updated_at              TIMESTAMP    NOT NULL,
+  client_id               VARCHAR(255),
+  client_secret           VARCHAR(255),
+  scopes                  VARCHAR(255),
+  authorized_grant_types  VARCHAR(255),
+  web_server_redirect_uri VARCHAR(255),
+  authorities             VARCHAR(255),
+  access_token_validity   INTEGER,
+  refresh_token_validity  INTEGER,
+  autoapprove             VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS oauth_partner (
+  id                           INTEGER      NOT NULL PRIMARY KEY,
+  created_at                   TIMESTAMP    NOT NULL,
+  updated_at                   TIMESTAMP    NOT NULL,
+  partner_id                   VARCHAR(255),
+  client_id                    VARCHAR(255),
+  client_secret                VARCHAR(255),
+  scopes                       VARCHAR(255),
+  access_token_uri             VARCHAR(255),
+  user_authorization_uri       VARCHAR(255),
+  pre_established_redirect_uri VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS oauth_access_token (
+  id                INTEGER      NOT NULL PRIMARY KEY,
+  created_at        TIMESTAMP    NOT NULL,
+  updated_at        TIMESTAMP    NOT NULL,
+  token_id          VARCHAR(255),
+  token             VARCHAR,
+  authentication_id VARCHAR(255),
+  client_id         VARCHAR(255),
+  user_name         VARCHAR(255),
+  authentication    VARCHAR,
+  refresh_token     VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS oauth_refresh_token (
+  id             INTEGER      NOT NULL PRIMARY KEY,
+  created_at     TIMESTAMP    NOT NULL,
+  updated_at     TIMESTAMP    NOT NULL,
+  token_id       VARCHAR(255),
+  token          VARCHAR,
+  authentication VARCHAR,
+  client_id      VARCHAR(255),
+  user_name      VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS oauth_code (
+  id             INTEGER      NOT NULL PRIMARY KEY,
+  created_at     TIMESTAMP    NOT NULL,
+  updated_at     TIMESTAMP    NOT NULL,
+  code           VARCHAR(255),
+  authentication VARCHAR
+);
+
+CREATE TABLE IF NOT EXISTS oauth_partner_token (
+  id                INTEGER      NOT NULL PRIMARY KEY,
+  created_at        TIMESTAMP    NOT NULL,
+  updated_at        TIMESTAMP    NOT NULL,
+  token_id          VARCHAR(255),
+  token             VARCHAR(255),
+  authentication_id VARCHAR(255),
+  client_id         VARCHAR(255),
+  user_name         VARCHAR(255)
+);
+
+-- Columns ddl-auto created too short, or not at all before the refresh token owner columns.
+ALTER TABLE oauth_access_token ALTER COLUMN token SET DATA TYPE VARCHAR;
+ALTER TABLE oauth_access_token ALTER COLUMN authentication SET DATA TYPE VARCHAR;
+ALTER TABLE oauth_refresh_token ALTER COLUMN token SET DATA TYPE VARCHAR;
+ALTER TABLE oauth_refresh_token ALTER COLUMN authentication SET DATA TYPE VARCHAR;
+ALTER TABLE oauth_code ALTER COLUMN authentication SET DATA TYPE VARCHAR;
+ALTER TABLE oauth_refresh_token ADD COLUMN IF NOT EXISTS client_id VARCHAR(255);
+ALTER TABLE oauth_refresh_token ADD COLUMN IF NOT EXISTS user_name VARCHAR(255);
+
+CREATE INDEX IF NOT EXISTS oauth_client_details_client_id_idx ON oauth_client_details (client_id);
+CREATE INDEX IF NOT EXISTS oauth_partner_partner_id_idx ON oauth_partner (partner_id);
+CREATE INDEX IF NOT EXISTS oauth_access_token_token_id_idx ON oauth_access_token (token_id);
+CREATE INDEX IF NOT EXISTS oauth_access_token_authentication_id_idx ON oauth_access_token (authentication_id);
+CREATE INDEX IF NOT EXISTS oauth_access_token_refresh_token_idx ON oauth_access_token (refresh_token);
+CREATE INDEX IF NOT EXISTS oauth_access_token_client_user_idx ON oauth_access_token (client_id, user_name);
+CREATE INDEX IF NOT EXISTS oauth_access_token_user_idx ON oauth_access_token (user_name);
+CREATE INDEX IF NOT EXISTS oauth_refresh_token_token_id_idx ON oauth_refresh_token (token_id);
+CREATE INDEX IF NOT EXISTS oauth_refresh_token_client_user_idx ON oauth_refresh_token (client_id, user_name);
+CREATE INDEX IF NOT EXISTS oauth_refresh_token_user_idx ON oauth_refresh_token (user_name);
+CREATE INDEX IF NOT EXISTS oauth_code_code_idx ON oauth_code (code);
+CREATE INDEX IF NOT EXISTS oauth_partner_token_authentication_id_idx ON oauth_partner_token (authentication_id);
+CREATE INDEX IF NOT EXISTS oauth_partner_token_client_user_idx ON oauth_partner_token (client_id, user_name);
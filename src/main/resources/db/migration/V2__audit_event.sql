@@ -0,0 +1,15 @@
+-- Append-only audit trail of the token lifecycle, written in batches by JdbcAuditSink.
+-- Tokens and codes are kept as their key (MD5 of the value), never as the value.
+
+CREATE TABLE IF NOT EXISTS oauth_audit_event (
+  id          BIGINT       GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  occurred_at TIMESTAMP    NOT NULL,
+  event_type  VARCHAR(32)  NOT NULL,
+  client_id   VARCHAR(255),
+  user_name   VARCHAR(255),
+  partner_id  VARCHAR(255),
+  token_key   VARCHAR(64),
+  detail      VARCHAR(255)
+);
+
+CREATE INDEX IF NOT EXISTS oauth_audit_event_occurred_at_idx ON oauth_audit_event (occurred_at);
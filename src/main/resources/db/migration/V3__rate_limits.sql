@@ -0,0 +1,6 @@
+-- Per client and per partner rate limits, see RateLimiter. NULL means the configured default, 0 no limit.
+
+ALTER TABLE oauth_client_details ADD COLUMN IF NOT EXISTS rate_limit_per_second DOUBLE PRECISION;
+ALTER TABLE oauth_client_details ADD COLUMN IF NOT EXISTS rate_limit_burst INTEGER;
+ALTER TABLE oauth_partner ADD COLUMN IF NOT EXISTS rate_limit_per_second DOUBLE PRECISION;
+ALTER TABLE oauth_partner ADD COLUMN IF NOT EXISTS rate_limit_burst INTEGER;
@@ -0,0 +1,12 @@
+-- Partner token expiry, partner and refresh lease, see PartnerTokenRefresher.
+
+ALTER TABLE oauth_partner_token ALTER COLUMN token SET DATA TYPE VARCHAR;
+ALTER TABLE oauth_partner_token ADD COLUMN IF NOT EXISTS partner_id VARCHAR(255);
+ALTER TABLE oauth_partner_token ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP;
+ALTER TABLE oauth_partner_token ADD COLUMN IF NOT EXISTS refresh_claimed_until TIMESTAMP;
+
+UPDATE oauth_partner_token SET partner_id =
+  (SELECT MIN(p.partner_id) FROM oauth_partner p WHERE p.client_id = oauth_partner_token.client_id)
+  WHERE partner_id IS NULL;
+
+CREATE INDEX IF NOT EXISTS oauth_partner_token_expires_at_idx ON oauth_partner_token (expires_at);
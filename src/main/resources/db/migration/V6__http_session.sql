@@ -0,0 +1,10 @@
+-- HTTP sessions of the login and authorization flow shared by all nodes, see JdbcSessionStore.
+-- Sessions are kept by their key (MD5 of the session id), never by the id sent in the cookie.
+
+CREATE TABLE IF NOT EXISTS oauth_session (
+  session_key VARCHAR(64)  NOT NULL PRIMARY KEY,
+  data        BYTEA        NOT NULL,
+  expires_at  TIMESTAMP    NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS oauth_session_expires_at_idx ON oauth_session (expires_at);
@@ -0,0 +1,4 @@
+-- Refresh token expiry, the partition key of partitioned refresh token tables, see TokenPartitionMaintainer.
+-- Existing refresh tokens are left without one, and are kept until the table is partitioned.
+
+ALTER TABLE oauth_refresh_token ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP;
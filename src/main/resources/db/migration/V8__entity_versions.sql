@@ -0,0 +1,4 @@
+-- Optimistic locking versions of clients and partners, which the entity tags of the admin API are derived from.
+
+ALTER TABLE oauth_client_details ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE oauth_partner ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,4 @@
+-- Consecutive failed background refreshes of a partner token, which back its next attempt off, see
+-- PartnerTokenRefresher.
+
+ALTER TABLE oauth_partner_token ADD COLUMN IF NOT EXISTS refresh_failures INT NOT NULL DEFAULT 0;
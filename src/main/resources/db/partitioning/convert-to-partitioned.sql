@@ -0,0 +1,47 @@
+-- Converts oauth_access_token and oauth_code into tables range partitioned by created_at, and oauth_refresh_token
+-- into a table range partitioned by expires_at (PostgreSQL 11+). Existing rows land in the default partition;
+-- TokenPartitionMaintainer moves them into the partitions it creates, and drops partitions once every token in them
+-- has expired. Refresh tokens that do not expire, and those stored before they had an expiry, go to the
+-- oauth_refresh_token_never partition and are kept.
+--
+-- Run once, with the application stopped, after it has migrated the database at least once. A refresh token table
+-- already partitioned by created_at is converted by running the oauth_refresh_token part again.
+--   psql -d oauth -f convert-to-partitioned.sql
+
+BEGIN;
+
+ALTER TABLE oauth_access_token RENAME TO oauth_access_token_legacy;
+CREATE TABLE oauth_access_token (LIKE oauth_access_token_legacy INCLUDING DEFAULTS) PARTITION BY RANGE (created_at);
+ALTER TABLE oauth_access_token ADD PRIMARY KEY (id, created_at);
+CREATE INDEX oauth_access_token_token_id_idx ON oauth_access_token (token_id);
+CREATE INDEX oauth_access_token_authentication_id_idx ON oauth_access_token (authentication_id);
+CREATE INDEX oauth_access_token_refresh_token_idx ON oauth_access_token (refresh_token);
+CREATE INDEX oauth_access_token_client_user_idx ON oauth_access_token (client_id, user_name);
+CREATE TABLE oauth_access_token_default PARTITION OF oauth_access_token DEFAULT;
+INSERT INTO oauth_access_token SELECT * FROM oauth_access_token_legacy;
+DROP TABLE oauth_access_token_legacy;
+
+ALTER TABLE oauth_refresh_token RENAME TO oauth_refresh_token_legacy;
+ALTER TABLE IF EXISTS oauth_refresh_token_default RENAME TO oauth_refresh_token_legacy_default;
+ALTER TABLE oauth_refresh_token_legacy ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP;
+UPDATE oauth_refresh_token_legacy SET expires_at = TIMESTAMP '9999-12-31 00:00:00' WHERE expires_at IS NULL;
+CREATE TABLE oauth_refresh_token (LIKE oauth_refresh_token_legacy INCLUDING DEFAULTS) PARTITION BY RANGE (expires_at);
+ALTER TABLE oauth_refresh_token ADD PRIMARY KEY (id, expires_at);
+CREATE INDEX oauth_refresh_token_token_id_idx ON oauth_refresh_token (token_id);
+CREATE INDEX oauth_refresh_token_client_user_idx ON oauth_refresh_token (client_id, user_name);
+CREATE INDEX oauth_refresh_token_user_idx ON oauth_refresh_token (user_name);
+CREATE TABLE oauth_refresh_token_never PARTITION OF oauth_refresh_token
+  FOR VALUES FROM ('9999-01-01') TO (MAXVALUE);
+CREATE TABLE oauth_refresh_token_default PARTITION OF oauth_refresh_token DEFAULT;
+INSERT INTO oauth_refresh_token SELECT * FROM oauth_refresh_token_legacy;
+DROP TABLE oauth_refresh_token_legacy;
+
+ALTER TABLE oauth_code RENAME TO oauth_code_legacy;
+CREATE TABLE oauth_code (LIKE oauth_code_legacy INCLUDING DEFAULTS) PARTITION BY RANGE (created_at);
+ALTER TABLE oauth_code ADD PRIMARY KEY (id, created_at);
+CREATE INDEX oauth_code_code_idx ON oauth_code (code);
+CREATE TABLE oauth_code_default PARTITION OF oauth_code DEFAULT;
+INSERT INTO oauth_code SELECT * FROM oauth_code_legacy;
+DROP TABLE oauth_code_legacy;
+
+COMMIT;
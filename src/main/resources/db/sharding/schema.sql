@@ -0,0 +1,51 @@
+-- Schema of every token shard, see ShardedTokenDAO.
+-- Kept to portable SQL so the same script runs on Postgres and on the embedded H2 shards of the "sharded" profile.
+
+CREATE TABLE IF NOT EXISTS oauth_access_token (
+  token_id          VARCHAR(64)  NOT NULL PRIMARY KEY,
+  token             TEXT,
+  authentication_id VARCHAR(64),
+  client_id         VARCHAR(255),
+  user_name         VARCHAR(255),
+  authentication    TEXT,
+  refresh_token     VARCHAR(64),
+  created_at        TIMESTAMP    NOT NULL,
+  updated_at        TIMESTAMP    NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS oauth_access_token_client_user_idx ON oauth_access_token (client_id, user_name);
+
+CREATE INDEX IF NOT EXISTS oauth_access_token_user_idx ON oauth_access_token (user_name);
+
+CREATE TABLE IF NOT EXISTS oauth_refresh_token (
+  token_id       VARCHAR(64)  NOT NULL PRIMARY KEY,
+  token          TEXT,
+  authentication TEXT,
+  client_id      VARCHAR(255),
+  user_name      VARCHAR(255),
+  created_at     TIMESTAMP    NOT NULL,
+  updated_at     TIMESTAMP    NOT NULL
+);
+
+-- Shards created before refresh tokens could be revoked by client and user.
+ALTER TABLE oauth_refresh_token ADD COLUMN IF NOT EXISTS client_id VARCHAR(255);
+ALTER TABLE oauth_refresh_token ADD COLUMN IF NOT EXISTS user_name VARCHAR(255);
+
+CREATE INDEX IF NOT EXISTS oauth_refresh_token_client_user_idx ON oauth_refresh_token (client_id, user_name);
+CREATE INDEX IF NOT EXISTS oauth_refresh_token_user_idx ON oauth_refresh_token (user_name);
+
+CREATE TABLE IF NOT EXISTS oauth_code (
+  code           VARCHAR(255) NOT NULL PRIMARY KEY,
+  authentication TEXT,
+  created_at     TIMESTAMP    NOT NULL,
+  updated_at     TIMESTAMP    NOT NULL
+);
+
+-- Secondary index of the access tokens, stored on the shard owning route_key.
+-- 'A': authentication id -> access token key, 'R': refresh token key -> access token key.
+CREATE TABLE IF NOT EXISTS oauth_token_route (
+  route_type CHAR(1)     NOT NULL,
+  route_key  VARCHAR(64) NOT NULL,
+  token_id   VARCHAR(64) NOT NULL,
+  PRIMARY KEY (route_type, route_key, token_id)
+);
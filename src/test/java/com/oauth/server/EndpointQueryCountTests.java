@@ -0,0 +1,322 @@
+package com.oauth.server;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oauth.server.authentication.RoleEnum;
+import com.oauth.server.authentication.UserIDAuthenticationToken;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.partner.PartnerTokenClient;
+import com.oauth.server.sqlstats.SqlStatistics;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.UserRequestPostProcessor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Drives every endpoint against an in-memory database and fails when a request executes more SQL statements than
+ * expected, so that N+1 queries are caught by the build.
+ *
+ * <p>
+ * Statements are counted by {@link SqlStatistics} through the data source, so those of JPA and of the JdbcTemplate are
+ * all counted; those of background threads, such as the audit writer, are not.
+ * </p>
+ *
+ * <p>
+ * The bounds hold with cold caches. When a change legitimately needs more statements, raise the bound of the endpoint
+ * along with it.
+ * </p>
+ *
+ * @author Varij Kapil
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "oauth.sql-statistics.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class EndpointQueryCountTests {
+
+  private static final String ADMIN_CLIENT = "test_admin_client";
+  private static final String CLIENT_SECRET = "test_client_secret";
+  private static final String REDIRECT_URI = "http://localhost:5000/redirect";
+  private static final String PARTNER = "test_alexa_client";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private SqlStatistics sqlStatistics;
+
+  @Autowired
+  private DynamoDBPartnerTokenDAO partnerTokenService;
+
+  @Autowired
+  private DynamoDBPartnerDetailsDAO partnerDetailsService;
+
+  @MockBean
+  private PartnerTokenClient partnerTokenClient;
+
+  private Statistics statistics;
+
+  @Before
+  public void setUp() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @Test
+  public void clientCredentialsGrant() throws Exception {
+    perform(7, post("/oauth/token")
+        .with(httpBasic(ADMIN_CLIENT, CLIENT_SECRET))
+        .param("grant_type", "client_credentials"), status().isOk());
+  }
+
+  @Test
+  public void passwordGrant() throws Exception {
+    perform(7, post("/oauth/token")
+        .with(httpBasic(ADMIN_CLIENT, CLIENT_SECRET))
+        .param("grant_type", "password")
+        .param("username", "user")
+        .param("password", "password"), status().isOk());
+  }
+
+  @Test
+  public void refreshTokenGrant() throws Exception {
+    String refreshToken = passwordToken().get("refresh_token").asText();
+
+    perform(10, post("/oauth/token")
+        .with(httpBasic(ADMIN_CLIENT, CLIENT_SECRET))
+        .param("grant_type", "refresh_token")
+        .param("refresh_token", refreshToken), status().isOk());
+  }
+
+  @Test
+  public void authorizationCodeGrant() throws Exception {
+    MockHttpSession session = new MockHttpSession();
+
+    // A user without tokens, who has not approved the client yet.
+    perform(6, get("/oauth/authorize")
+        .session(session)
+        .with(user("code_user"))
+        .param("response_type", "code")
+        .param("client_id", ADMIN_CLIENT)
+        .param("redirect_uri", REDIRECT_URI), status().isOk());
+
+    MvcResult approval = perform(2, post("/oauth/authorize")
+        .session(session)
+        .with(user("code_user"))
+        .with(csrf())
+        .param("user_oauth_approval", "true")
+        .param("scope.test_scope", "true"), status().is3xxRedirection());
+    String code = UriComponentsBuilder.fromUriString(approval.getResponse().getRedirectedUrl()).build()
+        .getQueryParams().getFirst("code");
+
+    perform(17, post("/oauth/token")
+        .with(httpBasic(ADMIN_CLIENT, CLIENT_SECRET))
+        .param("grant_type", "authorization_code")
+        .param("code", code)
+        .param("redirect_uri", REDIRECT_URI), status().isOk());
+  }
+
+  @Test
+  public void rootPageOfUser() throws Exception {
+    passwordToken();
+
+    perform(4, get("/").with(user("user")), status().isOk());
+  }
+
+  @Test
+  public void rootPageOfAdmin() throws Exception {
+    perform(2, get("/").with(admin()), status().isOk());
+  }
+
+  @Test
+  public void clientsForm() throws Exception {
+    perform(1, get("/clients/form").with(admin()).param("client", ADMIN_CLIENT), status().isOk());
+  }
+
+  @Test
+  public void partnersForm() throws Exception {
+    perform(1, get("/partners/form").with(admin()).param("partnerId", PARTNER), status().isOk());
+  }
+
+  @Test
+  public void partnerTokenFromStorage() throws Exception {
+    savePartnerToken("stored_user", TimeUnit.HOURS.toMillis(1));
+
+    perform(6, get("/api/partner/token")
+        .header("Authorization", "Bearer " + clientCredentialsToken())
+        .param("partner_id", PARTNER)
+        .param("user_id", "stored_user"), status().isOk());
+  }
+
+  @Test
+  public void partnerTokenRefreshed() throws Exception {
+    savePartnerToken("expired_user", -TimeUnit.HOURS.toMillis(1));
+    when(partnerTokenClient.refreshAccessToken(any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(partnerToken("refreshed", TimeUnit.HOURS.toMillis(1))));
+
+    perform(9, get("/api/partner/token")
+        .header("Authorization", "Bearer " + clientCredentialsToken())
+        .param("partner_id", PARTNER)
+        .param("user_id", "expired_user"), status().isOk());
+  }
+
+  @Test
+  public void reciprocalAuthorization() throws Exception {
+    when(partnerTokenClient.obtainAccessToken(any(), eq("reciprocal_code")))
+        .thenReturn(CompletableFuture.completedFuture(partnerToken("reciprocal", TimeUnit.HOURS.toMillis(1))));
+
+    perform(8, post("/api/reciprocal/authorize")
+        .header("Authorization", "Bearer " + passwordToken().get("access_token").asText())
+        .param("grant_type", "reciprocal_authorization_code")
+        .param("client_id", PARTNER)
+        .param("code", "reciprocal_code"), status().isOk());
+  }
+
+  @Test
+  public void clientNotModified() throws Exception {
+    notModified("/api/clients/" + ADMIN_CLIENT, OAuthClientDetails.class);
+  }
+
+  @Test
+  public void clientsPageNotModified() throws Exception {
+    notModified("/api/clients", OAuthClientDetails.class);
+  }
+
+  @Test
+  public void partnerNotModified() throws Exception {
+    notModified("/api/partners/" + PARTNER, OAuthPartner.class);
+  }
+
+  /**
+   * Check that a conditional request for an unchanged resource is answered from its version, loading fewer entities
+   * than the request it repeats.
+   */
+  private void notModified(String uri, Class<?> entity) throws Exception {
+    String authorization = "Bearer " + clientCredentialsToken();
+    statistics.clear();
+    String eTag = mockMvc.perform(get(uri).header(HttpHeaders.AUTHORIZATION, authorization))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    long loadedWhenModified = statistics.getEntityStatistics(entity.getName()).getLoadCount();
+
+    statistics.clear();
+    perform(3, get(uri)
+        .header(HttpHeaders.AUTHORIZATION, authorization)
+        .header(HttpHeaders.IF_NONE_MATCH, eTag), status().isNotModified());
+    assertThat("Entities loaded by " + uri,
+        statistics.getEntityStatistics(entity.getName()).getLoadCount(), lessThan(loadedWhenModified));
+  }
+
+  /**
+   * Perform a request, waiting for its asynchronous result if any, and check that it executes at most
+   * {@code maxStatements} statements.
+   */
+  private MvcResult perform(int maxStatements, RequestBuilder request, ResultMatcher expectedStatus)
+      throws Exception {
+    long statementsBefore = requestStatements();
+
+    MvcResult result = mockMvc.perform(request).andReturn();
+    if (result.getRequest().isAsyncStarted()) {
+      result.getAsyncResult();
+      result = mockMvc.perform(asyncDispatch(result)).andReturn();
+    }
+
+    expectedStatus.match(result);
+    assertThat("SQL statements of " + result.getRequest().getRequestURI(),
+        requestStatements() - statementsBefore, lessThanOrEqualTo((long) maxStatements));
+    return result;
+  }
+
+  /**
+   * @return the statements executed by all the requests so far.
+   */
+  private long requestStatements() {
+    return sqlStatistics.snapshot().getEndpoints().values().stream()
+        .mapToLong(SqlStatistics.Summary::getStatements)
+        .sum();
+  }
+
+  private JsonNode passwordToken() throws Exception {
+    return token(mockMvc.perform(post("/oauth/token")
+        .with(httpBasic(ADMIN_CLIENT, CLIENT_SECRET))
+        .param("grant_type", "password")
+        .param("username", "user")
+        .param("password", "password"))
+        .andExpect(status().isOk())
+        .andReturn());
+  }
+
+  private String clientCredentialsToken() throws Exception {
+    return token(mockMvc.perform(post("/oauth/token")
+        .with(httpBasic(ADMIN_CLIENT, CLIENT_SECRET))
+        .param("grant_type", "client_credentials"))
+        .andExpect(status().isOk())
+        .andReturn()).get("access_token").asText();
+  }
+
+  private JsonNode token(MvcResult result) throws Exception {
+    return objectMapper.readTree(result.getResponse().getContentAsString());
+  }
+
+  private void savePartnerToken(String userId, long expiresInMillis) {
+    OAuth2ProtectedResourceDetails resourceDetails =
+        partnerDetailsService.loadPartnerByPartnerId(PARTNER).toProtectedResourceDetails();
+    partnerTokenService.saveAccessToken(resourceDetails, new UserIDAuthenticationToken(userId),
+        partnerToken(userId, expiresInMillis));
+  }
+
+  private static DefaultOAuth2AccessToken partnerToken(String value, long expiresInMillis) {
+    DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(value + "_access_token");
+    accessToken.setRefreshToken(new DefaultOAuth2RefreshToken(value + "_refresh_token"));
+    accessToken.setExpiration(new Date(System.currentTimeMillis() + expiresInMillis));
+    return accessToken;
+  }
+
+  private static UserRequestPostProcessor admin() {
+    return user("admin").authorities(new SimpleGrantedAuthority(RoleEnum.ROLE_USER_ADMIN.name()));
+  }
+}
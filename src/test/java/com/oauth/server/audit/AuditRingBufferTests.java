@@ -0,0 +1,92 @@
+package com.oauth.server.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Runs {@link AuditRingBuffer} from a single thread, so that every offer and drain happens in a known order.
+ *
+ * @author Varij Kapil
+ */
+public class AuditRingBufferTests {
+
+  @Test
+  public void capacityIsRoundedUpToPowerOfTwo() {
+    assertEquals(2, new AuditRingBuffer<Integer>(1).capacity());
+    assertEquals(4, new AuditRingBuffer<Integer>(4).capacity());
+    assertEquals(8, new AuditRingBuffer<Integer>(5).capacity());
+  }
+
+  @Test
+  public void fullBufferRefusesOffers() {
+    AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(4));
+    assertEquals(4, buffer.size());
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(2, buffer.drainTo(drained, 2));
+    assertTrue(buffer.offer(5));
+    assertTrue(buffer.offer(6));
+    assertFalse(buffer.offer(7));
+
+    drained.clear();
+    assertEquals(4, buffer.drainTo(drained, Integer.MAX_VALUE));
+    assertEquals(Arrays.asList(2, 3, 5, 6), drained);
+    assertEquals(0, buffer.size());
+  }
+
+  /**
+   * Sequences keep growing past the capacity, and the slots are reused in order.
+   */
+  @Test
+  public void wrapAroundKeepsOrder() {
+    AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+    int next = 0;
+    for (int round = 0; round < 10; round++) {
+      List<Integer> offered = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        assertTrue(buffer.offer(next));
+        offered.add(next++);
+      }
+      List<Integer> drained = new ArrayList<>();
+      assertEquals(3, buffer.drainTo(drained, Integer.MAX_VALUE));
+      assertEquals(offered, drained);
+    }
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  public void drainStopsAtMaxElementsInOfferOrder() {
+    AuditRingBuffer<String> buffer = new AuditRingBuffer<>(8);
+    for (String element : Arrays.asList("a", "b", "c", "d", "e")) {
+      buffer.offer(element);
+    }
+
+    List<String> drained = new ArrayList<>();
+    assertEquals(3, buffer.drainTo(drained, 3));
+    assertEquals(Arrays.asList("a", "b", "c"), drained);
+    assertEquals(2, buffer.size());
+
+    assertEquals(2, buffer.drainTo(drained, 3));
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), drained);
+    assertEquals(0, buffer.drainTo(drained, 3));
+  }
+
+  @Test
+  public void emptyBufferDrainsNothing() {
+    AuditRingBuffer<String> buffer = new AuditRingBuffer<>(4);
+    List<String> drained = new ArrayList<>();
+    assertEquals(0, buffer.drainTo(drained, 10));
+    assertEquals(Collections.emptyList(), drained);
+  }
+}
@@ -0,0 +1,160 @@
+package com.oauth.server.bulkimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Imports clients into the in-memory database of the tests, in batches of 2, interrupting the import by failing a
+ * commit.
+ *
+ * @author Varij Kapil
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class BulkImporterTests {
+
+  private static final int CLIENTS = 5;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private DynamoDBClientDetailsDAO clientDetailsService;
+
+  @Autowired
+  private DynamoDBPartnerDetailsDAO partnerDetailsService;
+
+  @Autowired
+  private PasswordEncoder passwordEncoder;
+
+  private String prefix;
+
+  private Path checkpoints;
+
+  private Path source;
+
+  @Before
+  public void setUp() throws IOException {
+    prefix = "import-" + UUID.randomUUID() + "-";
+    checkpoints = folder.newFolder().toPath();
+    StringBuilder csv = new StringBuilder("client_id,client_secret,scopes,authorized_grant_types\r\n");
+    for (int i = 1; i <= CLIENTS; i++) {
+      csv.append(prefix).append(i).append(",secret,\"profile,email\",client_credentials\r\n");
+    }
+    source = folder.getRoot().toPath().resolve("clients.csv");
+    Files.write(source, csv.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void interruptedImportResumesAfterLastCommittedBatch() throws Exception {
+    try {
+      importer(failingCommit(2)).importTable(ImportTable.CLIENTS, source);
+      fail("The second commit should have failed");
+    } catch (SQLException e) {
+      assertEquals("Connection lost", e.getMessage());
+    }
+    ImportCheckpoint interrupted = ImportCheckpoint.load(checkpoints, ImportTable.CLIENTS, source);
+    assertEquals(2, interrupted.getRecords());
+    assertEquals(2, interrupted.getImported());
+    assertEquals(2, importedClients());
+
+    ImportCheckpoint done = importer(dataSource).importTable(ImportTable.CLIENTS, source);
+    assertEquals(CLIENTS, done.getRecords());
+    assertEquals(CLIENTS, done.getImported());
+    assertEquals(0, done.getSkipped());
+    assertEquals(CLIENTS, importedClients());
+    assertEquals("profile,email", new JdbcTemplate(dataSource).queryForObject(
+        "SELECT scopes FROM oauth_client_details WHERE client_id = ?", String.class, prefix + CLIENTS));
+
+    ImportCheckpoint again = importer(dataSource).importTable(ImportTable.CLIENTS, source);
+    assertEquals(CLIENTS, again.getImported());
+    assertEquals(CLIENTS, importedClients());
+  }
+
+  /**
+   * Without a checkpoint, the rows already imported are skipped.
+   */
+  @Test
+  public void rowsAlreadyPresentAreSkipped() throws Exception {
+    importer(dataSource).importTable(ImportTable.CLIENTS, source);
+    Files.delete(checkpoints.resolve("clients.checkpoint"));
+
+    ImportCheckpoint checkpoint = importer(dataSource).importTable(ImportTable.CLIENTS, source);
+    assertEquals(0, checkpoint.getImported());
+    assertEquals(CLIENTS, checkpoint.getSkipped());
+    assertEquals(CLIENTS, importedClients());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void checkpointOfAnotherSourceIsRefused() throws Exception {
+    importer(dataSource).importTable(ImportTable.CLIENTS, source);
+    Path other = folder.getRoot().toPath().resolve("other.csv");
+    Files.copy(source, other);
+
+    importer(dataSource).importTable(ImportTable.CLIENTS, other);
+  }
+
+  private BulkImporter importer(DataSource target) {
+    return new BulkImporter(target, new ImportRowMapper(clientDetailsService, partnerDetailsService, passwordEncoder),
+        1, 2, checkpoints);
+  }
+
+  private int importedClients() {
+    return new JdbcTemplate(dataSource).queryForObject(
+        "SELECT COUNT(*) FROM oauth_client_details WHERE client_id LIKE ?", Integer.class, prefix + "%");
+  }
+
+  /**
+   * The data source of the tests, losing its connection at the given commit.
+   */
+  private DataSource failingCommit(int failingCommit) {
+    AtomicInteger commits = new AtomicInteger();
+    return new DelegatingDataSource(dataSource) {
+      @Override
+      public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+            (proxy, method, args) -> {
+              if ("commit".equals(method.getName()) && commits.incrementAndGet() == failingCommit) {
+                throw new SQLException("Connection lost");
+              }
+              try {
+                return method.invoke(connection, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+      }
+    };
+  }
+}
@@ -0,0 +1,97 @@
+package com.oauth.server.bulkimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeNotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Checks the CSV that {@link CopyWriter} streams to {@code COPY}, and runs {@code COPY} itself on the PostgreSQL
+ * database given by the {@code oauth.test.postgres.url}, {@code username} and {@code password} system properties; that
+ * test is skipped without it, the other tests of the writer run on H2 through {@link BulkImporterTests}.
+ *
+ * @author Varij Kapil
+ */
+public class CopyWriterTests {
+
+  private static final String TRICKY = "say \"hi\", then\r\nleave \\. now";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void csvQuotesValuesAndLeavesNullsUnquoted() {
+    List<Object[]> rows = Arrays.asList(
+        new Object[] {"a", null, "", 3, 1.5},
+        new Object[] {"say \"hi\"", "x,y\nz", null, null, null});
+
+    assertEquals("\"a\",,\"\",\"3\",\"1.5\"\n"
+        + "\"say \"\"hi\"\"\",\"x,y\nz\",,,\n", CopyWriter.csv(rows));
+  }
+
+  @Test
+  public void csvIsReadBackAsWritten() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("rows.csv");
+    Files.write(file, ("\"id\",\"value\",\"none\"\n" + CopyWriter.csv(Collections.singletonList(
+        new Object[] {"1", TRICKY, null}))).getBytes(StandardCharsets.UTF_8));
+
+    try (ImportRecordReader reader = ImportRecordReader.open(file)) {
+      Map<String, String> record = reader.read(10).get(0);
+      assertEquals("1", record.get("id"));
+      assertEquals(TRICKY, record.get("value"));
+      assertNull(record.get("none"));
+    }
+  }
+
+  @Test
+  public void copyIntoPostgres() throws Exception {
+    String url = System.getProperty("oauth.test.postgres.url");
+    assumeNotNull(url);
+    DataSource dataSource = new DriverManagerDataSource(url, System.getProperty("oauth.test.postgres.username"),
+        System.getProperty("oauth.test.postgres.password"));
+    Flyway.configure().dataSource(dataSource).load().migrate();
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    String prefix = "copy-" + UUID.randomUUID() + "-";
+    List<Object[]> rows = Arrays.asList(
+        client(prefix + 1, TRICKY),
+        client(prefix + 2, ""),
+        client(prefix + 2, "duplicate"),
+        client(prefix + 3, null));
+    try (CopyWriter writer = new CopyWriter(dataSource)) {
+      assertEquals(3, writer.write(ImportTable.CLIENTS, rows));
+      assertEquals(0, writer.write(ImportTable.CLIENTS, rows));
+    }
+    try {
+      assertEquals(TRICKY, scopes(jdbcTemplate, prefix + 1));
+      assertEquals("", scopes(jdbcTemplate, prefix + 2));
+      assertNull(scopes(jdbcTemplate, prefix + 3));
+    } finally {
+      jdbcTemplate.update("DELETE FROM oauth_client_details WHERE client_id LIKE ?", prefix + "%");
+    }
+  }
+
+  private static Object[] client(String clientId, String scopes) {
+    return new Object[] {clientId, null, scopes, "client_credentials", null, null, 3600, null, null, 2.5, null};
+  }
+
+  private static String scopes(JdbcTemplate jdbcTemplate, String clientId) {
+    return jdbcTemplate.queryForObject("SELECT scopes FROM oauth_client_details WHERE client_id = ?", String.class,
+        clientId);
+  }
+}
@@ -0,0 +1,169 @@
+package com.oauth.server.bulkimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads CSV and NDJSON files written by the tests.
+ *
+ * @author Varij Kapil
+ */
+public class ImportRecordReaderTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void quotedFieldsKeepCommasAndQuotes() throws IOException {
+    List<Map<String, String>> records = readAll("records.csv",
+        "id,value\n"
+            + "1,\"a, b\"\n"
+            + "2,\"say \"\"hi\"\"\"\n"
+            + "3,\"\"\"\"\n");
+
+    assertEquals(Arrays.asList("a, b", "say \"hi\"", "\""), values(records));
+  }
+
+  @Test
+  public void quotedFieldsSpanLines() throws IOException {
+    List<Map<String, String>> records = readAll("records.csv",
+        "id,value\n"
+            + "1,\"first\nsecond\"\n"
+            + "2,\"first\r\nsecond\"\n"
+            + "3,last\n");
+
+    assertEquals(Arrays.asList("first\nsecond", "first\r\nsecond", "last"), values(records));
+  }
+
+  @Test
+  public void crlfLineEndings() throws IOException {
+    List<Map<String, String>> records = readAll("records.csv",
+        "id,value\r\n"
+            + "1,a\r\n"
+            + "2,\"b\"\r\n"
+            + "3,\r\n");
+
+    assertEquals(Arrays.asList("1", "2", "3"), ids(records));
+    assertEquals(Arrays.asList("a", "b", null), values(records));
+    assertTrue(records.get(0).containsKey("value"));
+  }
+
+  /**
+   * Empty fields, quoted or not, are read as null, as documented; whitespace is kept as it is.
+   */
+  @Test
+  public void emptyFieldsAreNull() throws IOException {
+    List<Map<String, String>> records = readAll("records.csv",
+        "id,value,other\n"
+            + "1,,\"\"\n"
+            + "2,\" \",x\n"
+            + ",,\n");
+
+    assertNull(records.get(0).get("value"));
+    assertNull(records.get(0).get("other"));
+    assertEquals(" ", records.get(1).get("value"));
+    assertEquals("x", records.get(1).get("other"));
+    assertEquals(3, records.get(2).size());
+    assertNull(records.get(2).get("id"));
+  }
+
+  @Test
+  public void blankLinesAndMissingFinalNewlineAreAccepted() throws IOException {
+    List<Map<String, String>> records = readAll("records.csv", "id,value\n1,a\n\n2,b");
+
+    assertEquals(Arrays.asList("1", "2"), ids(records));
+  }
+
+  @Test
+  public void unterminatedQuoteIsRejected() throws IOException {
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Record 2 ends within a quoted field");
+    readAll("records.csv", "id,value\n1,a\n2,\"b\n");
+  }
+
+  @Test
+  public void fieldCountMismatchIsRejected() throws IOException {
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Record 1 has 3 fields, the header 2");
+    readAll("records.csv", "id,value\n1,a,b\n");
+  }
+
+  /**
+   * Resuming from a checkpoint skips records, not lines: a record spanning lines counts once.
+   */
+  @Test
+  public void skipCountsRecordsNotLines() throws IOException {
+    Path file = write("records.csv", "id,value\n1,\"a\nb\nc\"\n2,d\n3,e\n4,f\n");
+    try (ImportRecordReader reader = ImportRecordReader.open(file)) {
+      reader.skip(2);
+      assertEquals(Arrays.asList("3", "4"), ids(reader.read(10)));
+      assertEquals(Collections.emptyList(), reader.read(10));
+    }
+  }
+
+  @Test
+  public void skipPastEndOfFile() throws IOException {
+    Path file = write("records.ndjson", "{\"id\": \"1\"}\n");
+    try (ImportRecordReader reader = ImportRecordReader.open(file)) {
+      reader.skip(5);
+      assertEquals(Collections.emptyList(), reader.read(10));
+    }
+  }
+
+  @Test
+  public void ndjsonRecords() throws IOException {
+    List<Map<String, String>> records = readAll("records.ndjson",
+        "{\"id\": 1, \"value\": [\"a\", \"b\"]}\n"
+            + "\n"
+            + "{\"id\": \"2\", \"value\": null}\n"
+            + "{\"id\": \"3\", \"value\": \"\"}\n"
+            + "{\"id\": \"4\", \"value\": {\"nested\": true}}\n");
+
+    assertEquals(Arrays.asList("1", "2", "3", "4"), ids(records));
+    assertEquals(Arrays.asList("a,b", null, null, "{\"nested\":true}"), values(records));
+  }
+
+  @Test
+  public void invalidJsonIsRejected() throws IOException {
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Record 2 is not valid JSON");
+    readAll("records.ndjson", "{\"id\": \"1\"}\n{\"id\": \n");
+  }
+
+  private List<Map<String, String>> readAll(String name, String content) throws IOException {
+    try (ImportRecordReader reader = ImportRecordReader.open(write(name, content))) {
+      return reader.read(100);
+    }
+  }
+
+  private Path write(String name, String content) throws IOException {
+    Path file = folder.getRoot().toPath().resolve(name);
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static List<String> ids(List<Map<String, String>> records) {
+    return Arrays.asList(records.stream().map(record -> record.get("id")).toArray(String[]::new));
+  }
+
+  private static List<String> values(List<Map<String, String>> records) {
+    return Arrays.asList(records.stream().map(record -> record.get("value")).toArray(String[]::new));
+  }
+}
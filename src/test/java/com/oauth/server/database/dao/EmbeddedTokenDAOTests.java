@@ -0,0 +1,88 @@
+package com.oauth.server.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.oauth.server.database.embedded.MappedLogStore;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * Runs {@link EmbeddedTokenDAO} on stores in temporary files.
+ *
+ * @author Varij Kapil
+ */
+public class EmbeddedTokenDAOTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  private MappedLogStore accessTokens;
+
+  private MappedLogStore refreshTokens;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.newFolder().toPath();
+    openStores();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    accessTokens.close();
+    refreshTokens.close();
+  }
+
+  /**
+   * Token JSON past the 64 KB limit of {@link DataOutputStream#writeUTF}.
+   */
+  @Test
+  public void largeTokenSurvivesReopen() throws IOException {
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("large-token");
+    token.setAdditionalInformation(Collections.singletonMap("claims", StringUtils.repeat("x", 100_000)));
+    newTokenStore().storeAccessToken(token, authentication());
+
+    accessTokens.close();
+    refreshTokens.close();
+    openStores();
+
+    EmbeddedTokenDAO tokenStore = newTokenStore();
+    OAuth2AccessToken read = tokenStore.readAccessToken("large-token");
+    assertNotNull(read);
+    assertEquals(token.getAdditionalInformation(), read.getAdditionalInformation());
+    assertEquals("user", tokenStore.readAuthentication("large-token").getName());
+    assertEquals(1, tokenStore.findTokensByClientIdAndUserName("client", "user").size());
+  }
+
+  private EmbeddedTokenDAO newTokenStore() {
+    return new EmbeddedTokenDAO(accessTokens, refreshTokens, event -> { });
+  }
+
+  private void openStores() {
+    accessTokens = new MappedLogStore(directory, "access-tokens", 1024, 16, false);
+    refreshTokens = new MappedLogStore(directory, "refresh-tokens", 1024, 16, false);
+  }
+
+  private static OAuth2Authentication authentication() {
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "client", Collections.emptyList(), true,
+        Collections.singleton("profile"), Collections.emptySet(), null, Collections.emptySet(),
+        Collections.emptyMap());
+    return new OAuth2Authentication(request,
+        new UsernamePasswordAuthenticationToken("user", null, Collections.emptyList()));
+  }
+}
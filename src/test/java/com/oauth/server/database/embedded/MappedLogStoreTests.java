@@ -0,0 +1,213 @@
+package com.oauth.server.database.embedded;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs {@link MappedLogStore} on temporary files, with logs and indexes small enough to be grown by the tests.
+ *
+ * @author Varij Kapil
+ */
+public class MappedLogStoreTests {
+
+  private static final String NAME = "tokens";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  private MappedLogStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.newFolder().toPath();
+    store = open();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+  }
+
+  @Test
+  public void valuesSurviveReopen() throws IOException {
+    store.put("a", bytes("1"));
+    store.put("b", bytes("2"));
+    store.put("a", bytes("3"));
+    store.remove("b");
+    store.close();
+
+    store = open();
+    assertArrayEquals(bytes("3"), store.get("a"));
+    assertNull(store.get("b"));
+    assertEquals(1, store.size());
+  }
+
+  /**
+   * A crash in the middle of an append leaves a record whose checksum does not match after the last indexed one.
+   * Reopening replays the log up to that record, and the next append overwrites it.
+   */
+  @Test
+  public void reopenAfterTruncatedWrite() throws IOException {
+    store.put("a", bytes("1"));
+    store.put("b", bytes("2"));
+    store.flush();
+    Path indexBeforeC = directory.resolve("index-before-c");
+    Files.copy(directory.resolve(NAME + ".idx"), indexBeforeC);
+    long offsetOfC = logEnd();
+
+    store.put("c", bytes("3"));
+    store.close();
+    Files.copy(indexBeforeC, directory.resolve(NAME + ".idx"), StandardCopyOption.REPLACE_EXISTING);
+    try (RandomAccessFile log = new RandomAccessFile(directory.resolve(NAME + ".log").toFile(), "rw")) {
+      log.seek(offsetOfC);
+      int length = log.readInt();
+      log.seek(offsetOfC + length - 4);
+      log.writeInt(0);
+    }
+
+    store = open();
+    assertArrayEquals(bytes("1"), store.get("a"));
+    assertArrayEquals(bytes("2"), store.get("b"));
+    assertNull(store.get("c"));
+    assertEquals(2, store.size());
+
+    store.put("d", bytes("4"));
+    store.close();
+    Files.delete(directory.resolve(NAME + ".idx"));
+
+    store = open();
+    assertArrayEquals(bytes("1"), store.get("a"));
+    assertArrayEquals(bytes("2"), store.get("b"));
+    assertNull(store.get("c"));
+    assertArrayEquals(bytes("4"), store.get("d"));
+  }
+
+  @Test
+  public void compactionKeepsLiveRecordsOnly() throws IOException {
+    for (int i = 0; i < 200; i++) {
+      store.put("key" + i, bytes("first" + i));
+    }
+    for (int i = 0; i < 100; i++) {
+      store.put("key" + i, bytes("second" + i));
+    }
+    for (int i = 150; i < 200; i++) {
+      store.remove("key" + i);
+    }
+    long logBytesBefore = logEnd();
+    assertTrue(store.deadRatio() > 0);
+
+    store.compact();
+
+    assertEquals(0, store.deadRatio(), 0);
+    assertTrue(logEnd() < logBytesBefore);
+    assertCompactedValues();
+
+    store.close();
+    store = open();
+    assertCompactedValues();
+    store.put("key" + 150, bytes("third"));
+    assertArrayEquals(bytes("third"), store.get("key" + 150));
+  }
+
+  /**
+   * Writers and readers share the store while the log and the index grow.
+   */
+  @Test
+  public void concurrentPutAndGet() throws Exception {
+    int threads = 8;
+    int keysPerThread = 500;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        results.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < keysPerThread; i++) {
+            String key = thread + "-" + i;
+            store.put(key, bytes("v1-" + key));
+            store.put(key, bytes("v2-" + key));
+            assertArrayEquals(bytes("v2-" + key), store.get(key));
+
+            String other = ((thread + 1) % threads) + "-" + i;
+            byte[] value = store.get(other);
+            assertTrue(value == null || new String(value, StandardCharsets.UTF_8).endsWith(other));
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        result.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(threads * keysPerThread, store.size());
+    store.close();
+    store = open();
+    for (int t = 0; t < threads; t++) {
+      for (int i = 0; i < keysPerThread; i++) {
+        assertArrayEquals(bytes("v2-" + t + "-" + i), store.get(t + "-" + i));
+      }
+    }
+  }
+
+  private void assertCompactedValues() {
+    assertEquals(150, store.size());
+    for (int i = 0; i < 200; i++) {
+      byte[] value = store.get("key" + i);
+      if (i < 100) {
+        assertArrayEquals(bytes("second" + i), value);
+      } else if (i < 150) {
+        assertArrayEquals(bytes("first" + i), value);
+      } else {
+        assertNull(value);
+      }
+    }
+  }
+
+  /**
+   * The end of the log, as last written to the index header.
+   */
+  private long logEnd() throws IOException {
+    store.flush();
+    try (RandomAccessFile index = new RandomAccessFile(directory.resolve(NAME + ".idx").toFile(), "r")) {
+      index.seek(28);
+      return index.readLong();
+    }
+  }
+
+  private MappedLogStore open() {
+    return new MappedLogStore(directory, NAME, 1024, 16, false);
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
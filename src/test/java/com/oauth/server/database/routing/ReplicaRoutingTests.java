@@ -0,0 +1,138 @@
+package com.oauth.server.database.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.oauth.server.database.modal.OAuth2AccessTokenConverter;
+import com.oauth.server.database.modal.OAuth2AuthenticationConverter;
+import com.oauth.server.database.modal.OAuthAccessToken;
+import com.oauth.server.database.service.IOAuthAccessToken;
+import com.oauth.server.database.service.IOAuthClientDetails;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Runs the repositories against two databases, a primary and a replica that does not replicate, so that where every
+ * read and write went can be told apart.
+ *
+ * @author Varij Kapil
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "oauth.datasource.routing.enabled=true",
+    "oauth.datasource.routing.replicas[0].url=" + ReplicaRoutingTests.REPLICA_URL,
+    "oauth.datasource.routing.replicas[0].username=sa",
+    "oauth.datasource.routing.read-your-writes-window-millis=60000"})
+@ActiveProfiles("test")
+public class ReplicaRoutingTests {
+
+  static final String REPLICA_URL = "jdbc:h2:mem:oauth-test-replica;DB_CLOSE_DELAY=-1";
+
+  private static final DataSource REPLICA = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+
+  private static final String INSERT_ACCESS_TOKEN = "INSERT INTO oauth_access_token"
+      + " (id, created_at, updated_at, token_id, token, client_id, user_name, authentication)"
+      + " VALUES (NEXT VALUE FOR hibernate_sequence, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String INSERT_CLIENT = "INSERT INTO oauth_client_details"
+      + " (id, created_at, updated_at, client_id, scopes) VALUES (NEXT VALUE FOR hibernate_sequence, ?, ?, ?, ?)";
+
+  @Autowired
+  private IOAuthAccessToken ioAuthAccessToken;
+
+  @Autowired
+  private IOAuthClientDetails ioAuthClientDetails;
+
+  @Autowired
+  private DataSource dataSource;
+
+  private JdbcTemplate primary;
+
+  private JdbcTemplate replica;
+
+  /**
+   * The replica gets the same schema as the primary before the application starts reading from it.
+   */
+  @BeforeClass
+  public static void migrateReplica() {
+    Flyway.configure().dataSource(REPLICA).load().migrate();
+  }
+
+  @Before
+  public void setUp() {
+    primary = new JdbcTemplate(dataSource);
+    replica = new JdbcTemplate(REPLICA);
+  }
+
+  @Test
+  public void clientLookupReadsReplica() {
+    String clientId = "replica-only-" + UUID.randomUUID();
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    replica.update(INSERT_CLIENT, now, now, clientId, "profile");
+
+    assertTrue(ioAuthClientDetails.findByClientId(clientId).isPresent());
+  }
+
+  @Test
+  public void tokenSavedOnPrimaryIsReadBackAtOnce() {
+    OAuthAccessToken saved = ioAuthAccessToken.save(OAuthAccessToken.builder()
+        .tokenId(UUID.randomUUID().toString())
+        .token(new DefaultOAuth2AccessToken(UUID.randomUUID().toString()))
+        .authentication(authentication())
+        .clientId("test_alexa_client")
+        .userName("user")
+        .build());
+
+    assertEquals(1, countTokens(primary, saved.getTokenId()));
+    assertEquals(0, countTokens(replica, saved.getTokenId()));
+    assertTrue(ioAuthAccessToken.findByTokenId(saved.getTokenId()).isPresent());
+  }
+
+  @Test
+  public void tokenWrittenByAnotherNodeIsFoundOnPrimary() {
+    String tokenId = UUID.randomUUID().toString();
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    primary.update(INSERT_ACCESS_TOKEN, now, now, tokenId,
+        new OAuth2AccessTokenConverter().convertToDatabaseColumn(new DefaultOAuth2AccessToken(tokenId)),
+        "test_alexa_client", "user", new OAuth2AuthenticationConverter().convertToDatabaseColumn(authentication()));
+
+    assertEquals(0, countTokens(replica, tokenId));
+    assertTrue(ioAuthAccessToken.findByTokenId(tokenId).isPresent());
+  }
+
+  @Test
+  public void unknownTokenIsNotFound() {
+    assertFalse(ioAuthAccessToken.findByTokenId(UUID.randomUUID().toString()).isPresent());
+  }
+
+  private static int countTokens(JdbcTemplate database, String tokenId) {
+    return database.queryForObject("SELECT COUNT(*) FROM oauth_access_token WHERE token_id = ?", Integer.class,
+        tokenId);
+  }
+
+  private static OAuth2Authentication authentication() {
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "test_alexa_client", Collections.emptyList(),
+        true, Collections.singleton("profile"), Collections.emptySet(), null, Collections.emptySet(),
+        Collections.emptyMap());
+    return new OAuth2Authentication(request,
+        new UsernamePasswordAuthenticationToken("user", null, Collections.emptyList()));
+  }
+}
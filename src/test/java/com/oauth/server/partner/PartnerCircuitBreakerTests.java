@@ -0,0 +1,153 @@
+package com.oauth.server.partner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.oauth.server.partner.PartnerCircuitBreaker.State;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Runs {@link PartnerCircuitBreaker} on a clock given by the tests: a window of 4 calls, all of them needed before the
+ * circuit may open at 50% failures, calls slower than 1 second failing, 10 seconds open and 2 probe calls.
+ *
+ * @author Varij Kapil
+ */
+public class PartnerCircuitBreakerTests {
+
+  private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long OPEN = TimeUnit.SECONDS.toNanos(10);
+
+  private final PartnerCircuitBreaker circuitBreaker = new PartnerCircuitBreaker(4, 4, 50, SLOW, OPEN, 2);
+
+  private long now = TimeUnit.SECONDS.toNanos(1000);
+
+  @Test
+  public void staysClosedUntilMinimumCalls() {
+    call(true);
+    call(true);
+    call(true);
+    assertEquals(State.CLOSED, state());
+
+    call(false);
+    assertEquals(State.OPEN, state());
+    assertEquals(75, circuitBreaker.snapshot(now).getFailureRate(), 0);
+  }
+
+  /**
+   * Only the last calls count: the first failure has left the window when the last two fail.
+   */
+  @Test
+  public void failureRateIsOverLastCalls() {
+    call(true);
+    call(false);
+    call(false);
+    call(false);
+    call(false);
+    call(true);
+    assertEquals(State.CLOSED, state());
+
+    call(true);
+    assertEquals(State.OPEN, state());
+  }
+
+  @Test
+  public void slowCallsCountAsFailures() {
+    for (int i = 0; i < 4; i++) {
+      assertTrue(circuitBreaker.tryAcquire(now));
+      circuitBreaker.onResult(false, now, now + SLOW + 1);
+    }
+    assertEquals(State.OPEN, state());
+  }
+
+  @Test
+  public void openRefusesCallsUntilOpenDurationElapsed() {
+    open();
+    assertFalse(circuitBreaker.tryAcquire(now));
+    assertEquals(10_000, circuitBreaker.snapshot(now).getRemainingOpenMillis());
+
+    now += OPEN - 1;
+    assertFalse(circuitBreaker.tryAcquire(now));
+    assertEquals(State.OPEN, state());
+  }
+
+  @Test
+  public void halfOpenClosesWhenAllProbesSucceed() {
+    open();
+    now += OPEN;
+    assertTrue(circuitBreaker.tryAcquire(now));
+    assertEquals(State.HALF_OPEN, state());
+    assertTrue(circuitBreaker.tryAcquire(now));
+    assertFalse(circuitBreaker.tryAcquire(now));
+
+    circuitBreaker.onResult(false, now, now);
+    assertEquals(State.HALF_OPEN, state());
+    circuitBreaker.onResult(false, now, now);
+    assertEquals(State.CLOSED, state());
+    assertEquals(0, circuitBreaker.snapshot(now).getCalls());
+
+    call(true);
+    call(true);
+    call(true);
+    assertEquals(State.CLOSED, state());
+  }
+
+  @Test
+  public void halfOpenReopensAtFirstFailedProbe() {
+    open();
+    now += OPEN;
+    assertTrue(circuitBreaker.tryAcquire(now));
+    assertTrue(circuitBreaker.tryAcquire(now));
+
+    circuitBreaker.onResult(true, now, now);
+    assertEquals(State.OPEN, state());
+    assertFalse(circuitBreaker.tryAcquire(now + OPEN - 1));
+    assertTrue(circuitBreaker.tryAcquire(now + OPEN));
+  }
+
+  /**
+   * A probe given back is handed out again, so a call that was not made does not hold the circuit half-open.
+   */
+  @Test
+  public void releaseGivesBackProbe() {
+    open();
+    now += OPEN;
+    assertTrue(circuitBreaker.tryAcquire(now));
+    assertTrue(circuitBreaker.tryAcquire(now));
+    assertFalse(circuitBreaker.tryAcquire(now));
+
+    circuitBreaker.release();
+    assertTrue(circuitBreaker.tryAcquire(now));
+    assertFalse(circuitBreaker.tryAcquire(now));
+
+    circuitBreaker.onResult(false, now, now);
+    circuitBreaker.onResult(false, now, now);
+    assertEquals(State.CLOSED, state());
+  }
+
+  @Test
+  public void releaseWhenClosedChangesNothing() {
+    assertTrue(circuitBreaker.tryAcquire(now));
+    circuitBreaker.release();
+    assertEquals(State.CLOSED, state());
+    assertEquals(0, circuitBreaker.snapshot(now).getCalls());
+  }
+
+  private void open() {
+    for (int i = 0; i < 4; i++) {
+      call(true);
+    }
+    assertEquals(State.OPEN, state());
+  }
+
+  private void call(boolean failed) {
+    assertTrue(circuitBreaker.tryAcquire(now));
+    circuitBreaker.onResult(failed, now, now);
+  }
+
+  private State state() {
+    return circuitBreaker.snapshot(now).getState();
+  }
+}
@@ -0,0 +1,148 @@
+package com.oauth.server.partner;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.oauth.server.audit.AuditTrail;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerTokenDAO;
+import com.oauth.server.database.modal.OAuthPartner;
+import com.oauth.server.database.modal.OAuthPartnerToken;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+
+/**
+ * Runs {@link PartnerTokenRefresher} on mocked storage and partner calls, with a claim of 60 seconds, a backoff of at
+ * most 10 minutes and tokens expired for more than a day left alone.
+ *
+ * @author Varij Kapil
+ */
+public class PartnerTokenRefresherTests {
+
+  private static final long CLAIM_SECONDS = 60;
+
+  private static final long VERIFY_TIMEOUT_MILLIS = 5000;
+
+  private DynamoDBPartnerTokenDAO partnerTokenService;
+
+  private PartnerTokenClient partnerTokenClient;
+
+  private PartnerTokenRefresher refresher;
+
+  @Before
+  public void setUp() {
+    partnerTokenService = mock(DynamoDBPartnerTokenDAO.class);
+    partnerTokenClient = mock(PartnerTokenClient.class);
+    DynamoDBPartnerDetailsDAO partnerDetailsService = mock(DynamoDBPartnerDetailsDAO.class);
+    when(partnerDetailsService.loadPartnerByPartnerId("partner")).thenReturn(OAuthPartner.builder()
+        .partnerId("partner")
+        .clientId("partner-client")
+        .accessTokenUri("https://partner.example.com/token")
+        .build());
+    when(partnerTokenService.claimRefresh(any(), any())).thenReturn(true);
+    refresher = new PartnerTokenRefresher(partnerTokenService, partnerDetailsService, partnerTokenClient,
+        mock(AuditTrail.class), 300, 30000, 100, 1000, CLAIM_SECONDS, 600, TimeUnit.DAYS.toSeconds(1));
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    refresher.destroy();
+  }
+
+  @Test
+  public void scanSkipsTokensExpiredPastTheCutoff() {
+    long before = System.currentTimeMillis();
+    refresher.scan();
+
+    ArgumentCaptor<Date> expiredAfter = ArgumentCaptor.forClass(Date.class);
+    verify(partnerTokenService).findExpiringBefore(any(), expiredAfter.capture(), anyInt());
+    assertTrue(expiredAfter.getValue().getTime() <= before - TimeUnit.DAYS.toMillis(1) + 1000);
+    assertTrue(expiredAfter.getValue().getTime() >= before - TimeUnit.DAYS.toMillis(1));
+  }
+
+  @Test
+  public void rejectedRefreshTokenIsDropped() {
+    OAuthPartnerToken partnerToken = dueToken(0);
+    failRefresh(new OAuth2AccessDeniedException("Access token denied.", null,
+        new InvalidGrantException("Invalid refresh token")));
+
+    refresher.scan();
+
+    verify(partnerTokenService, timeout(VERIFY_TIMEOUT_MILLIS)).dropRefreshToken(partnerToken);
+    verify(partnerTokenService, never()).recordRefreshFailure(any(), any());
+  }
+
+  @Test
+  public void failedRefreshBacksOff() {
+    OAuthPartnerToken partnerToken = dueToken(2);
+    failRefresh(new PartnerUnavailableException("Partner partner failed to answer"));
+
+    long before = System.currentTimeMillis();
+    refresher.scan();
+
+    ArgumentCaptor<Date> retryAt = ArgumentCaptor.forClass(Date.class);
+    verify(partnerTokenService, timeout(VERIFY_TIMEOUT_MILLIS)).recordRefreshFailure(eq(partnerToken),
+        retryAt.capture());
+    long backoffMillis = retryAt.getValue().getTime() - before;
+    assertTrue(backoffMillis >= TimeUnit.SECONDS.toMillis(4 * CLAIM_SECONDS));
+    assertTrue(backoffMillis < TimeUnit.SECONDS.toMillis(4 * CLAIM_SECONDS + 5));
+    verify(partnerTokenService, never()).dropRefreshToken(any());
+  }
+
+  @Test
+  public void backoffStopsAtTheMaximum() {
+    OAuthPartnerToken partnerToken = dueToken(40);
+    failRefresh(new PartnerUnavailableException("Partner partner failed to answer"));
+
+    long before = System.currentTimeMillis();
+    refresher.scan();
+
+    ArgumentCaptor<Date> retryAt = ArgumentCaptor.forClass(Date.class);
+    verify(partnerTokenService, timeout(VERIFY_TIMEOUT_MILLIS)).recordRefreshFailure(eq(partnerToken),
+        retryAt.capture());
+    long backoffMillis = retryAt.getValue().getTime() - before;
+    assertTrue(backoffMillis >= TimeUnit.MINUTES.toMillis(10));
+    assertTrue(backoffMillis < TimeUnit.MINUTES.toMillis(10) + 5000);
+  }
+
+  /**
+   * A token whose refresh is due now, returned by the next scan.
+   */
+  private OAuthPartnerToken dueToken(int refreshFailures) {
+    OAuthPartnerToken partnerToken = OAuthPartnerToken.builder()
+        .id(1)
+        .tokenId("access-token")
+        .refreshToken("refresh-token")
+        .partnerId("partner")
+        .userName("user")
+        .expiresAt(new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(290)))
+        .refreshFailures(refreshFailures)
+        .build();
+    when(partnerTokenService.findExpiringBefore(any(), any(), anyInt()))
+        .thenReturn(Collections.singletonList(partnerToken));
+    return partnerToken;
+  }
+
+  private void failRefresh(RuntimeException e) {
+    CompletableFuture<OAuth2AccessToken> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new CompletionException(e));
+    when(partnerTokenClient.refreshAccessToken(any(), any())).thenReturn(failed);
+  }
+}
@@ -0,0 +1,92 @@
+package com.oauth.server.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.oauth.server.database.dao.DynamoDBClientDetailsDAO;
+import com.oauth.server.database.dao.DynamoDBPartnerDetailsDAO;
+import com.oauth.server.database.modal.OAuthClientDetails;
+import com.oauth.server.event.ClientChangedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+/**
+ * Runs {@link RateLimiter} on mocked client and partner lookups, with a default limit of 1 request per second and a
+ * burst of 2.
+ *
+ * @author Varij Kapil
+ */
+public class RateLimiterTests {
+
+  private DynamoDBClientDetailsDAO clientDetailsService;
+
+  private DynamoDBPartnerDetailsDAO partnerDetailsService;
+
+  private RateLimiter rateLimiter;
+
+  @Before
+  public void setUp() {
+    clientDetailsService = mock(DynamoDBClientDetailsDAO.class);
+    partnerDetailsService = mock(DynamoDBPartnerDetailsDAO.class);
+    when(clientDetailsService.loadClientByClientId(anyString())).thenThrow(new NoSuchClientException("unknown"));
+    rateLimiter = new RateLimiter(clientDetailsService, partnerDetailsService, event -> { }, 1, 2, false, 10);
+  }
+
+  @Test
+  public void unknownClientIsLookedUpOnce() {
+    rateLimiter.tryAcquireForClient("unknown");
+    rateLimiter.tryAcquireForClient("unknown");
+
+    verify(clientDetailsService, times(1)).loadClientByClientId("unknown");
+  }
+
+  @Test
+  public void unknownIdsShareOneBucket() {
+    assertEquals(0, rateLimiter.tryAcquireForClient("unknown-1"));
+    assertEquals(0, rateLimiter.tryAcquireForPartner("unknown-2"));
+    assertTrue(rateLimiter.tryAcquireForClient("unknown-3") > 0);
+  }
+
+  /**
+   * More unknown ids than buckets do not evict the bucket of a real client.
+   */
+  @Test
+  public void unknownIdsDoNotEvictClientBuckets() {
+    knownClient("client", 1000);
+    rateLimiter.tryAcquireForClient("client");
+    for (int i = 0; i < 100; i++) {
+      rateLimiter.tryAcquireForClient("unknown-" + i);
+    }
+    rateLimiter.tryAcquireForClient("client");
+
+    verify(clientDetailsService, times(1)).loadClientByClientId("client");
+  }
+
+  @Test
+  public void savedClientIsNoLongerUnknown() {
+    assertEquals(0, rateLimiter.tryAcquireForClient("client"));
+    assertEquals(0, rateLimiter.tryAcquireForClient("unknown"));
+    assertTrue(rateLimiter.tryAcquireForClient("client") > 0);
+
+    knownClient("client", 1000);
+    rateLimiter.onClientChanged(new ClientChangedEvent(this, "client"));
+
+    assertEquals(0, rateLimiter.tryAcquireForClient("client"));
+    verify(clientDetailsService, times(2)).loadClientByClientId("client");
+  }
+
+  private void knownClient(String clientId, double permitsPerSecond) {
+    BaseClientDetails clientDetails = new BaseClientDetails();
+    clientDetails.setClientId(clientId);
+    clientDetails.addAdditionalInformation(OAuthClientDetails.RATE_LIMIT_PER_SECOND, permitsPerSecond);
+    doReturn(clientDetails).when(clientDetailsService).loadClientByClientId(clientId);
+  }
+}
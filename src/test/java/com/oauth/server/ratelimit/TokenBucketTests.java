@@ -0,0 +1,77 @@
+package com.oauth.server.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Runs {@link TokenBucket} on a clock given by the tests: 10 permits per second, one every 100 ms, and a burst of 3.
+ *
+ * @author Varij Kapil
+ */
+public class TokenBucketTests {
+
+  private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final long START = TimeUnit.SECONDS.toNanos(1000);
+
+  private final TokenBucket bucket = new TokenBucket(10, 3, START);
+
+  @Test
+  public void fullBucketAllowsBurstThenRefuses() {
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, bucket.tryAcquire(START));
+    }
+    assertEquals(INTERVAL, bucket.tryAcquire(START));
+    assertEquals(INTERVAL / 2, bucket.tryAcquire(START + INTERVAL / 2));
+    assertEquals(3, bucket.takenSinceLastCall());
+  }
+
+  @Test
+  public void refillsOnePermitPerInterval() {
+    for (int i = 0; i < 3; i++) {
+      bucket.tryAcquire(START);
+    }
+    for (int i = 1; i <= 5; i++) {
+      assertEquals(0, bucket.tryAcquire(START + i * INTERVAL));
+      assertEquals(INTERVAL, bucket.tryAcquire(START + i * INTERVAL));
+    }
+  }
+
+  /**
+   * An idle bucket fills up to the burst, not beyond.
+   */
+  @Test
+  public void idleBucketRefillsUpToBurst() {
+    bucket.tryAcquire(START);
+    long later = START + TimeUnit.MINUTES.toNanos(1);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, bucket.tryAcquire(later));
+    }
+    assertEquals(INTERVAL, bucket.tryAcquire(later));
+  }
+
+  @Test
+  public void drainTakesPermitsUsedElsewhere() {
+    bucket.drain(2, START);
+    assertEquals(0, bucket.tryAcquire(START));
+    assertEquals(INTERVAL, bucket.tryAcquire(START));
+    assertEquals(1, bucket.takenSinceLastCall());
+  }
+
+  @Test
+  public void drainStopsAtEmptyBucket() {
+    bucket.drain(100, START);
+    assertEquals(INTERVAL, bucket.tryAcquire(START));
+    assertEquals(0, bucket.tryAcquire(START + INTERVAL));
+  }
+
+  @Test
+  public void takenSinceLastCallResets() {
+    bucket.tryAcquire(START);
+    bucket.tryAcquire(START);
+    assertEquals(2, bucket.takenSinceLastCall());
+    assertEquals(0, bucket.takenSinceLastCall());
+  }
+}
@@ -0,0 +1,158 @@
+package com.oauth.server.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Runs two {@link SharedSessionFilter} nodes on one {@link InMemorySessionStore}, with sessions expiring after 30
+ * minutes, and a store whose clock can be moved forward.
+ *
+ * @author Varij Kapil
+ */
+public class SharedSessionFilterTests {
+
+  private static final String COOKIE_NAME = "SESSION";
+
+  private static final int MAX_INACTIVE_INTERVAL = 1800;
+
+  private ShiftedClockSessionStore sessionStore;
+
+  private SharedSessionFilter nodeA;
+
+  private SharedSessionFilter nodeB;
+
+  @Before
+  public void setUp() {
+    sessionStore = new ShiftedClockSessionStore();
+    nodeA = new SharedSessionFilter(sessionStore, COOKIE_NAME, MAX_INACTIVE_INTERVAL, 60000);
+    nodeB = new SharedSessionFilter(sessionStore, COOKIE_NAME, MAX_INACTIVE_INTERVAL, 60000);
+  }
+
+  @Test
+  public void sessionCreatedOnOneNodeIsLoadedOnAnother() throws Exception {
+    String sessionId = createSession(nodeA, "flow", "authorize");
+
+    MockHttpServletResponse response = perform(nodeB, sessionId, (request, ignored) -> {
+      HttpSession session = request.getSession(false);
+      assertNotNull(session);
+      assertEquals(sessionId, session.getId());
+      assertEquals("authorize", session.getAttribute("flow"));
+    });
+
+    assertNull(response.getCookie(COOKIE_NAME));
+  }
+
+  @Test
+  public void changedSessionIdReplacesTheStoredSession() throws Exception {
+    String sessionId = createSession(nodeA, "flow", "authorize");
+
+    MockHttpServletResponse response = perform(nodeB, sessionId,
+        (request, ignored) -> assertNotEquals(sessionId, request.changeSessionId()));
+    String changedId = lastCookie(response).getValue();
+
+    assertNotEquals(sessionId, changedId);
+    perform(nodeA, sessionId, (request, ignored) -> assertNull(request.getSession(false)));
+    perform(nodeA, changedId,
+        (request, ignored) -> assertEquals("authorize", request.getSession(false).getAttribute("flow")));
+  }
+
+  @Test
+  public void invalidatedSessionIsDeleted() throws Exception {
+    String sessionId = createSession(nodeA, "flow", "authorize");
+
+    MockHttpServletResponse response = perform(nodeB, sessionId,
+        (request, ignored) -> request.getSession(false).invalidate());
+
+    assertEquals(0, lastCookie(response).getMaxAge());
+    perform(nodeA, sessionId, (request, ignored) -> assertNull(request.getSession(false)));
+  }
+
+  @Test
+  public void expiredSessionIsNotLoaded() throws Exception {
+    String sessionId = createSession(nodeA, "flow", "authorize");
+    sessionStore.shiftMillis = TimeUnit.SECONDS.toMillis(MAX_INACTIVE_INTERVAL - 1);
+    perform(nodeB, sessionId, (request, ignored) -> assertNotNull(request.getSession(false)));
+
+    sessionStore.shiftMillis = TimeUnit.SECONDS.toMillis(MAX_INACTIVE_INTERVAL + 1);
+    perform(nodeB, sessionId, (request, ignored) -> assertNull(request.getSession(false)));
+    assertEquals(1, sessionStore.deleteExpired(System.currentTimeMillis() + sessionStore.shiftMillis));
+  }
+
+  /**
+   * Any write of the body can commit the response, and the browser may then send the next request of the flow to
+   * another node before this request ends.
+   */
+  @Test
+  public void sessionIsSavedBeforeTheBodyIsWritten() throws Exception {
+    perform(nodeA, null, (request, response) -> {
+      HttpSession session = request.getSession();
+      session.setAttribute("flow", "authorize");
+      response.getWriter().print("consent");
+      perform(nodeB, session.getId(),
+          (nextRequest, ignored) -> assertEquals("authorize", nextRequest.getSession(false).getAttribute("flow")));
+
+      session.setAttribute("flow", "approved");
+      response.getWriter().println();
+      perform(nodeB, session.getId(),
+          (nextRequest, ignored) -> assertEquals("approved", nextRequest.getSession(false).getAttribute("flow")));
+    });
+  }
+
+  private String createSession(SharedSessionFilter node, String name, String value) throws Exception {
+    MockHttpServletResponse response = perform(node, null,
+        (request, ignored) -> request.getSession().setAttribute(name, value));
+    return lastCookie(response).getValue();
+  }
+
+  private static MockHttpServletResponse perform(SharedSessionFilter node, String sessionId, RequestHandler handler)
+      throws IOException, ServletException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/oauth/authorize");
+    if (sessionId != null) {
+      request.setCookies(new Cookie(COOKIE_NAME, sessionId));
+    }
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    FilterChain chain = (servletRequest, servletResponse) -> handler.handle((HttpServletRequest) servletRequest,
+        (HttpServletResponse) servletResponse);
+    node.doFilter(request, response, chain);
+    return response;
+  }
+
+  private static Cookie lastCookie(MockHttpServletResponse response) {
+    Cookie[] cookies = response.getCookies();
+    assertNotEquals(0, cookies.length);
+    return cookies[cookies.length - 1];
+  }
+
+  private interface RequestHandler {
+
+    void handle(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException;
+  }
+
+  /**
+   * Loads and expires sessions as if {@code shiftMillis} later than the filter asks for.
+   */
+  private static final class ShiftedClockSessionStore extends InMemorySessionStore {
+
+    private long shiftMillis;
+
+    @Override
+    public byte[] load(String key, long now) {
+      return super.load(key, now + shiftMillis);
+    }
+  }
+}